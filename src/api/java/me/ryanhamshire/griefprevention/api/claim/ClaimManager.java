@@ -55,6 +55,19 @@ public interface ClaimManager {
      */
     Claim getClaimAt(Location<World> location);
 
+    /**
+     * Gets the {@link Claim} at each of the specified {@link Location}s.
+     * 
+     * Note: Locations are grouped by chunk and resolved in a single pass,
+     * which is much faster than calling {@link #getClaimAt(Location)} for
+     * large batches such as explosions.
+     * 
+     * @param locations The locations to check, all within the managed world
+     * @return An immutable list of claims in the same order as the passed
+     * locations, using the wilderness claim for unclaimed locations
+     */
+    List<Claim> getClaimsAt(List<Location<World>> locations);
+
     /**
      * Gets the {@link Claim} with specified {@link UUID}.
      * 
@@ -81,6 +94,30 @@ public interface ClaimManager {
      */
     List<Claim> getPlayerClaims(UUID playerUniqueId);
 
+    /**
+     * Gets an immutable list of {@link Claim}'s the specified user is trusted in.
+     * 
+     * Note: Only trusts stored in claim data are included. Trust granted through
+     * permissions or inherited from a parent claim is not.
+     * 
+     * @param userUniqueId The user UUID
+     * @param type The trust type, {@link TrustType#NONE} to include all types
+     * @return An immutable list of claims, empty list if none were found
+     */
+    List<Claim> getTrustedClaims(UUID userUniqueId, TrustType type);
+
+    /**
+     * Gets an immutable list of {@link Claim}'s the specified group is trusted in.
+     * 
+     * Note: Only trusts stored in claim data are included. Trust granted through
+     * permissions or inherited from a parent claim is not.
+     * 
+     * @param group The group identifier
+     * @param type The trust type, {@link TrustType#NONE} to include all types
+     * @return An immutable list of claims, empty list if none were found
+     */
+    List<Claim> getGroupTrustedClaims(String group, TrustType type);
+
     /**
      * Gets an immutable list all world {@link Claim}'s for specified {@link UUID}.
      * 
@@ -40,16 +40,21 @@
 import me.ryanhamshire.griefprevention.claim.GPClaim;
 import me.ryanhamshire.griefprevention.claim.GPClaimManager;
 import me.ryanhamshire.griefprevention.claim.GPClaimResult;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageData;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageWriter;
 import me.ryanhamshire.griefprevention.configuration.ClaimTemplateStorage;
 import me.ryanhamshire.griefprevention.configuration.GriefPreventionConfig;
+import me.ryanhamshire.griefprevention.configuration.PlayerStorageData;
+import me.ryanhamshire.griefprevention.configuration.PlayerStorageWriter;
+import me.ryanhamshire.griefprevention.configuration.TownStorageData;
 import me.ryanhamshire.griefprevention.configuration.type.DimensionConfig;
 import me.ryanhamshire.griefprevention.configuration.type.GlobalConfig;
 import me.ryanhamshire.griefprevention.configuration.type.WorldConfig;
 import me.ryanhamshire.griefprevention.event.GPDeleteClaimEvent;
 import me.ryanhamshire.griefprevention.permission.GPOptions;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
 import me.ryanhamshire.griefprevention.util.WordFinder;
-import net.minecraft.util.math.ChunkPos;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.entity.living.player.User;
@@ -59,7 +64,6 @@
 import org.spongepowered.api.service.user.UserStorageService;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.util.Tristate;
-import org.spongepowered.api.world.Chunk;
 import org.spongepowered.api.world.Location;
 import org.spongepowered.api.world.World;
 import org.spongepowered.api.world.storage.WorldProperties;
@@ -83,6 +87,8 @@
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+
 //singleton class which manages all GriefPrevention data (except for config options)
 public abstract class DataStore {
 
@@ -94,7 +100,8 @@ public abstract class DataStore {
     public static Map<UUID, GriefPreventionConfig<WorldConfig>> worldConfigMap = Maps.newHashMap();
     public static Map<String, ClaimTemplateStorage> globalTemplates = new HashMap<>();
     public static GriefPreventionConfig<GlobalConfig> globalConfig;
-    public static Map<UUID, GPPlayerData> GLOBAL_PLAYER_DATA = Maps.newHashMap();
+    // read by async permission and context threads while evictions remove entries
+    public static Map<UUID, GPPlayerData> GLOBAL_PLAYER_DATA = new ConcurrentHashMap<>();
     public static boolean USE_GLOBAL_PLAYER_STORAGE = true;
     public static Map<ClaimType, Map<String, Boolean>> CLAIM_FLAG_DEFAULTS = Maps.newHashMap();
 
@@ -293,6 +300,34 @@ public void clearCachedPlayerData(WorldProperties worldProperties, UUID playerUn
 
     public abstract void writeClaimToStorage(GPClaim claim);
 
+    // creates the storage of a new claim, in its own claim file by default
+    public ClaimStorageData createClaimStorage(GPClaim claim, @Nullable GPClaim parent, @Nullable UUID ownerUniqueId) {
+        Path claimDataFolderPath = null;
+        // check if main world
+        if (parent != null) {
+            claimDataFolderPath = parent.getClaimStorage().filePath.getParent().resolve(claim.getType().name().toLowerCase());
+        } else {
+            claimDataFolderPath = worldConfigMap.get(claim.getWorldUniqueId()).getPath().getParent().resolve("ClaimData").resolve(claim.getType().name().toLowerCase());
+        }
+        claimDataFolderPath.toFile().mkdirs();
+        final Path claimFilePath = claimDataFolderPath.resolve(claim.id.toString());
+        if (claim.isTown()) {
+            return new TownStorageData(claimFilePath, claim.getWorldUniqueId(), ownerUniqueId, claim.isCuboid());
+        }
+        return new ClaimStorageData(claimFilePath, claim.getWorldUniqueId(), ownerUniqueId, claim.getType(), claim.isCuboid());
+    }
+
+    // creates or loads the storage of a player's data, in its own file by default
+    public PlayerStorageData createPlayerStorageData(WorldProperties worldProperties, UUID playerUniqueId) {
+        Path playerFilePath = null;
+        if (USE_GLOBAL_PLAYER_STORAGE) {
+            playerFilePath = globalPlayerDataPath.resolve(playerUniqueId.toString());
+        } else {
+            playerFilePath = worldConfigMap.get(worldProperties.getUniqueId()).getPath().getParent().resolve("PlayerData").resolve(playerUniqueId.toString());
+        }
+        return new PlayerStorageData(playerFilePath);
+    }
+
     public abstract void deleteClaimFromSecondaryStorage(GPClaim claim);
 
     // finds a claim by ID
@@ -323,9 +358,9 @@ public void asyncSaveGlobalPlayerData(UUID playerID, GPPlayerData playerData) {
                     fileContent.append("\n");
                 }
 
-                // write data to file
-                File playerDataFile = globalPlayerDataPath.resolve(playerID.toString() + ".ignore").toFile();
-                Files.write(fileContent.toString().trim().getBytes("UTF-8"), playerDataFile);
+                // written in the background, only the latest list of each player is written
+                playerData.ignoreListChanged = false;
+                PlayerStorageWriter.queueIgnoreList(globalPlayerDataPath.resolve(playerID.toString() + ".ignore"), fileContent.toString().trim());
             }
 
             // if any problem, log it
@@ -363,6 +398,7 @@ public void extendClaim(GPClaim claim, int newDepth) {
         if (claim.parent == null) {
             
         }
+        this.getClaimWorldManager(claim.getWorld().getProperties()).invalidateColumnTables(claim);
 
         for (Claim subClaim : claim.children) {
             GPClaim subdivision = (GPClaim) subClaim;
@@ -426,6 +462,7 @@ public ClaimResult deleteAllAdminClaims(CommandSource src, World world) {
             gpClaim.removeSurfaceFluids(null);
 
             GriefPreventionPlugin.GLOBAL_SUBJECT.getSubjectData().clearPermissions(ImmutableSet.of(claim.getContext()));
+            GPPermissionCache.invalidate();
             claimWorldManager.deleteClaimInternal(claim, true);
 
             // if in a creative mode world, delete the claim
@@ -444,28 +481,15 @@ public ClaimResult deleteClaim(Claim claim, boolean deleteChildren) {
 
     // deletes all claims owned by a player
     public void deleteClaimsForPlayer(UUID playerID) {
-        if (DataStore.USE_GLOBAL_PLAYER_STORAGE && playerID != null) {
-            List<Claim> claimsToDelete = new ArrayList<>(DataStore.GLOBAL_PLAYER_DATA.get(playerID).getInternalClaims());
-            for (Claim claim : claimsToDelete) {
-                ((GPClaim) claim).removeSurfaceFluids(null);
-                GriefPreventionPlugin.GLOBAL_SUBJECT.getSubjectData().clearPermissions(ImmutableSet.of(claim.getContext()));
-                GPClaimManager claimWorldManager = this.claimWorldManagers.get(claim.getWorld().getProperties().getUniqueId());
-                claimWorldManager.deleteClaimInternal(claim, true);
-
-                // if in a creative mode world, delete the claim
-                if (GriefPreventionPlugin.instance.claimModeIsActive(claim.getLesserBoundaryCorner().getExtent().getProperties(), ClaimsMode.Creative)) {
-                    GriefPreventionPlugin.instance.restoreClaim((GPClaim) claim, 0);
-                }
-            }
-            return;
-        }
-
+        // the owner index of each world also covers offline players and global player storage
         for (GPClaimManager claimWorldManager : this.claimWorldManagers.values()) {
-            List<Claim> claims = claimWorldManager.getInternalPlayerClaims(playerID);
+            List<Claim> claims = null;
             if (playerID == null) {
                 claims = claimWorldManager.getWorldClaims();
+            } else {
+                claims = claimWorldManager.getOwnerClaims(playerID);
             }
-            if (claims == null) {
+            if (claims.isEmpty()) {
                 continue;
             }
 
@@ -479,6 +503,7 @@ public void deleteClaimsForPlayer(UUID playerID) {
             for (Claim claim : claimsToDelete) {
                 ((GPClaim) claim).removeSurfaceFluids(null);
                 GriefPreventionPlugin.GLOBAL_SUBJECT.getSubjectData().clearPermissions(ImmutableSet.of(claim.getContext()));
+                GPPermissionCache.invalidate();
                 claimWorldManager.deleteClaimInternal(claim, true);
 
                 // if in a creative mode world, delete the claim
@@ -531,25 +556,12 @@ public List<Claim> getNearbyClaims(Location<World> location) {
             return claims;
         }
 
-        Optional<Chunk> lesserChunk = location.getExtent().getChunkAtBlock(location.sub(50, 0, 50).getBlockPosition());
-        Optional<Chunk> greaterChunk = location.getExtent().getChunkAtBlock(location.add(50, 0, 50).getBlockPosition());
-
-        if (lesserChunk.isPresent() && greaterChunk.isPresent()) {
-            for (int chunkX = lesserChunk.get().getPosition().getX(); chunkX <= greaterChunk.get().getPosition().getX(); chunkX++) {
-                for (int chunkZ = lesserChunk.get().getPosition().getZ(); chunkZ <= greaterChunk.get().getPosition().getZ(); chunkZ++) {
-                    Optional<Chunk> chunk = location.getExtent().getChunk(chunkX, 0, chunkZ);
-                    if (chunk.isPresent()) {
-                        Set<Claim> claimsInChunk = claimWorldManager.getInternalChunksToClaimsMap().get(ChunkPos.asLong(chunkX, chunkZ));
-                        if (claimsInChunk != null) {
-                            for (Claim claim : claimsInChunk) {
-                                final GPClaim gpClaim = (GPClaim) claim;
-                                if (gpClaim.parent == null && !claims.contains(claim)) {
-                                    claims.add(claim);
-                                }
-                            }
-                        }
-                    }
-                }
+        final int x = location.getBlockX();
+        final int z = location.getBlockZ();
+        for (Claim claim : claimWorldManager.getClaimIndex().getClaimsInArea(x - 50, z - 50, x + 50, z + 50)) {
+            final GPClaim gpClaim = (GPClaim) claim;
+            if (gpClaim.parent == null && !claims.contains(claim)) {
+                claims.add(claim);
             }
         }
 
@@ -571,6 +583,12 @@ public GPClaim getClaimAt(Location<World> location, GPClaim cachedClaim) {
         return (GPClaim) claimManager.getClaimAt(location, cachedClaim);
     }
 
+    // Resolves the claim at each location, all locations must be in the passed world
+    public GPClaim[] getClaimsAt(World world, List<Location<World>> locations) {
+        GPClaimManager claimManager = this.getClaimWorldManager(world.getProperties());
+        return claimManager.resolveClaimsAt(locations);
+    }
+
     public GPPlayerData getPlayerData(World world, UUID playerUniqueId) {
         return this.getPlayerData(world.getProperties(), playerUniqueId);
     }
@@ -579,6 +597,9 @@ public GPPlayerData getPlayerData(WorldProperties worldProperties, UUID playerUn
         GPPlayerData playerData = null;
         GPClaimManager claimWorldManager = this.getClaimWorldManager(worldProperties);
         playerData = claimWorldManager.getPlayerDataMap().get(playerUniqueId);
+        if (playerData != null) {
+            playerData.lastAccessTime = System.currentTimeMillis();
+        }
         return playerData;
     }
 
@@ -676,6 +697,7 @@ private void setFlagDefaultPermissions(Set<Context> contexts, Map<String, Boolea
                     }
                 }
             }
+            GPPermissionCache.invalidate();
         });
     }
 
@@ -711,5 +733,20 @@ private void setOptionDefaultPermissions(Set<Context> contexts) {
 
     public abstract void unloadWorldData(WorldProperties worldProperties);
 
+    public void saveWorldData(WorldProperties worldProperties) {
+        final GPClaimManager claimWorldManager = this.getClaimWorldManager(worldProperties);
+        if (claimWorldManager != null) {
+            claimWorldManager.save();
+        }
+    }
+
     abstract void loadClaimTemplates();
+
+    /**
+     * Writes all queued claim and player saves on the calling thread.
+     */
+    public void flushSaves() {
+        ClaimStorageWriter.flush();
+        PlayerStorageWriter.flush();
+    }
 }
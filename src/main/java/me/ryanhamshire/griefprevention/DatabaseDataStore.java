@@ -1,7 +1,6 @@
 /*
  * This file is part of GriefPrevention, licensed under the MIT License (MIT).
  *
- * Copyright (c) Ryan Hamshire
  * Copyright (c) bloodmc
  * Copyright (c) contributors
  *
@@ -25,509 +24,344 @@
  */
 package me.ryanhamshire.griefprevention;
 
+import me.ryanhamshire.griefprevention.DatabaseSchema.PlayerDataKey;
+import me.ryanhamshire.griefprevention.api.claim.ClaimType;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
+import me.ryanhamshire.griefprevention.claim.GPClaimManager;
+import me.ryanhamshire.griefprevention.configuration.ClaimSnapshot;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageData;
+import me.ryanhamshire.griefprevention.configuration.IStorageBackend;
+import me.ryanhamshire.griefprevention.configuration.PlayerStorageData;
+import me.ryanhamshire.griefprevention.configuration.TownStorageData;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.service.sql.SqlService;
 import org.spongepowered.api.world.World;
 import org.spongepowered.api.world.storage.WorldProperties;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-//manages data stored in the file system
-public class DatabaseDataStore extends DataStore {
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
 
-    private Connection databaseConnection = null;
-
-    private String databaseUrl;
-    private String userName;
-    private String password;
-
-    DatabaseDataStore(String url, String userName, String password) throws Exception {
-        this.databaseUrl = url;
+/**
+ * Stores claim and player data in a SQL database.
+ *
+ * <p>Claims keep their full data in a blob, with the columns needed to find
+ * and index them and their trust lists split out into their own tables.
+ * Writes are batched per transaction and run off the main thread, using
+ * the connection pool provided by Sponge's {@link SqlService}. World
+ * configs and claim templates are still read from files.</p>
+ */
+public class DatabaseDataStore extends FlatFileDataStore implements IStorageBackend {
+
+    private final String url;
+    private final String userName;
+    private final String password;
+    private DataSource dataSource;
+    // latest unwritten data of each player, written in batches on the executor
+    private final Map<PlayerDataKey, CommentedConfigurationNode> queuedPlayerData = new ConcurrentHashMap<>();
+    private final AtomicBoolean playerDataScheduled = new AtomicBoolean();
+
+    DatabaseDataStore(String url, String userName, String password) {
+        this.url = url;
         this.userName = userName;
         this.password = password;
-
-        this.initialize();
     }
 
-    @SuppressWarnings({"unused", "null"})
     @Override
     void initialize() throws Exception {
-        /*try {
-            // load the java driver for mySQL
-            Class.forName("com.mysql.jdbc.Driver");
-        } catch (Exception e) {
-            GriefPreventionPlugin.addLogEntry("ERROR: Unable to load Java's mySQL database driver.  Check to make sure you've installed it properly.");
-            throw e;
+        this.dataSource = getDataSource(this.url, this.userName, this.password);
+        try (Connection connection = this.dataSource.getConnection()) {
+            DatabaseSchema.createTables(connection);
         }
 
-        try {
-            this.refreshDataConnection();
-        } catch (Exception e2) {
-            GriefPreventionPlugin.addLogEntry("ERROR: Unable to connect to database.  Check your config file settings.");
-            throw e2;
-        }
-
-        try {
-            // ensure the data tables exist
-            Statement statement = databaseConnection.createStatement();
-
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_nextclaimid (nextid INT(15));");
-
-            statement.execute(
-                    "CREATE TABLE IF NOT EXISTS griefprevention_claimdata (id INT(15), owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner "
-                            + "VARCHAR(100), builders VARCHAR(1000), containers VARCHAR(1000), accessors VARCHAR(1000), managers VARCHAR(1000), "
-                            + "parentid INT(15));");
-
-            statement.execute(
-                    "CREATE TABLE IF NOT EXISTS griefprevention_playerdata (name VARCHAR(50), lastlogin DATETIME, accruedblocks INT(15), "
-                            + "bonusblocks INT(15));");
-
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_schemaversion (version INT(15));");
-
-            // if the next claim id table is empty, this is a brand new database
-            // which will write using the latest schema
-            // otherwise, schema version is determined by schemaversion table
-            // (or =0 if table is empty, see getSchemaVersion())
-            ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_nextclaimid;");
-            if (!results.next()) {
-                this.setSchemaVersion(latestSchemaVersion);
-            }
-        } catch (Exception e3) {
-            GriefPreventionPlugin.addLogEntry("ERROR: Unable to create the necessary database table.  Details:");
-            GriefPreventionPlugin.addLogEntry(e3.getMessage());
-            e3.printStackTrace();
-            throw e3;
-        }
+        super.initialize();
+    }
 
-        // load group data into memory
-        Statement statement = databaseConnection.createStatement();
-        // load next claim number into memory
-        ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_nextclaimid;");
+    /**
+     * Gets a pooled data source from Sponge's {@link SqlService}.
+     */
+    public static DataSource getDataSource(String url, String userName, String password) throws SQLException, UnsupportedEncodingException {
+        final SqlService sqlService = Sponge.getServiceManager().provide(SqlService.class)
+                .orElseThrow(() -> new SQLException("No SQL service is available."));
+        return sqlService.getDataSource(GriefPreventionPlugin.instance, getConnectionUrl(url, userName, password));
+    }
 
-        // if there's nothing yet, add it
-        if (!results.next()) {
-            statement.execute("INSERT INTO griefprevention_nextclaimid VALUES(0);");
+    // Sponge's SqlService reads credentials from the user info part of the url
+    private static String getConnectionUrl(String url, String userName, String password) throws UnsupportedEncodingException {
+        final int hostStart = url.indexOf("//");
+        if (userName.isEmpty() || hostStart < 0 || url.contains("@")) {
+            return url;
         }
 
-        if (this.getSchemaVersion() == 0) {
-            try {
-                this.refreshDataConnection();
-
-                // pull ALL player data from the database
-                statement = this.databaseConnection.createStatement();
-                results = statement.executeQuery("SELECT * FROM griefprevention_playerdata;");
-
-                // make a list of changes to be made
-                HashMap<String, UUID> changes = new HashMap<String, UUID>();
-
-                ArrayList<String> namesToConvert = new ArrayList<String>();
-                while (results.next()) {
-                    // get the id
-                    String playerName = results.getString("name");
-
-                    // add to list of names to convert to UUID
-                    namesToConvert.add(playerName);
-                }
-
-                // reset results cursor
-                results.beforeFirst();
-
-                // for each result
-                while (results.next()) {
-                    // get the id
-                    String playerName = results.getString("name");
-
-                    // try to convert player name to UUID
-                    try {
-                        Optional<User> user = Sponge.getGame().getServiceManager().provide(UserStorageService.class).get().get(playerName);
-
-                        // if successful, update the playerdata row by replacing
-                        // the player's name with the player's UUID
-                        if (user.isPresent()) {
-                            changes.put(playerName, user.get().getUniqueId());
-                        }
-                    }
-                    // otherwise leave it as-is. no harm done - it won't be
-                    // requested by name, and this update only happens once.
-                    catch (Exception ex) {
-                    }
-                }
-
-                // refresh data connection in case data migration took a long time
-                this.refreshDataConnection();
-
-                for (String name : changes.keySet()) {
-                    try {
-                        statement = this.databaseConnection.createStatement();
-                        statement.execute(
-                                "UPDATE griefprevention_playerdata SET name = '" + changes.get(name).toString() + "' WHERE name = '" + name + "';");
-                    } catch (SQLException e) {
-                        GriefPreventionPlugin.addLogEntry("Unable to convert player data for " + name + ".  Skipping.");
-                        GriefPreventionPlugin.addLogEntry(e.getMessage());
-                    }
-                }
-            } catch (SQLException e) {
-                GriefPreventionPlugin.addLogEntry("Unable to convert player data.  Details:");
-                GriefPreventionPlugin.addLogEntry(e.getMessage());
-                e.printStackTrace();
-            }
+        String userInfo = URLEncoder.encode(userName, "UTF-8");
+        if (!password.isEmpty()) {
+            userInfo += ":" + URLEncoder.encode(password, "UTF-8");
         }
+        return url.substring(0, hostStart + 2) + userInfo + "@" + url.substring(hostStart + 2);
+    }
 
-        // load claims data into memory
-        results = statement.executeQuery("SELECT * FROM griefprevention_claimdata;");
-
-        ArrayList<GPClaim> claimsToRemove = new ArrayList<GPClaim>();
-        ArrayList<GPClaim> subdivisionsToLoad = new ArrayList<GPClaim>();
-        List<World> validWorlds = (List<World>) Sponge.getGame().getServer().getWorlds();
-
-        while (results.next()) {
-            try {
-                // problematic claims will be removed from secondary storage,
-                // and never added to in-memory data store
-                boolean removeClaim = false;
-
-                long parentId = results.getLong("parentid");
-                long claimID = results.getLong("id");
-
-                Location<World> lesserBoundaryCorner = null;
-                Location<World> greaterBoundaryCorner = null;
-                String lesserCornerString = "(location not available)";
-                try {
-                    lesserCornerString = results.getString("lessercorner");
-                    Vector3i lesserPos = BlockUtils.positionFromString(lesserCornerString);
-                    // lesserBoundaryCorner = positionFromString(lesserCornerString);
-
-                    String greaterCornerString = results.getString("greatercorner");
-                    //greaterBoundaryCorner = positionFromString(greaterCornerString);
-                } catch (Exception e) {
-                    if (e.getMessage().contains("World not found")) {
-                        removeClaim = true;
-                        GriefPreventionPlugin.addLogEntry("Removing a claim in a world which does not exist: " + lesserCornerString);
-                        continue;
-                    } else {
-                        throw e;
-                    }
-                }
-
-                String ownerName = results.getString("owner");
-                Optional<User> owner = Optional.empty();
-                if (ownerName.isEmpty() || ownerName.startsWith("--")) {
-                    owner = Optional.empty(); // administrative land claim or subdivision
-                } else if (this.getSchemaVersion() < 1) {
-                    try {
-                        owner = Sponge.getGame().getServiceManager().provide(UserStorageService.class).get().get(ownerName);
-                    } catch (Exception ex) {
-                        GriefPreventionPlugin.addLogEntry("This owner name did not convert to a UUID: " + ownerName + ".");
-                        GriefPreventionPlugin.addLogEntry("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
-                    }
-                }
-
-                String managersString = results.getString("managers");
-                List<String> managerNames = Arrays.asList(managersString.split(";"));
-                managerNames = this.convertNameListToUUIDList(managerNames);
-
-                GPClaim claim = new GPClaim(lesserBoundaryCorner, greaterBoundaryCorner, ClaimType.BASIC);
-                claim.ownerID = owner.get().getUniqueId();
-
-                if (removeClaim) {
-                    claimsToRemove.add(claim);
-                } else if (parentId == -1) {
-                    // top level claim
-                    this.addClaim(claim, false);
-                } else {
-                    // subdivision
-                    subdivisionsToLoad.add(claim);
-                }
-            } catch (SQLException e) {
-                GriefPreventionPlugin.addLogEntry("Unable to load a claim.  Details: " + e.getMessage() + " ... " + results.toString());
-                e.printStackTrace();
-            }
-        }
-
-        // add subdivisions to their parent claims
-        for (Claim childClaim : subdivisionsToLoad) {
-            // find top level claim parent
-            Claim topLevelClaim = this.getClaimAt(childClaim.getLesserBoundaryCorner(), true, null);
-
-            if (topLevelClaim == null) {
-                claimsToRemove.add(childClaim);
-                GriefPreventionPlugin.addLogEntry("Removing orphaned claim subdivision: " + childClaim.getLesserBoundaryCorner().toString());
-                continue;
+    @Override
+    int getSchemaVersionFromStorage() {
+        try (Connection connection = this.dataSource.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet results = statement.executeQuery(DatabaseSchema.SELECT_SCHEMA_VERSION)) {
+            if (results.next()) {
+                return results.getInt(1);
             }
-
-            // add this claim to the list of children of the current top level
-            // claim
-            childClaim.parent = topLevelClaim;
-            topLevelClaim.children.add(childClaim);
-        }
-
-        for (int i = 0; i < claimsToRemove.size(); i++) {
-            this.deleteClaimFromSecondaryStorage(claimsToRemove.get(i));
+        } catch (SQLException e) {
+            GriefPreventionPlugin.instance.getLogger().error("Could not read schema version from database.", e);
         }
-
-        if (this.getSchemaVersion() <= 2) {
-            this.refreshDataConnection();
-            statement = this.databaseConnection.createStatement();
-            statement.execute("DELETE FROM griefprevention_claimdata WHERE id='-1';");
-        }*/
-
-        super.initialize();
+        return 0;
     }
 
-    // see datastore.cs. this will ALWAYS be a top level claim
     @Override
-    public void writeClaimToStorage(GPClaim claim) {
-        try {
-            this.refreshDataConnection();
-
-            // wipe out any existing data about this claim
-            this.deleteClaimFromSecondaryStorage(claim);
-
-            // write claim data to the database
-            this.writeClaimData(claim);
+    void updateSchemaVersionInStorage(int versionToSet) {
+        try (Connection connection = this.dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement delete = connection.createStatement();
+                    PreparedStatement insert = connection.prepareStatement(DatabaseSchema.INSERT_SCHEMA_VERSION)) {
+                delete.executeUpdate(DatabaseSchema.DELETE_SCHEMA_VERSION);
+                insert.setInt(1, versionToSet);
+                insert.executeUpdate();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
-            //GriefPrevention.AddLogEntry("Unable to save data for claim at " + this.locationToString(claim.lesserBoundaryCorner) + ".  Details:");
-            GriefPreventionPlugin.addLogEntry(e.getMessage());
+            GriefPreventionPlugin.instance.getLogger().error("Could not save schema version to database.", e);
         }
     }
 
-    // actually writes claim data to the database
-    private void writeClaimData(GPClaim claim) throws SQLException {
-        /*String lesserCornerString = this.locationToString(claim.getLesserBoundaryCorner());
-        String greaterCornerString = this.locationToString(claim.getGreaterBoundaryCorner());
-        String owner = "";
-        if (claim.ownerID != null)
-            owner = claim.ownerID.toString();
-
-        ArrayList<String> builders = new ArrayList<String>();
-        ArrayList<String> containers = new ArrayList<String>();
-        ArrayList<String> accessors = new ArrayList<String>();
-        ArrayList<String> managers = new ArrayList<String>();
-
-        claim.getPermissions(builders, containers, accessors, managers);
-
-        String buildersString = "";
-        for (int i = 0; i < builders.size(); i++) {
-            buildersString += builders.get(i) + ";";
-        }
-
-        String containersString = "";
-        for (int i = 0; i < containers.size(); i++) {
-            containersString += containers.get(i) + ";";
-        }
-
-        String accessorsString = "";
-        for (int i = 0; i < accessors.size(); i++) {
-            accessorsString += accessors.get(i) + ";";
+    @Override
+    public void loadWorldData(World world) {
+        final WorldProperties worldProperties = world.getProperties();
+        GPClaimManager claimWorldManager = this.claimWorldManagers.get(worldProperties.getUniqueId());
+        if (claimWorldManager == null) {
+            this.registerWorld(worldProperties);
+            claimWorldManager = this.claimWorldManagers.get(worldProperties.getUniqueId());
         }
 
-        String managersString = "";
-        for (int i = 0; i < managers.size(); i++) {
-            managersString += managers.get(i) + ";";
-        }
+        try {
+            this.loadClaimRows(world);
+            this.loadPlayerRows(worldProperties);
 
-        long parentId;
-        if (claim.parent == null) {
-            parentId = -1;
-        } else {
-            parentId = claim.parent.id;
+            // If a wilderness claim was not loaded, create a new one
+            if (claimWorldManager.getWildernessClaim() == null) {
+                claimWorldManager.createWildernessClaim(worldProperties);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
 
-        try {
-            this.refreshDataConnection();
-
-            Statement statement = databaseConnection.createStatement();
-            statement.execute(
-                    "INSERT INTO griefprevention_claimdata (id, owner, lessercorner, greatercorner, builders, containers, accessors, managers,
-                    parentid) VALUES("
-                            +
-                            claim.id + ", '" +
-                            owner + "', '" +
-                            lesserCornerString + "', '" +
-                            greaterCornerString + "', '" +
-                            buildersString + "', '" +
-                            containersString + "', '" +
-                            accessorsString + "', '" +
-                            managersString + "', " +
-                            parentId +
-                            ");");
-        } catch (SQLException e) {
-            GriefPrevention.AddLogEntry("Unable to save data for claim at " + this.locationToString(claim.lesserBoundaryCorner) + ".  Details:");
-            GriefPrevention.AddLogEntry(e.getMessage());
-        }*/
+        // handle default flag permissions
+        this.setupDefaultPermissions(world);
+        this.claimLoadCount = 0;
     }
 
-    // deletes a claim from the database
-    @Override
-    public void deleteClaimFromSecondaryStorage(GPClaim claim) {
-        try {
-            this.refreshDataConnection();
-
-            Statement statement = this.databaseConnection.createStatement();
-            statement.execute("DELETE FROM griefprevention_claimdata WHERE id='" + claim.id + "';");
-        } catch (SQLException e) {
-            GriefPreventionPlugin.addLogEntry("Unable to delete data for claim " + claim.id + ".  Details:");
-            GriefPreventionPlugin.addLogEntry(e.getMessage());
-            e.printStackTrace();
+    private void loadClaimRows(World world) throws SQLException {
+        final WorldProperties worldProperties = world.getProperties();
+        final long start = System.nanoTime();
+        final List<ClaimFileData> claims = new ArrayList<>();
+        try (Connection connection = this.dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(DatabaseSchema.SELECT_CLAIMS)) {
+            statement.setString(1, worldProperties.getUniqueId().toString());
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    claims.add(this.readClaim(results, worldProperties.getUniqueId()));
+                }
+            }
         }
+        final long linkStart = System.nanoTime();
+        this.linkClaims(claims, world);
+        final long end = System.nanoTime();
+        GriefPreventionPlugin.instance.getLogger().info("[" + worldProperties.getWorldName() + "] " + this.claimLoadCount + " total claims loaded in "
+                + TimeUnit.NANOSECONDS.toMillis(end - start) + "ms (query: " + TimeUnit.NANOSECONDS.toMillis(linkStart - start) + "ms, link: "
+                + TimeUnit.NANOSECONDS.toMillis(end - linkStart) + "ms).");
     }
 
-    /*@Override
-    PlayerData getPlayerDataFromStorage(UUID playerID) {
-        PlayerData playerData = new PlayerData();
-        playerData.playerID = playerID;
-
+    private ClaimFileData readClaim(ResultSet results, UUID worldUniqueId) throws SQLException {
+        final ClaimFileData data = new ClaimFileData(null);
         try {
-            this.refreshDataConnection();
-
-            Statement statement = this.databaseConnection.createStatement();
-            ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_playerdata WHERE name='" + playerID.toString() + "';");
-
-            // if data for this player exists, use it
-            if (results.next()) {
-                playerData.setLastLogin(results.getTimestamp("lastlogin"));
-                playerData.setAccruedClaimBlocks(results.getInt("accruedblocks"));
-                playerData.setBonusClaimBlocks(results.getInt("bonusblocks"));
+            final DatabaseSchema.ClaimRow row = DatabaseSchema.readClaimRow(results);
+            data.claimId = row.claimUniqueId;
+            data.type = row.type;
+            data.ownerId = row.ownerUniqueId;
+            data.parentId = row.parentUniqueId;
+            data.cuboid = row.cuboid;
+            data.lesserCorner = row.lesserCorner;
+            data.greaterCorner = row.greaterCorner;
+            if (data.type == ClaimType.TOWN) {
+                data.claimStorage = new TownStorageData(data.claimId, worldUniqueId, row.data, this);
+            } else {
+                data.claimStorage = new ClaimStorageData(data.claimId, worldUniqueId, data.type, row.data, this);
             }
-        } catch (SQLException e) {
-            StringWriter errors = new StringWriter();
-            e.printStackTrace(new PrintWriter(errors));
-            GriefPrevention.AddLogEntry(playerID + " " + errors.toString(), CustomLogEntryTypes.Exception);
-        }
-
-        return playerData;
-    }*/
-
-    // saves changes to player data. MUST be called after you're done making
-    // changes, otherwise a reload will lose them
-    @Override
-    public void overrideSavePlayerData(UUID playerID, GPPlayerData playerData) {
-        // never save data for the "administrative" account. an empty string for
-        // player name indicates administrative account
-        if (playerID == null) {
-            return;
+        } catch (RuntimeException e) {
+            data.error = e;
         }
-
-        //this.savePlayerData(playerID.toString(), playerData);
+        return data;
     }
 
-   /* private void savePlayerData(String playerID, PlayerData playerData) {
-        try {
-            this.refreshDataConnection();
-
-            SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            String dateString = sqlFormat.format(playerData.getLastLogin());
-
-            Statement statement = databaseConnection.createStatement();
-            statement.execute("DELETE FROM griefprevention_playerdata WHERE name='" + playerID.toString() + "';");
-            statement = databaseConnection.createStatement();
-            statement.execute("INSERT INTO griefprevention_playerdata (name, lastlogin, accruedblocks, bonusblocks) VALUES ('" + playerID.toString()
-                    + "', '" + dateString + "', " + playerData.getAccruedClaimBlocks() + ", " + playerData.getBonusClaimBlocks() + ");");
-        } catch (SQLException e) {
-            StringWriter errors = new StringWriter();
-            e.printStackTrace(new PrintWriter(errors));
-            GriefPrevention.AddLogEntry(playerID + " " + errors.toString(), CustomLogEntryTypes.Exception);
+    private void loadPlayerRows(WorldProperties worldProperties) throws SQLException {
+        final boolean migrate = isPlayerDataMigrationEnabled();
+        final List<UUID> playerIds = new ArrayList<>();
+        try (Connection connection = this.dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(DatabaseSchema.SELECT_PLAYER_IDS)) {
+            statement.setString(1, getPlayerDataWorldUniqueId(worldProperties).toString());
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    final UUID playerUniqueId = UUID.fromString(results.getString(1));
+                    if (migrate || Sponge.getServer().getPlayer(playerUniqueId).isPresent()) {
+                        playerIds.add(playerUniqueId);
+                    }
+                }
+            }
         }
-    }*/
 
-    void close() {
-        if (this.databaseConnection != null) {
+        for (UUID playerUniqueId : playerIds) {
             try {
-                if (!this.databaseConnection.isClosed()) {
-                    this.databaseConnection.close();
-                }
-            } catch (SQLException e) {
+                this.getOrCreatePlayerData(worldProperties, playerUniqueId);
+            } catch (Exception e) {
+                GriefPreventionPlugin.instance.getLogger().error("Could not load player data of " + playerUniqueId + ".", e);
             }
-            ;
         }
+    }
 
-        this.databaseConnection = null;
+    @Override
+    public void saveWorldData(WorldProperties worldProperties) {
+        final GPClaimManager claimWorldManager = this.getClaimWorldManager(worldProperties);
+        if (claimWorldManager != null) {
+            claimWorldManager.save();
+        }
     }
 
-    private void refreshDataConnection() throws SQLException {
-        if (this.databaseConnection == null || !this.databaseConnection.isValid(3)) {
-            // set username/pass properties
-            Properties connectionProps = new Properties();
-            connectionProps.put("user", this.userName);
-            connectionProps.put("password", this.password);
-            connectionProps.put("autoReconnect", "true");
-            connectionProps.put("maxReconnects", String.valueOf(Integer.MAX_VALUE));
-
-            // establish connection
-            this.databaseConnection = DriverManager.getConnection(this.databaseUrl, connectionProps);
+    @Override
+    public ClaimStorageData createClaimStorage(GPClaim claim, @Nullable GPClaim parent, @Nullable UUID ownerUniqueId) {
+        final ClaimStorageData claimStorage;
+        if (claim.isTown()) {
+            claimStorage = new TownStorageData(claim.id, claim.getWorldUniqueId(), null, this);
+        } else {
+            claimStorage = new ClaimStorageData(claim.id, claim.getWorldUniqueId(), claim.getType(), null, this);
         }
+        claimStorage.getConfig().setOwnerUniqueId(ownerUniqueId);
+        claimStorage.getConfig().setCuboid(claim.isCuboid());
+        return claimStorage;
     }
 
     @Override
-    protected int getSchemaVersionFromStorage() {
+    public PlayerStorageData createPlayerStorageData(WorldProperties worldProperties, UUID playerUniqueId) {
+        final UUID worldUniqueId = getPlayerDataWorldUniqueId(worldProperties);
+        byte[] data = null;
         try {
-            this.refreshDataConnection();
-
-            Statement statement = this.databaseConnection.createStatement();
-            ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_schemaversion;");
-
-            // if there's nothing yet, assume 0 and add it
-            if (!results.next()) {
-                this.setSchemaVersion(0);
-                return 0;
+            final CommentedConfigurationNode queued = this.queuedPlayerData.get(new PlayerDataKey(playerUniqueId, worldUniqueId));
+            if (queued != null) {
+                // the last save has not been written yet
+                data = ClaimSnapshot.encode(queued.getNode(GriefPreventionPlugin.MOD_ID));
+            } else {
+                data = this.selectPlayerData(playerUniqueId, worldUniqueId);
             }
+        } catch (IOException | SQLException e) {
+            // never fall back to defaults, they would overwrite the stored data on the next save
+            throw new RuntimeException("Could not load player data of " + playerUniqueId + ".", e);
+        }
 
-            // otherwise return the value that's in the table
-            else {
-                return results.getInt("version");
-            }
+        final PlayerStorageData playerStorage = new PlayerStorageData(playerUniqueId, worldUniqueId, data, this);
+        playerStorage.save();
+        return playerStorage;
+    }
 
-        } catch (SQLException e) {
-            GriefPreventionPlugin.addLogEntry("Unable to retrieve schema version from database.  Details:");
-            GriefPreventionPlugin.addLogEntry(e.getMessage());
-            e.printStackTrace();
-            return 0;
+    @Nullable
+    private byte[] selectPlayerData(UUID playerUniqueId, UUID worldUniqueId) throws SQLException {
+        try (Connection connection = this.dataSource.getConnection()) {
+            return DatabaseSchema.selectPlayerData(connection, playerUniqueId, worldUniqueId);
         }
     }
 
-    @Override
-    protected void updateSchemaVersionInStorage(int versionToSet) {
-        try {
-            this.refreshDataConnection();
-
-            Statement statement = databaseConnection.createStatement();
-            statement.execute("DELETE FROM griefprevention_schemaversion;");
-            statement.execute("INSERT INTO griefprevention_schemaversion VALUES (" + versionToSet + ");");
-        } catch (SQLException e) {
-            GriefPreventionPlugin.addLogEntry("Unable to set next schema version to " + versionToSet + ".  Details:");
-            GriefPreventionPlugin.addLogEntry(e.getMessage());
-        }
+    private static UUID getPlayerDataWorldUniqueId(WorldProperties worldProperties) {
+        return USE_GLOBAL_PLAYER_STORAGE ? DatabaseSchema.GLOBAL_WORLD_UUID : worldProperties.getUniqueId();
     }
 
+    // removes a claim from the database
     @Override
-    GPPlayerData getPlayerDataFromStorage(UUID playerID) {
-        return null;
+    public void deleteClaimFromSecondaryStorage(GPClaim claim) {
+        claim.getClaimStorage().cancelQueuedSave();
     }
 
     @Override
-    public GPPlayerData getOrCreatePlayerData(WorldProperties worldProperties, UUID playerUniqueId) {
-        return null;
+    public void writeClaims(Map<ClaimStorageData, CommentedConfigurationNode> claims) throws Exception {
+        final Map<UUID, ConfigurationNode> claimNodes = new HashMap<>();
+        for (Map.Entry<ClaimStorageData, CommentedConfigurationNode> entry : claims.entrySet()) {
+            claimNodes.put(entry.getKey().claimUniqueId, entry.getValue().getNode(GriefPreventionPlugin.MOD_ID));
+        }
+        try (Connection connection = this.dataSource.getConnection()) {
+            DatabaseSchema.writeClaims(connection, claimNodes);
+        }
     }
 
     @Override
-    public void registerWorld(WorldProperties worldProperties) {
+    public void deleteClaims(Collection<UUID> claimUniqueIds) throws Exception {
+        try (Connection connection = this.dataSource.getConnection()) {
+            DatabaseSchema.deleteClaims(connection, claimUniqueIds);
+        }
     }
 
     @Override
-    public void loadWorldData(World world) {
+    public void queuePlayerData(UUID playerUniqueId, @Nullable UUID worldUniqueId, CommentedConfigurationNode root) {
+        this.queuedPlayerData.put(new PlayerDataKey(playerUniqueId, worldUniqueId == null ? DatabaseSchema.GLOBAL_WORLD_UUID : worldUniqueId), root);
+        if (this.playerDataScheduled.compareAndSet(false, true)) {
+            GriefPreventionPlugin.instance.executor.execute(() -> {
+                this.playerDataScheduled.set(false);
+                this.writeQueuedPlayerData();
+            });
+        }
     }
 
-    @Override
-    public void unloadWorldData(WorldProperties worldProperties) {
+    private synchronized void writeQueuedPlayerData() {
+        if (this.queuedPlayerData.isEmpty()) {
+            return;
+        }
+
+        final Map<PlayerDataKey, CommentedConfigurationNode> written = new HashMap<>(this.queuedPlayerData);
+        final Map<PlayerDataKey, ConfigurationNode> playerData = new HashMap<>();
+        for (Map.Entry<PlayerDataKey, CommentedConfigurationNode> entry : written.entrySet()) {
+            playerData.put(entry.getKey(), entry.getValue().getNode(GriefPreventionPlugin.MOD_ID));
+        }
+        try (Connection connection = this.dataSource.getConnection()) {
+            DatabaseSchema.writePlayerData(connection, playerData);
+        } catch (Exception e) {
+            // left queued for the next write
+            GriefPreventionPlugin.instance.getLogger().error("Failed to write " + written.size() + " player data entries to database.", e);
+            return;
+        }
+
+        // data saved again while the batch was written stays queued
+        for (Map.Entry<PlayerDataKey, CommentedConfigurationNode> entry : written.entrySet()) {
+            this.queuedPlayerData.remove(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
-    void loadClaimTemplates() {
+    public void flushSaves() {
+        super.flushSaves();
+        this.writeQueuedPlayerData();
     }
-
 }
@@ -0,0 +1,450 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention;
+
+import com.flowpowered.math.vector.Vector3i;
+import me.ryanhamshire.griefprevention.api.claim.ClaimType;
+import me.ryanhamshire.griefprevention.api.claim.TrustType;
+import me.ryanhamshire.griefprevention.configuration.ClaimSnapshot;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageData;
+import ninja.leaping.configurate.ConfigurationNode;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+/**
+ * The tables used by the {@link DatabaseDataStore} and the statements that
+ * write them. Only depends on JDBC and configurate, so stored data can
+ * also be converted while the server is offline.
+ */
+public final class DatabaseSchema {
+
+    // player data is stored under this world when it is shared between worlds
+    public static final UUID GLOBAL_WORLD_UUID = new UUID(0, 0);
+
+    private static final String[] CREATE_TABLES = {
+            "CREATE TABLE IF NOT EXISTS gp_schema_version (version INT NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS gp_claim (claim_id VARCHAR(36) NOT NULL, world_id VARCHAR(36) NOT NULL, owner_id VARCHAR(36), "
+                    + "parent_id VARCHAR(36), claim_type VARCHAR(16) NOT NULL, cuboid BOOLEAN NOT NULL, min_x INT NOT NULL, min_y INT NOT NULL, "
+                    + "min_z INT NOT NULL, max_x INT NOT NULL, max_y INT NOT NULL, max_z INT NOT NULL, data MEDIUMBLOB NOT NULL, PRIMARY KEY (claim_id))",
+            "CREATE TABLE IF NOT EXISTS gp_claim_trust (claim_id VARCHAR(36) NOT NULL, trust_type VARCHAR(16) NOT NULL, subject VARCHAR(64) NOT NULL, "
+                    + "is_group BOOLEAN NOT NULL, PRIMARY KEY (claim_id, trust_type, subject))",
+            "CREATE TABLE IF NOT EXISTS gp_player_data (player_id VARCHAR(36) NOT NULL, world_id VARCHAR(36) NOT NULL, data MEDIUMBLOB NOT NULL, "
+                    + "PRIMARY KEY (player_id, world_id))"
+    };
+    // includes the claim id so pages of a world are read in index order instead of sorting the whole world each time
+    private static final String CREATE_CLAIM_WORLD_INDEX = "CREATE INDEX gp_claim_world_id ON gp_claim (world_id, claim_id)";
+
+    static final String SELECT_SCHEMA_VERSION = "SELECT version FROM gp_schema_version";
+    static final String DELETE_SCHEMA_VERSION = "DELETE FROM gp_schema_version";
+    static final String INSERT_SCHEMA_VERSION = "INSERT INTO gp_schema_version (version) VALUES (?)";
+    static final String SELECT_CLAIMS = "SELECT claim_id, owner_id, parent_id, claim_type, cuboid, min_x, min_y, min_z, max_x, max_y, max_z, data "
+            + "FROM gp_claim WHERE world_id = ?";
+    private static final String SELECT_CLAIM_PAGE = "SELECT claim_id, claim_type, data FROM gp_claim WHERE world_id = ? AND claim_id > ? "
+            + "ORDER BY claim_id LIMIT ?";
+    private static final String SELECT_CLAIM = "SELECT claim_type, data FROM gp_claim WHERE claim_id = ? AND world_id = ?";
+    private static final String SELECT_CLAIM_TYPES = "SELECT claim_id, claim_type FROM gp_claim WHERE world_id = ? AND claim_id IN ";
+    private static final String DELETE_CLAIM = "DELETE FROM gp_claim WHERE claim_id = ?";
+    private static final String INSERT_CLAIM = "INSERT INTO gp_claim (claim_id, world_id, owner_id, parent_id, claim_type, cuboid, "
+            + "min_x, min_y, min_z, max_x, max_y, max_z, data) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_CLAIM_TRUST = "DELETE FROM gp_claim_trust WHERE claim_id = ?";
+    private static final String INSERT_CLAIM_TRUST = "INSERT INTO gp_claim_trust (claim_id, trust_type, subject, is_group) VALUES (?, ?, ?, ?)";
+    static final String SELECT_PLAYER_IDS = "SELECT player_id FROM gp_player_data WHERE world_id = ?";
+    private static final String SELECT_PLAYER_DATA = "SELECT data FROM gp_player_data WHERE player_id = ? AND world_id = ?";
+    private static final String SELECT_PLAYER_DATA_PAGE = "SELECT player_id, data FROM gp_player_data WHERE world_id = ? AND player_id > ? "
+            + "ORDER BY player_id LIMIT ?";
+    private static final String DELETE_PLAYER_DATA = "DELETE FROM gp_player_data WHERE player_id = ? AND world_id = ?";
+    private static final String INSERT_PLAYER_DATA = "INSERT INTO gp_player_data (player_id, world_id, data) VALUES (?, ?, ?)";
+
+    private DatabaseSchema() {
+    }
+
+    public static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String createTable : CREATE_TABLES) {
+                statement.execute(createTable);
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_CLAIM_WORLD_INDEX);
+        } catch (SQLException e) {
+            // index already exists
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    /**
+     * Replaces the stored data of each claim in a single transaction.
+     *
+     * @param claims The claim data nodes, by claim id
+     */
+    public static void writeClaims(Connection connection, Map<UUID, ? extends ConfigurationNode> claims) throws Exception {
+        connection.setAutoCommit(false);
+        try (PreparedStatement deleteTrust = connection.prepareStatement(DELETE_CLAIM_TRUST);
+                PreparedStatement deleteClaim = connection.prepareStatement(DELETE_CLAIM);
+                PreparedStatement insertClaim = connection.prepareStatement(INSERT_CLAIM);
+                PreparedStatement insertTrust = connection.prepareStatement(INSERT_CLAIM_TRUST)) {
+            for (Map.Entry<UUID, ? extends ConfigurationNode> entry : claims.entrySet()) {
+                final String claimId = entry.getKey().toString();
+                final ConfigurationNode node = entry.getValue();
+                deleteTrust.setString(1, claimId);
+                deleteTrust.addBatch();
+                deleteClaim.setString(1, claimId);
+                deleteClaim.addBatch();
+                bindClaim(insertClaim, claimId, node);
+                insertClaim.addBatch();
+                addTrustBatch(insertTrust, claimId, node, TrustType.ACCESSOR, ClaimStorageData.MAIN_ACCESSORS, ClaimStorageData.MAIN_ACCESSOR_GROUPS);
+                addTrustBatch(insertTrust, claimId, node, TrustType.BUILDER, ClaimStorageData.MAIN_BUILDERS, ClaimStorageData.MAIN_BUILDER_GROUPS);
+                addTrustBatch(insertTrust, claimId, node, TrustType.CONTAINER, ClaimStorageData.MAIN_CONTAINERS, ClaimStorageData.MAIN_CONTAINER_GROUPS);
+                addTrustBatch(insertTrust, claimId, node, TrustType.MANAGER, ClaimStorageData.MAIN_MANAGERS, ClaimStorageData.MAIN_MANAGER_GROUPS);
+            }
+            deleteTrust.executeBatch();
+            deleteClaim.executeBatch();
+            insertClaim.executeBatch();
+            insertTrust.executeBatch();
+            connection.commit();
+        } catch (Exception e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the current row of a {@link #SELECT_CLAIMS} result. Invalid ids
+     * or claim types throw an {@link IllegalArgumentException}.
+     */
+    public static ClaimRow readClaimRow(ResultSet results) throws SQLException {
+        return new ClaimRow(UUID.fromString(results.getString("claim_id")),
+                ClaimType.valueOf(results.getString("claim_type")),
+                toUniqueId(results.getString("owner_id")),
+                toUniqueId(results.getString("parent_id")),
+                results.getBoolean("cuboid"),
+                new Vector3i(results.getInt("min_x"), results.getInt("min_y"), results.getInt("min_z")),
+                new Vector3i(results.getInt("max_x"), results.getInt("max_y"), results.getInt("max_z")),
+                results.getBytes("data"));
+    }
+
+    @Nullable
+    private static UUID toUniqueId(@Nullable String value) {
+        return value == null ? null : UUID.fromString(value);
+    }
+
+    private static void bindClaim(PreparedStatement statement, String claimId, ConfigurationNode node) throws SQLException {
+        final Vector3i lesserCorner = getPosition(node.getNode(ClaimStorageData.MAIN_LESSER_BOUNDARY_CORNER));
+        final Vector3i greaterCorner = getPosition(node.getNode(ClaimStorageData.MAIN_GREATER_BOUNDARY_CORNER));
+        statement.setString(1, claimId);
+        statement.setString(2, node.getNode(ClaimStorageData.MAIN_WORLD_UUID).getString());
+        setNullableString(statement, 3, node.getNode(ClaimStorageData.MAIN_OWNER_UUID).getString());
+        setNullableString(statement, 4, node.getNode("parent").getString());
+        statement.setString(5, node.getNode(ClaimStorageData.MAIN_CLAIM_TYPE).getString(ClaimType.BASIC.name()));
+        statement.setBoolean(6, node.getNode(ClaimStorageData.MAIN_CLAIM_CUBOID).getBoolean());
+        statement.setInt(7, lesserCorner.getX());
+        statement.setInt(8, lesserCorner.getY());
+        statement.setInt(9, lesserCorner.getZ());
+        statement.setInt(10, greaterCorner.getX());
+        statement.setInt(11, greaterCorner.getY());
+        statement.setInt(12, greaterCorner.getZ());
+        try {
+            statement.setBytes(13, ClaimSnapshot.encode(node));
+        } catch (IOException e) {
+            throw new SQLException("Could not encode claim " + claimId, e);
+        }
+    }
+
+    private static void addTrustBatch(PreparedStatement statement, String claimId, ConfigurationNode node, TrustType trustType, String usersKey,
+            String groupsKey) throws SQLException {
+        for (ConfigurationNode user : node.getNode(usersKey).getChildrenList()) {
+            addTrust(statement, claimId, trustType, user.getString(), false);
+        }
+        for (ConfigurationNode group : node.getNode(groupsKey).getChildrenList()) {
+            addTrust(statement, claimId, trustType, group.getString(), true);
+        }
+    }
+
+    private static void addTrust(PreparedStatement statement, String claimId, TrustType trustType, @Nullable String subject, boolean isGroup)
+            throws SQLException {
+        if (subject == null) {
+            return;
+        }
+        statement.setString(1, claimId);
+        statement.setString(2, trustType.name());
+        statement.setString(3, subject);
+        statement.setBoolean(4, isGroup);
+        statement.addBatch();
+    }
+
+    // Parses positions written by BlockUtils.positionToString, the wilderness claim has none
+    private static Vector3i getPosition(ConfigurationNode node) throws SQLException {
+        final String position = node.getString();
+        if (position == null) {
+            return Vector3i.ZERO;
+        }
+        final String[] elements = position.split(";");
+        if (elements.length < 3) {
+            throw new SQLException("Invalid claim corner: \"" + position + "\"");
+        }
+        try {
+            return new Vector3i(Integer.parseInt(elements[0]), Integer.parseInt(elements[1]), Integer.parseInt(elements[2]));
+        } catch (NumberFormatException e) {
+            throw new SQLException("Invalid claim corner: \"" + position + "\"", e);
+        }
+    }
+
+    private static void setNullableString(PreparedStatement statement, int index, @Nullable String value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else {
+            statement.setString(index, value);
+        }
+    }
+
+    public static void deleteClaims(Connection connection, Collection<UUID> claimUniqueIds) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement deleteTrust = connection.prepareStatement(DELETE_CLAIM_TRUST);
+                PreparedStatement deleteClaim = connection.prepareStatement(DELETE_CLAIM)) {
+            for (UUID claimUniqueId : claimUniqueIds) {
+                deleteTrust.setString(1, claimUniqueId.toString());
+                deleteTrust.addBatch();
+                deleteClaim.setString(1, claimUniqueId.toString());
+                deleteClaim.addBatch();
+            }
+            deleteTrust.executeBatch();
+            deleteClaim.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the stored data of each player in a single transaction.
+     *
+     * @param playerData The player data nodes
+     */
+    public static void writePlayerData(Connection connection, Map<PlayerDataKey, ? extends ConfigurationNode> playerData) throws Exception {
+        connection.setAutoCommit(false);
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_PLAYER_DATA);
+                PreparedStatement insert = connection.prepareStatement(INSERT_PLAYER_DATA)) {
+            for (Map.Entry<PlayerDataKey, ? extends ConfigurationNode> entry : playerData.entrySet()) {
+                final String playerId = entry.getKey().playerUniqueId.toString();
+                final String worldId = entry.getKey().worldUniqueId.toString();
+                delete.setString(1, playerId);
+                delete.setString(2, worldId);
+                delete.addBatch();
+                insert.setString(1, playerId);
+                insert.setString(2, worldId);
+                insert.setBytes(3, ClaimSnapshot.encode(entry.getValue()));
+                insert.addBatch();
+            }
+            delete.executeBatch();
+            insert.executeBatch();
+            connection.commit();
+        } catch (Exception e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the claims of a world ordered by id, starting after the given
+     * claim. Used to page through all claims with bounded memory.
+     */
+    public static List<Row> selectClaims(Connection connection, UUID worldUniqueId, @Nullable UUID afterClaimId, int limit) throws SQLException {
+        final List<Row> rows = new ArrayList<>(limit);
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_CLAIM_PAGE)) {
+            statement.setString(1, worldUniqueId.toString());
+            statement.setString(2, afterClaimId == null ? "" : afterClaimId.toString());
+            statement.setInt(3, limit);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    rows.add(new Row(UUID.fromString(results.getString(1)), results.getString(2), results.getBytes(3)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads a single claim of a world, or null if it is not stored.
+     */
+    @Nullable
+    public static Row selectClaim(Connection connection, UUID worldUniqueId, UUID claimUniqueId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_CLAIM)) {
+            statement.setString(1, claimUniqueId.toString());
+            statement.setString(2, worldUniqueId.toString());
+            try (ResultSet results = statement.executeQuery()) {
+                return results.next() ? new Row(claimUniqueId, results.getString(1), results.getBytes(2)) : null;
+            }
+        }
+    }
+
+    /**
+     * Gets the types of those of the given claims that are stored for a
+     * world, by claim id.
+     */
+    public static Map<UUID, String> selectClaimTypes(Connection connection, UUID worldUniqueId, Collection<UUID> claimUniqueIds) throws SQLException {
+        final Map<UUID, String> types = new HashMap<>();
+        if (claimUniqueIds.isEmpty()) {
+            return types;
+        }
+        final StringBuilder query = new StringBuilder(SELECT_CLAIM_TYPES).append('(');
+        for (int i = 0; i < claimUniqueIds.size(); i++) {
+            query.append(i == 0 ? "?" : ", ?");
+        }
+        try (PreparedStatement statement = connection.prepareStatement(query.append(')').toString())) {
+            statement.setString(1, worldUniqueId.toString());
+            int index = 2;
+            for (UUID claimUniqueId : claimUniqueIds) {
+                statement.setString(index++, claimUniqueId.toString());
+            }
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    types.put(UUID.fromString(results.getString(1)), results.getString(2));
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Reads the player data of a world ordered by player, starting after
+     * the given player.
+     */
+    public static List<Row> selectPlayerData(Connection connection, UUID worldUniqueId, @Nullable UUID afterPlayerId, int limit) throws SQLException {
+        final List<Row> rows = new ArrayList<>(limit);
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_PLAYER_DATA_PAGE)) {
+            statement.setString(1, worldUniqueId.toString());
+            statement.setString(2, afterPlayerId == null ? "" : afterPlayerId.toString());
+            statement.setInt(3, limit);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    rows.add(new Row(UUID.fromString(results.getString(1)), null, results.getBytes(2)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the data of a single player, or null if it is not stored.
+     */
+    @Nullable
+    public static byte[] selectPlayerData(Connection connection, UUID playerUniqueId, UUID worldUniqueId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_PLAYER_DATA)) {
+            statement.setString(1, playerUniqueId.toString());
+            statement.setString(2, worldUniqueId.toString());
+            try (ResultSet results = statement.executeQuery()) {
+                return results.next() ? results.getBytes(1) : null;
+            }
+        }
+    }
+
+    public static final class Row {
+
+        public final UUID uniqueId;
+        // the claim type, null for player data
+        @Nullable
+        public final String type;
+        public final byte[] data;
+
+        Row(UUID uniqueId, @Nullable String type, byte[] data) {
+            this.uniqueId = uniqueId;
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    // A row of SELECT_CLAIMS, everything needed to link a claim when its world loads
+    public static final class ClaimRow {
+
+        public final UUID claimUniqueId;
+        public final ClaimType type;
+        @Nullable
+        public final UUID ownerUniqueId;
+        @Nullable
+        public final UUID parentUniqueId;
+        public final boolean cuboid;
+        public final Vector3i lesserCorner;
+        public final Vector3i greaterCorner;
+        public final byte[] data;
+
+        ClaimRow(UUID claimUniqueId, ClaimType type, @Nullable UUID ownerUniqueId, @Nullable UUID parentUniqueId, boolean cuboid,
+                Vector3i lesserCorner, Vector3i greaterCorner, byte[] data) {
+            this.claimUniqueId = claimUniqueId;
+            this.type = type;
+            this.ownerUniqueId = ownerUniqueId;
+            this.parentUniqueId = parentUniqueId;
+            this.cuboid = cuboid;
+            this.lesserCorner = lesserCorner;
+            this.greaterCorner = greaterCorner;
+            this.data = data;
+        }
+    }
+
+    public static final class PlayerDataKey {
+
+        public final UUID playerUniqueId;
+        public final UUID worldUniqueId;
+
+        public PlayerDataKey(UUID playerUniqueId, UUID worldUniqueId) {
+            this.playerUniqueId = playerUniqueId;
+            this.worldUniqueId = worldUniqueId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PlayerDataKey)) {
+                return false;
+            }
+            final PlayerDataKey other = (PlayerDataKey) o;
+            return this.playerUniqueId.equals(other.playerUniqueId) && this.worldUniqueId.equals(other.worldUniqueId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.playerUniqueId, this.worldUniqueId);
+        }
+    }
+}
@@ -32,7 +32,10 @@
 import me.ryanhamshire.griefprevention.api.claim.ClaimType;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
 import me.ryanhamshire.griefprevention.claim.GPClaimManager;
+import me.ryanhamshire.griefprevention.configuration.ClaimJournal;
+import me.ryanhamshire.griefprevention.configuration.ClaimSnapshot;
 import me.ryanhamshire.griefprevention.configuration.ClaimStorageData;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageWriter;
 import me.ryanhamshire.griefprevention.configuration.ClaimTemplateStorage;
 import me.ryanhamshire.griefprevention.configuration.GriefPreventionConfig;
 import me.ryanhamshire.griefprevention.configuration.GriefPreventionConfig.Type;
@@ -59,8 +62,17 @@
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
 
 //manages data stored in the file system
 public class FlatFileDataStore extends DataStore {
@@ -76,7 +88,7 @@ public class FlatFileDataStore extends DataStore {
     public final static Map<UUID, Task> cleanupClaimTasks = Maps.newHashMap();
     private final Path rootConfigPath = GriefPreventionPlugin.instance.getConfigPath().resolve("worlds");
     public static Path rootWorldSavePath;
-    private int claimLoadCount = 0;
+    int claimLoadCount = 0;
 
     public FlatFileDataStore() {
     }
@@ -184,11 +196,9 @@ public void loadWorldData(World world) {
 
         // Load Claim Data
         try {
-            File[] files = newWorldDataPath.resolve("ClaimData").toFile().listFiles();
-            if (files != null && files.length > 0) {
-                this.loadClaimData(files, worldProperties);
-                GriefPreventionPlugin.instance.getLogger().info("[" + worldProperties.getWorldName() + "] " + this.claimLoadCount + " total claims loaded.");
-            }
+            this.loadClaimData(newWorldDataPath.resolve("ClaimData").toFile(), world);
+
+            File[] files;
 
             if (GriefPreventionPlugin.getGlobalConfig().getConfig().playerdata.useGlobalPlayerDataStorage) {
                 files = globalPlayerDataPath.toFile().listFiles();
@@ -214,6 +224,7 @@ public void loadWorldData(World world) {
 
     public void unloadWorldData(WorldProperties worldProperties) {
         GPClaimManager claimWorldManager = this.getClaimWorldManager(worldProperties);
+        ClaimStorageWriter.flush();
         for (Claim claim : claimWorldManager.getWorldClaims()) {
             ((GPClaim) claim).unload();
         }
@@ -230,68 +241,312 @@ public void unloadWorldData(WorldProperties worldProperties) {
         DataStore.worldConfigMap.remove(worldProperties.getUniqueId());
     }
 
-    void loadClaimData(File[] files, WorldProperties worldProperties) throws Exception {
-        for (int i = 0; i < files.length; i++) {
-            File file = files[i];
-            if (file.isFile()) {
-                this.loadClaimFile(file, worldProperties);
+    void loadClaimData(File claimDataFolder, World world) throws Exception {
+        final WorldProperties worldProperties = world.getProperties();
+        // apply changes journaled since the claim files were last compacted
+        try {
+            final int replayed = ClaimJournal.get(claimDataFolder.toPath()).replay();
+            if (replayed > 0) {
+                GriefPreventionPlugin.instance.getLogger().info("[" + worldProperties.getWorldName() + "] Replayed " + replayed + " claim changes from journal.");
             }
+        } catch (IOException e) {
+            GriefPreventionPlugin.instance.getLogger().error("[" + worldProperties.getWorldName() + "] Could not replay claim journal.", e);
         }
-        for (int i = 0; i < files.length; i++) {
-            File file = files[i];
-            if (file.isDirectory()) {
-                this.loadClaimData(file.listFiles(), worldProperties);
+
+        final long scanStart = System.nanoTime();
+        final List<File> files = new ArrayList<>();
+        this.collectClaimFiles(claimDataFolder.listFiles(), files);
+        if (files.isEmpty()) {
+            return;
+        }
+
+        // Parse and validate every claim file in parallel. Nothing here may touch the claim manager or the custom logger.
+        final long parseStart = System.nanoTime();
+        final UUID worldUniqueId = worldProperties.getUniqueId();
+        final Path claimDataFolderPath = claimDataFolder.toPath();
+        final Map<String, ClaimSnapshot.Entry> snapshot = ClaimSnapshot.read(getClaimSnapshotPath(claimDataFolderPath), worldUniqueId);
+        final boolean classicMigrator = GriefPreventionPlugin.getGlobalConfig().getConfig().migrator.classicMigrator;
+        final int buildHeight = world.getDimension().getBuildHeight();
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        final List<ClaimFileData> claimFiles;
+        try {
+            claimFiles = pool.submit(() -> files.parallelStream()
+                    .map(file -> this.parseClaimFile(file, claimDataFolderPath, snapshot, worldUniqueId, classicMigrator, buildHeight))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList())).get();
+        } finally {
+            pool.shutdown();
+        }
+
+        // Link parents to children and index claims on the calling thread
+        final long linkStart = System.nanoTime();
+        this.linkClaims(claimFiles, world);
+        final long linkEnd = System.nanoTime();
+
+        int snapshotCount = 0;
+        for (ClaimFileData data : claimFiles) {
+            if (data.fromSnapshot) {
+                snapshotCount++;
             }
         }
+        if (snapshotCount != claimFiles.size() || snapshotCount != snapshot.size() || ClaimSnapshot.isDirty(worldUniqueId)) {
+            this.writeClaimSnapshot(worldProperties);
+        }
+
+        GriefPreventionPlugin.instance.getLogger().info("[" + worldProperties.getWorldName() + "] " + this.claimLoadCount + " total claims loaded in "
+                + TimeUnit.NANOSECONDS.toMillis(linkEnd - scanStart) + "ms (scan: " + TimeUnit.NANOSECONDS.toMillis(parseStart - scanStart)
+                + "ms, parse: " + TimeUnit.NANOSECONDS.toMillis(linkStart - parseStart) + "ms, link: "
+                + TimeUnit.NANOSECONDS.toMillis(linkEnd - linkStart) + "ms, files: " + files.size() + ", from snapshot: " + snapshotCount + ").");
+    }
+
+    @Override
+    public void saveWorldData(WorldProperties worldProperties) {
+        super.saveWorldData(worldProperties);
+        ClaimStorageWriter.compactIfNeeded(this.getWorldDataPath(worldProperties).resolve("ClaimData"));
+        if (ClaimSnapshot.isDirty(worldProperties.getUniqueId())) {
+            this.writeClaimSnapshot(worldProperties);
+        }
     }
 
-    void loadClaimFile(File file, WorldProperties worldProperties) {
-        if (file.isFile()) // avoids folders
-        {
-            // the filename is the claim ID. try to parse it
-            UUID claimId;
+    // Captures the claim file states on the calling thread, encoding and writing them is left to the storage executor
+    private void writeClaimSnapshot(WorldProperties worldProperties) {
+        final GPClaimManager claimManager = this.getClaimWorldManager(worldProperties);
+        final List<ClaimStorageData> claimStorages = new ArrayList<>();
+        if (claimManager.getWildernessClaim() != null) {
+            this.collectClaimStorages(claimManager.getWildernessClaim(), claimStorages);
+        }
+        for (Claim claim : claimManager.getWorldClaims()) {
+            this.collectClaimStorages((GPClaim) claim, claimStorages);
+        }
 
+        final Path claimDataFolderPath = this.getWorldDataPath(worldProperties).resolve("ClaimData");
+        final UUID worldUniqueId = worldProperties.getUniqueId();
+        final String worldName = worldProperties.getWorldName();
+        final Map<Path, ClaimStorageData.FileState> fileStates = ClaimSnapshot.capture(worldUniqueId, claimStorages);
+        GriefPreventionPlugin.instance.executor.execute(() -> {
             try {
-                final String fileName = file.getName();
-                // UUID's should always be 36 in length
-                if (fileName.length() != 36) {
-                    return;
+                ClaimSnapshot.write(getClaimSnapshotPath(claimDataFolderPath), worldUniqueId, claimDataFolderPath, fileStates);
+            } catch (IOException e) {
+                GriefPreventionPlugin.instance.getLogger().error("Could not write claim snapshot for world " + worldName + ".", e);
+            }
+        });
+    }
+
+    private void collectClaimStorages(GPClaim claim, List<ClaimStorageData> claimStorages) {
+        if (claim.getClaimStorage() != null && claim.getClaimStorage().fileState != null) {
+            claimStorages.add(claim.getClaimStorage());
+        }
+        for (Claim child : claim.children) {
+            this.collectClaimStorages((GPClaim) child, claimStorages);
+        }
+    }
+
+    private Path getWorldDataPath(WorldProperties worldProperties) {
+        final DimensionType dimType = worldProperties.getDimensionType();
+        return rootConfigPath.resolve(((IMixinDimensionType) dimType).getModId()).resolve(((IMixinDimensionType) dimType).getEnumName())
+                .resolve(worldProperties.getWorldName());
+    }
+
+    private static Path getClaimSnapshotPath(Path claimDataFolderPath) {
+        return claimDataFolderPath.resolveSibling("claims.snapshot");
+    }
+
+    private void collectClaimFiles(File[] files, List<File> claimFiles) {
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                this.collectClaimFiles(file.listFiles(), claimFiles);
+            } else if (file.isFile()) {
+                claimFiles.add(file);
+            }
+        }
+    }
+
+    // Runs on a fork-join worker
+    @Nullable
+    private ClaimFileData parseClaimFile(File claimFile, Path claimDataFolderPath, Map<String, ClaimSnapshot.Entry> snapshot, UUID worldUniqueId,
+            boolean classicMigrator, int buildHeight) {
+        // the filename is the claim ID. try to parse it
+        final String fileName = claimFile.getName();
+        // UUID's should always be 36 in length
+        if (fileName.length() != 36) {
+            return null;
+        }
+
+        final ClaimFileData data = new ClaimFileData(claimFile);
+        try {
+            data.claimId = UUID.fromString(fileName);
+        } catch (Exception e) {
+            GriefPreventionPlugin.instance.getLogger().error("Could not read claim file " + claimFile.getAbsolutePath());
+            return null;
+        }
+
+        try {
+            final Path claimPath = claimFile.toPath();
+            boolean isTown = claimPath.getParent().endsWith("town");
+            ClaimStorageData claimStorage = null;
+            // reuse the snapshot if the claim file has not changed since it was written
+            final ClaimSnapshot.Entry snapshotEntry = snapshot.get(claimDataFolderPath.relativize(claimPath).toString());
+            if (snapshotEntry != null && snapshotEntry.lastModified == Files.getLastModifiedTime(claimPath).toMillis()
+                    && snapshotEntry.size == Files.size(claimPath)) {
+                if (isTown) {
+                    claimStorage = new TownStorageData(claimPath, worldUniqueId, snapshotEntry);
+                } else {
+                    claimStorage = new ClaimStorageData(claimPath, worldUniqueId, snapshotEntry);
+                }
+                data.fromSnapshot = claimStorage.getConfig() != null;
+            }
+            if (!data.fromSnapshot) {
+                if (isTown) {
+                    claimStorage = new TownStorageData(claimPath, worldUniqueId);
+                } else {
+                    claimStorage = new ClaimStorageData(claimPath, worldUniqueId);
                 }
+            }
 
-                claimId = UUID.fromString(fileName);
-            } catch (Exception e) {
-                GriefPreventionPlugin.instance.getLogger().error("Could not read claim file " + file.getAbsolutePath());
-                return;
+            final ClaimType type = claimStorage.getConfig().getType();
+            if (claimFile.getParentFile().getName().equalsIgnoreCase("claimdata")) {
+                final Path newPath = claimStorage.filePath.getParent().resolve(type.name().toLowerCase());
+                Files.createDirectories(newPath);
+                Files.move(claimStorage.filePath, newPath.resolve(fileName));
+                claimStorage.filePath = newPath.resolve(fileName);
+                if (type == ClaimType.TOWN) {
+                    claimStorage = new TownStorageData(claimStorage.filePath, worldUniqueId);
+                } else {
+                    claimStorage = new ClaimStorageData(claimStorage.filePath, worldUniqueId);
+                }
             }
 
-            try {
-               this.loadClaim(file, worldProperties, claimId);
+            // identify world the claim is in
+            final UUID claimWorldUniqueId = claimStorage.getConfig().getWorldUniqueId();
+            if (!worldUniqueId.equals(claimWorldUniqueId)) {
+                data.logEntries.add("Found mismatch world UUID in " + type.name().toLowerCase() + " claim file " + claimFile + ". Expected " + worldUniqueId + ", found " + claimWorldUniqueId + ". Updating file with correct UUID...");
+                claimStorage.getConfig().setWorldUniqueId(worldUniqueId);
+                data.writeToStorage = true;
+            }
+
+            // boundaries
+            data.cuboid = claimStorage.getConfig().isCuboid();
+            data.lesserCorner = claimStorage.getConfig().getLesserBoundaryCornerPos();
+            data.greaterCorner = claimStorage.getConfig().getGreaterBoundaryCornerPos();
+            if (data.lesserCorner == null || data.greaterCorner == null) {
+                throw new Exception("Claim file '" + fileName + "' has corrupted data and cannot be loaded. Skipping...");
             }
 
-            // if there's any problem with the file's content, log an error message and skip it
-            catch (Exception e) {
-                if (e.getMessage() != null && e.getMessage().contains("World not found")) {
-                    file.delete();
+            // Validate Y values for older builds which would set both lesser and greater Y to same value
+            if (!data.cuboid && classicMigrator) {
+                // fix Y boundaries
+                data.lesserCorner = new Vector3i(data.lesserCorner.getX(), 0, data.lesserCorner.getZ());
+                data.greaterCorner = new Vector3i(data.greaterCorner.getX(), buildHeight - 1, data.greaterCorner.getZ());
+                data.writeToStorage = true;
+            }
+
+            data.type = type;
+            data.parentId = claimStorage.getConfig().getParent().orElse(null);
+            data.ownerId = claimStorage.getConfig().getOwnerUniqueId();
+            data.claimStorage = claimStorage;
+        } catch (Exception e) {
+            data.error = e;
+        }
+        return data;
+    }
+
+    void linkClaims(List<ClaimFileData> claimFiles, World world) {
+        final GPClaimManager claimManager = this.getClaimWorldManager(world.getProperties());
+        final Map<UUID, GPClaim> claimMap = Maps.newHashMapWithExpectedSize(claimFiles.size());
+        final List<ClaimFileData> validClaims = new ArrayList<>(claimFiles.size());
+        for (ClaimFileData data : claimFiles) {
+            for (String entry : data.logEntries) {
+                GriefPreventionPlugin.addLogEntry(entry, CustomLogEntryTypes.Exception);
+            }
+            if (data.error != null) {
+                if (data.file != null && data.error.getMessage() != null && data.error.getMessage().contains("World not found")) {
+                    data.file.delete();
                 } else {
                     StringWriter errors = new StringWriter();
-                    e.printStackTrace(new PrintWriter(errors));
-                    GriefPreventionPlugin.addLogEntry(file.getName() + " " + errors.toString(), CustomLogEntryTypes.Exception);
+                    data.error.printStackTrace(new PrintWriter(errors));
+                    GriefPreventionPlugin.addLogEntry(data.getName() + " " + errors.toString(), CustomLogEntryTypes.Exception);
+                }
+                continue;
+            }
+
+            Location<World> lesserBoundaryCorner = new Location<World>(world, data.lesserCorner);
+            Location<World> greaterBoundaryCorner = new Location<World>(world, data.greaterCorner);
+            if (data.ownerId == null) {
+                GriefPreventionPlugin.addLogEntry("Error - this is not a valid UUID: " + data.ownerId + ".");
+                GriefPreventionPlugin.addLogEntry("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
+            }
+
+            final GPClaim claim = new GPClaim(lesserBoundaryCorner, greaterBoundaryCorner, data.claimId, data.type, data.ownerId, data.cuboid);
+            claim.setClaimStorage(data.claimStorage);
+            claim.setClaimData(data.claimStorage.getConfig());
+            data.claim = claim;
+            claimMap.put(claim.id, claim);
+            validClaims.add(data);
+        }
+
+        // resolve parents now that every claim in the world exists
+        for (ClaimFileData data : validClaims) {
+            if (data.parentId == null) {
+                continue;
+            }
+            GPClaim parentClaim = claimMap.get(data.parentId);
+            if (parentClaim == null) {
+                parentClaim = (GPClaim) claimManager.getClaimByUUID(data.parentId).orElse(null);
+            }
+            if (parentClaim == null) {
+                GriefPreventionPlugin.addLogEntry("Could not find parent claim " + data.parentId + " for claim " + data.claimId + ".", CustomLogEntryTypes.Exception);
+            }
+            data.claim.parent = parentClaim;
+        }
+
+        // parents must be indexed before their children
+        for (ClaimFileData data : validClaims) {
+            int depth = 0;
+            GPClaim parent = data.claim.parent;
+            while (parent != null) {
+                if (parent == data.claim || depth >= validClaims.size()) {
+                    GriefPreventionPlugin.addLogEntry("Found parent cycle for claim " + data.claimId + ". Loading it as a top level claim.", CustomLogEntryTypes.Exception);
+                    data.claim.parent = null;
+                    depth = 0;
+                    break;
+                }
+                depth++;
+                parent = parent.parent;
+            }
+            data.depth = depth;
+        }
+        validClaims.sort(Comparator.comparingInt(data -> data.depth));
+
+        for (ClaimFileData data : validClaims) {
+            try {
+                claimManager.addClaim(data.claim, data.writeToStorage);
+                if (!data.claim.isWilderness()) {
+                    data.claimStorage.migrateSubdivision(data.claim);
                 }
+                this.claimLoadCount++;
+            } catch (Exception e) {
+                StringWriter errors = new StringWriter();
+                e.printStackTrace(new PrintWriter(errors));
+                GriefPreventionPlugin.addLogEntry(data.getName() + " " + errors.toString(), CustomLogEntryTypes.Exception);
             }
         }
     }
 
-    void loadPlayerData(WorldProperties worldProperties, File[] files) throws Exception {
+    // all player data must be loaded if claim blocks are being migrated
+    static boolean isPlayerDataMigrationEnabled() {
         final boolean resetMigration = GriefPreventionPlugin.getGlobalConfig().getConfig().playerdata.resetMigrations;
         final boolean resetClaimData = GriefPreventionPlugin.getGlobalConfig().getConfig().playerdata.resetAccruedClaimBlocks;
         final int migration2dRate = GriefPreventionPlugin.getGlobalConfig().getConfig().playerdata.migrateAreaRate;
         final int migration3dRate = GriefPreventionPlugin.getGlobalConfig().getConfig().playerdata.migrateVolumeRate;
-        boolean migrate = false;
-        if (resetMigration || resetClaimData || (migration2dRate > -1 && GriefPreventionPlugin.CLAIM_BLOCK_SYSTEM == ClaimBlockSystem.AREA) 
-                || (migration3dRate > -1 && GriefPreventionPlugin.CLAIM_BLOCK_SYSTEM == ClaimBlockSystem.VOLUME)) {
-            // load all player data if migrating
-            migrate = true;
-        }
+        return resetMigration || resetClaimData || (migration2dRate > -1 && GriefPreventionPlugin.CLAIM_BLOCK_SYSTEM == ClaimBlockSystem.AREA) 
+                || (migration3dRate > -1 && GriefPreventionPlugin.CLAIM_BLOCK_SYSTEM == ClaimBlockSystem.VOLUME);
+    }
+
+    void loadPlayerData(WorldProperties worldProperties, File[] files) throws Exception {
+        final boolean migrate = isPlayerDataMigrationEnabled();
         for (int i = 0; i < files.length; i++) {
             if (files[i].isFile()) // avoids folders
             {
@@ -327,94 +582,6 @@ void loadPlayerData(WorldProperties worldProperties, File[] files) throws Except
         }
     }
 
-    public GPClaim loadClaim(File claimFile, WorldProperties worldProperties, UUID claimId)
-            throws Exception {
-        GPClaim claim;
-
-        boolean isTown = claimFile.toPath().getParent().endsWith("town");
-        boolean writeToStorage = false;
-        ClaimStorageData claimStorage = null;
-        if (isTown) {
-            claimStorage = new TownStorageData(claimFile.toPath(), worldProperties.getUniqueId());
-        } else {
-            claimStorage = new ClaimStorageData(claimFile.toPath(), worldProperties.getUniqueId());
-        }
-
-        final ClaimType type = claimStorage.getConfig().getType();
-        final UUID parent = claimStorage.getConfig().getParent().orElse(null);
-        final String fileName = claimFile.getName();
-        final World world = Sponge.getServer().loadWorld(worldProperties).orElse(null);
-        if (world == null) {
-            throw new Exception("World [Name: " + worldProperties.getWorldName() + "][UUID: " + worldProperties.getUniqueId().toString() + "] is not loaded.");
-        }
-
-        if (claimFile.getParentFile().getName().equalsIgnoreCase("claimdata")) {
-            final Path newPath = claimStorage.filePath.getParent().resolve(type.name().toLowerCase());
-            Files.createDirectories(newPath);
-            Files.move(claimStorage.filePath, newPath.resolve(fileName));
-            claimStorage.filePath = newPath.resolve(fileName);
-            claimStorage = new ClaimStorageData(claimStorage.filePath, worldProperties.getUniqueId());
-        }
-
-        // identify world the claim is in
-        UUID worldUniqueId = claimStorage.getConfig().getWorldUniqueId();
-        if (!worldProperties.getUniqueId().equals(worldUniqueId)) {
-            GriefPreventionPlugin.addLogEntry("Found mismatch world UUID in " + type.name().toLowerCase() + " claim file " + claimFile + ". Expected " + worldProperties.getUniqueId() + ", found " + worldUniqueId + ". Updating file with correct UUID...", CustomLogEntryTypes.Exception);
-            claimStorage.getConfig().setWorldUniqueId(worldProperties.getUniqueId());
-            writeToStorage = true;
-        }
-
-        // boundaries
-        final boolean cuboid = claimStorage.getConfig().isCuboid();
-        Vector3i lesserCorner = claimStorage.getConfig().getLesserBoundaryCornerPos();
-        Vector3i greaterCorner = claimStorage.getConfig().getGreaterBoundaryCornerPos();
-        if (lesserCorner == null || greaterCorner == null) {
-            throw new Exception("Claim file '" + claimFile.getName() + "' has corrupted data and cannot be loaded. Skipping...");
-        }
-
-        // Validate Y values for older builds which would set both lesser and greater Y to same value
-        if (!cuboid && GriefPreventionPlugin.getGlobalConfig().getConfig().migrator.classicMigrator) {
-            // fix Y boundaries
-            lesserCorner = new Vector3i(lesserCorner.getX(), 0, lesserCorner.getZ());
-            greaterCorner = new Vector3i(greaterCorner.getX(), world.getDimension().getBuildHeight() - 1, greaterCorner.getZ());
-            writeToStorage = true;
-        }
-        Location<World> lesserBoundaryCorner = new Location<World>(world, lesserCorner);
-        Location<World> greaterBoundaryCorner = new Location<World>(world, greaterCorner);
-
-        // owner
-        UUID ownerID = claimStorage.getConfig().getOwnerUniqueId();
-        if (ownerID == null) {
-            GriefPreventionPlugin.addLogEntry("Error - this is not a valid UUID: " + ownerID + ".");
-            GriefPreventionPlugin.addLogEntry("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
-        }
-
-        // instantiate
-        claim = new GPClaim(lesserBoundaryCorner, greaterBoundaryCorner, claimId, claimStorage.getConfig().getType(), ownerID, cuboid);
-        claim.setClaimStorage(claimStorage);
-        claim.setClaimData(claimStorage.getConfig());
-        final GPClaimManager claimManager = this.getClaimWorldManager(worldProperties);
-
-        // add parent claim first
-        if (parent != null) {
-            GPClaim parentClaim = null;
-            try {
-                parentClaim = (GPClaim) claimManager.getClaimByUUID(parent).orElse(null);
-            } catch (Throwable t) {
-                t.printStackTrace();
-            }
-            claim.parent = parentClaim;
-        }
-
-        claimManager.addClaim(claim, writeToStorage);
-        if (!claim.isWilderness()) {
-            claimStorage.migrateSubdivision(claim);
-        }
-
-        this.claimLoadCount++;
-        return claim;
-    }
-
     @Override
     public void writeClaimToStorage(GPClaim claim) {
         try {
@@ -435,7 +602,7 @@ public void writeClaimToStorage(GPClaim claim) {
     @Override
     public void deleteClaimFromSecondaryStorage(GPClaim claim) {
         try {
-            Files.delete(claim.getClaimStorage().filePath);
+            claim.getClaimStorage().delete();
         } catch (IOException e) {
             e.printStackTrace();
             GriefPreventionPlugin.addLogEntry("Error: Unable to delete claim file \"" + claim.getClaimStorage().filePath + "\".");
@@ -510,4 +677,32 @@ GPPlayerData getPlayerDataFromStorage(UUID playerID) {
     void overrideSavePlayerData(UUID playerID, GPPlayerData playerData) {
     }
 
+    // a claim read from storage that is not yet linked to its parent
+    static final class ClaimFileData {
+
+        // null if the claim was not read from a claim file
+        final File file;
+        final List<String> logEntries = new ArrayList<>();
+        UUID claimId;
+        UUID parentId;
+        UUID ownerId;
+        ClaimType type;
+        ClaimStorageData claimStorage;
+        Vector3i lesserCorner;
+        Vector3i greaterCorner;
+        boolean cuboid;
+        boolean writeToStorage;
+        boolean fromSnapshot;
+        Exception error;
+        GPClaim claim;
+        int depth;
+
+        ClaimFileData(@Nullable File file) {
+            this.file = file;
+        }
+
+        String getName() {
+            return this.file != null ? this.file.getName() : String.valueOf(this.claimId);
+        }
+    }
 }
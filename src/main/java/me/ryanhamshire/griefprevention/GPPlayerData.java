@@ -26,18 +26,22 @@
 package me.ryanhamshire.griefprevention;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import me.ryanhamshire.griefprevention.api.claim.Claim;
 import me.ryanhamshire.griefprevention.api.claim.ClaimType;
 import me.ryanhamshire.griefprevention.api.data.PlayerData;
+import me.ryanhamshire.griefprevention.claim.ClaimContextCalculator;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
-import me.ryanhamshire.griefprevention.command.CommandHelper;
 import me.ryanhamshire.griefprevention.configuration.GriefPreventionConfig;
 import me.ryanhamshire.griefprevention.configuration.PlayerStorageData;
 import me.ryanhamshire.griefprevention.permission.GPOptionHandler;
+import me.ryanhamshire.griefprevention.permission.GPOptionSnapshot;
 import me.ryanhamshire.griefprevention.permission.GPOptions;
+import me.ryanhamshire.griefprevention.permission.GPOverrideFilter;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
-import me.ryanhamshire.griefprevention.util.PermissionUtils;
-import me.ryanhamshire.griefprevention.util.PlayerUtils;
+import me.ryanhamshire.griefprevention.task.PlayerOptionRefreshTask;
 import net.minecraft.world.chunk.Chunk;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.block.BlockSnapshot;
@@ -45,6 +49,7 @@
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.living.player.User;
 import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.service.context.Context;
 import org.spongepowered.api.service.permission.Subject;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.util.Tristate;
@@ -58,12 +63,19 @@
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.Nullable;
+
 //holds all of GriefPrevention's player-tied data
 public class GPPlayerData implements PlayerData {
 
+    private static final long CONTEXT_EXPIRE_MILLIS = 5000L;
+
     // the player's ID
     public UUID playerID;
     public WorldProperties worldProperties;
@@ -154,7 +166,10 @@ public class GPPlayerData implements PlayerData {
     public boolean inTown = false;
     public boolean townChat = false;
 
-    public boolean ignoreActiveContexts = false;
+    // active contexts without claim contexts, see getBaseContexts
+    private volatile ContextSnapshot contextSnapshot;
+    // claim contexts at the player's last known block, see ClaimContextCalculator
+    public volatile ClaimContextCalculator.CachedContexts claimContexts;
     public InetAddress ipAddress;
 
     // whether or not this player has received a message about unlocking death
@@ -194,59 +209,23 @@ public class GPPlayerData implements PlayerData {
     public int lastCollideEntityId = 0;
     public boolean lastCollideEntityResult = false;
 
-    private String playerName;
-
-    // cached option values
-    public double optionAbandonReturnRatioBasic = GPOptions.DEFAULT_ABANDON_RETURN_RATIO_BASIC;
-    public double optionAbandonReturnRatioTown = GPOptions.DEFAULT_ABANDON_RETURN_RATIO_TOWN;
-    public int optionBlocksAccruedPerHour = GPOptions.DEFAULT_BLOCKS_ACCRUED_PER_HOUR;
-    public int optionCreateClaimLimitBasic = GPOptions.DEFAULT_CREATE_CLAIM_LIMIT_BASIC;
-    public int optionCreateClaimLimitSubdivision = GPOptions.DEFAULT_CREATE_CLAIM_LIMIT_SUBDIVISION;
-    public int optionCreateClaimLimitTown = GPOptions.DEFAULT_CREATE_CLAIM_LIMIT_TOWN;
-    public int optionInitialClaimBlocks = GPOptions.DEFAULT_INITIAL_CLAIM_BLOCKS;
-    public int optionMaxAccruedBlocks = GPOptions.DEFAULT_MAX_ACCRUED_BLOCKS;
-    public int optionMaxClaimLevel = GPOptions.DEFAULT_MAX_CLAIM_LEVEL;
-    public int optionMaxClaimSizeBasicX = GPOptions.DEFAULT_MAX_CLAIM_SIZE_BASIC_X;
-    public int optionMaxClaimSizeBasicY = GPOptions.DEFAULT_MAX_CLAIM_SIZE_BASIC_Y;
-    public int optionMaxClaimSizeBasicZ = GPOptions.DEFAULT_MAX_CLAIM_SIZE_BASIC_Z;
-    public int optionMaxClaimSizeTownX = GPOptions.DEFAULT_MAX_CLAIM_SIZE_TOWN_X;
-    public int optionMaxClaimSizeTownY = GPOptions.DEFAULT_MAX_CLAIM_SIZE_TOWN_Y;
-    public int optionMaxClaimSizeTownZ = GPOptions.DEFAULT_MAX_CLAIM_SIZE_TOWN_Z;
-    public int optionMaxClaimSizeSubX = GPOptions.DEFAULT_MAX_CLAIM_SIZE_SUBDIVISION_X;
-    public int optionMaxClaimSizeSubY = GPOptions.DEFAULT_MAX_CLAIM_SIZE_SUBDIVISION_Y;
-    public int optionMaxClaimSizeSubZ = GPOptions.DEFAULT_MAX_CLAIM_SIZE_SUBDIVISION_Z;
-    public int optionMinClaimLevel = GPOptions.DEFAULT_MIN_CLAIM_LEVEL;
-    public int optionMinClaimSizeBasicX = GPOptions.DEFAULT_MIN_CLAIM_SIZE_BASIC_X;
-    public int optionMinClaimSizeBasicY = GPOptions.DEFAULT_MIN_CLAIM_SIZE_BASIC_Y;
-    public int optionMinClaimSizeBasicZ = GPOptions.DEFAULT_MIN_CLAIM_SIZE_BASIC_Z;
-    public int optionMinClaimSizeTownX = GPOptions.DEFAULT_MIN_CLAIM_SIZE_TOWN_X;
-    public int optionMinClaimSizeTownY = GPOptions.DEFAULT_MIN_CLAIM_SIZE_TOWN_Y;
-    public int optionMinClaimSizeTownZ = GPOptions.DEFAULT_MIN_CLAIM_SIZE_TOWN_Z;
-    public int optionClaimCreateMode = GPOptions.DEFAULT_CLAIM_CREATE_MODE;
-    public int optionClaimExpirationChest = GPOptions.DEFAULT_CLAIM_EXPIRATION_CHEST;
-    public int optionClaimExpirationBasic = GPOptions.DEFAULT_CLAIM_EXPIRATION_BASIC;
-    public int optionClaimExpirationSubdivision = GPOptions.DEFAULT_CLAIM_EXPIRATION_SUBDIVISION;
-    public int optionClaimExpirationTown = GPOptions.DEFAULT_CLAIM_EXPIRATION_TOWN;
-    public int optionTaxExpirationBasic = GPOptions.DEFAULT_TAX_EXPIRATION_BASIC;
-    public int optionTaxExpirationSubdivision = GPOptions.DEFAULT_TAX_EXPIRATION_SUBDIVISION;
-    public int optionTaxExpirationTown = GPOptions.DEFAULT_TAX_EXPIRATION_TOWN;
-    public double optionTaxRateBasic = GPOptions.DEFAULT_TAX_RATE_BASIC;
-    public double optionTaxRateSubdivision = GPOptions.DEFAULT_TAX_RATE_SUBDIVISION;
-    public double optionTaxRateTown = GPOptions.DEFAULT_TAX_RATE_TOWN;
-    public double optionTaxRateTownBasic = GPOptions.DEFAULT_TAX_RATE_TOWN_BASIC;
-    public double optionTaxRateTownSubdivision = GPOptions.DEFAULT_TAX_RATE_TOWN_SUBDIVISION;
-
-    // cached permission values
-    public boolean canManageAdminClaims = false;
-    public boolean canManageWilderness = false;
-    public boolean ignoreAdminClaims = false;
-    public boolean ignoreBasicClaims = false;
-    public boolean ignoreTowns = false;
-    public boolean ignoreWilderness = false;
-
-    public boolean dataInitialized = false;
+    private volatile String playerName;
+
+    // options and cached permission values, see PlayerOptionRefreshTask
+    private volatile GPOptionSnapshot optionSnapshot = GPOptionSnapshot.DEFAULT;
+    private volatile int claimCreateMode = GPOptions.DEFAULT_CLAIM_CREATE_MODE;
+    // build height of the dimension, -1 until checked
+    private int maxBuildHeight = -1;
+
+    // claim id -> claim blocks counted against the player, see updateClaimBlockCost
+    private final Object2IntOpenHashMap<UUID> claimBlockCosts = new Object2IntOpenHashMap<>();
+    private int totalClaimsCost = 0;
+    private boolean claimBlockCostsInitialized = false;
+
+    public volatile boolean dataInitialized = false;
+    // last time this data was looked up, used to unload offline players, see PlayerDataEvictionTask
+    public long lastAccessTime = System.currentTimeMillis();
     public boolean showVisualFillers = true;
-    private boolean checkedDimensionHeight = false;
 
     public GPPlayerData(WorldProperties worldProperties, UUID playerUniqueId, PlayerStorageData playerStorage, GriefPreventionConfig<?> activeConfig, List<Claim> claims) {
         this.worldProperties = worldProperties;
@@ -256,70 +235,22 @@ public GPPlayerData(WorldProperties worldProperties, UUID playerUniqueId, Player
         this.refreshPlayerOptions();
     }
 
-    // Run async
+    // Options are rebuilt off the main thread, see PlayerOptionRefreshTask
     public void refreshPlayerOptions() {
-        GriefPreventionPlugin.instance.executor.execute(() -> {
-            if (this.playerSubject == null || this.playerSubject.get() == null) {
-                Subject subject = PermissionUtils.getUserSubject(this.playerID.toString());
-                this.playerSubject = new WeakReference<>(subject);
-            }
-            final Subject subject = this.playerSubject.get();
-            // options
-            this.optionAbandonReturnRatioTown = PlayerUtils.getOptionDoubleValue(subject, GPOptions.ABANDON_RETURN_RATIO_TOWN, this.optionAbandonReturnRatioTown);
-            this.optionAbandonReturnRatioBasic = PlayerUtils.getOptionDoubleValue(subject, GPOptions.ABANDON_RETURN_RATIO_BASIC, this.optionAbandonReturnRatioBasic);
-            this.optionBlocksAccruedPerHour = PlayerUtils.getOptionIntValue(subject, GPOptions.BLOCKS_ACCRUED_PER_HOUR, this.optionBlocksAccruedPerHour);
-            this.optionClaimExpirationChest = PlayerUtils.getOptionIntValue(subject, GPOptions.CLAIM_EXPIRATION_CHEST, this.optionClaimExpirationChest);
-            this.optionCreateClaimLimitBasic = PlayerUtils.getOptionIntValue(subject, GPOptions.CREATE_CLAIM_LIMIT_BASIC, this.optionCreateClaimLimitBasic);
-            this.optionCreateClaimLimitSubdivision = PlayerUtils.getOptionIntValue(subject, GPOptions.CREATE_CLAIM_LIMIT_SUBDIVISION, this.optionCreateClaimLimitSubdivision);
-            this.optionCreateClaimLimitTown = PlayerUtils.getOptionIntValue(subject, GPOptions.CREATE_CLAIM_LIMIT_TOWN, this.optionCreateClaimLimitTown);
-            this.optionInitialClaimBlocks = PlayerUtils.getOptionIntValue(subject, GPOptions.INITIAL_CLAIM_BLOCKS, this.optionInitialClaimBlocks);
-            this.optionMaxAccruedBlocks = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_ACCRUED_BLOCKS, this.optionMaxAccruedBlocks);
-            this.optionMaxClaimLevel = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_LEVEL, this.optionMaxClaimLevel);
-            this.optionMaxClaimSizeBasicX = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_SIZE_BASIC_X, this.optionMaxClaimSizeBasicX);
-            this.optionMaxClaimSizeBasicY = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_SIZE_BASIC_Y, this.optionMaxClaimSizeBasicY);
-            this.optionMaxClaimSizeBasicZ = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_SIZE_BASIC_Z, this.optionMaxClaimSizeBasicZ);
-            this.optionMaxClaimSizeTownX = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_SIZE_TOWN_X, this.optionMaxClaimSizeTownX);
-            this.optionMaxClaimSizeTownY = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_SIZE_TOWN_Y, this.optionMaxClaimSizeTownY);
-            this.optionMaxClaimSizeTownZ = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_SIZE_TOWN_Z, this.optionMaxClaimSizeTownZ);
-            this.optionMaxClaimSizeSubX = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_SIZE_SUBDIVISION_X, this.optionMaxClaimSizeSubX);
-            this.optionMaxClaimSizeSubY = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_SIZE_SUBDIVISION_Y, this.optionMaxClaimSizeSubY);
-            this.optionMaxClaimSizeSubZ = PlayerUtils.getOptionIntValue(subject, GPOptions.MAX_CLAIM_SIZE_SUBDIVISION_Z, this.optionMaxClaimSizeSubZ);
-            this.optionMinClaimLevel = PlayerUtils.getOptionIntValue(subject, GPOptions.MIN_CLAIM_LEVEL, this.optionMinClaimLevel);
-            this.optionMinClaimSizeBasicX = PlayerUtils.getOptionIntValue(subject, GPOptions.MIN_CLAIM_SIZE_BASIC_X, this.optionMinClaimSizeBasicX);
-            this.optionMinClaimSizeBasicY = PlayerUtils.getOptionIntValue(subject, GPOptions.MIN_CLAIM_SIZE_BASIC_Y, this.optionMinClaimSizeBasicY);
-            this.optionMinClaimSizeBasicZ = PlayerUtils.getOptionIntValue(subject, GPOptions.MIN_CLAIM_SIZE_BASIC_Z, this.optionMinClaimSizeBasicZ);
-            this.optionMinClaimSizeTownX = PlayerUtils.getOptionIntValue(subject, GPOptions.MIN_CLAIM_SIZE_TOWN_X, this.optionMinClaimSizeTownX);
-            this.optionMinClaimSizeTownY = PlayerUtils.getOptionIntValue(subject, GPOptions.MIN_CLAIM_SIZE_TOWN_Y, this.optionMinClaimSizeTownY);
-            this.optionMinClaimSizeTownZ = PlayerUtils.getOptionIntValue(subject, GPOptions.MIN_CLAIM_SIZE_TOWN_Z, this.optionMinClaimSizeTownZ);
-            this.optionClaimCreateMode = PlayerUtils.getOptionIntValue(subject, GPOptions.CLAIM_CREATE_MODE, this.optionClaimCreateMode);
-            this.optionClaimExpirationChest = PlayerUtils.getOptionIntValue(subject, GPOptions.CLAIM_EXPIRATION_CHEST, this.optionClaimExpirationChest);
-            this.optionClaimExpirationBasic = PlayerUtils.getOptionIntValue(subject, GPOptions.CLAIM_EXPIRATION_BASIC, this.optionClaimExpirationBasic);
-            this.optionClaimExpirationTown = PlayerUtils.getOptionIntValue(subject, GPOptions.TAX_EXPIRATION_TOWN, this.optionClaimExpirationTown);
-            this.optionTaxExpirationBasic = PlayerUtils.getOptionIntValue(subject, GPOptions.TAX_EXPIRATION_BASIC, this.optionTaxExpirationBasic);
-            this.optionTaxExpirationSubdivision = PlayerUtils.getOptionIntValue(subject, GPOptions.TAX_EXPIRATION_BASIC, this.optionTaxExpirationSubdivision);
-            this.optionTaxExpirationTown = PlayerUtils.getOptionIntValue(subject, GPOptions.TAX_EXPIRATION_BASIC, this.optionTaxExpirationTown);
-            this.optionTaxRateBasic = PlayerUtils.getOptionDoubleValue(subject, GPOptions.TAX_RATE_BASIC, this.optionTaxRateBasic);
-            this.optionTaxRateSubdivision = PlayerUtils.getOptionDoubleValue(subject, GPOptions.TAX_RATE_BASIC, this.optionTaxRateSubdivision);
-            this.optionTaxRateTown = PlayerUtils.getOptionDoubleValue(subject, GPOptions.TAX_RATE_TOWN, this.optionTaxRateTown);
-            this.optionTaxRateTownBasic = PlayerUtils.getOptionDoubleValue(subject, GPOptions.TAX_RATE_TOWN_BASIC, this.optionTaxRateTownBasic);
-            this.optionTaxRateTownSubdivision = PlayerUtils.getOptionDoubleValue(subject, GPOptions.TAX_RATE_TOWN_BASIC, this.optionTaxRateTownSubdivision);
-            // permissions
-            this.ignoreAdminClaims = subject.hasPermission(GPPermissions.IGNORE_CLAIMS_ADMIN);
-            this.ignoreTowns = subject.hasPermission(GPPermissions.IGNORE_CLAIMS_TOWN);
-            this.ignoreWilderness = subject.hasPermission(GPPermissions.IGNORE_CLAIMS_WILDERNESS);
-            this.ignoreBasicClaims = subject.hasPermission(GPPermissions.IGNORE_CLAIMS_BASIC);
-            this.canManageAdminClaims = subject.hasPermission(GPPermissions.COMMAND_ADMIN_CLAIMS);
-            this.canManageWilderness = subject.hasPermission(GPPermissions.MANAGE_WILDERNESS);
-            this.playerName = CommandHelper.lookupPlayerName(this.playerID);
-            if (this.optionMaxClaimLevel > 255 || this.optionMaxClaimLevel <= 0 || this.optionMaxClaimLevel < this.optionMinClaimLevel) {
-                this.optionMaxClaimLevel = 255;
-            }
-            if (this.optionMinClaimLevel < 0 || this.optionMinClaimLevel >= 255 || this.optionMinClaimLevel > this.optionMaxClaimLevel) {
-                this.optionMinClaimLevel = 0;
-            }
-            this.dataInitialized = true;
-            this.checkedDimensionHeight = false;
-        });
+        PlayerOptionRefreshTask.queue(this);
+    }
+
+    public GPOptionSnapshot getOptions() {
+        return this.optionSnapshot;
+    }
+
+    public void updateOptions(GPOptionSnapshot snapshot, @Nullable String playerName) {
+        this.optionSnapshot = snapshot;
+        this.claimCreateMode = snapshot.claimCreateMode;
+        if (playerName != null) {
+            this.playerName = playerName;
+        }
+        this.dataInitialized = true;
     }
 
     public String getPlayerName() {
@@ -373,56 +304,97 @@ public boolean inPvpCombat(World world) {
 
     @Override
     public int getBlocksAccruedPerHour() {
-        return this.optionBlocksAccruedPerHour;
+        return this.optionSnapshot.blocksAccruedPerHour;
     }
 
     @Override
     public int getChestClaimExpiration() {
-        return this.optionClaimExpirationChest;
+        return this.optionSnapshot.claimExpirationChest;
     }
 
     @Override
     public int getCreateClaimLimit() {
-        return this.optionCreateClaimLimitBasic;
+        return this.optionSnapshot.createClaimLimitBasic;
     }
 
     @Override
     public int getInitialClaimBlocks() {
-        return this.optionInitialClaimBlocks;
+        return this.optionSnapshot.initialClaimBlocks;
     }
 
     // the number of claim blocks a player has available for claiming land
     @Override
     public int getRemainingClaimBlocks() {
-        int remainingBlocks = this.optionInitialClaimBlocks + this.getAccruedClaimBlocks() + this.getBonusClaimBlocks();
-        for (Claim claim : this.claimList) {
-            if (claim.isSubdivision()) {
-                continue;
-            }
+        return this.optionSnapshot.initialClaimBlocks + this.getAccruedClaimBlocks() + this.getBonusClaimBlocks() - this.getTotalClaimsCost();
+    }
 
-            GPClaim gpClaim = (GPClaim) claim;
-            if ((gpClaim.parent == null || gpClaim.parent.isAdminClaim()) && claim.getData().requiresClaimBlocks()) {
-                remainingBlocks -= claim.getClaimBlocks();
-            }
+    public int getTotalClaimsCost() {
+        if (!this.claimBlockCostsInitialized) {
+            this.recountClaimsCost();
+        }
+        return this.totalClaimsCost;
+    }
+
+    /**
+     * Updates the claim blocks counted against this player for a claim.
+     * 
+     * <p>Must be called whenever a claim of this player is added, resized,
+     * changes type or parent or stops requiring claim blocks. Claims that are
+     * not in the claim list of this player are not counted.</p>
+     * 
+     * @param claim The claim
+     */
+    public void updateClaimBlockCost(Claim claim) {
+        if (!this.claimBlockCostsInitialized) {
+            // counted on first use
+            return;
         }
+        final int cost = this.claimList.contains(claim) ? getClaimBlockCost(claim) : 0;
+        final int previousCost = cost == 0 ? this.claimBlockCosts.removeInt(claim.getUniqueId()) : this.claimBlockCosts.put(claim.getUniqueId(), cost);
+        this.totalClaimsCost += cost - previousCost;
+    }
 
-        return remainingBlocks;
+    public void removeClaimBlockCost(Claim claim) {
+        if (!this.claimBlockCostsInitialized) {
+            return;
+        }
+        this.totalClaimsCost -= this.claimBlockCosts.removeInt(claim.getUniqueId());
     }
 
-    public int getTotalClaimsCost() {
+    /**
+     * Recounts the claim blocks used by all claims of this player.
+     * 
+     * @return The difference between the running total and the recount
+     */
+    public int recountClaimsCost() {
+        final int previousTotal = this.totalClaimsCost;
+        this.claimBlockCosts.clear();
         int totalCost = 0;
         for (Claim claim : this.claimList) {
-            if (claim.isSubdivision()) {
-                continue;
+            final int cost = getClaimBlockCost(claim);
+            if (cost != 0) {
+                this.claimBlockCosts.put(claim.getUniqueId(), cost);
+                totalCost += cost;
             }
+        }
+        this.totalClaimsCost = totalCost;
+        if (!this.claimBlockCostsInitialized) {
+            this.claimBlockCostsInitialized = true;
+            return 0;
+        }
+        return previousTotal - totalCost;
+    }
 
-            final GPClaim gpClaim = (GPClaim) claim;
-            if ((gpClaim.parent == null || gpClaim.parent.isAdminClaim()) && claim.getData().requiresClaimBlocks()) {
-                totalCost += claim.getClaimBlocks();
-            }
+    private static int getClaimBlockCost(Claim claim) {
+        if (claim.isSubdivision()) {
+            return 0;
         }
 
-        return totalCost;
+        final GPClaim gpClaim = (GPClaim) claim;
+        if ((gpClaim.parent == null || gpClaim.parent.isAdminClaim()) && claim.getData().requiresClaimBlocks()) {
+            return claim.getClaimBlocks();
+        }
+        return 0;
     }
 
     public double getRemainingChunks() {
@@ -436,7 +408,7 @@ public int getAccruedClaimBlocks() {
 
     public boolean addAccruedClaimBlocks(int newAccruedClaimBlocks) {
         int currentTotal = this.getAccruedClaimBlocks();
-        if ((currentTotal + newAccruedClaimBlocks) >= this.optionMaxAccruedBlocks) {
+        if ((currentTotal + newAccruedClaimBlocks) >= this.optionSnapshot.maxAccruedBlocks) {
             // player has exceeded limit, set nothing
             return false;
         }
@@ -446,7 +418,7 @@ public boolean addAccruedClaimBlocks(int newAccruedClaimBlocks) {
     }
 
     public boolean setAccruedClaimBlocks(int newAccruedClaimBlocks) {
-        if (newAccruedClaimBlocks >= this.optionMaxAccruedBlocks) {
+        if (newAccruedClaimBlocks >= this.optionSnapshot.maxAccruedBlocks) {
             // player has exceeded limit, set nothing
             return false;
         }
@@ -465,11 +437,11 @@ public void setBonusClaimBlocks(int bonusClaimBlocks) {
 
     @Override
     public double getAbandonedReturnRatio() {
-        return this.optionAbandonReturnRatioBasic;
+        return this.optionSnapshot.abandonReturnRatioBasic;
     }
 
     public int getClaimCreateMode() {
-        return this.optionClaimCreateMode;
+        return this.claimCreateMode;
     }
 
     public void setClaimCreateMode(int mode) {
@@ -477,7 +449,7 @@ public void setClaimCreateMode(int mode) {
         if (mode != 0 && mode != 1) {
             mode = 0;
         }
-        this.optionClaimCreateMode = mode;
+        this.claimCreateMode = mode;
     }
 
     public boolean canCreateClaim(Player player) {
@@ -486,13 +458,13 @@ public boolean canCreateClaim(Player player) {
 
     public boolean canCreateClaim(Player player, boolean sendMessage) {
         if (this.shovelMode == ShovelMode.Basic) {
-            if (this.optionClaimCreateMode == 0 && !player.hasPermission(GPPermissions.CLAIM_CREATE_BASIC)) {
+            if (this.claimCreateMode == 0 && !player.hasPermission(GPPermissions.CLAIM_CREATE_BASIC)) {
                 if (sendMessage) {
                     GriefPreventionPlugin.sendMessage(player, GriefPreventionPlugin.instance.messageData.permissionClaimCreate.toText());
                 }
                 return false;
             }
-            if (this.optionClaimCreateMode == 1 && !player.hasPermission(GPPermissions.CLAIM_CUBOID_BASIC)) {
+            if (this.claimCreateMode == 1 && !player.hasPermission(GPPermissions.CLAIM_CUBOID_BASIC)) {
                 if (sendMessage) {
                     GriefPreventionPlugin.sendMessage(player, GriefPreventionPlugin.instance.messageData.permissionCuboid.toText());
                     GriefPreventionPlugin.sendMessage(player, GriefPreventionPlugin.instance.messageData.claimCuboidDisabled.toText());
@@ -500,7 +472,7 @@ public boolean canCreateClaim(Player player, boolean sendMessage) {
                 return false;
             }
         } else if (this.shovelMode == ShovelMode.Subdivide) {
-            if (this.optionClaimCreateMode == 0 && !player.hasPermission(GPPermissions.CLAIM_CREATE_SUBDIVISION)) {
+            if (this.claimCreateMode == 0 && !player.hasPermission(GPPermissions.CLAIM_CREATE_SUBDIVISION)) {
                 if (sendMessage) {
                     GriefPreventionPlugin.sendMessage(player, GriefPreventionPlugin.instance.messageData.permissionClaimCreate.toText());
                 }
@@ -513,13 +485,13 @@ public boolean canCreateClaim(Player player, boolean sendMessage) {
                 return false;
             }
         } else if (this.shovelMode == ShovelMode.Admin) {
-            if (this.optionClaimCreateMode == 0 && !player.hasPermission(GPPermissions.COMMAND_ADMIN_CLAIMS)) {
+            if (this.claimCreateMode == 0 && !player.hasPermission(GPPermissions.COMMAND_ADMIN_CLAIMS)) {
                 return false;
             } else if (!player.hasPermission(GPPermissions.CLAIM_CUBOID_ADMIN)) {
                 return false;
             }
         } else if (this.shovelMode == ShovelMode.Town) {
-            if (this.optionClaimCreateMode == 0 && !player.hasPermission(GPPermissions.CLAIM_CREATE_TOWN)) {
+            if (this.claimCreateMode == 0 && !player.hasPermission(GPPermissions.CLAIM_CREATE_TOWN)) {
                 return false;
             } else if (!player.hasPermission(GPPermissions.CLAIM_CUBOID_TOWN)) {
                 return false;
@@ -531,6 +503,9 @@ public boolean canCreateClaim(Player player, boolean sendMessage) {
 
     public void saveAllData() {
         this.playerStorage.save();
+        if (this.ignoreListChanged) {
+            GriefPreventionPlugin.instance.dataStore.asyncSaveGlobalPlayerData(this.playerID, this);
+        }
     }
 
     public PlayerStorageData getStorageData() {
@@ -577,11 +552,108 @@ public boolean canIgnoreClaim(Claim claim) {
         }
 
         if (claim.isAdminClaim()) {
-            return this.ignoreAdminClaims;
+            return this.optionSnapshot.ignoreAdminClaims;
         } else if (claim.isWilderness()) {
-            return this.ignoreWilderness;
+            return this.optionSnapshot.ignoreWilderness;
+        }
+        return this.optionSnapshot.ignoreBasicClaims;
+    }
+
+    /**
+     * Gets the active contexts of the player without any claim contexts.
+     * 
+     * <p>The set is rebuilt when the player changes world, when permissions
+     * change through GP or after a few seconds to pick up changes made by
+     * other plugins.</p>
+     * 
+     * @param subject The player subject
+     * @return The immutable base contexts
+     */
+    public Set<Context> getBaseContexts(Subject subject) {
+        return this.getContextSnapshot(subject).baseContexts;
+    }
+
+    /**
+     * Gets the base contexts of the player with the given contexts added.
+     * 
+     * @param subject The player subject
+     * @param context The context to add
+     * @param extra An optional second context to add
+     * @return The immutable contexts
+     */
+    public Set<Context> getBaseContexts(Subject subject, Context context, @Nullable Context extra) {
+        final ContextSnapshot snapshot = this.getContextSnapshot(subject);
+        Map<Context, Set<Context>> variants = snapshot.variants.get(context);
+        if (variants == null) {
+            variants = new ConcurrentHashMap<>();
+            final Map<Context, Set<Context>> existing = snapshot.variants.putIfAbsent(context, variants);
+            if (existing != null) {
+                variants = existing;
+            }
+        }
+        final Context key = extra == null ? context : extra;
+        Set<Context> contexts = variants.get(key);
+        if (contexts == null) {
+            final ImmutableSet.Builder<Context> builder = ImmutableSet.<Context>builder().addAll(snapshot.baseContexts).add(context);
+            if (extra != null) {
+                builder.add(extra);
+            }
+            contexts = builder.build();
+            variants.put(key, contexts);
+        }
+        return contexts;
+    }
+
+    /**
+     * Gets if the player has nodes of their own in an override context.
+     * 
+     * @param subject The player subject
+     * @return Whether the player has override nodes
+     */
+    public boolean hasOverridePermissions(Subject subject) {
+        return this.getContextSnapshot(subject).hasOverrides;
+    }
+
+    public void invalidateBaseContexts() {
+        this.contextSnapshot = null;
+    }
+
+    private ContextSnapshot getContextSnapshot(Subject subject) {
+        final UUID worldUniqueId = subject instanceof Player ? ((Player) subject).getWorld().getUniqueId() : null;
+        final int version = GPPermissionCache.getVersion();
+        final long now = System.currentTimeMillis();
+        ContextSnapshot snapshot = this.contextSnapshot;
+        if (snapshot == null || snapshot.version != version || snapshot.expireTime < now || !Objects.equals(snapshot.worldUniqueId, worldUniqueId)) {
+            final ImmutableSet.Builder<Context> builder = ImmutableSet.builder();
+            for (Context context : subject.getActiveContexts()) {
+                if (!context.getKey().equals(ClaimContextCalculator.CLAIM_CONTEXT_KEY)) {
+                    builder.add(context);
+                }
+            }
+            final boolean hasOverrides = GPOverrideFilter.hasOverrides(subject.getSubjectData()) || GPOverrideFilter.hasOverrides(subject.getTransientSubjectData());
+            snapshot = new ContextSnapshot(builder.build(), hasOverrides, worldUniqueId, version, now + CONTEXT_EXPIRE_MILLIS);
+            this.contextSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    private static final class ContextSnapshot {
+
+        private final Set<Context> baseContexts;
+        private final boolean hasOverrides;
+        // first context -> second context, or first again if there is none -> contexts
+        private final Map<Context, Map<Context, Set<Context>>> variants = new ConcurrentHashMap<>();
+        @Nullable private final UUID worldUniqueId;
+        private final int version;
+        private final long expireTime;
+
+        private ContextSnapshot(Set<Context> baseContexts, boolean hasOverrides, @Nullable UUID worldUniqueId, int version, long expireTime) {
+            this.baseContexts = baseContexts;
+            this.hasOverrides = hasOverrides;
+            this.worldUniqueId = worldUniqueId;
+            this.version = version;
+            this.expireTime = expireTime;
         }
-        return this.ignoreBasicClaims;
     }
 
     public boolean canManageOption(Player player, GPClaim claim, boolean isGroup) {
@@ -622,18 +694,18 @@ public boolean canManageOption(Player player, GPClaim claim, boolean isGroup) {
 
     @Override
     public int getMaxAccruedClaimBlocks() {
-        return this.optionMaxAccruedBlocks;
+        return this.optionSnapshot.maxAccruedBlocks;
     }
 
     @Override
     public int getMaxClaimX(ClaimType type) {
         switch(type) {
             case BASIC:
-                return this.optionMaxClaimSizeBasicX;
+                return this.optionSnapshot.maxClaimSizeBasicX;
             case SUBDIVISION:
-                return this.optionMaxClaimSizeSubX;
+                return this.optionSnapshot.maxClaimSizeSubX;
             case TOWN:
-                return this.optionMaxClaimSizeTownX;
+                return this.optionSnapshot.maxClaimSizeTownX;
             default:
                 break;
         }
@@ -645,11 +717,11 @@ public int getMaxClaimX(ClaimType type) {
     public int getMaxClaimY(ClaimType type) {
         switch(type) {
             case BASIC:
-                return this.optionMaxClaimSizeBasicY;
+                return this.optionSnapshot.maxClaimSizeBasicY;
             case SUBDIVISION:
-                return this.optionMaxClaimSizeSubY;
+                return this.optionSnapshot.maxClaimSizeSubY;
             case TOWN:
-                return this.optionMaxClaimSizeTownY;
+                return this.optionSnapshot.maxClaimSizeTownY;
             default:
                 break;
         }
@@ -661,11 +733,11 @@ public int getMaxClaimY(ClaimType type) {
     public int getMaxClaimZ(ClaimType type) {
         switch(type) {
             case BASIC:
-                return this.optionMaxClaimSizeBasicZ;
+                return this.optionSnapshot.maxClaimSizeBasicZ;
             case SUBDIVISION:
-                return this.optionMaxClaimSizeSubZ;
+                return this.optionSnapshot.maxClaimSizeSubZ;
             case TOWN:
-                return this.optionMaxClaimSizeTownZ;
+                return this.optionSnapshot.maxClaimSizeTownZ;
             default:
                 break;
         }
@@ -677,9 +749,9 @@ public int getMaxClaimZ(ClaimType type) {
     public int getMinClaimX(ClaimType type) {
         switch(type) {
             case BASIC:
-                return this.optionMinClaimSizeBasicX;
+                return this.optionSnapshot.minClaimSizeBasicX;
             case TOWN:
-                return this.optionMinClaimSizeTownX;
+                return this.optionSnapshot.minClaimSizeTownX;
             default:
                 break;
         }
@@ -691,9 +763,9 @@ public int getMinClaimX(ClaimType type) {
     public int getMinClaimY(ClaimType type) {
         switch(type) {
             case BASIC:
-                return this.optionMinClaimSizeBasicY;
+                return this.optionSnapshot.minClaimSizeBasicY;
             case TOWN:
-                return this.optionMinClaimSizeTownY;
+                return this.optionSnapshot.minClaimSizeTownY;
             default:
                 break;
         }
@@ -705,9 +777,9 @@ public int getMinClaimY(ClaimType type) {
     public int getMinClaimZ(ClaimType type) {
         switch(type) {
             case BASIC:
-                return this.optionMinClaimSizeBasicZ;
+                return this.optionSnapshot.minClaimSizeBasicZ;
             case TOWN:
-                return this.optionMinClaimSizeTownZ;
+                return this.optionSnapshot.minClaimSizeTownZ;
             default:
                 break;
         }
@@ -717,22 +789,19 @@ public int getMinClaimZ(ClaimType type) {
 
     @Override
     public int getMaxClaimLevel() {
-        if (!this.checkedDimensionHeight) {
+        if (this.maxBuildHeight == -1) {
             final World world = Sponge.getServer().getWorld(this.worldProperties.getUniqueId()).orElse(null);
-            if (world != null) {
-                final int buildHeight = world.getDimension().getBuildHeight() - 1;
-                if (buildHeight < this.optionMaxClaimLevel) {
-                    this.optionMaxClaimLevel = buildHeight;
-                }
+            if (world == null) {
+                return this.optionSnapshot.maxClaimLevel;
             }
-            this.checkedDimensionHeight = true;
+            this.maxBuildHeight = world.getDimension().getBuildHeight() - 1;
         }
-        return this.optionMaxClaimLevel;
+        return Math.min(this.optionSnapshot.maxClaimLevel, this.maxBuildHeight);
     }
 
     @Override
     public int getMinClaimLevel() {
-        return this.optionMinClaimLevel;
+        return this.optionSnapshot.minClaimLevel;
     }
 
     public Subject getPlayerSubject() {
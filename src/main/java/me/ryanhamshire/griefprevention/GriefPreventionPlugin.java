@@ -93,6 +93,7 @@
 import me.ryanhamshire.griefprevention.command.CommandGpVersion;
 import me.ryanhamshire.griefprevention.command.CommandIgnorePlayer;
 import me.ryanhamshire.griefprevention.command.CommandIgnoredPlayerList;
+import me.ryanhamshire.griefprevention.command.CommandMigrateStorage;
 import me.ryanhamshire.griefprevention.command.CommandPermissionTrust;
 import me.ryanhamshire.griefprevention.command.CommandPlayerInfo;
 import me.ryanhamshire.griefprevention.command.CommandRestoreNature;
@@ -111,10 +112,12 @@
 import me.ryanhamshire.griefprevention.command.CommandUnseparate;
 import me.ryanhamshire.griefprevention.command.CommandUntrust;
 import me.ryanhamshire.griefprevention.command.CommandUntrustAll;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageWriter;
 import me.ryanhamshire.griefprevention.configuration.GriefPreventionConfig;
 import me.ryanhamshire.griefprevention.configuration.GriefPreventionConfig.Type;
 import me.ryanhamshire.griefprevention.configuration.MessageDataConfig;
 import me.ryanhamshire.griefprevention.configuration.MessageStorage;
+import me.ryanhamshire.griefprevention.configuration.category.DatabaseCategory;
 import me.ryanhamshire.griefprevention.configuration.type.DimensionConfig;
 import me.ryanhamshire.griefprevention.configuration.type.GlobalConfig;
 import me.ryanhamshire.griefprevention.configuration.type.WorldConfig;
@@ -126,6 +129,7 @@
 import me.ryanhamshire.griefprevention.listener.WorldEventHandler;
 import me.ryanhamshire.griefprevention.logging.CustomLogEntryTypes;
 import me.ryanhamshire.griefprevention.logging.CustomLogger;
+import me.ryanhamshire.griefprevention.migrator.StorageMigrator;
 import me.ryanhamshire.griefprevention.permission.GPOptions;
 import me.ryanhamshire.griefprevention.permission.GPPermissionHandler;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
@@ -136,6 +140,7 @@
 import me.ryanhamshire.griefprevention.task.CleanupUnusedClaimsTask;
 import me.ryanhamshire.griefprevention.task.DeliverClaimBlocksTask;
 import me.ryanhamshire.griefprevention.task.IgnoreLoaderThread;
+import me.ryanhamshire.griefprevention.task.PlayerDataEvictionTask;
 import me.ryanhamshire.griefprevention.task.PvPImmunityValidationTask;
 import me.ryanhamshire.griefprevention.task.SendPlayerMessageTask;
 import me.ryanhamshire.griefprevention.util.BlockUtils;
@@ -172,6 +177,7 @@
 import org.spongepowered.api.event.game.state.GameAboutToStartServerEvent;
 import org.spongepowered.api.event.game.state.GamePreInitializationEvent;
 import org.spongepowered.api.event.game.state.GameStartedServerEvent;
+import org.spongepowered.api.event.game.state.GameStoppedServerEvent;
 import org.spongepowered.api.event.service.ChangeServiceProviderEvent;
 import org.spongepowered.api.item.ItemType;
 import org.spongepowered.api.item.ItemTypes;
@@ -738,6 +744,18 @@ public void onServerAboutToStart(GameAboutToStartServerEvent event) {
             this.worldEditProvider = new WorldEditApiProvider();
         }
 
+        final DatabaseCategory databaseConfig = GriefPreventionPlugin.getGlobalConfig().getConfig().database;
+        if (this.dataStore == null && !databaseConfig.dbURL.isEmpty()) {
+            try {
+                this.dataStore = new DatabaseDataStore(databaseConfig.dbURL, databaseConfig.dbUsername, databaseConfig.dbPassword);
+                this.dataStore.initialize();
+            } catch (Exception e) {
+                // do not fall back to files, claims stored in the database would be unprotected
+                this.getLogger().error("Unable to initialize the database data store.", e);
+                return;
+            }
+        }
+
         if (this.dataStore == null) {
             try {
                 this.dataStore = new FlatFileDataStore();
@@ -750,7 +768,7 @@ public void onServerAboutToStart(GameAboutToStartServerEvent event) {
             }
         }
 
-        String dataMode = (this.dataStore instanceof FlatFileDataStore) ? "(File Mode)" : "(Database Mode)";
+        String dataMode = (this.dataStore instanceof DatabaseDataStore) ? "(Database Mode)" : "(File Mode)";
         Sponge.getEventManager().registerListeners(this, new BlockEventHandler(dataStore));
         Sponge.getEventManager().registerListeners(this, new PlayerEventHandler(dataStore, this));
         Sponge.getEventManager().registerListeners(this, new EntityEventHandler(dataStore));
@@ -860,10 +878,25 @@ public void onServerStarted(GameStartedServerEvent event) {
         DeliverClaimBlocksTask task = new DeliverClaimBlocksTask(null);
         Sponge.getScheduler().createTaskBuilder().interval(5, TimeUnit.MINUTES).execute(task)
                 .submit(GriefPreventionPlugin.instance);
+        // unload data of players that have been offline for a while
+        if (GriefPreventionPlugin.getGlobalConfig().getConfig().playerdata.offlineCacheSize >= 0) {
+            Sponge.getScheduler().createTaskBuilder().interval(1, TimeUnit.MINUTES).execute(new PlayerDataEvictionTask())
+                    .submit(GriefPreventionPlugin.instance);
+        }
         addLogEntry("Boot finished.");
         this.logger.info("Loaded successfully.");
     }
 
+    @Listener
+    public void onServerStopped(GameStoppedServerEvent event) {
+        // worlds are saved while stopping, write out any saves still queued
+        if (this.dataStore != null) {
+            this.dataStore.flushSaves();
+        } else {
+            ClaimStorageWriter.flush();
+        }
+    }
+
     // handles sub commands
     public void registerBaseCommands() {
 
@@ -884,6 +917,9 @@ public void registerBaseCommands() {
         debugChoicesBuilder.put("log", "log");
         debugChoicesBuilder.put("record", "record");
         debugChoicesBuilder.put("paste", "paste");
+        debugChoicesBuilder.put("cache", "cache");
+        debugChoicesBuilder.put("claimblocks", "claimblocks");
+        debugChoicesBuilder.put("storage", "storage");
 
         ImmutableMap.Builder<String, String> contextChoicesBuilder = ImmutableMap.builder();
         contextChoicesBuilder.put("default", "default");
@@ -1179,6 +1215,15 @@ public void registerBaseCommands() {
                 .executor(new CommandGpReload())
                 .build(), "gpreload");
 
+        final ImmutableMap<String, StorageMigrator.Target> storageChoices = ImmutableMap.of("database", StorageMigrator.Target.DATABASE,
+                "files", StorageMigrator.Target.FILES);
+        Sponge.getCommandManager().register(this, CommandSpec.builder()
+                .description(Text.of("Copies all claims and player data to the database or to files"))
+                .permission(GPPermissions.COMMAND_MIGRATE_STORAGE)
+                .arguments(choices(Text.of("target"), storageChoices))
+                .executor(new CommandMigrateStorage())
+                .build(), "gpmigratestorage");
+
         Sponge.getCommandManager().register(this, CommandSpec.builder()
                 .description(Text.of("Displays GriefPrevention's version information"))
                 .permission(GPPermissions.COMMAND_VERSION)
@@ -1770,7 +1815,7 @@ public void loadConfig() {
                 // refresh player data
                 final GPClaimManager claimManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(world.getProperties());
                 for (GPPlayerData playerData : claimManager.getPlayerDataMap().values()) {
-                    if (playerData.playerID.equals(WORLD_USER_UUID) || playerData.playerID.equals(ADMIN_USER_UUID) || playerData.playerID.equals(PUBLIC_UUID)) {
+                    if (PlayerUtils.isSystemUser(playerData.playerID)) {
                         continue;
                     }
                     playerData.refreshPlayerOptions();
@@ -26,60 +26,114 @@
 
 import me.ryanhamshire.griefprevention.GPPlayerData;
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
+import net.minecraft.util.math.MathHelper;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.service.context.Context;
 import org.spongepowered.api.service.context.ContextCalculator;
 import org.spongepowered.api.service.permission.Subject;
 
 import java.util.Set;
-import java.util.UUID;
+
+import javax.annotation.Nullable;
 
 public class ClaimContextCalculator implements ContextCalculator<Subject> {
 
+    public static final String CLAIM_CONTEXT_KEY = "gp_claim";
+
     @Override
     public void accumulateContexts(Subject calculable, Set<Context> accumulator) {
-        if (calculable.getCommandSource().isPresent() && calculable.getCommandSource().get() instanceof Player) {
-            Player player = (Player) calculable.getCommandSource().get();
-            GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getPlayerData(player.getWorld(), player.getUniqueId());
-            if (playerData == null) {
-                return;
-            }
-            if (playerData.ignoreActiveContexts) {
-                return;
-            }
-
-            GPClaim sourceClaim = GriefPreventionPlugin.instance.dataStore.getClaimAtPlayer(playerData, player.getLocation());
-            if (sourceClaim != null) {
-                if (playerData == null || playerData.canIgnoreClaim(sourceClaim)) {
-                    return;
-                }
-
-                accumulator.add(sourceClaim.getContext());
-                if (sourceClaim.parent != null && sourceClaim.getData().doesInheritParent()) {
-                    accumulator.add(sourceClaim.parent.getContext());
-                }
-            }
+        final CachedContexts cachedContexts = getClaimContexts(calculable);
+        if (cachedContexts == null) {
+            return;
         }
 
+        accumulator.add(cachedContexts.claimContext);
+        if (cachedContexts.parentContext != null) {
+            accumulator.add(cachedContexts.parentContext);
+        }
     }
 
     @Override
     public boolean matches(Context context, Subject subject) {
-        if (context.equals("gp_claim")) {
-            if (subject.getCommandSource().isPresent() && subject.getCommandSource().get() instanceof Player) {
-                Player player = (Player) subject.getCommandSource().get();
-                GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getPlayerData(player.getWorld(), player.getUniqueId());
-                if (playerData == null) {
-                    return false;
-                }
-
-                GPClaim playerClaim = GriefPreventionPlugin.instance.dataStore.getClaimAtPlayer(playerData, player.getLocation());
-                if (playerClaim != null && playerClaim.id.equals(UUID.fromString(context.getValue()))) {
-                    return true;
-                }
+        if (context.getKey().equals(CLAIM_CONTEXT_KEY)) {
+            final CachedContexts cachedContexts = getClaimContexts(subject);
+            if (cachedContexts == null) {
+                return false;
             }
+            // contexts are compared by value, the claim id string was built once with the claim
+            return cachedContexts.claimContext.equals(context) || context.equals(cachedContexts.parentContext);
         }
 
         return false;
     }
+
+    @Nullable
+    private static CachedContexts getClaimContexts(Subject subject) {
+        if (!subject.getCommandSource().isPresent() || !(subject.getCommandSource().get() instanceof Player)) {
+            return null;
+        }
+
+        final Player player = (Player) subject.getCommandSource().get();
+        final GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getPlayerData(player.getWorld(), player.getUniqueId());
+        if (playerData == null) {
+            return null;
+        }
+
+        final net.minecraft.entity.Entity mcPlayer = (net.minecraft.entity.Entity) player;
+        final int x = MathHelper.floor(mcPlayer.posX);
+        final int y = MathHelper.floor(mcPlayer.posY);
+        final int z = MathHelper.floor(mcPlayer.posZ);
+        final GPClaimManager claimManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(player.getWorld().getProperties());
+        final int claimVersion = claimManager.getClaimVersion();
+        // inheritance changes bump the permission cache version
+        final int permissionVersion = GPPermissionCache.getVersion();
+        CachedContexts cachedContexts = playerData.claimContexts;
+        if (cachedContexts == null || !cachedContexts.isValid(mcPlayer.world, x, y, z, claimVersion, permissionVersion)) {
+            final GPClaim claim = GriefPreventionPlugin.instance.dataStore.getClaimAtPlayer(playerData, player.getLocation());
+            if (claim == null) {
+                return null;
+            }
+            cachedContexts = new CachedContexts(claim, mcPlayer.world, x, y, z, claimVersion, permissionVersion);
+            playerData.claimContexts = cachedContexts;
+        }
+        if (playerData.canIgnoreClaim(cachedContexts.claim)) {
+            return null;
+        }
+        return cachedContexts;
+    }
+
+    /**
+     * The claim contexts of a player, memoized on the block position of the
+     * player and the version of the claim index.
+     */
+    public static final class CachedContexts {
+
+        private final GPClaim claim;
+        private final Context claimContext;
+        @Nullable private final Context parentContext;
+        private final net.minecraft.world.World world;
+        private final int x;
+        private final int y;
+        private final int z;
+        private final int claimVersion;
+        private final int permissionVersion;
+
+        private CachedContexts(GPClaim claim, net.minecraft.world.World world, int x, int y, int z, int claimVersion, int permissionVersion) {
+            this.claim = claim;
+            this.claimContext = claim.getContext();
+            this.parentContext = claim.parent != null && claim.getData().doesInheritParent() ? claim.parent.getContext() : null;
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.claimVersion = claimVersion;
+            this.permissionVersion = permissionVersion;
+        }
+
+        private boolean isValid(net.minecraft.world.World world, int x, int y, int z, int claimVersion, int permissionVersion) {
+            return this.world == world && this.x == x && this.y == y && this.z == z
+                    && this.claimVersion == claimVersion && this.permissionVersion == permissionVersion;
+        }
+    }
 }
@@ -0,0 +1,308 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.claim;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import me.ryanhamshire.griefprevention.api.claim.Claim;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * A two tier spatial index of non-overlapping claims.
+ * 
+ * <p>Claims covering only a few chunks are bucketed by chunk. Larger claims,
+ * such as big admin claims, are bucketed by region (32x32 chunks) instead so
+ * they do not occupy a bucket in every chunk they cover.</p>
+ * 
+ * <p>Each indexed claim is assigned a small int id and every bucket is an
+ * exactly sized int[] of ids keyed by a primitive long, so lookups never box
+ * or allocate.</p>
+ * 
+ * <p>Each {@link GPClaim} keeps an index of its own children once it has
+ * enough of them, which allows lookups to descend any number of levels.</p>
+ */
+public class ClaimIndex {
+
+    // claims covering more chunks than this are indexed by region
+    private static final int MAX_CHUNK_AREA = 256;
+    private static final int REGION_SHIFT = 5;
+    // region flag, minX, minZ, maxX, maxZ
+    private static final int AREA_SIZE = 5;
+    private static final int[] EMPTY_BUCKET = new int[0];
+
+    private final Long2ObjectOpenHashMap<int[]> chunkTable;
+    private final Long2ObjectOpenHashMap<int[]> regionTable;
+    // Claim -> id, ids are reused after removal
+    private final Reference2IntOpenHashMap<Claim> claimIds = new Reference2IntOpenHashMap<>();
+    private final IntArrayList freeIds = new IntArrayList();
+    private GPClaim[] claims;
+    // area each claim was indexed with, needed to remove it after a resize
+    private int[] areas;
+    private int nextId = 0;
+
+    public ClaimIndex() {
+        this(16);
+    }
+
+    public ClaimIndex(int expectedChunks) {
+        this.chunkTable = new Long2ObjectOpenHashMap<>(expectedChunks);
+        this.regionTable = new Long2ObjectOpenHashMap<>();
+        this.claimIds.defaultReturnValue(-1);
+        final int expectedClaims = Math.max(4, expectedChunks / 4);
+        this.claims = new GPClaim[expectedClaims];
+        this.areas = new int[expectedClaims * AREA_SIZE];
+    }
+
+    public void add(GPClaim claim) {
+        this.remove(claim);
+        final int minChunkX = claim.lesserBoundaryCorner.getBlockX() >> 4;
+        final int minChunkZ = claim.lesserBoundaryCorner.getBlockZ() >> 4;
+        final int maxChunkX = claim.greaterBoundaryCorner.getBlockX() >> 4;
+        final int maxChunkZ = claim.greaterBoundaryCorner.getBlockZ() >> 4;
+        final long chunkArea = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        final boolean region = chunkArea > MAX_CHUNK_AREA;
+        final int shift = region ? REGION_SHIFT : 0;
+
+        final int id = this.allocateId(claim);
+        final int offset = id * AREA_SIZE;
+        this.areas[offset] = region ? 1 : 0;
+        this.areas[offset + 1] = minChunkX >> shift;
+        this.areas[offset + 2] = minChunkZ >> shift;
+        this.areas[offset + 3] = maxChunkX >> shift;
+        this.areas[offset + 4] = maxChunkZ >> shift;
+
+        final Long2ObjectOpenHashMap<int[]> table = region ? this.regionTable : this.chunkTable;
+        for (int x = minChunkX >> shift; x <= maxChunkX >> shift; x++) {
+            for (int z = minChunkZ >> shift; z <= maxChunkZ >> shift; z++) {
+                final long key = ChunkPos.asLong(x, z);
+                final int[] bucket = table.get(key);
+                if (bucket == null) {
+                    table.put(key, new int[] {id});
+                } else {
+                    final int[] newBucket = Arrays.copyOf(bucket, bucket.length + 1);
+                    newBucket[bucket.length] = id;
+                    table.put(key, newBucket);
+                }
+            }
+        }
+    }
+
+    public void remove(Claim claim) {
+        final int id = this.claimIds.removeInt(claim);
+        if (id == -1) {
+            return;
+        }
+
+        final int offset = id * AREA_SIZE;
+        final Long2ObjectOpenHashMap<int[]> table = this.areas[offset] == 1 ? this.regionTable : this.chunkTable;
+        for (int x = this.areas[offset + 1]; x <= this.areas[offset + 3]; x++) {
+            for (int z = this.areas[offset + 2]; z <= this.areas[offset + 4]; z++) {
+                final long key = ChunkPos.asLong(x, z);
+                final int[] bucket = table.get(key);
+                if (bucket == null) {
+                    continue;
+                }
+                final int[] newBucket = removeId(bucket, id);
+                if (newBucket.length == 0) {
+                    table.remove(key);
+                } else if (newBucket != bucket) {
+                    table.put(key, newBucket);
+                }
+            }
+        }
+
+        this.claims[id] = null;
+        this.freeIds.add(id);
+    }
+
+    public boolean contains(Claim claim) {
+        return this.claimIds.containsKey(claim);
+    }
+
+    public int size() {
+        return this.claimIds.size();
+    }
+
+    // Returns the indexed claim containing the position, ignoring children
+    @Nullable
+    public GPClaim getClaimAt(int x, int y, int z) {
+        final int chunkX = x >> 4;
+        final int chunkZ = z >> 4;
+        GPClaim claim = this.getClaimAt(this.chunkTable.get(ChunkPos.asLong(chunkX, chunkZ)), x, y, z);
+        if (claim != null || this.regionTable.isEmpty()) {
+            return claim;
+        }
+
+        return this.getClaimAt(this.regionTable.get(ChunkPos.asLong(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT)), x, y, z);
+    }
+
+    @Nullable
+    private GPClaim getClaimAt(@Nullable int[] bucket, int x, int y, int z) {
+        if (bucket == null) {
+            return null;
+        }
+        for (int i = 0; i < bucket.length; i++) {
+            final GPClaim claim = this.claims[bucket[i]];
+            if (claim.contains(x, y, z)) {
+                return claim;
+            }
+        }
+        return null;
+    }
+
+    // Returns every indexed claim bucketed at the chunk, used when resolving many positions of one chunk
+    public GPClaim[] getChunkClaims(int chunkX, int chunkZ) {
+        final int[] chunkBucket = this.chunkTable.get(ChunkPos.asLong(chunkX, chunkZ));
+        final int[] regionBucket = this.regionTable.isEmpty() ? null : this.regionTable.get(ChunkPos.asLong(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT));
+        final int chunkLength = chunkBucket == null ? 0 : chunkBucket.length;
+        final int regionLength = regionBucket == null ? 0 : regionBucket.length;
+        final GPClaim[] result = new GPClaim[chunkLength + regionLength];
+        for (int i = 0; i < chunkLength; i++) {
+            result[i] = this.claims[chunkBucket[i]];
+        }
+        for (int i = 0; i < regionLength; i++) {
+            result[chunkLength + i] = this.claims[regionBucket[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Gets all indexed claims that may intersect the passed block area.
+     * 
+     * Note: The result can contain claims which are near the area but do
+     * not intersect it.
+     */
+    public Set<Claim> getClaimsInArea(int minX, int minZ, int maxX, int maxZ) {
+        final Set<Claim> result = new HashSet<>();
+        final int minChunkX = minX >> 4;
+        final int minChunkZ = minZ >> 4;
+        final int maxChunkX = maxX >> 4;
+        final int maxChunkZ = maxZ >> 4;
+        final long chunkArea = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        if (chunkArea > this.claimIds.size()) {
+            // cheaper to check every indexed claim than every chunk of the area
+            for (int id = 0; id < this.nextId; id++) {
+                final GPClaim claim = this.claims[id];
+                if (claim != null && claim.lesserBoundaryCorner.getBlockX() <= maxX && claim.greaterBoundaryCorner.getBlockX() >= minX
+                        && claim.lesserBoundaryCorner.getBlockZ() <= maxZ && claim.greaterBoundaryCorner.getBlockZ() >= minZ) {
+                    result.add(claim);
+                }
+            }
+            return result;
+        }
+
+        for (int x = minChunkX; x <= maxChunkX; x++) {
+            for (int z = minChunkZ; z <= maxChunkZ; z++) {
+                this.addAll(result, this.chunkTable.get(ChunkPos.asLong(x, z)));
+            }
+        }
+        if (!this.regionTable.isEmpty()) {
+            for (int x = minChunkX >> REGION_SHIFT; x <= maxChunkX >> REGION_SHIFT; x++) {
+                for (int z = minChunkZ >> REGION_SHIFT; z <= maxChunkZ >> REGION_SHIFT; z++) {
+                    this.addAll(result, this.regionTable.get(ChunkPos.asLong(x, z)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addAll(Set<Claim> result, @Nullable int[] bucket) {
+        if (bucket == null) {
+            return;
+        }
+        for (int i = 0; i < bucket.length; i++) {
+            result.add(this.claims[bucket[i]]);
+        }
+    }
+
+    // Expands the index into chunk hashes, only used by the API
+    public Map<Long, Set<Claim>> getChunksToClaimsMap() {
+        final Map<Long, Set<Claim>> chunksToClaims = new HashMap<>();
+        for (int id = 0; id < this.nextId; id++) {
+            final GPClaim claim = this.claims[id];
+            if (claim == null) {
+                continue;
+            }
+            for (long chunkHash : claim.getChunkHashes()) {
+                Set<Claim> claimsInChunk = chunksToClaims.get(chunkHash);
+                if (claimsInChunk == null) {
+                    claimsInChunk = new HashSet<>();
+                    chunksToClaims.put(chunkHash, claimsInChunk);
+                }
+                claimsInChunk.add(claim);
+            }
+        }
+        return chunksToClaims;
+    }
+
+    public void clear() {
+        this.chunkTable.clear();
+        this.regionTable.clear();
+        this.claimIds.clear();
+        this.freeIds.clear();
+        Arrays.fill(this.claims, null);
+        this.nextId = 0;
+    }
+
+    private int allocateId(GPClaim claim) {
+        final int id;
+        if (!this.freeIds.isEmpty()) {
+            id = this.freeIds.removeInt(this.freeIds.size() - 1);
+        } else {
+            id = this.nextId++;
+            if (id == this.claims.length) {
+                this.claims = Arrays.copyOf(this.claims, id * 2);
+                this.areas = Arrays.copyOf(this.areas, id * 2 * AREA_SIZE);
+            }
+        }
+        this.claims[id] = claim;
+        this.claimIds.put(claim, id);
+        return id;
+    }
+
+    private static int[] removeId(int[] bucket, int id) {
+        for (int i = 0; i < bucket.length; i++) {
+            if (bucket[i] == id) {
+                if (bucket.length == 1) {
+                    return EMPTY_BUCKET;
+                }
+                final int[] newBucket = new int[bucket.length - 1];
+                System.arraycopy(bucket, 0, newBucket, 0, i);
+                System.arraycopy(bucket, i + 1, newBucket, i, bucket.length - i - 1);
+                return newBucket;
+            }
+        }
+        return bucket;
+    }
+}
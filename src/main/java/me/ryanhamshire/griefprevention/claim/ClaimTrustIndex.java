@@ -0,0 +1,152 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.claim;
+
+import me.ryanhamshire.griefprevention.api.claim.TrustType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A reverse index of the trust lists of all claims in a world.
+ * 
+ * <p>Maps each trusted user or group to the ids of the claims it is trusted
+ * in per {@link TrustType}. Only trusts stored in claim data are indexed,
+ * trust granted through permissions is not.</p>
+ */
+public class ClaimTrustIndex {
+
+    private static final TrustType[] TRUST_TYPES = {TrustType.ACCESSOR, TrustType.CONTAINER, TrustType.BUILDER, TrustType.MANAGER};
+
+    // User UUID -> trust type -> claim ids
+    private final Map<UUID, EnumMap<TrustType, Set<UUID>>> userTrusts = new HashMap<>();
+    // Group -> trust type -> claim ids
+    private final Map<String, EnumMap<TrustType, Set<UUID>>> groupTrusts = new HashMap<>();
+
+    public void addClaim(GPClaim claim) {
+        for (TrustType type : TRUST_TYPES) {
+            for (UUID uuid : claim.getUserTrustList(type)) {
+                add(this.userTrusts, uuid, type, claim.id);
+            }
+            for (String group : claim.getGroupTrustList(type)) {
+                add(this.groupTrusts, group, type, claim.id);
+            }
+        }
+    }
+
+    public void removeClaim(GPClaim claim) {
+        for (TrustType type : TRUST_TYPES) {
+            for (UUID uuid : claim.getUserTrustList(type)) {
+                remove(this.userTrusts, uuid, type, claim.id);
+            }
+            for (String group : claim.getGroupTrustList(type)) {
+                remove(this.groupTrusts, group, type, claim.id);
+            }
+        }
+    }
+
+    public void addUserTrust(UUID uuid, TrustType type, UUID claimId) {
+        add(this.userTrusts, uuid, type, claimId);
+    }
+
+    public void removeUserTrust(UUID uuid, TrustType type, UUID claimId) {
+        remove(this.userTrusts, uuid, type, claimId);
+    }
+
+    public void addGroupTrust(String group, TrustType type, UUID claimId) {
+        add(this.groupTrusts, group, type, claimId);
+    }
+
+    public void removeGroupTrust(String group, TrustType type, UUID claimId) {
+        remove(this.groupTrusts, group, type, claimId);
+    }
+
+    // TrustType.NONE returns the claims of every trust type
+    public Set<UUID> getUserTrusts(UUID uuid, TrustType type) {
+        return get(this.userTrusts, uuid, type);
+    }
+
+    public Set<UUID> getGroupTrusts(String group, TrustType type) {
+        return get(this.groupTrusts, group, type);
+    }
+
+    public void clear() {
+        this.userTrusts.clear();
+        this.groupTrusts.clear();
+    }
+
+    private static <K> void add(Map<K, EnumMap<TrustType, Set<UUID>>> index, K key, TrustType type, UUID claimId) {
+        if (type == TrustType.NONE) {
+            return;
+        }
+        EnumMap<TrustType, Set<UUID>> trusts = index.get(key);
+        if (trusts == null) {
+            trusts = new EnumMap<>(TrustType.class);
+            index.put(key, trusts);
+        }
+        Set<UUID> claimIds = trusts.get(type);
+        if (claimIds == null) {
+            claimIds = new HashSet<>();
+            trusts.put(type, claimIds);
+        }
+        claimIds.add(claimId);
+    }
+
+    private static <K> void remove(Map<K, EnumMap<TrustType, Set<UUID>>> index, K key, TrustType type, UUID claimId) {
+        final EnumMap<TrustType, Set<UUID>> trusts = index.get(key);
+        if (trusts == null) {
+            return;
+        }
+        final Set<UUID> claimIds = trusts.get(type);
+        if (claimIds == null || !claimIds.remove(claimId) || !claimIds.isEmpty()) {
+            return;
+        }
+        trusts.remove(type);
+        if (trusts.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static <K> Set<UUID> get(Map<K, EnumMap<TrustType, Set<UUID>>> index, K key, TrustType type) {
+        final EnumMap<TrustType, Set<UUID>> trusts = index.get(key);
+        if (trusts == null) {
+            return Collections.emptySet();
+        }
+        if (type != TrustType.NONE) {
+            final Set<UUID> claimIds = trusts.get(type);
+            return claimIds == null ? Collections.emptySet() : Collections.unmodifiableSet(claimIds);
+        }
+        final Set<UUID> claimIds = new HashSet<>();
+        for (Set<UUID> typeClaimIds : trusts.values()) {
+            claimIds.addAll(typeClaimIds);
+        }
+        return claimIds;
+    }
+}
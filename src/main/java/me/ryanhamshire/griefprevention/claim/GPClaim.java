@@ -31,6 +31,8 @@
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import me.ryanhamshire.griefprevention.DataStore;
 import me.ryanhamshire.griefprevention.GPPlayerData;
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
@@ -48,13 +50,11 @@
 import me.ryanhamshire.griefprevention.api.claim.TrustType;
 import me.ryanhamshire.griefprevention.api.data.ClaimData;
 import me.ryanhamshire.griefprevention.command.CommandHelper;
-import me.ryanhamshire.griefprevention.configuration.ClaimDataConfig;
 import me.ryanhamshire.griefprevention.configuration.ClaimStorageData;
 import me.ryanhamshire.griefprevention.configuration.GriefPreventionConfig;
 import me.ryanhamshire.griefprevention.configuration.IClaimData;
 import me.ryanhamshire.griefprevention.configuration.MessageStorage;
 import me.ryanhamshire.griefprevention.configuration.TownDataConfig;
-import me.ryanhamshire.griefprevention.configuration.TownStorageData;
 import me.ryanhamshire.griefprevention.event.GPChangeClaimEvent;
 import me.ryanhamshire.griefprevention.event.GPCreateClaimEvent;
 import me.ryanhamshire.griefprevention.event.GPDeleteClaimEvent;
@@ -64,6 +64,7 @@
 import me.ryanhamshire.griefprevention.event.GPUserTrustClaimEvent;
 import me.ryanhamshire.griefprevention.permission.GPOptionHandler;
 import me.ryanhamshire.griefprevention.permission.GPOptions;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import me.ryanhamshire.griefprevention.permission.GPPermissionHandler;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
 import me.ryanhamshire.griefprevention.util.BlockUtils;
@@ -96,10 +97,8 @@
 import org.spongepowered.common.SpongeImpl;
 import org.spongepowered.common.interfaces.world.IMixinWorldServer;
 
-import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -126,7 +125,6 @@ public class GPClaim implements Claim {
     public Location<World> greaterBoundaryCorner;
     public World world;
     private ClaimType type = ClaimType.BASIC;
-    private Set<Long> chunkHashes;
     private final int hashCode;
     private final GPClaimManager worldClaimManager;
     private final Claim wildernessClaim;
@@ -140,18 +138,28 @@ public class GPClaim implements Claim {
     private UUID ownerUniqueId;
 
     public boolean cuboid = false;
+    // Whether the owner's claim levels were limited when their data was last in memory
+    private boolean ownerClaimLevelsLimited = false;
 
     private ClaimStorageData claimStorage;
     private IClaimData claimData;
+    // Built lazily from the trust lists of claim data, cleared whenever they change
+    private volatile TrustTable trustTable;
 
     public GPClaim parent = null;
     public ArrayList<Claim> children = new ArrayList<>();
+    // Lazily built index of children, only used once a claim has many children
+    private ClaimIndex childIndex;
     public Visualization visualization;
     public List<UUID> playersWatching = new ArrayList<>();
 
-    private GPPlayerData ownerPlayerData;
     private Account economyAccount;
     private static final int MAX_AREA = GriefPreventionPlugin.CLAIM_BLOCK_SYSTEM == ClaimBlockSystem.VOLUME ? 2560000 : 10000;
+    private static final int CHILD_INDEX_THRESHOLD = 8;
+    private static final int ACCESSOR_BIT = 1;
+    private static final int CONTAINER_BIT = 2;
+    private static final int BUILDER_BIT = 4;
+    private static final int MANAGER_BIT = 8;
 
     public GPClaim(World world, Vector3i point1, Vector3i point2, ClaimType type, UUID ownerUniqueId, boolean cuboid) {
         this(world, point1, point2, type, ownerUniqueId, cuboid, null);
@@ -200,7 +208,6 @@ public GPClaim(World world, Vector3i point1, Vector3i point2, ClaimType type, UU
         this.greaterBoundaryCorner = new Location<World>(world, bigx, bigy, bigz);
         if (ownerUniqueId != null) {
             this.ownerUniqueId = ownerUniqueId;
-            this.ownerPlayerData = GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(this.world, this.ownerUniqueId);
         }
         this.type = type;
         this.id = UUID.randomUUID();
@@ -232,7 +239,6 @@ public GPClaim(Location<World> lesserBoundaryCorner, Location<World> greaterBoun
         this.world = lesserBoundaryCorner.getExtent();
         if (ownerUniqueId != null) {
             this.ownerUniqueId = ownerUniqueId;
-            this.ownerPlayerData = GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(this.world, this.ownerUniqueId);
         }
         this.type = type;
         this.cuboid = cuboid;
@@ -247,24 +253,7 @@ public GPClaim(Location<World> lesserBoundaryCorner, Location<World> greaterBoun
     }
 
     public void initializeClaimData(GPClaim parent) {
-        Path claimDataFolderPath = null;
-        // check if main world
-        if (parent != null) {
-            claimDataFolderPath = parent.getClaimStorage().filePath.getParent().resolve(this.type.name().toLowerCase());
-        } else {
-            claimDataFolderPath = DataStore.worldConfigMap.get(this.world.getUniqueId()).getPath().getParent().resolve("ClaimData").resolve(this.type.name().toLowerCase());
-        }
-        try {
-            Files.createDirectories(claimDataFolderPath);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        File claimFile = new File(claimDataFolderPath + File.separator + this.id);
-        if (this.isTown()) {
-            this.claimStorage = new TownStorageData(claimFile.toPath(), this.world.getUniqueId(), this.ownerUniqueId, this.cuboid);
-        } else {
-            this.claimStorage = new ClaimStorageData(claimFile.toPath(), this.world.getUniqueId(), this.ownerUniqueId, this.type, this.cuboid);
-        }
+        this.claimStorage = DATASTORE.createClaimStorage(this, parent, this.ownerUniqueId);
         this.claimData = this.claimStorage.getConfig();
         this.parent = parent;
 
@@ -287,12 +276,23 @@ public Visualization getVisualizer() {
         return this.visualization;
     }
 
+    // Owner data is looked up on each call so claims do not keep evicted player data loaded
     public GPPlayerData getOwnerPlayerData() {
-        if (this.ownerPlayerData == null && this.ownerUniqueId != null) {
-            this.ownerPlayerData = GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(this.world, this.ownerUniqueId);
+        if (this.ownerUniqueId == null || this.world == null) {
+            return null;
+        }
+
+        return GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(this.world, this.ownerUniqueId);
+    }
+
+    // Same as getOwnerPlayerData but does not load the data if it is not in memory, nor keep it from being evicted
+    @Nullable
+    public GPPlayerData getLoadedOwnerPlayerData() {
+        if (this.ownerUniqueId == null || this.world == null) {
+            return null;
         }
 
-        return this.ownerPlayerData;
+        return GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(this.world.getProperties()).getPlayerDataMap().get(this.ownerUniqueId);
     }
 
     public UUID getOwnerUniqueId() {
@@ -613,20 +613,7 @@ public Text getOwnerName() {
 
     @Override
     public boolean contains(Location<World> location, boolean excludeChildren) {
-        int x = location.getBlockX();
-        int y = location.getBlockY();
-        int z = location.getBlockZ();
-
-        // main check
-        boolean inClaim = (
-                y >= this.lesserBoundaryCorner.getBlockY()) &&
-                y < this.greaterBoundaryCorner.getBlockY() + 1 &&
-                x >= this.lesserBoundaryCorner.getBlockX() &&
-                x < this.greaterBoundaryCorner.getBlockX() + 1 &&
-                z >= this.lesserBoundaryCorner.getBlockZ() &&
-                z < this.greaterBoundaryCorner.getBlockZ() + 1;
-
-        if (!inClaim) {
+        if (!this.contains(location.getBlockX(), location.getBlockY(), location.getBlockZ())) {
             return false;
         }
 
@@ -640,6 +627,48 @@ public boolean contains(Location<World> location, boolean excludeChildren) {
         return true;
     }
 
+    // Checks the claim boundaries only, ignoring any parent
+    public boolean contains(int x, int y, int z) {
+        return y >= this.lesserBoundaryCorner.getBlockY() &&
+                y <= this.greaterBoundaryCorner.getBlockY() &&
+                x >= this.lesserBoundaryCorner.getBlockX() &&
+                x <= this.greaterBoundaryCorner.getBlockX() &&
+                z >= this.lesserBoundaryCorner.getBlockZ() &&
+                z <= this.greaterBoundaryCorner.getBlockZ();
+    }
+
+    // Gets the direct child claim containing the position, if any
+    @Nullable
+    public GPClaim getChildAt(int x, int y, int z) {
+        if (this.children.isEmpty()) {
+            return null;
+        }
+
+        if (this.children.size() < CHILD_INDEX_THRESHOLD) {
+            for (int i = 0; i < this.children.size(); i++) {
+                final GPClaim child = (GPClaim) this.children.get(i);
+                if (child.contains(x, y, z)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        if (this.childIndex == null) {
+            final ClaimIndex index = new ClaimIndex();
+            for (Claim child : this.children) {
+                index.add((GPClaim) child);
+            }
+            this.childIndex = index;
+        }
+        return this.childIndex.getClaimAt(x, y, z);
+    }
+
+    // Must be called whenever children are added, removed or resized
+    public void invalidateChildIndex() {
+        this.childIndex = null;
+    }
+
     public boolean isClaimOnBorder(GPClaim claim) {
         if (claim.cuboid) {
             return false;
@@ -791,34 +820,28 @@ public boolean canIgnoreHeight() {
         if (this.isCuboid()) {
             return false;
         }
-        if (this.ownerPlayerData != null && (this.ownerPlayerData.getMinClaimLevel() > 0 || this.ownerPlayerData.getMaxClaimLevel() < 255)) {
-            return false;
+        final GPPlayerData ownerData = this.getLoadedOwnerPlayerData();
+        if (ownerData != null) {
+            this.ownerClaimLevelsLimited = ownerData.getMinClaimLevel() > 0 || ownerData.getMaxClaimLevel() < 255;
         }
 
-        return true;
+        return !this.ownerClaimLevelsLimited;
     }
 
     @Override
     public Set<Long> getChunkHashes() {
-        return this.getChunkHashes(true);
-    }
-
-    public Set<Long> getChunkHashes(boolean refresh) {
-        if (this.chunkHashes == null || refresh) {
-            this.chunkHashes = new HashSet<Long>();
-            int smallX = this.lesserBoundaryCorner.getBlockX() >> 4;
-            int smallZ = this.lesserBoundaryCorner.getBlockZ() >> 4;
-            int largeX = this.greaterBoundaryCorner.getBlockX() >> 4;
-            int largeZ = this.greaterBoundaryCorner.getBlockZ() >> 4;
-    
-            for (int x = smallX; x <= largeX; x++) {
-                for (int z = smallZ; z <= largeZ; z++) {
-                    this.chunkHashes.add(ChunkPos.asLong(x, z));
-                }
+        final int smallX = this.lesserBoundaryCorner.getBlockX() >> 4;
+        final int smallZ = this.lesserBoundaryCorner.getBlockZ() >> 4;
+        final int largeX = this.greaterBoundaryCorner.getBlockX() >> 4;
+        final int largeZ = this.greaterBoundaryCorner.getBlockZ() >> 4;
+        final LongOpenHashSet chunkHashes = new LongOpenHashSet((largeX - smallX + 1) * (largeZ - smallZ + 1));
+        for (int x = smallX; x <= largeX; x++) {
+            for (int z = smallZ; z <= largeZ; z++) {
+                chunkHashes.add(ChunkPos.asLong(x, z));
             }
         }
 
-        return this.chunkHashes;
+        return chunkHashes;
     }
 
     @Override
@@ -845,6 +868,8 @@ public ClaimStorageData getClaimStorage() {
 
     public void setClaimData(IClaimData data) {
         this.claimData = data;
+        this.trustTable = null;
+        GPPermissionCache.invalidateClaim(this.id);
     }
 
     public void setClaimStorage(ClaimStorageData storage) {
@@ -874,7 +899,6 @@ public void save() {
         if (this.getInternalClaimData().requiresSave()) {
             this.updateClaimStorageData();
             this.getClaimStorage().save();
-            this.getInternalClaimData().setRequiresSave(false);
         }
     }
 
@@ -962,6 +986,7 @@ public ClaimResult transferOwner(UUID newOwnerID) {
             return new GPClaimResult(this, ClaimResultType.CLAIM_EVENT_CANCELLED, event.getMessage().orElse(null));
         }
 
+        final UUID oldOwnerUniqueId = this.getOwnerUniqueId();
         if (this.isAdminClaim()) {
             // convert to basic
             this.type = ClaimType.BASIC;
@@ -977,10 +1002,12 @@ public ClaimResult transferOwner(UUID newOwnerID) {
         this.claimData.setOwnerUniqueId(newOwnerID);
         if (this.isBasicClaim()) {
             ownerData.getInternalClaims().remove(this);
+            ownerData.removeClaimBlockCost(this);
             newOwnerData.getInternalClaims().add(this);
+            newOwnerData.updateClaimBlockCost(this);
         }
 
-        this.ownerPlayerData = newOwnerData;
+        DATASTORE.getClaimWorldManager(this.world.getProperties()).updateClaimOwner(this, oldOwnerUniqueId);
         this.getClaimStorage().save();
         return new GPClaimResult(this, ClaimResultType.SUCCESS);
     }
@@ -1004,20 +1031,13 @@ public ClaimResult doesClaimOverlap() {
         }
 
         final GPClaimManager claimWorldManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(this.world.getProperties());
-        final Set<Long> chunkHashes = this.getChunkHashes(true);
 
-        // Since there is no parent we need to check all claims stored in chunk hashes
-        for (Long chunkHash : chunkHashes) {
-            Set<Claim> claimsInChunk = claimWorldManager.getInternalChunksToClaimsMap().get(chunkHash);
-            if (claimsInChunk == null || claimsInChunk.size() == 0) {
-                continue;
-            }
-            for (Claim child : claimsInChunk) {
-                final GPClaim gpChild = (GPClaim) child;
-                // First check if newly resized claim is crossing another
-                if (this.isBandingAcross(gpChild) || gpChild.isBandingAcross(this)) {
-                    return new GPClaimResult(child, ClaimResultType.OVERLAPPING_CLAIM);
-                }
+        // Since there is no parent we need to check all top level claims in the area
+        for (Claim child : this.getIndexedClaimsInArea(claimWorldManager)) {
+            final GPClaim gpChild = (GPClaim) child;
+            // First check if newly resized claim is crossing another
+            if (this.isBandingAcross(gpChild) || gpChild.isBandingAcross(this)) {
+                return new GPClaimResult(child, ClaimResultType.OVERLAPPING_CLAIM);
             }
         }
 
@@ -1073,6 +1093,7 @@ public ClaimResult checkArea(boolean resize) {
                         } else {
                             childClaim.parent = null;
                             this.children.remove(childClaim);
+                            this.invalidateChildIndex();
                             final GPClaimManager claimWorldManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(this.world.getProperties());
                             claimWorldManager.addClaim(childClaim, true);
                         }
@@ -1112,34 +1133,27 @@ public ClaimResult checkArea(boolean resize) {
         }
 
         final GPClaimManager claimWorldManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(this.world.getProperties());
-        final Set<Long> chunkHashes = this.getChunkHashes(true);
 
-        // Since there is no parent we need to check all claims stored in chunk hashes
-        for (Long chunkHash : chunkHashes) {
-            Set<Claim> claimsInChunk = claimWorldManager.getInternalChunksToClaimsMap().get(chunkHash);
-            if (claimsInChunk == null || claimsInChunk.size() == 0) {
+        // Since there is no parent we need to check all top level claims in the area
+        for (Claim chunkClaim : this.getIndexedClaimsInArea(claimWorldManager)) {
+            final GPClaim gpChunkClaim = (GPClaim) chunkClaim;
+            if (gpChunkClaim.equals(this)) {
                 continue;
             }
-            for (Claim chunkClaim : claimsInChunk) {
-                final GPClaim gpChunkClaim = (GPClaim) chunkClaim;
-                if (gpChunkClaim.equals(this)) {
-                    continue;
-                }
 
-                // First check if newly resized claim is crossing another
-                if (this.isBandingAcross(gpChunkClaim) || gpChunkClaim.isBandingAcross(this)) {
+            // First check if newly resized claim is crossing another
+            if (this.isBandingAcross(gpChunkClaim) || gpChunkClaim.isBandingAcross(this)) {
+                return new GPClaimResult(gpChunkClaim, ClaimResultType.OVERLAPPING_CLAIM);
+            }
+            if (gpChunkClaim.isInside(this)) {
+                if (this.type.equals(gpChunkClaim.type)) {
                     return new GPClaimResult(gpChunkClaim, ClaimResultType.OVERLAPPING_CLAIM);
                 }
-                if (gpChunkClaim.isInside(this)) {
-                    if (this.type.equals(gpChunkClaim.type)) {
-                        return new GPClaimResult(gpChunkClaim, ClaimResultType.OVERLAPPING_CLAIM);
-                    }
-                    if (!this.canEnclose(gpChunkClaim)) {
-                        return new GPClaimResult(gpChunkClaim, ClaimResultType.OVERLAPPING_CLAIM);
-                    }
-                    if (!this.isSubdivision()) {
-                        claimsInArea.add(gpChunkClaim);
-                    }
+                if (!this.canEnclose(gpChunkClaim)) {
+                    return new GPClaimResult(gpChunkClaim, ClaimResultType.OVERLAPPING_CLAIM);
+                }
+                if (!this.isSubdivision()) {
+                    claimsInArea.add(gpChunkClaim);
                 }
             }
         }
@@ -1147,6 +1161,11 @@ public ClaimResult checkArea(boolean resize) {
         return new GPClaimResult(claimsInArea, ClaimResultType.SUCCESS);
     }
 
+    private Set<Claim> getIndexedClaimsInArea(GPClaimManager claimWorldManager) {
+        return claimWorldManager.getClaimIndex().getClaimsInArea(this.lesserBoundaryCorner.getBlockX(), this.lesserBoundaryCorner.getBlockZ(),
+                this.greaterBoundaryCorner.getBlockX(), this.greaterBoundaryCorner.getBlockZ());
+    }
+
     public boolean canEnclose(Claim claim) {
         if (claim.isWilderness()) {
             return false;
@@ -1270,7 +1289,8 @@ public ClaimResult resizeInternal(int smallX, int smallY, int smallZ, int bigX,
             final int newCost = BlockUtils.getClaimBlockCost(this.world, newLesserCorner.getBlockPosition(), newGreaterCorner.getBlockPosition(), this.cuboid);
             final int currentCost = BlockUtils.getClaimBlockCost(this.world, currentLesserCorner.getBlockPosition(), currentGreaterCorner.getBlockPosition(), this.cuboid);
             if (newCost > currentCost) {
-                final int remainingClaimBlocks = this.ownerPlayerData.getRemainingClaimBlocks() - (newCost - currentCost);
+                // only a growing claim needs the owner's claim blocks, load them just for this case
+                final int remainingClaimBlocks = this.getOwnerPlayerData().getRemainingClaimBlocks() - (newCost - currentCost);
                 if (remainingClaimBlocks < 0) {
                     if (player != null) {
                         if (GriefPreventionPlugin.CLAIM_BLOCK_SYSTEM == ClaimBlockSystem.VOLUME) {
@@ -1297,10 +1317,6 @@ public ClaimResult resizeInternal(int smallX, int smallY, int smallZ, int bigX,
         this.lesserBoundaryCorner = newLesserCorner;
         this.greaterBoundaryCorner = newGreaterCorner;
 
-        // checkArea refreshes the current chunk hashes so it is important
-        // to make a copy before making the call
-        final Set<Long> currentChunkHashes = new HashSet<>(this.chunkHashes);
-
         final ClaimResult result = this.checkArea(true);
         if (!result.successful()) {
             this.lesserBoundaryCorner = currentLesserCorner;
@@ -1328,32 +1344,21 @@ public ClaimResult resizeInternal(int smallX, int smallY, int smallZ, int bigX,
         this.greaterBoundaryCorner = newGreaterCorner;
         GPClaimManager claimWorldManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(this.world.getProperties());
 
-        // resize validated, remove invalid chunkHashes
+        // resize validated, update index
+        claimWorldManager.invalidateColumnTables(currentLesserCorner.getBlockX(), currentLesserCorner.getBlockZ(),
+                currentGreaterCorner.getBlockX(), currentGreaterCorner.getBlockZ());
         if (this.parent == null) {
-            for (Long chunkHash : currentChunkHashes) {
-                Set<Claim> claimsInChunk = claimWorldManager.getInternalChunksToClaimsMap().get(chunkHash);
-                if (claimsInChunk != null && claimsInChunk.size() > 0) {
-                    claimsInChunk.remove(this);
-                }
-            }
-
-            final Set<Long> newChunkHashes = this.getChunkHashes(true);
-            // add new chunk hashes
-            for (Long chunkHash : newChunkHashes) {
-                Set<Claim> claimsInChunk = claimWorldManager.getInternalChunksToClaimsMap().get(chunkHash);
-                if (claimsInChunk == null) {
-                    claimsInChunk = new HashSet<>();
-                    claimWorldManager.getInternalChunksToClaimsMap().put(chunkHash, claimsInChunk);
-                }
-
-                claimsInChunk.add(this);
-            }
+            claimWorldManager.updateChunkHashes(this);
+        } else {
+            this.parent.invalidateChildIndex();
+            claimWorldManager.invalidateColumnTables(this);
         }
 
         this.claimData.setLesserBoundaryCorner(BlockUtils.positionToString(this.lesserBoundaryCorner));
         this.claimData.setGreaterBoundaryCorner(BlockUtils.positionToString(this.greaterBoundaryCorner));
         this.claimData.setRequiresSave(true);
         this.getClaimStorage().save();
+        this.updateClaimBlockCost();
 
         if (result.getClaims().size() > 1) {
             this.migrateClaims(new ArrayList<>(result.getClaims()));
@@ -1420,10 +1425,6 @@ public ClaimResult resizeCuboid(int smallX, int smallY, int smallZ, int bigX, in
         this.lesserBoundaryCorner = newLesserCorner;
         this.greaterBoundaryCorner = newGreaterCorner;
 
-        // checkArea refreshes the current chunk hashes so it is important
-        // to make a copy before making the call
-        final Set<Long> currentChunkHashes = new HashSet<>(this.chunkHashes);
-
         final ClaimResult result = this.checkArea(true);
         if (!result.successful()) {
             this.lesserBoundaryCorner = currentLesserCorner;
@@ -1449,33 +1450,22 @@ public ClaimResult resizeCuboid(int smallX, int smallY, int smallZ, int bigX, in
 
         this.lesserBoundaryCorner = newLesserCorner;
         this.greaterBoundaryCorner = newGreaterCorner;
-        // resize validated, remove invalid chunkHashes
+        // resize validated, update index
         final GPClaimManager claimWorldManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(this.world.getProperties());
+        claimWorldManager.invalidateColumnTables(currentLesserCorner.getBlockX(), currentLesserCorner.getBlockZ(),
+                currentGreaterCorner.getBlockX(), currentGreaterCorner.getBlockZ());
         if (this.parent == null) {
-            for (Long chunkHash : currentChunkHashes) {
-                Set<Claim> claimsInChunk = claimWorldManager.getInternalChunksToClaimsMap().get(chunkHash);
-                if (claimsInChunk != null && claimsInChunk.size() > 0) {
-                    claimsInChunk.remove(this);
-                }
-            }
-
-            final Set<Long> newChunkHashes = this.getChunkHashes(true);
-            // add new chunk hashes
-            for (Long chunkHash : newChunkHashes) {
-                Set<Claim> claimsInChunk = claimWorldManager.getInternalChunksToClaimsMap().get(chunkHash);
-                if (claimsInChunk == null) {
-                    claimsInChunk = new HashSet<>();
-                    claimWorldManager.getInternalChunksToClaimsMap().put(chunkHash, claimsInChunk);
-                }
-
-                claimsInChunk.add(this);
-            }
+            claimWorldManager.updateChunkHashes(this);
+        } else {
+            this.parent.invalidateChildIndex();
+            claimWorldManager.invalidateColumnTables(this);
         }
 
         this.claimData.setLesserBoundaryCorner(BlockUtils.positionToString(this.lesserBoundaryCorner));
         this.claimData.setGreaterBoundaryCorner(BlockUtils.positionToString(this.greaterBoundaryCorner));
         this.claimData.setRequiresSave(true);
         this.getClaimStorage().save();
+        this.updateClaimBlockCost();
         if (result.getClaims().size() > 1) {
             this.migrateClaims(new ArrayList<>(result.getClaims()));
         }
@@ -1637,12 +1627,22 @@ private ClaimResult checkSizeLimits(Player player, GPPlayerData playerData, Vect
         return new GPClaimResult(ClaimResultType.SUCCESS);
     }
 
+    // Updates the claim blocks counted against the owner after a change to this claim
+    public void updateClaimBlockCost() {
+        final GPPlayerData ownerData = this.getLoadedOwnerPlayerData();
+        if (ownerData != null) {
+            ownerData.updateClaimBlockCost(this);
+        }
+    }
+
     public void unload() {
+        final GPPlayerData ownerData = this.getLoadedOwnerPlayerData();
+        if (ownerData != null) {
+            ownerData.getInternalClaims().remove(this);
+            ownerData.removeClaimBlockCost(this);
+        }
         // clear any references
         this.world = null;
-        if (this.ownerPlayerData != null) {
-            this.ownerPlayerData.getInternalClaims().remove(this);
-        }
     }
 
     @Override
@@ -1865,16 +1865,16 @@ public ClaimResult changeType(ClaimType type, Optional<UUID> ownerUniqueId) {
                 return new GPClaimResult(ClaimResultType.WRONG_CLAIM_TYPE, message);
         }
 
-        final String fileName = this.getClaimStorage().filePath.getFileName().toString();
-        final Path newPath = this.getClaimStorage().folderPath.getParent().resolve(type.name().toLowerCase()).resolve(fileName);
-        try {
-            Files.createDirectories(newPath.getParent());
-            Files.move(this.getClaimStorage().filePath, newPath);
-            this.setClaimStorage(new ClaimStorageData(newPath, this.getWorldUniqueId(), (ClaimDataConfig) this.getInternalClaimData()));
-            this.getClaimStorage().save();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new GPClaimResult(ClaimResultType.CLAIM_NOT_FOUND, Text.of(e.getMessage()));
+        // claims not stored in a claim file keep their type in the claim data only
+        if (this.getClaimStorage().filePath != null) {
+            final String fileName = this.getClaimStorage().filePath.getFileName().toString();
+            final Path newPath = this.getClaimStorage().folderPath.getParent().resolve(type.name().toLowerCase()).resolve(fileName);
+            try {
+                this.setClaimStorage(this.getClaimStorage().moveTo(newPath));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new GPClaimResult(ClaimResultType.CLAIM_NOT_FOUND, Text.of(e.getMessage()));
+            }
         }
 
         final GPClaimManager claimWorldManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(this.world.getProperties());
@@ -1892,10 +1892,11 @@ public ClaimResult changeType(ClaimType type, Optional<UUID> ownerUniqueId) {
             }
         }
 
-        if (!this.isAdminClaim() && this.ownerPlayerData != null) {
+        final GPPlayerData currentOwnerData = this.getLoadedOwnerPlayerData();
+        if (!this.isAdminClaim() && currentOwnerData != null) {
             final Player player = Sponge.getServer().getPlayer(this.ownerUniqueId).orElse(null);
             if (player != null) {
-                this.ownerPlayerData.revertActiveVisual(player);
+                currentOwnerData.revertActiveVisual(player);
             }
         }
 
@@ -1909,10 +1910,27 @@ public ClaimResult changeType(ClaimType type, Optional<UUID> ownerUniqueId) {
             }
         }
 
+        final UUID oldOwnerUniqueId = this.getOwnerUniqueId();
         if (!newOwnerUUID.equals(GriefPreventionPlugin.ADMIN_USER_UUID)) {
             this.setOwnerUniqueId(newOwnerUUID);
         }
         this.setType(type);
+        claimWorldManager.updateClaimOwner(this, oldOwnerUniqueId);
+        // claim block costs depend on the type of the claim and of its parent
+        final GPPlayerData oldOwnerData = claimWorldManager.getPlayerDataMap().get(oldOwnerUniqueId);
+        if (oldOwnerData != null) {
+            oldOwnerData.removeClaimBlockCost(this);
+        }
+        final GPPlayerData newOwnerData = type == ClaimType.ADMIN ? null : claimWorldManager.getPlayerDataMap().get(newOwnerUUID);
+        if (newOwnerData != null) {
+            newOwnerData.updateClaimBlockCost(this);
+        }
+        for (Claim child : this.children) {
+            final GPPlayerData childOwnerData = claimWorldManager.getPlayerDataMap().get(child.getOwnerUniqueId());
+            if (childOwnerData != null) {
+                childOwnerData.updateClaimBlockCost(child);
+            }
+        }
         this.visualization = null;
         this.getInternalClaimData().setRequiresSave(true);
         this.getClaimStorage().save();
@@ -1973,14 +1991,14 @@ public boolean isUserTrusted(User user, TrustType type, Set<Context> contexts) {
         }
 
         final GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(world, user.getUniqueId());
-        if (this.isAdminClaim() && playerData.canManageAdminClaims) {
+        if (this.isAdminClaim() && playerData.getOptions().canManageAdminClaims) {
             if (playerData.debugClaimPermissions) {
                 return false;
             }
 
             return true;
         }
-        if (this.isWilderness() && playerData.canManageWilderness) {
+        if (this.isWilderness() && playerData.getOptions().canManageWilderness) {
             if (playerData.debugClaimPermissions) {
                 return false;
             }
@@ -1996,40 +2014,8 @@ public boolean isUserTrusted(User user, TrustType type, Set<Context> contexts) {
             return true;
         }
 
-        if (type == TrustType.ACCESSOR) {
-            if (this.claimData.getAccessors().contains(user.getUniqueId())) {
-                return true;
-            }
-            if (this.claimData.getBuilders().contains(user.getUniqueId())) {
-                return true;
-            }
-            if (this.claimData.getContainers().contains(user.getUniqueId())) {
-                return true;
-            }
-            if (this.claimData.getManagers().contains(user.getUniqueId())) {
-                return true;
-            }
-        } else if (type == TrustType.BUILDER) {
-            if (this.claimData.getBuilders().contains(user.getUniqueId())) {
-                return true;
-            }
-            if (this.claimData.getManagers().contains(user.getUniqueId())) {
-                return true;
-            }
-        } else if (type == TrustType.CONTAINER) {
-            if (this.claimData.getContainers().contains(user.getUniqueId())) {
-                return true;
-            }
-            if (this.claimData.getBuilders().contains(user.getUniqueId())) {
-                return true;
-            }
-            if (this.claimData.getManagers().contains(user.getUniqueId())) {
-                return true;
-            }
-        } else if (type == TrustType.MANAGER) {
-            if (this.claimData.getManagers().contains(user.getUniqueId())) {
-                return true;
-            }
+        if ((this.getTrustTable().userBits.getInt(user.getUniqueId()) & getGrantingTrustBits(type)) != 0) {
+            return true;
         }
 
         if (contexts == null) {
@@ -2050,43 +2036,57 @@ public boolean isUserTrusted(User user, TrustType type, Set<Context> contexts) {
     }
 
     private boolean isPublicTrusted(TrustType type) {
-        if (type == TrustType.ACCESSOR) {
-            if (this.claimData.getAccessors().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
-            if (this.claimData.getBuilders().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
-            if (this.claimData.getContainers().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
-            if (this.claimData.getManagers().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
-        } else if (type == TrustType.BUILDER) {
-            if (this.claimData.getBuilders().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
-            if (this.claimData.getManagers().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
-        } else if (type == TrustType.CONTAINER) {
-            if (this.claimData.getContainers().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
-            if (this.claimData.getBuilders().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
-            if (this.claimData.getManagers().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
-        } else if (type == TrustType.MANAGER) {
-            if (this.claimData.getManagers().contains(GriefPreventionPlugin.PUBLIC_UUID)) {
-                return true;
-            }
+        return (this.getTrustTable().publicBits & getGrantingTrustBits(type)) != 0;
+    }
+
+    private TrustTable getTrustTable() {
+        TrustTable table = this.trustTable;
+        if (table == null) {
+            Object2IntOpenHashMap<UUID> userBits = new Object2IntOpenHashMap<>();
+            addTrustBits(userBits, this.claimData.getAccessors(), ACCESSOR_BIT);
+            addTrustBits(userBits, this.claimData.getContainers(), CONTAINER_BIT);
+            addTrustBits(userBits, this.claimData.getBuilders(), BUILDER_BIT);
+            addTrustBits(userBits, this.claimData.getManagers(), MANAGER_BIT);
+            // public trust has its own slot so it never needs a second probe
+            final int publicBits = userBits.removeInt(GriefPreventionPlugin.PUBLIC_UUID);
+            table = new TrustTable(userBits, publicBits);
+            this.trustTable = table;
         }
+        return table;
+    }
 
-        return false;
+    // Published as one unit so async readers never see the map and public bits out of step
+    private static final class TrustTable {
+
+        final Object2IntOpenHashMap<UUID> userBits;
+        final int publicBits;
+
+        TrustTable(Object2IntOpenHashMap<UUID> userBits, int publicBits) {
+            this.userBits = userBits;
+            this.publicBits = publicBits;
+        }
+    }
+
+    private static void addTrustBits(Object2IntOpenHashMap<UUID> table, List<UUID> trustList, int trustBit) {
+        for (UUID uuid : trustList) {
+            table.put(uuid, table.getInt(uuid) | trustBit);
+        }
+    }
+
+    // Higher trust types also grant all lower ones
+    private static int getGrantingTrustBits(TrustType type) {
+        switch (type) {
+            case ACCESSOR :
+                return ACCESSOR_BIT | CONTAINER_BIT | BUILDER_BIT | MANAGER_BIT;
+            case CONTAINER :
+                return CONTAINER_BIT | BUILDER_BIT | MANAGER_BIT;
+            case BUILDER :
+                return BUILDER_BIT | MANAGER_BIT;
+            case MANAGER :
+                return MANAGER_BIT;
+            default :
+                return 0;
+        }
     }
 
     @Override
@@ -2114,11 +2114,7 @@ public ClaimResult addUserTrust(UUID uuid, TrustType type) {
             return new GPClaimResult(ClaimResultType.CLAIM_EVENT_CANCELLED, event.getMessage().orElse(null));
         }
 
-        List<UUID> userList = this.getUserTrustList(type);
-        if (!userList.contains(uuid)) {
-            userList.add(uuid);
-        }
-
+        this.addUserTrustInternal(uuid, type);
         this.claimData.setRequiresSave(true);
         this.claimData.save();
         return new GPClaimResult(this, ClaimResultType.SUCCESS);
@@ -2133,10 +2129,7 @@ public ClaimResult addUserTrusts(List<UUID> uuids, TrustType type) {
         }
 
         for (UUID uuid : uuids) {
-            List<UUID> userList = this.getUserTrustList(type);
-            if (!userList.contains(uuid)) {
-                userList.add(uuid);
-            }
+            this.addUserTrustInternal(uuid, type);
         }
 
         this.claimData.setRequiresSave(true);
@@ -2159,7 +2152,7 @@ public ClaimResult removeUserTrust(UUID uuid, TrustType type) {
             return result;
         }
 
-        this.getUserTrustList(type).remove(uuid);
+        this.removeUserTrustInternal(uuid, type);
         this.claimData.setRequiresSave(true);
         this.claimData.save();
         return new GPClaimResult(this, ClaimResultType.SUCCESS);
@@ -2183,11 +2176,8 @@ public ClaimResult removeUserTrusts(List<UUID> uuids, TrustType type) {
             return new GPClaimResult(this, ClaimResultType.SUCCESS);
         }
 
-        List<UUID> userList = this.getUserTrustList(type);
         for (UUID uuid : uuids) {
-            if (userList.contains(uuid)) {
-                userList.remove(uuid);
-            }
+            this.removeUserTrustInternal(uuid, type);
         }
 
         this.claimData.setRequiresSave(true);
@@ -2203,11 +2193,7 @@ public ClaimResult addGroupTrust(String group, TrustType type) {
             return new GPClaimResult(ClaimResultType.CLAIM_EVENT_CANCELLED, event.getMessage().orElse(null));
         }
 
-        List<String> groupList = this.getGroupTrustList(type);
-        if (!groupList.contains(group)) {
-            groupList.add(group);
-        }
-
+        this.addGroupTrustInternal(group, type);
         this.claimData.setRequiresSave(true);
         this.claimData.save();
         return new GPClaimResult(this, ClaimResultType.SUCCESS);
@@ -2222,10 +2208,7 @@ public ClaimResult addGroupTrusts(List<String> groups, TrustType type) {
         }
 
         for (String group : groups) {
-            List<String> groupList = this.getGroupTrustList(type);
-            if (!groupList.contains(group)) {
-                groupList.add(group);
-            }
+            this.addGroupTrustInternal(group, type);
         }
 
         this.claimData.setRequiresSave(true);
@@ -2248,7 +2231,7 @@ public ClaimResult removeGroupTrust(String group, TrustType type) {
             return result;
         }
 
-        this.getGroupTrustList(type).remove(group);
+        this.removeGroupTrustInternal(group, type);
         this.claimData.setRequiresSave(true);
         this.claimData.save();
         return new GPClaimResult(this, ClaimResultType.SUCCESS);
@@ -2272,11 +2255,8 @@ public ClaimResult removeGroupTrusts(List<String> groups, TrustType type) {
             return new GPClaimResult(this, ClaimResultType.SUCCESS);
         }
 
-        List<String> groupList = this.getGroupTrustList(type);
         for (String group : groups) {
-            if (groupList.contains(group)) {
-                groupList.remove(group);
-            }
+            this.removeGroupTrustInternal(group, type);
         }
 
         this.claimData.setRequiresSave(true);
@@ -2300,13 +2280,13 @@ public ClaimResult removeAllTrusts() {
             return new GPClaimResult(ClaimResultType.CLAIM_EVENT_CANCELLED, event.getMessage().orElse(null));
         }
 
+        this.worldClaimManager.getTrustIndex().removeClaim(this);
         for (TrustType type : TrustType.values()) {
             this.getUserTrustList(type).clear();
-        }
-
-        for (TrustType type : TrustType.values()) {
             this.getGroupTrustList(type).clear();
         }
+        this.trustTable = null;
+        GPPermissionCache.invalidateClaim(this.id);
 
         this.claimData.setRequiresSave(true);
         this.claimData.save();
@@ -2323,7 +2303,9 @@ public ClaimResult removeAllUserTrusts() {
         }
 
         for (TrustType type : TrustType.values()) {
-            this.getUserTrustList(type).clear();
+            for (UUID uuid : this.getUserTrusts(type)) {
+                this.removeUserTrustInternal(uuid, type);
+            }
         }
 
         this.claimData.setRequiresSave(true);
@@ -2341,7 +2323,9 @@ public ClaimResult removeAllGroupTrusts() {
         }
 
         for (TrustType type : TrustType.values()) {
-            this.getGroupTrustList(type).clear();
+            for (String group : this.getGroupTrusts(type)) {
+                this.removeGroupTrustInternal(group, type);
+            }
         }
 
         this.claimData.setRequiresSave(true);
@@ -2351,7 +2335,7 @@ public ClaimResult removeAllGroupTrusts() {
 
     public ClaimResult removeAllTrustsFromUser(UUID userUniqueId) {
         for (TrustType type : TrustType.values()) {
-            this.getUserTrustList(type).remove(userUniqueId);
+            this.removeUserTrustInternal(userUniqueId, type);
         }
 
         return new GPClaimResult(this, ClaimResultType.SUCCESS);
@@ -2359,12 +2343,55 @@ public ClaimResult removeAllTrustsFromUser(UUID userUniqueId) {
 
     public ClaimResult removeAllTrustsFromGroup(String group) {
         for (TrustType type : TrustType.values()) {
-            this.getGroupTrustList(type).remove(group);
+            this.removeGroupTrustInternal(group, type);
         }
 
         return new GPClaimResult(this, ClaimResultType.SUCCESS);
     }
 
+    // Trust lists must only be changed through these so the world trust index stays current
+    public boolean addUserTrustInternal(UUID uuid, TrustType type) {
+        final List<UUID> userList = this.getUserTrustList(type);
+        if (type == TrustType.NONE || userList.contains(uuid)) {
+            return false;
+        }
+        userList.add(uuid);
+        this.trustTable = null;
+        GPPermissionCache.invalidateClaim(this.id);
+        this.worldClaimManager.getTrustIndex().addUserTrust(uuid, type, this.id);
+        return true;
+    }
+
+    public boolean removeUserTrustInternal(UUID uuid, TrustType type) {
+        if (!this.getUserTrustList(type).remove(uuid)) {
+            return false;
+        }
+        this.trustTable = null;
+        GPPermissionCache.invalidateClaim(this.id);
+        this.worldClaimManager.getTrustIndex().removeUserTrust(uuid, type, this.id);
+        return true;
+    }
+
+    public boolean addGroupTrustInternal(String group, TrustType type) {
+        final List<String> groupList = this.getGroupTrustList(type);
+        if (type == TrustType.NONE || groupList.contains(group)) {
+            return false;
+        }
+        groupList.add(group);
+        GPPermissionCache.invalidateClaim(this.id);
+        this.worldClaimManager.getTrustIndex().addGroupTrust(group, type, this.id);
+        return true;
+    }
+
+    public boolean removeGroupTrustInternal(String group, TrustType type) {
+        if (!this.getGroupTrustList(type).remove(group)) {
+            return false;
+        }
+        GPPermissionCache.invalidateClaim(this.id);
+        this.worldClaimManager.getTrustIndex().removeGroupTrust(group, type, this.id);
+        return true;
+    }
+
     public List<UUID> getUserTrustList(TrustType type) {
         if (type == TrustType.NONE) {
             return new ArrayList<>();
@@ -2426,7 +2453,19 @@ public List<UUID> getUserTrustList(TrustType type, boolean includeParents) {
     }
 
     public List<String> getGroupTrustList(TrustType type) {
-        return this.getGroupTrustList(type, false);
+        if (type == TrustType.NONE) {
+            return new ArrayList<>();
+        }
+        if (type == TrustType.ACCESSOR) {
+            return this.claimData.getAccessorGroups();
+        }
+        if (type == TrustType.CONTAINER) {
+            return this.claimData.getContainerGroups();
+        }
+        if (type == TrustType.BUILDER) {
+            return this.claimData.getBuilderGroups();
+        }
+        return this.claimData.getManagerGroups();
     }
 
     public List<String> getGroupTrustList(TrustType type, boolean includeParents) {
@@ -2481,7 +2520,7 @@ public Optional<Account> getEconomyAccount() {
         }
         EconomyService economyService = GriefPreventionPlugin.instance.economyService.orElse(null);
         if (economyService != null) {
-            this.economyAccount = economyService.getOrCreateAccount(this.claimStorage.filePath.getFileName().toString()).orElse(null);
+            this.economyAccount = economyService.getOrCreateAccount(this.id.toString()).orElse(null);
             return Optional.ofNullable(this.economyAccount);
         }
         return Optional.empty();
@@ -2784,30 +2823,38 @@ public boolean migrateClaims(List<Claim> claims) {
             }
 
             GPClaim childClaim = (GPClaim) child;
-            final String fileName = childClaim.getClaimStorage().filePath.getFileName().toString();
+            final Path filePath = childClaim.getClaimStorage().filePath;
             if (childClaim.parent != null) {
                 childClaim.parent.children.remove(child);
+                childClaim.parent.invalidateChildIndex();
             }
             Path newPath = null;
             if (this.isWilderness()) {
                 childClaim.parent = null;
                 childClaim.getClaimStorage().getConfig().setParent(null);
-                newPath = this.getClaimStorage().filePath.getParent().getParent().resolve(child.getType().name().toLowerCase()).resolve(fileName);
+                if (filePath != null) {
+                    newPath = this.getClaimStorage().filePath.getParent().getParent().resolve(child.getType().name().toLowerCase()).resolve(filePath.getFileName());
+                }
             } else {
                 childClaim.parent = this;
                 childClaim.getClaimStorage().getConfig().setParent(this.getUniqueId());
                 this.children.add(child);
-                newPath = this.getClaimStorage().filePath.getParent().resolve(child.getType().name().toLowerCase()).resolve(fileName);
+                this.invalidateChildIndex();
+                if (filePath != null) {
+                    newPath = this.getClaimStorage().filePath.getParent().resolve(child.getType().name().toLowerCase()).resolve(filePath.getFileName());
+                }
             }
 
-            try {
-                Files.createDirectories(newPath.getParent());
-                Files.move(childClaim.getClaimStorage().filePath, newPath);
-                childClaim.setClaimStorage(new ClaimStorageData(newPath, this.getWorldUniqueId(), (ClaimDataConfig) childClaim.getInternalClaimData()));
+            if (newPath == null) {
+                // not stored in a claim file, the new parent is saved with the claim
                 childClaim.getClaimStorage().save();
-            } catch (IOException e) {
-                e.printStackTrace();
-                return false;
+            } else {
+                try {
+                    childClaim.setClaimStorage(childClaim.getClaimStorage().moveTo(newPath));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return false;
+                }
             }
 
             final GPClaimManager claimWorldManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(this.world.getProperties());
@@ -2851,6 +2898,7 @@ public CompletableFuture<FlagResult> clearPermissions(Subject subject) {
         contexts.add(this.getContext());
         contexts.add(this.world.getContext());
         subject.getSubjectData().clearPermissions(contexts);
+        GPPermissionCache.invalidate();
         result.complete(new GPFlagResult(FlagResultType.SUCCESS));
         return result;
     }
@@ -2874,6 +2922,11 @@ public CompletableFuture<FlagResult> clearPermissions(Subject subject, Context c
 
         contexts.add(this.world.getContext());
         subject.getSubjectData().clearPermissions(contexts);
+        if (context == this.getContext()) {
+            GPPermissionCache.invalidateClaim(this.id);
+        } else {
+            GPPermissionCache.invalidate();
+        }
         result.complete(new GPFlagResult(FlagResultType.SUCCESS));
         return result;
     }
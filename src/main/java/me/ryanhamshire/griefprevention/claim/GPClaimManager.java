@@ -28,6 +28,7 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import me.ryanhamshire.griefprevention.DataStore;
 import me.ryanhamshire.griefprevention.GPPlayerData;
@@ -39,12 +40,13 @@
 import me.ryanhamshire.griefprevention.api.claim.ClaimResult;
 import me.ryanhamshire.griefprevention.api.claim.ClaimResultType;
 import me.ryanhamshire.griefprevention.api.claim.ClaimType;
-import me.ryanhamshire.griefprevention.configuration.ClaimDataConfig;
-import me.ryanhamshire.griefprevention.configuration.ClaimStorageData;
+import me.ryanhamshire.griefprevention.api.claim.TrustType;
 import me.ryanhamshire.griefprevention.configuration.GriefPreventionConfig;
 import me.ryanhamshire.griefprevention.configuration.PlayerStorageData;
 import me.ryanhamshire.griefprevention.event.GPDeleteClaimEvent;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.WorldServer;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.event.CauseStackManager;
@@ -57,15 +59,17 @@
 import org.spongepowered.api.world.storage.WorldProperties;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 
@@ -76,13 +80,26 @@ public class GPClaimManager implements ClaimManager {
     private GriefPreventionConfig<?> activeConfig;
 
     // Player UUID -> player data
-    private Map<UUID, GPPlayerData> playerDataList = Maps.newHashMap();
+    private Map<UUID, GPPlayerData> playerDataList = new ConcurrentHashMap<>();
     // World claim list
     private List<Claim> worldClaims = new ArrayList<>();
     // Claim UUID -> Claim
     private Map<UUID, Claim> claimUniqueIdMap = Maps.newHashMap();
-    // String -> Claim
-    private Map<Long, Set<Claim>> chunksToClaimsMap = new Long2ObjectOpenHashMap<>(4096);
+    // Owner UUID -> top level claims owned
+    private Map<UUID, List<Claim>> ownerClaimIndex = Maps.newHashMap();
+    // Owner UUID -> claims owned inside towns of other players, may hold claims that have since moved
+    private Map<UUID, List<Claim>> townClaimIndex = Maps.newHashMap();
+    // User or group -> claims trusted in
+    private final ClaimTrustIndex trustIndex = new ClaimTrustIndex();
+    // Spatial index of top level claims
+    private ClaimIndex claimIndex = new ClaimIndex(4096);
+    // Chunk hash -> deepest 2D claim of each block column in a loaded chunk
+    private final Long2ObjectOpenHashMap<Object[]> chunkColumnTables = new Long2ObjectOpenHashMap<>();
+    // bumped whenever a claim is added, resized or removed
+    private volatile int claimVersion = 0;
+    // Marks columns where cuboid or stacked claims make the claim depend on height
+    private static final Object COLUMN_REQUIRES_LOOKUP = new Object();
+    private static final Object[] WILDERNESS_COLUMNS = new Object[1];
     private GPClaim theWildernessClaim;
 
     public GPClaimManager() {
@@ -100,19 +117,13 @@ public GPPlayerData getOrCreatePlayerData(UUID playerUniqueId) {
         if (playerData == null) {
             return createPlayerData(playerUniqueId);
         } else {
+            playerData.lastAccessTime = System.currentTimeMillis();
             return playerData;
         }
     }
 
     private GPPlayerData createPlayerData(UUID playerUniqueId) {
-        Path playerFilePath = null;
-        if (DataStore.USE_GLOBAL_PLAYER_STORAGE) {
-            playerFilePath = DataStore.globalPlayerDataPath.resolve(playerUniqueId.toString());
-        } else {
-            playerFilePath = DataStore.worldConfigMap.get(this.worldProperties.getUniqueId()).getPath().getParent().resolve("PlayerData").resolve(playerUniqueId.toString());
-        }
-
-        PlayerStorageData playerStorage = new PlayerStorageData(playerFilePath);
+        PlayerStorageData playerStorage = DATASTORE.createPlayerStorageData(this.worldProperties, playerUniqueId);
         List<Claim> claimList = this.createPlayerClaimList(playerUniqueId);
         GPPlayerData playerData = new GPPlayerData(this.worldProperties, playerUniqueId, playerStorage, this.activeConfig, claimList);
         this.getPlayerDataMap().put(playerUniqueId, playerData);
@@ -124,41 +135,86 @@ private List<Claim> createPlayerClaimList(UUID playerUniqueId) {
         if (DataStore.USE_GLOBAL_PLAYER_STORAGE) {
             for (World world : Sponge.getServer().getWorlds()) {
                 GPClaimManager claimmanager = DATASTORE.getClaimWorldManager(world.getProperties());
-                for (Claim claim : claimmanager.worldClaims) {
-                    GPClaim gpClaim = (GPClaim) claim;
-                    if (gpClaim.isAdminClaim()) {
-                        continue;
-                    }
-                    if (gpClaim.parent != null) {
-                       if (gpClaim.parent.getOwnerUniqueId().equals(playerUniqueId)) {
-                           claimList.add(claim);
-                       }
-                    } else {
-                        if (gpClaim.getOwnerUniqueId().equals(playerUniqueId)) {
-                            claimList.add(claim);
-                        }
-                    }
-                }
+                claimmanager.addPlayerClaims(claimList, playerUniqueId);
             }
         } else {
-            for (Claim claim : this.worldClaims) {
-                GPClaim gpClaim = (GPClaim) claim;
-                if (gpClaim.isAdminClaim()) {
-                    continue;
-                }
-                if (gpClaim.parent != null) {
-                   if (gpClaim.parent.getOwnerUniqueId().equals(playerUniqueId)) {
-                       claimList.add(claim);
-                   }
-                } else {
-                    if (gpClaim.getOwnerUniqueId().equals(playerUniqueId)) {
-                        claimList.add(claim);
-                    }
+            this.addPlayerClaims(claimList, playerUniqueId);
+        }
+
+        return claimList;
+    }
+
+    private void addPlayerClaims(List<Claim> claimList, UUID playerUniqueId) {
+        for (Claim claim : this.getOwnerClaims(playerUniqueId)) {
+            if (!claim.isAdminClaim()) {
+                claimList.add(claim);
+            }
+        }
+        // claims inside towns of other players are tracked as well, see addClaim
+        final List<Claim> townClaims = this.townClaimIndex.get(playerUniqueId);
+        if (townClaims != null) {
+            for (Claim claim : townClaims) {
+                if (isOwnedInOtherTown((GPClaim) claim, playerUniqueId)) {
+                    claimList.add(claim);
                 }
             }
         }
+    }
+
+    private static boolean isOwnedInOtherTown(GPClaim claim, UUID ownerUniqueId) {
+        return !claim.isAdminClaim() && ownerUniqueId.equals(claim.getOwnerUniqueId()) && claim.isInTown()
+                && !claim.getTownClaim().getOwnerUniqueId().equals(ownerUniqueId);
+    }
+
+    private void addTownClaim(GPClaim claim) {
+        final List<Claim> claims = this.townClaimIndex.computeIfAbsent(claim.getOwnerUniqueId(), k -> new ArrayList<>());
+        if (!claims.contains(claim)) {
+            claims.add(claim);
+        }
+    }
 
-        return claimList;
+    private void removeTownClaim(GPClaim claim) {
+        final List<Claim> claims = this.townClaimIndex.get(claim.getOwnerUniqueId());
+        if (claims != null && claims.remove(claim) && claims.isEmpty()) {
+            this.townClaimIndex.remove(claim.getOwnerUniqueId());
+        }
+    }
+
+    // Returns the top level claims owned by the UUID in this world
+    public List<Claim> getOwnerClaims(UUID ownerUniqueId) {
+        final List<Claim> claims = this.ownerClaimIndex.get(ownerUniqueId);
+        if (claims == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(claims);
+    }
+
+    private void addOwnerClaim(GPClaim claim) {
+        List<Claim> claims = this.ownerClaimIndex.get(claim.getOwnerUniqueId());
+        if (claims == null) {
+            claims = new ArrayList<>();
+            this.ownerClaimIndex.put(claim.getOwnerUniqueId(), claims);
+        }
+        if (!claims.contains(claim)) {
+            claims.add(claim);
+        }
+    }
+
+    private void removeOwnerClaim(GPClaim claim, UUID ownerUniqueId) {
+        final List<Claim> claims = this.ownerClaimIndex.get(ownerUniqueId);
+        if (claims != null && claims.remove(claim) && claims.isEmpty()) {
+            this.ownerClaimIndex.remove(ownerUniqueId);
+        }
+    }
+
+    // Must be called after the owner or type of a claim changes
+    public void updateClaimOwner(GPClaim claim, UUID oldOwnerUniqueId) {
+        GPPermissionCache.invalidate();
+        if (claim.parent != null || !this.claimIndex.contains(claim)) {
+            return;
+        }
+        this.removeOwnerClaim(claim, oldOwnerUniqueId);
+        this.addOwnerClaim(claim);
     }
 
     public void removePlayer(UUID playerUniqueId) {
@@ -203,29 +259,41 @@ public void addClaim(Claim claimToAdd, boolean writeToStorage) {
 
         // We need to keep track of all claims so they can be referenced by children during server startup
         this.claimUniqueIdMap.put(claim.id, claim);
+        this.trustIndex.addClaim(claim);
 
         if (claim.isWilderness()) {
             this.theWildernessClaim = claim;
             return;
         }
 
+        this.invalidateColumnTables(claim);
+
         if (claim.parent != null) {
             claim.parent.children.add(claim);
+            claim.parent.invalidateChildIndex();
             this.worldClaims.remove(claim);
+            this.removeOwnerClaim(claim, claim.getOwnerUniqueId());
             this.deleteChunkHashes((GPClaim) claim);
-            if (!claim.isAdminClaim() && claim.isInTown() && !claim.getTownClaim().getOwnerUniqueId().equals(claim.getOwnerUniqueId())) {
+            if (isOwnedInOtherTown(claim, claim.getOwnerUniqueId())) {
+                this.addTownClaim(claim);
+                // the owner may not be in memory, their claim list is built from the index once loaded
                 final GPPlayerData playerData = this.getPlayerDataMap().get(claim.getOwnerUniqueId());
-                List<Claim> playerClaims = playerData.getInternalClaims();
-                if (!playerClaims.contains(claim)) {
-                    playerClaims.add(claim);
+                if (playerData != null) {
+                    List<Claim> playerClaims = playerData.getInternalClaims();
+                    if (!playerClaims.contains(claim)) {
+                        playerClaims.add(claim);
+                    }
                 }
             }
+            // the claim may have been a top level claim before
+            claim.updateClaimBlockCost();
             return;
         }
 
         if (!this.worldClaims.contains(claim)) {
             this.worldClaims.add(claim);
         }
+        this.addOwnerClaim(claim);
         final UUID ownerId = claim.getOwnerUniqueId();
         final GPPlayerData playerData = this.getPlayerDataMap().get(ownerId);
         if (playerData != null) {
@@ -233,6 +301,7 @@ public void addClaim(Claim claimToAdd, boolean writeToStorage) {
             if (!playerClaims.contains(claim)) {
                 playerClaims.add(claim);
             }
+            playerData.updateClaimBlockCost(claim);
         } else if (!claim.isAdminClaim()) {
             this.createPlayerData(ownerId);
         }
@@ -242,23 +311,16 @@ public void addClaim(Claim claimToAdd, boolean writeToStorage) {
     }
 
     public void updateChunkHashes(GPClaim claim) {
-        this.deleteChunkHashes(claim);
-        Set<Long> chunkHashes = claim.getChunkHashes(true);
-        for (Long chunkHash : chunkHashes) {
-            Set<Claim> claimsInChunk = this.getInternalChunksToClaimsMap().get(chunkHash);
-            if (claimsInChunk == null) {
-                claimsInChunk = new HashSet<Claim>();
-                this.getInternalChunksToClaimsMap().put(chunkHash, claimsInChunk);
-            }
-
-            claimsInChunk.add(claim);
-        }
+        this.claimIndex.add(claim);
+        this.invalidateColumnTables(claim);
     }
 
     // Used when parent claims becomes children
     public void removeClaimData(Claim claim) {
         this.worldClaims.remove(claim);
+        this.removeOwnerClaim((GPClaim) claim, claim.getOwnerUniqueId());
         this.deleteChunkHashes((GPClaim) claim);
+        this.invalidateColumnTables((GPClaim) claim);
     }
 
     @Override
@@ -275,6 +337,7 @@ public ClaimResult deleteClaim(Claim claim, boolean deleteChildren) {
 
     public void deleteClaimInternal(Claim claim, boolean deleteChildren) {
         final GPClaim gpClaim = (GPClaim) claim;
+        GPPermissionCache.invalidate();
         List<Claim> subClaims = claim.getChildren(false);
         for (Claim child : subClaims) {
             if (deleteChildren) {
@@ -284,25 +347,36 @@ public void deleteClaimInternal(Claim claim, boolean deleteChildren) {
 
             GPClaim childClaim = (GPClaim) child;
             ((GPClaim) claim).children.remove(childClaim);
+            ((GPClaim) claim).invalidateChildIndex();
             childClaim.parent = gpClaim.parent;
+            childClaim.getInternalClaimData().setParent(gpClaim.parent == null ? null : gpClaim.parent.id);
+            if (childClaim.getClaimStorage().filePath == null) {
+                // not stored in a claim file, only the parent needs to change
+                childClaim.getClaimStorage().save();
+                if (childClaim.parent == null) {
+                    this.addClaim(childClaim, false);
+                }
+                childClaim.updateClaimBlockCost();
+                continue;
+            }
             String fileName = childClaim.getClaimStorage().filePath.getFileName().toString();
             final Path newPath = gpClaim.getClaimStorage().filePath.getParent().getParent().resolve(childClaim.getType().name().toLowerCase()).resolve(fileName);
             try {
-                Files.createDirectories(newPath.getParent());
-                Files.move(childClaim.getClaimStorage().filePath, newPath);
-                childClaim.setClaimStorage(new ClaimStorageData(newPath, this.getWorldProperties().getUniqueId(), (ClaimDataConfig) childClaim.getInternalClaimData()));
+                childClaim.setClaimStorage(childClaim.getClaimStorage().moveTo(newPath));
                 if (childClaim.parent == null) {
                     this.addClaim(childClaim, false);
                 }
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            childClaim.updateClaimBlockCost();
         }
 
         // player may be offline so check is needed
         GPPlayerData playerData = this.getPlayerDataMap().get(claim.getOwnerUniqueId());
         if (playerData != null) {
             playerData.getInternalClaims().remove(claim);
+            playerData.removeClaimBlockCost(claim);
             if (playerData.lastClaim != null) {
                 playerData.lastClaim.clear();
             }
@@ -322,10 +396,15 @@ public void deleteClaimInternal(Claim claim, boolean deleteChildren) {
             }
         }
         this.worldClaims.remove(claim);
+        this.removeOwnerClaim(gpClaim, claim.getOwnerUniqueId());
+        this.removeTownClaim(gpClaim);
         this.claimUniqueIdMap.remove(claim.getUniqueId());
+        this.trustIndex.removeClaim(gpClaim);
         this.deleteChunkHashes((GPClaim) claim);
+        this.invalidateColumnTables(gpClaim);
         if (gpClaim.parent != null) {
             gpClaim.parent.children.remove(claim);
+            gpClaim.parent.invalidateChildIndex();
         }
 
         // revert visuals for all players watching this claim
@@ -348,17 +427,7 @@ public void deleteClaimInternal(Claim claim, boolean deleteChildren) {
     }
 
     private void deleteChunkHashes(GPClaim claim) {
-        Set<Long> chunkHashes = claim.getChunkHashes(false);
-        if (chunkHashes == null) {
-            return;
-        }
-
-        for (Long chunkHash : chunkHashes) {
-            Set<Claim> claimsInChunk = this.getInternalChunksToClaimsMap().get(chunkHash);
-            if (claimsInChunk != null) {
-                claimsInChunk.remove(claim);
-            }
-        }
+        this.claimIndex.remove(claim);
     }
 
     @Nullable
@@ -366,21 +435,50 @@ public Optional<Claim> getClaimByUUID(UUID claimUniqueId) {
         return Optional.ofNullable(this.claimUniqueIdMap.get(claimUniqueId));
     }
 
+    public ClaimTrustIndex getTrustIndex() {
+        return this.trustIndex;
+    }
+
+    @Override
+    public List<Claim> getTrustedClaims(UUID userUniqueId, TrustType type) {
+        return this.getClaimsById(this.trustIndex.getUserTrusts(userUniqueId, type));
+    }
+
+    @Override
+    public List<Claim> getGroupTrustedClaims(String group, TrustType type) {
+        return this.getClaimsById(this.trustIndex.getGroupTrusts(group, type));
+    }
+
+    private List<Claim> getClaimsById(Set<UUID> claimIds) {
+        if (claimIds.isEmpty()) {
+            return ImmutableList.of();
+        }
+        final ImmutableList.Builder<Claim> claims = ImmutableList.builder();
+        for (UUID claimId : claimIds) {
+            final Claim claim = this.claimUniqueIdMap.get(claimId);
+            if (claim != null) {
+                claims.add(claim);
+            }
+        }
+        return claims.build();
+    }
+
+    // Returns the claim list of a player in memory to modify, or a copy built from the owner indexes if the player is not loaded
     public List<Claim> getInternalPlayerClaims(UUID playerUniqueId) {
         final GPPlayerData playerData = this.getPlayerDataMap().get(playerUniqueId);
         if (playerData == null) {
-            return new ArrayList<>();
+            return this.createPlayerClaimList(playerUniqueId);
         }
         return playerData.getInternalClaims();
     }
 
-    @Nullable
     public List<Claim> getPlayerClaims(UUID playerUniqueId) {
         final GPPlayerData playerData = this.getPlayerDataMap().get(playerUniqueId);
         if (playerData == null) {
-            return ImmutableList.of();
+            // evicted players still own their claims
+            return ImmutableList.copyOf(this.createPlayerClaimList(playerUniqueId));
         }
-        return ImmutableList.copyOf(this.getPlayerDataMap().get(playerUniqueId).getInternalClaims());
+        return ImmutableList.copyOf(playerData.getInternalClaims());
     }
 
     public void createWildernessClaim(WorldProperties worldProperties) {
@@ -417,11 +515,11 @@ public Map<UUID, GPPlayerData> getPlayerDataMap() {
 
     @Override
     public Map<Long, Set<Claim>> getChunksToClaimsMap() {
-        return ImmutableMap.copyOf(this.chunksToClaimsMap);
+        return ImmutableMap.copyOf(this.claimIndex.getChunksToClaimsMap());
     }
 
-    public Map<Long, Set<Claim>> getInternalChunksToClaimsMap() {
-        return this.chunksToClaimsMap;
+    public ClaimIndex getClaimIndex() {
+        return this.claimIndex;
     }
 
     public void save() {
@@ -430,6 +528,7 @@ public void save() {
             gpClaim.save();
         }
 
+        // only changed players are queued, so players shared by all worlds are written once
         for (GPPlayerData playerData : this.getPlayerDataMap().values()) {
             playerData.getStorageData().save();
         }
@@ -439,7 +538,12 @@ public void unload() {
         this.playerDataList.clear();
         this.worldClaims.clear();
         this.claimUniqueIdMap.clear();
-        this.chunksToClaimsMap.clear();
+        this.ownerClaimIndex.clear();
+        this.townClaimIndex.clear();
+        this.trustIndex.clear();
+        this.claimIndex.clear();
+        this.chunkColumnTables.clear();
+        this.claimVersion++;
         if (this.theWildernessClaim != null) {
             this.theWildernessClaim.unload();
             this.theWildernessClaim = null;
@@ -460,56 +564,230 @@ public Claim getClaimAt(Location<World> location) {
     // ignoreHeight = TRUE means that a location UNDER an existing claim will return the claim
     public Claim getClaimAt(Location<World> location, GPClaim cachedClaim) {
         GPTimings.CLAIM_GETCLAIM.startTimingIfSync();
-        // check cachedClaim guess first. if the location is inside it, we're done
+        final int x = location.getBlockX();
+        final int y = location.getBlockY();
+        final int z = location.getBlockZ();
+        // column tables are only maintained on the main thread
+        if (Sponge.getServer().isMainThread()) {
+            final Object column = this.getColumnEntry(location.getExtent(), x, z);
+            if (column == null) {
+                GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
+                return this.getWildernessClaim();
+            }
+            if (column != COLUMN_REQUIRES_LOOKUP && ((GPClaim) column).contains(x, y, z)) {
+                GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
+                return (GPClaim) column;
+            }
+        }
+
+        GPClaim claim = null;
+        // check cachedClaim guess first. if the location is inside it, only its children need to be checked
         if (cachedClaim != null && !cachedClaim.isWilderness() && cachedClaim.contains(location, true)) {
-            GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
-            return cachedClaim;
+            claim = cachedClaim;
+        } else {
+            claim = this.claimIndex.getClaimAt(x, y, z);
         }
 
-        Set<Claim> claimsInChunk = this.getInternalChunksToClaimsMap().get(ChunkPos.asLong(location.getBlockX() >> 4, location.getBlockZ() >> 4));
-        if (claimsInChunk == null) {
+        if (claim == null) {
             GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
+            // if no claim found, return the world claim
             return this.getWildernessClaim();
         }
 
-        // TODO change to check deepest level and work its way up to root
-        for (Claim claim : claimsInChunk) {
-            final GPClaim gpClaim = (GPClaim) claim;
-            if (gpClaim.contains(location)) {
-                // when we find a top level claim, if the location is in one of its children,
-                // return the child claim, not the top level claim
-                for (int i = 0; i < gpClaim.children.size(); i++) {
-                    GPClaim child = (GPClaim) gpClaim.children.get(i);
-                    // check if child has children (Town -> Basic -> Subdivision)
-                    for (int j = 0; j < child.children.size(); j++) {
-                        GPClaim innerChild = (GPClaim) child.children.get(j);
-                        for (int k = 0; k < innerChild.children.size(); k++) {
-                            Claim subChild = innerChild.children.get(k);
-                            if (subChild.contains(location)) {
-                                GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
-                                return subChild;
-                            }
-                        }
-
-                        if (innerChild.contains(location)) {
-                            GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
-                            return innerChild;
-                        }
+        claim = getDeepestClaim(claim, x, y, z);
+        GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
+        return claim;
+    }
+
+    @Override
+    public List<Claim> getClaimsAt(List<Location<World>> locations) {
+        return Collections.unmodifiableList(Arrays.<Claim>asList(this.resolveClaimsAt(locations)));
+    }
+
+    // Resolves the claim at every location in one pass. Locations are grouped by chunk so the
+    // column table and index buckets of each chunk are only looked up once.
+    // All locations must be in this manager's world.
+    public GPClaim[] resolveClaimsAt(List<Location<World>> locations) {
+        final GPClaim[] result = new GPClaim[locations.size()];
+        if (result.length == 0) {
+            return result;
+        }
+
+        GPTimings.CLAIM_GETCLAIM.startTimingIfSync();
+        final Long2ObjectOpenHashMap<IntArrayList> chunks = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < result.length; i++) {
+            final Location<World> location = locations.get(i);
+            final long chunkHash = ChunkPos.asLong(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+            IntArrayList indexes = chunks.get(chunkHash);
+            if (indexes == null) {
+                indexes = new IntArrayList();
+                chunks.put(chunkHash, indexes);
+            }
+            indexes.add(i);
+        }
+
+        final World world = locations.get(0).getExtent();
+        final GPClaim wilderness = this.getWildernessClaim();
+        // column tables are only maintained on the main thread
+        final boolean mainThread = Sponge.getServer().isMainThread();
+        for (IntArrayList indexes : chunks.values()) {
+            final Location<World> first = locations.get(indexes.getInt(0));
+            final int chunkX = first.getBlockX() >> 4;
+            final int chunkZ = first.getBlockZ() >> 4;
+            final Object[] columns = mainThread ? this.getColumnTable(world, chunkX, chunkZ) : null;
+            GPClaim[] chunkClaims = null;
+            for (int i = 0; i < indexes.size(); i++) {
+                final int index = indexes.getInt(i);
+                final Location<World> location = locations.get(index);
+                final int x = location.getBlockX();
+                final int y = location.getBlockY();
+                final int z = location.getBlockZ();
+                if (columns != null) {
+                    final Object column = columns.length == 1 ? columns[0] : columns[(z & 15) << 4 | (x & 15)];
+                    if (column == null) {
+                        result[index] = wilderness;
+                        continue;
                     }
-                    if (child.contains(location)) {
-                        GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
-                        return child;
+                    if (column != COLUMN_REQUIRES_LOOKUP && ((GPClaim) column).contains(x, y, z)) {
+                        result[index] = (GPClaim) column;
+                        continue;
                     }
                 }
 
-                GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
-                return gpClaim;
+                if (chunkClaims == null) {
+                    chunkClaims = this.claimIndex.getChunkClaims(chunkX, chunkZ);
+                }
+                GPClaim claim = null;
+                for (GPClaim chunkClaim : chunkClaims) {
+                    if (chunkClaim.contains(x, y, z)) {
+                        claim = chunkClaim;
+                        break;
+                    }
+                }
+                result[index] = claim == null ? wilderness : getDeepestClaim(claim, x, y, z);
             }
         }
 
         GPTimings.CLAIM_GETCLAIM.stopTimingIfSync();
-        // if no claim found, return the world claim
-        return this.getWildernessClaim();
+        return result;
+    }
+
+    // when we find a claim, if the location is in one of its children,
+    // return the deepest child claim instead
+    private static GPClaim getDeepestClaim(GPClaim claim, int x, int y, int z) {
+        GPClaim child = claim.getChildAt(x, y, z);
+        while (child != null) {
+            claim = child;
+            child = claim.getChildAt(x, y, z);
+        }
+        return claim;
+    }
+
+    // Returns the deepest 2D claim of the column, null for wilderness or COLUMN_REQUIRES_LOOKUP
+    private Object getColumnEntry(World world, int x, int z) {
+        final Object[] columns = this.getColumnTable(world, x >> 4, z >> 4);
+        if (columns == null) {
+            return COLUMN_REQUIRES_LOOKUP;
+        }
+        if (columns.length == 1) {
+            return columns[0];
+        }
+        return columns[(z & 15) << 4 | (x & 15)];
+    }
+
+    // Returns null if the chunk is not loaded
+    @Nullable
+    private Object[] getColumnTable(World world, int chunkX, int chunkZ) {
+        final long chunkHash = ChunkPos.asLong(chunkX, chunkZ);
+        Object[] columns = this.chunkColumnTables.get(chunkHash);
+        if (columns == null) {
+            // only cache loaded chunks as tables are dropped on chunk unload
+            if (((WorldServer) world).getChunkProvider().getLoadedChunk(chunkX, chunkZ) == null) {
+                return null;
+            }
+            columns = this.buildColumnTable(chunkX, chunkZ);
+            this.chunkColumnTables.put(chunkHash, columns);
+        }
+        return columns;
+    }
+
+    private Object[] buildColumnTable(int chunkX, int chunkZ) {
+        final int minX = chunkX << 4;
+        final int minZ = chunkZ << 4;
+        final Set<Claim> claims = this.claimIndex.getClaimsInArea(minX, minZ, minX + 15, minZ + 15);
+        if (claims.isEmpty()) {
+            return WILDERNESS_COLUMNS;
+        }
+
+        final Object[] columns = new Object[256];
+        boolean uniform = true;
+        for (int i = 0; i < 256; i++) {
+            columns[i] = resolveColumn(claims, minX + (i & 15), minZ + (i >> 4), null);
+            if (columns[i] != columns[0]) {
+                uniform = false;
+            }
+        }
+        if (uniform) {
+            return columns[0] == null ? WILDERNESS_COLUMNS : new Object[] {columns[0]};
+        }
+        return columns;
+    }
+
+    private static Object resolveColumn(Collection<Claim> claims, int x, int z, @Nullable GPClaim parent) {
+        GPClaim found = null;
+        for (Claim claim : claims) {
+            final GPClaim gpClaim = (GPClaim) claim;
+            if (x < gpClaim.lesserBoundaryCorner.getBlockX() || x > gpClaim.greaterBoundaryCorner.getBlockX()
+                    || z < gpClaim.lesserBoundaryCorner.getBlockZ() || z > gpClaim.greaterBoundaryCorner.getBlockZ()) {
+                continue;
+            }
+            if (found != null || gpClaim.isCuboid()) {
+                return COLUMN_REQUIRES_LOOKUP;
+            }
+            found = gpClaim;
+        }
+
+        if (found == null) {
+            return parent;
+        }
+        // a child reaching above or below its parent can only be resolved with a full lookup
+        if (parent != null && (found.lesserBoundaryCorner.getBlockY() < parent.lesserBoundaryCorner.getBlockY()
+                || found.greaterBoundaryCorner.getBlockY() > parent.greaterBoundaryCorner.getBlockY())) {
+            return COLUMN_REQUIRES_LOOKUP;
+        }
+        return resolveColumn(found.children, x, z, found);
+    }
+
+    public void invalidateColumnTables(GPClaim claim) {
+        this.invalidateColumnTables(claim.lesserBoundaryCorner.getBlockX(), claim.lesserBoundaryCorner.getBlockZ(),
+                claim.greaterBoundaryCorner.getBlockX(), claim.greaterBoundaryCorner.getBlockZ());
+    }
+
+    // Must be called whenever a claim is added, resized or removed in the area
+    public void invalidateColumnTables(int minX, int minZ, int maxX, int maxZ) {
+        this.claimVersion++;
+        if (this.chunkColumnTables.isEmpty()) {
+            return;
+        }
+
+        final long chunkArea = (long) ((maxX >> 4) - (minX >> 4) + 1) * ((maxZ >> 4) - (minZ >> 4) + 1);
+        if (chunkArea > this.chunkColumnTables.size()) {
+            this.chunkColumnTables.clear();
+            return;
+        }
+        for (int x = minX >> 4; x <= maxX >> 4; x++) {
+            for (int z = minZ >> 4; z <= maxZ >> 4; z++) {
+                this.chunkColumnTables.remove(ChunkPos.asLong(x, z));
+            }
+        }
+    }
+
+    public int getClaimVersion() {
+        return this.claimVersion;
+    }
+
+    public void removeColumnTable(int chunkX, int chunkZ) {
+        this.chunkColumnTables.remove(ChunkPos.asLong(chunkX, chunkZ));
     }
 
     @Override
@@ -574,8 +852,8 @@ public void resetPlayerData() {
             if (newAccruedBlocks < 0) {
                 newAccruedBlocks = 0;
             }
-            if (newAccruedBlocks > playerData.optionMaxAccruedBlocks) {
-                newAccruedBlocks = playerData.optionMaxAccruedBlocks;
+            if (newAccruedBlocks > playerData.getMaxAccruedClaimBlocks()) {
+                newAccruedBlocks = playerData.getMaxAccruedClaimBlocks();
             }
             playerStorage.getConfig().setAccruedClaimBlocks(newAccruedBlocks);
             playerStorage.save();
@@ -47,7 +47,7 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
         }
 
         GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(player.getWorld(), player.getUniqueId());
-        if (playerData.optionClaimCreateMode == 0) {
+        if (playerData.getClaimCreateMode() == 0) {
             playerData.setClaimCreateMode(1);
             GriefPreventionPlugin.sendMessage(player, GriefPreventionPlugin.instance.messageData.claimCuboidEnabled.toText());
         } else {
@@ -28,6 +28,7 @@
 import me.ryanhamshire.griefprevention.GPPlayerData;
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
 import org.spongepowered.api.command.CommandException;
 import org.spongepowered.api.command.CommandResult;
@@ -88,6 +89,7 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
                 GriefPreventionPlugin.GLOBAL_SUBJECT.getSubjectData().clearPermissions(contextSet);
             }
         }
+        GPPermissionCache.invalidateClaim(claim.id);
 
         GriefPreventionPlugin.sendMessage(src, GriefPreventionPlugin.instance.messageData.flagResetSuccess.toText());
         return CommandResult.success();
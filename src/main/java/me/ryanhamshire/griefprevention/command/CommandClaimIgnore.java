@@ -29,6 +29,7 @@
 import me.ryanhamshire.griefprevention.GPPlayerData;
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
+import me.ryanhamshire.griefprevention.permission.GPOptionSnapshot;
 import org.spongepowered.api.command.CommandException;
 import org.spongepowered.api.command.CommandResult;
 import org.spongepowered.api.command.CommandSource;
@@ -51,7 +52,8 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
 
         GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(player.getWorld(), player.getUniqueId());
         GPClaim claim = GriefPreventionPlugin.instance.dataStore.getClaimAt(player.getLocation());
-        if (claim.isBasicClaim() && !playerData.ignoreBasicClaims || claim.isWilderness() && !playerData.ignoreWilderness || claim.isAdminClaim() && !playerData.ignoreAdminClaims) {
+        final GPOptionSnapshot options = playerData.getOptions();
+        if (claim.isBasicClaim() && !options.ignoreBasicClaims || claim.isWilderness() && !options.ignoreWilderness || claim.isAdminClaim() && !options.ignoreAdminClaims) {
             final Text message = GriefPreventionPlugin.instance.messageData.permissionClaimIgnore
                     .apply(ImmutableMap.of(
                     "type", claim.getType().name())).build();
@@ -617,6 +617,7 @@ private static Consumer<CommandSource> createClaimInfoConsumer(CommandSource src
                     gpClaim.getInternalClaimData().setRequiresClaimBlocks(!requiresClaimBlocks);
                     gpClaim.getInternalClaimData().setRequiresSave(true);
                     gpClaim.getClaimStorage().save();
+                    gpClaim.updateClaimBlockCost();
                     break;
                 case SIZE_RESTRICTIONS :
                     boolean sizeRestrictions = gpClaim.getInternalClaimData().hasSizeRestrictions();
@@ -26,6 +26,7 @@
 
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import org.spongepowered.api.command.CommandException;
 import org.spongepowered.api.command.CommandResult;
 import org.spongepowered.api.command.CommandSource;
@@ -53,6 +54,7 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
             return CommandResult.success();
         }
         claim.getData().setInheritParent(!claim.getData().doesInheritParent());
+        GPPermissionCache.invalidateClaim(claim.id);
         claim.getInternalClaimData().setRequiresSave(true);
 
         if (!claim.getData().doesInheritParent()) {
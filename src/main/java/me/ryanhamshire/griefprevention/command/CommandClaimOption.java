@@ -30,6 +30,7 @@
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
+import me.ryanhamshire.griefprevention.task.PlayerOptionRefreshTask;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandException;
 import org.spongepowered.api.command.CommandResult;
@@ -114,6 +115,7 @@ public CommandResult execute(CommandSource src, CommandContext args) throws Comm
        GriefPreventionPlugin.GLOBAL_SUBJECT.getSubjectData().setOption(contexts, option, value.toString())
            .thenAccept(consumer -> {
                if (consumer.booleanValue()) {
+                   PlayerOptionRefreshTask.queueChildren(null);
                    GriefPreventionPlugin.sendMessage(src, Text.of("Set option ", TextColors.AQUA, flagOption, TextColors.WHITE, " to ", TextColors.GREEN, value, TextColors.WHITE, " on group ", TextColors.GOLD, GriefPreventionPlugin.GLOBAL_SUBJECT.getIdentifier(), TextColors.WHITE, "."));
                } else {
                    GriefPreventionPlugin.sendMessage(src, Text.of(TextColors.RED, "The permission plugin failed to set the option."));
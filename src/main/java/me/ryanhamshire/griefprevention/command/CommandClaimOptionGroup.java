@@ -30,6 +30,7 @@
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
+import me.ryanhamshire.griefprevention.task.PlayerOptionRefreshTask;
 import me.ryanhamshire.griefprevention.util.PermissionUtils;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandException;
@@ -123,6 +124,7 @@ public CommandResult execute(CommandSource src, CommandContext args) throws Comm
         subj.getSubjectData().setOption(contexts, option, value.toString())
             .thenAccept(consumer -> {
                 if (consumer.booleanValue()) {
+                    PlayerOptionRefreshTask.queueChildren(subj);
                     GriefPreventionPlugin.sendMessage(src, Text.of("Set option ", TextColors.AQUA, flagOption, TextColors.WHITE, " to ", TextColors.GREEN, value, TextColors.WHITE, " on group ", TextColors.GOLD, subj.getIdentifier(), TextColors.WHITE, "."));
                 } else {
                     GriefPreventionPlugin.sendMessage(src, Text.of(TextColors.RED, "The permission plugin failed to set the option."));
@@ -30,6 +30,7 @@
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
+import me.ryanhamshire.griefprevention.task.PlayerOptionRefreshTask;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandException;
 import org.spongepowered.api.command.CommandResult;
@@ -117,6 +118,7 @@ public CommandResult execute(CommandSource src, CommandContext args) throws Comm
         user.getSubjectData().setOption(contexts, option, value.toString())
             .thenAccept(consumer -> {
                 if (consumer.booleanValue()) {
+                    PlayerOptionRefreshTask.queuePlayer(user.getUniqueId());
                     GriefPreventionPlugin.sendMessage(src, Text.of("Set option ", TextColors.AQUA, flagOption, TextColors.WHITE, " to ", TextColors.GREEN, value, TextColors.WHITE, " on user ", TextColors.GOLD, user.getName(), TextColors.WHITE, "."));
                 } else {
                     GriefPreventionPlugin.sendMessage(src, Text.of(TextColors.RED, "The permission plugin failed to set the option."));
@@ -29,6 +29,7 @@
 import me.ryanhamshire.griefprevention.GPPlayerData;
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import me.ryanhamshire.griefprevention.util.PlayerUtils;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandException;
@@ -75,10 +76,10 @@ public CommandResult execute(CommandSource src, CommandContext args) throws Comm
         final Text message = GriefPreventionPlugin.instance.messageData.permissionClaimManage
                 .apply(ImmutableMap.of(
                 "type", claim.getType().name())).build();
-        if (claim.isWilderness() && !playerData.canManageWilderness) {
+        if (claim.isWilderness() && !playerData.getOptions().canManageWilderness) {
             GriefPreventionPlugin.sendMessage(src, message);
             return CommandResult.success();
-        } else if (claim.isAdminClaim() && !playerData.canManageAdminClaims) {
+        } else if (claim.isAdminClaim() && !playerData.getOptions().canManageAdminClaims) {
             GriefPreventionPlugin.sendMessage(src, message);
             return CommandResult.success();
         }
@@ -112,6 +113,7 @@ public CommandResult execute(CommandSource src, CommandContext args) throws Comm
         }
 
         user.getSubjectData().setPermission(contexts, permission, tristateValue);
+        GPPermissionCache.invalidate();
         GriefPreventionPlugin.sendMessage(src, Text.of("Set permission ", TextColors.AQUA, permission, TextColors.WHITE, " to ", TextColors.GREEN, value, TextColors.WHITE, " on user ", TextColors.GOLD, user.getName(), TextColors.WHITE, "."));
 
         return CommandResult.success();
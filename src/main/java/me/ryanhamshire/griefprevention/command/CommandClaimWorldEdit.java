@@ -86,7 +86,7 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
             Sponge.getCauseStackManager().pushCause(player);
             final ClaimResult result = GriefPrevention.getApi().createClaimBuilder()
                 .bounds(lesser, greater)
-                .cuboid(playerData.optionClaimCreateMode == 1)
+                .cuboid(playerData.getClaimCreateMode() == 1)
                 .owner(player.getUniqueId())
                 .sizeRestrictions(true)
                 .type(PlayerUtils.getClaimTypeFromShovel(playerData.shovelMode))
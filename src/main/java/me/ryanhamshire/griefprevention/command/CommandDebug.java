@@ -25,7 +25,12 @@
 package me.ryanhamshire.griefprevention.command;
 
 import me.ryanhamshire.griefprevention.GPDebugData;
+import me.ryanhamshire.griefprevention.GPPlayerData;
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageWriter;
+import me.ryanhamshire.griefprevention.configuration.PlayerStorageWriter;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandResult;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.command.args.CommandContext;
@@ -33,6 +38,10 @@
 import org.spongepowered.api.entity.living.player.User;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.format.TextColors;
+import org.spongepowered.api.world.World;
+
+import java.util.HashSet;
+import java.util.Set;
 
 public class CommandDebug implements CommandExecutor {
 
@@ -42,7 +51,57 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
         User user = ctx.<User>getOne("user").orElse(null);
         GPDebugData debugData = null;
         boolean paste = false;
-        if (target.equalsIgnoreCase("on")) {
+        if (target.equalsIgnoreCase("cache")) {
+            final long hits = GPPermissionCache.getHits();
+            final long misses = GPPermissionCache.getMisses();
+            final long total = hits + misses;
+            final String hitRate = total == 0 ? "0.0" : String.format("%.1f", hits * 100.0 / total);
+            src.sendMessage(Text.of(
+                    TextColors.RESET, "[", TextColors.AQUA, "GP", TextColors.WHITE, "] ",
+                    TextColors.GRAY, "Permission cache: ", TextColors.WHITE, "Size ", TextColors.GOLD, GPPermissionCache.getSize(), TextColors.WHITE, " | ",
+                    "Hits ", TextColors.GREEN, hits, TextColors.WHITE, " | ",
+                    "Misses ", TextColors.RED, misses, TextColors.WHITE, " | ",
+                    "Hit rate ", TextColors.GOLD, hitRate, "%"));
+            GPPermissionCache.resetStats();
+            return CommandResult.success();
+        } else if (target.equalsIgnoreCase("claimblocks")) {
+            // verify the running claim block totals against a full recount
+            final Set<GPPlayerData> checked = new HashSet<>();
+            int mismatched = 0;
+            for (World world : Sponge.getServer().getWorlds()) {
+                for (GPPlayerData playerData : GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(world.getProperties()).getPlayerDataMap().values()) {
+                    if ((user != null && !playerData.playerID.equals(user.getUniqueId())) || !checked.add(playerData)) {
+                        continue;
+                    }
+                    final int difference = playerData.recountClaimsCost();
+                    if (difference != 0) {
+                        mismatched++;
+                        src.sendMessage(Text.of(
+                                TextColors.RESET, "[", TextColors.AQUA, "GP", TextColors.WHITE, "] ",
+                                TextColors.GOLD, playerData.getPlayerName(), TextColors.GRAY, " in ", TextColors.WHITE, world.getName(),
+                                TextColors.GRAY, " was off by ", TextColors.RED, difference, TextColors.GRAY, " claim blocks."));
+                    }
+                }
+            }
+            src.sendMessage(Text.of(
+                    TextColors.RESET, "[", TextColors.AQUA, "GP", TextColors.WHITE, "] ",
+                    TextColors.GRAY, "Claim blocks: ", TextColors.WHITE, "Checked ", TextColors.GOLD, checked.size(), TextColors.WHITE, " | ",
+                    "Mismatched ", mismatched == 0 ? TextColors.GREEN : TextColors.RED, mismatched));
+            return CommandResult.success();
+        } else if (target.equalsIgnoreCase("storage")) {
+            src.sendMessage(Text.of(
+                    TextColors.RESET, "[", TextColors.AQUA, "GP", TextColors.WHITE, "] ",
+                    TextColors.GRAY, "Claim writes: ", TextColors.WHITE, "Pending ", TextColors.GOLD, ClaimStorageWriter.getPendingCount(), TextColors.WHITE, " | ",
+                    "Journaled ", TextColors.GREEN, ClaimStorageWriter.getWrites(), TextColors.WHITE, " | ",
+                    "Uncompacted ", TextColors.GOLD, ClaimStorageWriter.getUncompactedCount(), TextColors.WHITE, " | ",
+                    "Lag ", TextColors.GOLD, ClaimStorageWriter.getLag(), "ms", TextColors.WHITE, " | ",
+                    "Max lag ", TextColors.RED, ClaimStorageWriter.getMaxLag(), "ms"));
+            src.sendMessage(Text.of(
+                    TextColors.RESET, "[", TextColors.AQUA, "GP", TextColors.WHITE, "] ",
+                    TextColors.GRAY, "Player writes: ", TextColors.WHITE, "Pending ", TextColors.GOLD, PlayerStorageWriter.getPendingCount()));
+            ClaimStorageWriter.resetStats();
+            return CommandResult.success();
+        } else if (target.equalsIgnoreCase("on")) {
             debugData = getOrCreateDebugUser(src, user, true);
         } else if (target.equalsIgnoreCase("record")) {
             debugData = getOrCreateDebugUser(src, user, false);
@@ -25,6 +25,9 @@
 package me.ryanhamshire.griefprevention.command;
 
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.permission.GPOptionSnapshot;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
+import me.ryanhamshire.griefprevention.task.PlayerOptionRefreshTask;
 import org.spongepowered.api.command.CommandResult;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.command.args.CommandContext;
@@ -35,6 +38,10 @@ public class CommandGpReload implements CommandExecutor {
     @Override
     public CommandResult execute(CommandSource src, CommandContext ctx) {
         GriefPreventionPlugin.instance.loadConfig();
+        // config flag defaults and bans may have changed
+        GPPermissionCache.invalidate();
+        GPOptionSnapshot.resetRegisteredDefaults();
+        PlayerOptionRefreshTask.queueChildren(null);
         GriefPreventionPlugin.sendMessage(src, GriefPreventionPlugin.instance.messageData.pluginReload.toText());
         return CommandResult.success();
     }
@@ -52,6 +52,7 @@
 import me.ryanhamshire.griefprevention.event.GPUserTrustClaimEvent;
 import me.ryanhamshire.griefprevention.permission.GPOptionHandler;
 import me.ryanhamshire.griefprevention.permission.GPOptions;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
 import me.ryanhamshire.griefprevention.util.PermissionUtils;
 import me.ryanhamshire.griefprevention.util.TaskUtils;
@@ -157,7 +158,7 @@ else if (claim.children.size() > 0 && !deleteTopLevelClaim) {
             if (!claim.isSubdivision() && !claim.isAdminClaim()) {
                 playerData.setAccruedClaimBlocks(
                         playerData.getAccruedClaimBlocks() - (int) Math
-                                .ceil((claim.getClaimBlocks() * (1 - playerData.optionAbandonReturnRatioBasic))));
+                                .ceil((claim.getClaimBlocks() * (1 - playerData.getAbandonedReturnRatio()))));
 
                 // tell the player how many claim blocks he has left
                 int remainingBlocks = playerData.getRemainingClaimBlocks();
@@ -399,7 +400,7 @@ public static FlagResult applyFlagPermission(CommandSource src, Subject subject,
             Player player = (Player) src;
             GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(player.getWorld(), player.getUniqueId());
             Tristate result = Tristate.UNDEFINED;
-            if (playerData.canManageAdminClaims) {
+            if (playerData.getOptions().canManageAdminClaims) {
                 result = Tristate.fromBoolean(src.hasPermission(GPPermissions.ADMIN_CLAIM_FLAGS + "." + basePermission));
             } else if (GriefPreventionPlugin.getActiveConfig(player.getWorld().getProperties()).getConfig().flags.getUserClaimFlags().contains(basePermission)) {
                 result = Tristate.fromBoolean(src.hasPermission(GPPermissions.USER_CLAIM_FLAGS + "." + basePermission));
@@ -483,6 +484,7 @@ public static FlagResult applyFlagPermission(CommandSource src, Subject subject,
             }
 
             GriefPreventionPlugin.GLOBAL_SUBJECT.getSubjectData().setPermission(contexts, flagPermission, value);
+            invalidatePermissions(claim, contexts);
             if (!clicked) {
                 src.sendMessage(Text.of(Text.builder()
                     .append(Text.of(TextColors.WHITE, "\n[", TextColors.AQUA, "Return to flags", TextColors.WHITE, "]\n"))
@@ -505,6 +507,7 @@ TextColors.LIGHT_PURPLE, getClickableText(src, GriefPreventionPlugin.GLOBAL_SUBJ
             }
 
             subject.getSubjectData().setPermission(contexts, flagPermission, value);
+            invalidatePermissions(claim, contexts);
             if (!clicked) {
                 src.sendMessage(Text.of(Text.builder()
                         .append(Text.of(TextColors.WHITE, "\n[", TextColors.AQUA, "Return to flags", TextColors.WHITE, "]\n"))
@@ -521,6 +524,15 @@ TextColors.LIGHT_PURPLE, getClickableText(src, subject, subjectName, contexts, f
         return new GPFlagResult(FlagResultType.SUCCESS);
     }
 
+    // a flag set in the claim's own context only needs the claim marked in the flag table
+    private static void invalidatePermissions(GPClaim claim, Set<Context> contexts) {
+        if (contexts.contains(claim.getContext())) {
+            GPPermissionCache.invalidateClaim(claim.id);
+        } else {
+            GPPermissionCache.invalidate();
+        }
+    }
+
     public static TextColor getFlagTypeColor(FlagType type) {
         TextColor color = TextColors.LIGHT_PURPLE;
         if (type == FlagType.CLAIM) {
@@ -552,6 +564,7 @@ public static Consumer<CommandSource> createFlagConsumer(CommandSource src, Subj
             String target = flagPermission.replace(GPPermissions.FLAG_BASE + ".",  "");
             Set<Context> newContexts = new HashSet<>(contexts);
             subject.getSubjectData().setPermission(newContexts, flagPermission, newValue);
+            GPPermissionCache.invalidate();
             src.sendMessage(Text.of(
                     TextColors.GREEN, "Set ", flagTypeText, " permission ", 
                     TextColors.AQUA, target, 
@@ -607,7 +620,7 @@ public static void showClaims(CommandSource src, List<Claim> claims, int height,
                 if (height != 0) {
                     height = playerData.lastValidInspectLocation != null ? playerData.lastValidInspectLocation.getBlockY() : player.getProperty(EyeLocationProperty.class).get().getValue().getFloorY();
                 }
-                Visualization visualization = Visualization.fromClaims(claims, playerData.optionClaimCreateMode == 1 ? height : player.getProperty(EyeLocationProperty.class).get().getValue().getFloorY(), player.getLocation(), playerData, null);
+                Visualization visualization = Visualization.fromClaims(claims, playerData.getClaimCreateMode() == 1 ? height : player.getProperty(EyeLocationProperty.class).get().getValue().getFloorY(), player.getLocation(), playerData, null);
                 visualization.apply(player);
             } else {
                 GPClaim gpClaim = (GPClaim) claims.get(0);
@@ -1013,8 +1026,7 @@ public static void handleUserTrustCommand(Player player, TrustType trustType, Us
 
             for (Claim currentClaim : targetClaims) {
                 GPClaim gpClaim = (GPClaim) currentClaim;
-                final List<UUID> trustList = gpClaim.getUserTrustList(trustType);
-                if (trustList.contains(user.getUniqueId())) {
+                if (gpClaim.getUserTrustList(trustType).contains(user.getUniqueId())) {
                     final Text message = GriefPreventionPlugin.instance.messageData.trustAlreadyHas
                         .apply(ImmutableMap.of(
                             "target", user.getName(),
@@ -1023,7 +1035,7 @@ public static void handleUserTrustCommand(Player player, TrustType trustType, Us
                     return;
                 }
 
-                trustList.add(user.getUniqueId());
+                gpClaim.addUserTrustInternal(user.getUniqueId(), trustType);
                 gpClaim.getInternalClaimData().setRequiresSave(true);
                 gpClaim.getInternalClaimData().save();
             }
@@ -1097,10 +1109,9 @@ public static void handleGroupTrustCommand(Player player, TrustType trustType, S
             GPClaim gpClaim = (GPClaim) currentClaim;
             Set<Context> contexts = new HashSet<>(); 
             contexts.add(gpClaim.getContext());
-            if (!gpClaim.getGroupTrustList(trustType).contains(group)) {
-                gpClaim.getGroupTrustList(trustType).add(group);
-            }
+            gpClaim.addGroupTrustInternal(group, trustType);
             subject.getSubjectData().setPermission(contexts, permission, Tristate.TRUE);
+            GPPermissionCache.invalidateClaim(gpClaim.id);
             gpClaim.getInternalClaimData().setRequiresSave(true);
         }
 
@@ -0,0 +1,131 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.command;
+
+import me.ryanhamshire.griefprevention.DataStore;
+import me.ryanhamshire.griefprevention.DatabaseDataStore;
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.configuration.category.DatabaseCategory;
+import me.ryanhamshire.griefprevention.migrator.StorageMigrator;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+import org.spongepowered.api.world.World;
+import org.spongepowered.api.world.storage.WorldProperties;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+public class CommandMigrateStorage implements CommandExecutor {
+
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+
+    @Override
+    public CommandResult execute(CommandSource src, CommandContext ctx) throws CommandException {
+        final StorageMigrator.Target target = ctx.<StorageMigrator.Target>getOne("target").get();
+        final DataStore dataStore = GriefPreventionPlugin.instance.dataStore;
+        final boolean databaseMode = dataStore instanceof DatabaseDataStore;
+        if (databaseMode == (target == StorageMigrator.Target.DATABASE)) {
+            throw new CommandException(Text.of(TextColors.RED, "Claims are already stored in " + (databaseMode ? "the database." : "files.")));
+        }
+
+        final DatabaseCategory databaseConfig = DataStore.globalConfig.getConfig().database;
+        if (databaseConfig.dbURL.isEmpty()) {
+            throw new CommandException(Text.of(TextColors.RED, "No database url is set in the global config. Set it and run /gpreload first."));
+        }
+        if (!RUNNING.compareAndSet(false, true)) {
+            throw new CommandException(Text.of(TextColors.RED, "A storage migration is already running."));
+        }
+
+        final DataSource dataSource;
+        try {
+            dataSource = DatabaseDataStore.getDataSource(databaseConfig.dbURL, databaseConfig.dbUsername, databaseConfig.dbPassword);
+        } catch (Exception e) {
+            RUNNING.set(false);
+            throw new CommandException(Text.of(TextColors.RED, "Could not connect to the database: " + e.getMessage()), e);
+        }
+
+        // a checkpoint is only resumed if every change since it was written has been recorded
+        final boolean resume = StorageMigrator.isRecording();
+        // anything saved from here on is copied again by the final pass
+        StorageMigrator.startRecording();
+        saveAndFlush(dataStore);
+
+        final StorageMigrator migrator = new StorageMigrator(GriefPreventionPlugin.instance.getConfigPath(), dataSource::getConnection,
+                DataStore.USE_GLOBAL_PLAYER_STORAGE, worldPath -> {
+                    final WorldProperties worldProperties = Sponge.getServer().getWorldProperties(worldPath.getFileName().toString()).orElse(null);
+                    final UUID worldUniqueId = worldProperties != null ? worldProperties.getUniqueId() : null;
+                    return worldUniqueId != null ? worldUniqueId : StorageMigrator.readWorldUniqueId(worldPath);
+                }, message -> GriefPreventionPlugin.instance.getLogger().info(message), Runtime.getRuntime().availableProcessors(), false);
+        src.sendMessage(Text.of(TextColors.GREEN, "Migrating storage to " + target.name().toLowerCase() + ". Progress is shown in the server log."));
+        Sponge.getScheduler().createTaskBuilder().async().execute(() -> {
+            try {
+                if (!resume) {
+                    migrator.discardCheckpoint();
+                }
+                migrator.migrate(target);
+            } catch (Throwable t) {
+                // recording continues, so the run resuming this one also copies changes made in between
+                RUNNING.set(false);
+                GriefPreventionPlugin.instance.getLogger().error("Storage migration failed. Run it again to resume.", t);
+                Sponge.getScheduler().createTaskBuilder().execute(() -> src.sendMessage(Text.of(TextColors.RED,
+                        "Storage migration failed, see the server log. Run it again to resume."))).submit(GriefPreventionPlugin.instance);
+                return;
+            }
+            // the final pass runs on the main thread so no claim or player can change while it copies
+            Sponge.getScheduler().createTaskBuilder().execute(() -> copyChanges(src, dataStore, migrator, target)).submit(GriefPreventionPlugin.instance);
+        }).submit(GriefPreventionPlugin.instance);
+        return CommandResult.success();
+    }
+
+    private static void copyChanges(CommandSource src, DataStore dataStore, StorageMigrator migrator, StorageMigrator.Target target) {
+        try {
+            saveAndFlush(dataStore);
+            migrator.copyChanges(target);
+            src.sendMessage(Text.of(TextColors.GREEN, "Storage migration finished. " + (target == StorageMigrator.Target.DATABASE
+                    ? "Restart the server to use the database." : "Clear the database url in the global config and restart to use files.")));
+        } catch (Throwable t) {
+            GriefPreventionPlugin.instance.getLogger().error("Storage migration failed to copy the changes made while it ran. Run it again.", t);
+            src.sendMessage(Text.of(TextColors.RED, "Storage migration failed, see the server log. Run it again."));
+        } finally {
+            RUNNING.set(false);
+        }
+    }
+
+    // Writes the current state of all claims and players, compacting claim journals so claim files can be read directly
+    private static void saveAndFlush(DataStore dataStore) {
+        for (World world : Sponge.getServer().getWorlds()) {
+            dataStore.saveWorldData(world.getProperties());
+        }
+        dataStore.flushSaves();
+    }
+}
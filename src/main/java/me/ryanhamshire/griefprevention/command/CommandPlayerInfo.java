@@ -32,6 +32,7 @@
 import me.ryanhamshire.griefprevention.api.claim.ClaimBlockSystem;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
 import me.ryanhamshire.griefprevention.permission.GPOptionHandler;
+import me.ryanhamshire.griefprevention.permission.GPOptionSnapshot;
 import me.ryanhamshire.griefprevention.permission.GPOptions;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
 import org.spongepowered.api.Sponge;
@@ -99,18 +100,19 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
                 }
             }
         }
+        final GPOptionSnapshot options = playerData.getOptions();
         Text claimSizeLimit = Text.of(TextColors.GRAY, "none");
-        if (playerData.optionMaxClaimSizeBasicX != 0 || playerData.optionMaxClaimSizeBasicY != 0 || playerData.optionMaxClaimSizeBasicZ != 0) {
-            claimSizeLimit = Text.of(TextColors.GRAY, playerData.optionMaxClaimSizeBasicX + "," + playerData.optionMaxClaimSizeBasicY + "," + playerData.optionMaxClaimSizeBasicZ);
+        if (options.maxClaimSizeBasicX != 0 || options.maxClaimSizeBasicY != 0 || options.maxClaimSizeBasicZ != 0) {
+            claimSizeLimit = Text.of(TextColors.GRAY, options.maxClaimSizeBasicX + "," + options.maxClaimSizeBasicY + "," + options.maxClaimSizeBasicZ);
         }
 
         Text townTaxRate = Text.of(
-                TextColors.GRAY, "TOWN", TextColors.WHITE, " : ", TextColors.GREEN, playerData.optionTaxRateTown, 
-                TextColors.GRAY, " BASIC", TextColors.WHITE, " : ", TextColors.GREEN, playerData.optionTaxRateTownBasic, 
-                TextColors.GRAY, " SUB", TextColors.WHITE, " : ", TextColors.GREEN, playerData.optionTaxRateTownSubdivision);
+                TextColors.GRAY, "TOWN", TextColors.WHITE, " : ", TextColors.GREEN, options.taxRateTown, 
+                TextColors.GRAY, " BASIC", TextColors.WHITE, " : ", TextColors.GREEN, options.taxRateTownBasic, 
+                TextColors.GRAY, " SUB", TextColors.WHITE, " : ", TextColors.GREEN, options.taxRateTownSubdivision);
         Text claimTaxRate = Text.of(
-                TextColors.GRAY, "BASIC", TextColors.WHITE, " : ", TextColors.GREEN, playerData.optionTaxRateBasic, 
-                TextColors.GRAY, " SUB", TextColors.WHITE, " : ", TextColors.GREEN, playerData.optionTaxRateSubdivision);
+                TextColors.GRAY, "BASIC", TextColors.WHITE, " : ", TextColors.GREEN, options.taxRateBasic, 
+                TextColors.GRAY, " SUB", TextColors.WHITE, " : ", TextColors.GREEN, options.taxRateSubdivision);
         Text currentTaxRateText = Text.of(TextColors.YELLOW, "Current Claim Tax Rate", TextColors.WHITE, " : ", TextColors.RED, "N/A");
         if (src instanceof Player) {
             Player player = (Player) src;
@@ -129,9 +131,9 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
         final Text uuidText = Text.of(TextColors.YELLOW, "UUID", WHITE_SEMI_COLON, TextColors.GRAY, user.getUniqueId());
         final Text worldText = Text.of(TextColors.YELLOW, "World", WHITE_SEMI_COLON, TextColors.GRAY, worldProperties.getWorldName());
         final Text sizeLimitText = Text.of(TextColors.YELLOW, "Claim Size Limits", WHITE_SEMI_COLON, claimSizeLimit);
-        final Text initialBlockText = Text.of(TextColors.YELLOW, "Initial Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.optionInitialClaimBlocks);
-        final Text accruedBlockText = Text.of(TextColors.YELLOW, "Accrued Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.getAccruedClaimBlocks(), TextColors.GRAY, " (", TextColors.LIGHT_PURPLE, playerData.optionBlocksAccruedPerHour, TextColors.WHITE, " per hour", TextColors.GRAY, ")");
-        final Text maxAccruedBlockText = Text.of(TextColors.YELLOW, "Max Accrued Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.optionMaxAccruedBlocks);
+        final Text initialBlockText = Text.of(TextColors.YELLOW, "Initial Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.getInitialClaimBlocks());
+        final Text accruedBlockText = Text.of(TextColors.YELLOW, "Accrued Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.getAccruedClaimBlocks(), TextColors.GRAY, " (", TextColors.LIGHT_PURPLE, playerData.getBlocksAccruedPerHour(), TextColors.WHITE, " per hour", TextColors.GRAY, ")");
+        final Text maxAccruedBlockText = Text.of(TextColors.YELLOW, "Max Accrued Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.getMaxAccruedClaimBlocks());
         final Text bonusBlockText = Text.of(TextColors.YELLOW, "Bonus Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.getBonusClaimBlocks());
         final Text remainingBlockText = Text.of(TextColors.YELLOW, "Remaining Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.getRemainingClaimBlocks());
         final Text minLevelText = Text.of(TextColors.YELLOW, "Minimum Claim Level", WHITE_SEMI_COLON, TextColors.GREEN, playerData.getMinClaimLevel());
@@ -140,7 +142,7 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
         final Text globalTownTaxText = Text.of(TextColors.YELLOW, "Global Town Tax Rate", WHITE_SEMI_COLON, TextColors.GREEN, townTaxRate);
         final Text globalClaimTaxText = Text.of(TextColors.YELLOW, "Global Claim Tax Rate", WHITE_SEMI_COLON, TextColors.GREEN, claimTaxRate);
         final Text totalTaxText = Text.of(TextColors.YELLOW, "Total Tax", WHITE_SEMI_COLON, TextColors.GREEN, playerData.getTotalTax());
-        final Text totalBlockText = Text.of(TextColors.YELLOW, "Total Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.optionInitialClaimBlocks + playerData.getAccruedClaimBlocks() + playerData.getBonusClaimBlocks());
+        final Text totalBlockText = Text.of(TextColors.YELLOW, "Total Blocks", WHITE_SEMI_COLON, TextColors.GREEN, playerData.getInitialClaimBlocks() + playerData.getAccruedClaimBlocks() + playerData.getBonusClaimBlocks());
         final Text totalClaimableChunkText = Text.of(TextColors.YELLOW, "Total Claimable Chunks", WHITE_SEMI_COLON, TextColors.GREEN, Math.round(claimableChunks * 100.0)/100.0);
         final Text totalClaimText = Text.of(TextColors.YELLOW, "Total Claims", WHITE_SEMI_COLON, TextColors.GREEN, claimList.size());
 
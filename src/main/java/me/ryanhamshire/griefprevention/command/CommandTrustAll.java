@@ -49,7 +49,6 @@
 import org.spongepowered.api.text.format.TextColors;
 
 import java.util.List;
-import java.util.UUID;
 
 public class CommandTrustAll implements CommandExecutor {
 
@@ -144,25 +143,19 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
 
     private void addAllUserTrust(Claim claim, User user) {
         GPClaim gpClaim = (GPClaim) claim;
-        List<UUID> trustList = gpClaim.getUserTrustList(TrustType.BUILDER);
-        if (!trustList.contains(user.getUniqueId())) {
-            trustList.add(user.getUniqueId());
+        if (gpClaim.addUserTrustInternal(user.getUniqueId(), TrustType.BUILDER)) {
+            gpClaim.getInternalClaimData().setRequiresSave(true);
         }
-
-        gpClaim.getInternalClaimData().setRequiresSave(true);
         for (Claim child : gpClaim.children) {
-            this.addAllGroupTrust(child, user);
+            this.addAllUserTrust(child, user);
         }
     }
 
     private void addAllGroupTrust(Claim claim, Subject group) {
         GPClaim gpClaim = (GPClaim) claim;
-        List<String> trustList = gpClaim.getGroupTrustList(TrustType.BUILDER);
-        if (!trustList.contains(group.getIdentifier())) {
-            trustList.add(group.getIdentifier());
+        if (gpClaim.addGroupTrustInternal(group.getIdentifier(), TrustType.BUILDER)) {
+            gpClaim.getInternalClaimData().setRequiresSave(true);
         }
-
-        gpClaim.getInternalClaimData().setRequiresSave(true);
         for (Claim child : gpClaim.children) {
             this.addAllGroupTrust(child, group);
         }
@@ -33,6 +33,7 @@
 import me.ryanhamshire.griefprevention.claim.GPClaim;
 import me.ryanhamshire.griefprevention.event.GPGroupTrustClaimEvent;
 import me.ryanhamshire.griefprevention.event.GPUserTrustClaimEvent;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
 import me.ryanhamshire.griefprevention.util.PermissionUtils;
 import org.spongepowered.api.Sponge;
@@ -125,17 +126,13 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
                     return CommandResult.success();
                 }
 
-                for (TrustType trustType : TrustType.values()) {
-                    claim.getUserTrustList(trustType).remove(user.getUniqueId());
-                }
+                claim.removeAllTrustsFromUser(user.getUniqueId());
             } else {
                 Set<Context> contexts = new HashSet<>();
                 contexts.add(claim.getContext());
                 if (!PermissionUtils.hasGroupSubject(group)) {
-                    for (TrustType trustType : TrustType.values()) {
-                        claim.getGroupTrustList(trustType).remove(group);
-                        claim.getInternalClaimData().setRequiresSave(true);
-                    }
+                    claim.removeAllTrustsFromGroup(group);
+                    claim.getInternalClaimData().setRequiresSave(true);
 
                     GriefPreventionPlugin.sendMessage(player, GriefPreventionPlugin.instance.messageData.commandGroupInvalid.toText());
                     return CommandResult.success();
@@ -154,7 +151,8 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
 
                 for (TrustType trustType : TrustType.values()) {
                     subject.getSubjectData().setPermission(contexts, GPPermissions.getTrustPermission(trustType), Tristate.UNDEFINED);
-                    claim.getGroupTrustList(trustType).remove(group);
+                    GPPermissionCache.invalidate();
+                    claim.removeGroupTrustInternal(group, trustType);
                 }
             }
         }
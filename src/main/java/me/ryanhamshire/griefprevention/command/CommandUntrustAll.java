@@ -30,10 +30,12 @@
 import me.ryanhamshire.griefprevention.GPPlayerData;
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
 import me.ryanhamshire.griefprevention.api.claim.Claim;
+import me.ryanhamshire.griefprevention.api.claim.ClaimManager;
 import me.ryanhamshire.griefprevention.api.claim.TrustType;
 import me.ryanhamshire.griefprevention.claim.GPClaim;
 import me.ryanhamshire.griefprevention.event.GPGroupTrustClaimEvent;
 import me.ryanhamshire.griefprevention.event.GPUserTrustClaimEvent;
+import me.ryanhamshire.griefprevention.permission.GPPermissionCache;
 import me.ryanhamshire.griefprevention.permission.GPPermissions;
 import me.ryanhamshire.griefprevention.util.PermissionUtils;
 import org.spongepowered.api.Sponge;
@@ -110,9 +112,7 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
                     return CommandResult.success();
                 }
 
-                for (Claim claim : claimList) {
-                    this.removeAllUserTrust(claim, user);
-                }
+                this.removeAllUserTrust(claimList, user);
             } else {
                 if (!PermissionUtils.hasGroupSubject(group)) {
                     GriefPreventionPlugin.sendMessage(player, GriefPreventionPlugin.instance.messageData.commandGroupInvalid.toText());
@@ -142,31 +142,68 @@ public CommandResult execute(CommandSource src, CommandContext ctx) {
         return CommandResult.success();
     }
 
-    private void removeAllUserTrust(Claim claim, User user) {
+    // Trust stored in claim data is found through the trust index of each world, trust
+    // granted through permissions is not indexed so every claim still needs to be visited
+    private void removeAllUserTrust(List<Claim> claimList, User user) {
+        final Set<Claim> playerClaims = new HashSet<>(claimList);
+        final Set<ClaimManager> claimManagers = new HashSet<>();
+        for (Claim claim : claimList) {
+            claimManagers.add(claim.getClaimManager());
+        }
+
+        for (ClaimManager claimManager : claimManagers) {
+            for (Claim claim : claimManager.getTrustedClaims(user.getUniqueId(), TrustType.NONE)) {
+                if (!isInPlayerClaim((GPClaim) claim, playerClaims)) {
+                    continue;
+                }
+
+                GPClaim gpClaim = (GPClaim) claim;
+                gpClaim.removeAllTrustsFromUser(user.getUniqueId());
+                gpClaim.getInternalClaimData().setRequiresSave(true);
+            }
+        }
+
+        for (Claim claim : claimList) {
+            this.removeUserTrustPermissions(claim, user);
+        }
+        GPPermissionCache.invalidate();
+    }
+
+    private void removeUserTrustPermissions(Claim claim, User user) {
         GPClaim gpClaim = (GPClaim) claim;
-        Set<Context> contexts = new HashSet<>(); 
+        Set<Context> contexts = new HashSet<>();
         contexts.add(gpClaim.getContext());
         for (TrustType type : TrustType.values()) {
             user.getSubjectData().setPermission(contexts, GPPermissions.getTrustPermission(type), Tristate.UNDEFINED);
-            gpClaim.getUserTrustList(type).remove(user.getUniqueId());
-            gpClaim.getInternalClaimData().setRequiresSave(true);
-            for (Claim child : gpClaim.children) {
-                this.removeAllUserTrust(child, user);
+        }
+        for (Claim child : gpClaim.children) {
+            this.removeUserTrustPermissions(child, user);
+        }
+    }
+
+    private static boolean isInPlayerClaim(GPClaim claim, Set<Claim> playerClaims) {
+        while (claim != null) {
+            if (playerClaims.contains(claim)) {
+                return true;
             }
+            claim = claim.parent;
         }
+        return false;
     }
 
+    // Group trust is also granted through permissions so every claim needs to be visited
     private void removeAllGroupTrust(Claim claim, Subject group) {
         GPClaim gpClaim = (GPClaim) claim;
         Set<Context> contexts = new HashSet<>(); 
         contexts.add(gpClaim.getContext());
         for (TrustType type : TrustType.values()) {
             group.getSubjectData().setPermission(contexts, GPPermissions.getTrustPermission(type), Tristate.UNDEFINED);
-            gpClaim.getGroupTrustList(type).remove(group);
-            gpClaim.getInternalClaimData().setRequiresSave(true);
-            for (Claim child : gpClaim.children) {
-                this.removeAllGroupTrust(child, group);
-            }
+            GPPermissionCache.invalidate();
+        }
+        gpClaim.removeAllTrustsFromGroup(group.getIdentifier());
+        gpClaim.getInternalClaimData().setRequiresSave(true);
+        for (Claim child : gpClaim.children) {
+            this.removeAllGroupTrust(child, group);
         }
     }
 }
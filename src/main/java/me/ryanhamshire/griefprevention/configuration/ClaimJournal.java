@@ -0,0 +1,248 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.configuration;
+
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import ninja.leaping.configurate.ConfigurationOptions;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+import ninja.leaping.configurate.commented.SimpleCommentedConfigurationNode;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+/**
+ * An append-only log of claim file changes for a single world.
+ *
+ * <p>Each record holds the full data of one claim file, or marks it as
+ * removed. Records are appended in batches and forced to disk once per
+ * batch. Claim files are only rewritten when the journal is compacted or
+ * replayed at startup.</p>
+ */
+public class ClaimJournal {
+
+    private static final Map<Path, ClaimJournal> JOURNALS = new ConcurrentHashMap<>();
+    private static final String CLAIM_DATA_FOLDER = "ClaimData";
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+
+    private final Path claimDataPath;
+    private final Path journalPath;
+    private FileChannel channel;
+    private boolean requiresForce = false;
+
+    private ClaimJournal(Path claimDataPath) {
+        this.claimDataPath = claimDataPath;
+        this.journalPath = claimDataPath.resolveSibling("claims.journal");
+    }
+
+    public static ClaimJournal get(Path claimDataPath) {
+        return JOURNALS.computeIfAbsent(claimDataPath.toAbsolutePath().normalize(), ClaimJournal::new);
+    }
+
+    /**
+     * Gets the journal of the world the claim file belongs to, or null if
+     * the file is not stored below a claim data folder.
+     */
+    @Nullable
+    public static ClaimJournal getForClaimFile(Path claimFile) {
+        Path folder = claimFile.toAbsolutePath().normalize().getParent();
+        while (folder != null) {
+            if (folder.getFileName() != null && folder.getFileName().toString().equalsIgnoreCase(CLAIM_DATA_FOLDER)) {
+                return get(folder);
+            }
+            folder = folder.getParent();
+        }
+        return null;
+    }
+
+    public synchronized void appendPut(Path claimFile, CommentedConfigurationNode root) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        final DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(RECORD_PUT);
+        this.writePath(out, claimFile);
+        out.write(ClaimSnapshot.encode(root.getNode(GriefPreventionPlugin.MOD_ID)));
+        this.append(buffer.toByteArray());
+    }
+
+    public synchronized void appendDelete(Path claimFile) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(RECORD_DELETE);
+        this.writePath(out, claimFile);
+        this.append(buffer.toByteArray());
+    }
+
+    /**
+     * Forces all records appended since the last call to disk.
+     */
+    public synchronized void force() throws IOException {
+        if (this.requiresForce) {
+            this.channel.force(false);
+            this.requiresForce = false;
+        }
+    }
+
+    // Not synchronized so callers are not blocked by a running compaction
+    public long size() throws IOException {
+        return Files.exists(this.journalPath) ? Files.size(this.journalPath) : 0;
+    }
+
+    /**
+     * Discards all records. Callers must have written every journaled
+     * change to its claim file first.
+     */
+    public synchronized void truncate() throws IOException {
+        this.getChannel().truncate(0);
+        this.channel.force(false);
+        this.requiresForce = false;
+    }
+
+    public synchronized void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Applies all records to the claim files and truncates the journal.
+     * Must run before the world's claim files are loaded.
+     *
+     * @return The number of claim files written or removed
+     */
+    public synchronized int replay() throws IOException {
+        if (Files.notExists(this.journalPath)) {
+            return 0;
+        }
+
+        // only the last record of each claim file matters
+        final Map<String, byte[]> changes = new LinkedHashMap<>();
+        final long journalSize = Files.size(this.journalPath);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.journalPath)))) {
+            final CRC32 crc = new CRC32();
+            while (true) {
+                final byte[] record;
+                final long checksum;
+                try {
+                    final int length = in.readInt();
+                    if (length <= 0 || length > journalSize) {
+                        GriefPreventionPlugin.instance.getLogger().warn("Found corrupted record in claim journal " + this.journalPath + ", ignoring remaining records.");
+                        break;
+                    }
+                    record = new byte[length];
+                    checksum = in.readLong();
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    // end of journal, or a record cut short by a crash
+                    break;
+                }
+                crc.reset();
+                crc.update(record);
+                if (crc.getValue() != checksum) {
+                    GriefPreventionPlugin.instance.getLogger().warn("Found corrupted record in claim journal " + this.journalPath + ", ignoring remaining records.");
+                    break;
+                }
+
+                final DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                final byte type = recordIn.readByte();
+                final byte[] path = new byte[recordIn.readInt()];
+                recordIn.readFully(path);
+                final String relativePath = new String(path, StandardCharsets.UTF_8);
+                changes.remove(relativePath);
+                if (type == RECORD_PUT) {
+                    final byte[] data = new byte[recordIn.available()];
+                    recordIn.readFully(data);
+                    changes.put(relativePath, data);
+                } else {
+                    changes.put(relativePath, null);
+                }
+            }
+        }
+
+        for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+            final Path claimFile = this.claimDataPath.resolve(change.getKey());
+            if (change.getValue() == null) {
+                Files.deleteIfExists(claimFile);
+                continue;
+            }
+
+            final CommentedConfigurationNode root = SimpleCommentedConfigurationNode.root(ConfigurationOptions.defaults()
+                    .setHeader(GriefPreventionPlugin.CONFIG_HEADER));
+            ClaimSnapshot.decode(change.getValue(), root.getNode(GriefPreventionPlugin.MOD_ID));
+            Files.createDirectories(claimFile.getParent());
+            ClaimStorageData.writeAtomically(claimFile, root);
+        }
+
+        this.truncate();
+        return changes.size();
+    }
+
+    private void writePath(DataOutputStream out, Path claimFile) throws IOException {
+        final byte[] path = this.claimDataPath.relativize(claimFile.toAbsolutePath().normalize()).toString().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(path.length);
+        out.write(path);
+    }
+
+    // record layout: length, crc32 of the record, record
+    private void append(byte[] record) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+        final ByteBuffer buffer = ByteBuffer.allocate(12 + record.length);
+        buffer.putInt(record.length);
+        buffer.putLong(crc.getValue());
+        buffer.put(record);
+        buffer.flip();
+        final FileChannel channel = this.getChannel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        this.requiresForce = true;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return this.channel;
+    }
+}
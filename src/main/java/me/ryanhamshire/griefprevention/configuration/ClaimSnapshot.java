@@ -0,0 +1,303 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.configuration;
+
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import ninja.leaping.configurate.ConfigurationNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A per-world binary copy of every claim file's configuration tree.
+ *
+ * <p>Claim files remain the source of truth. An entry is only used at
+ * startup if the modification time and size of its claim file still match
+ * the values recorded when the snapshot was written.</p>
+ */
+public class ClaimSnapshot {
+
+    private static final int MAGIC = 0x47505353;
+    private static final int VERSION = 1;
+
+    private static final byte NODE_NULL = 0;
+    private static final byte NODE_MAP = 1;
+    private static final byte NODE_LIST = 2;
+    private static final byte NODE_STRING = 3;
+    private static final byte NODE_BOOLEAN = 4;
+    private static final byte NODE_INTEGER = 5;
+    private static final byte NODE_LONG = 6;
+    private static final byte NODE_DOUBLE = 7;
+    private static final byte NODE_FLOAT = 8;
+
+    // Worlds with claim files saved or deleted since their snapshot was last written
+    private static final Set<UUID> DIRTY_WORLDS = ConcurrentHashMap.newKeySet();
+
+    public static final class Entry {
+
+        public final long lastModified;
+        public final long size;
+        public final byte[] data;
+
+        Entry(long lastModified, long size, byte[] data) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    public static void markDirty(UUID worldUniqueId) {
+        if (worldUniqueId != null) {
+            DIRTY_WORLDS.add(worldUniqueId);
+        }
+    }
+
+    public static boolean isDirty(UUID worldUniqueId) {
+        return DIRTY_WORLDS.contains(worldUniqueId);
+    }
+
+    /**
+     * Reads all entries of a snapshot keyed by claim file path relative to
+     * the world's claim data folder. Returns an empty map if the snapshot
+     * is missing, belongs to another world or cannot be read.
+     */
+    public static Map<String, Entry> read(Path snapshotPath, UUID worldUniqueId) {
+        if (Files.notExists(snapshotPath)) {
+            return Collections.emptyMap();
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return Collections.emptyMap();
+            }
+            if (!worldUniqueId.equals(new UUID(in.readLong(), in.readLong()))) {
+                return Collections.emptyMap();
+            }
+
+            final int count = in.readInt();
+            final Map<String, Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                final String relativePath = in.readUTF();
+                final long lastModified = in.readLong();
+                final long size = in.readLong();
+                final byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                entries.put(relativePath, new Entry(lastModified, size, data));
+            }
+            return entries;
+        } catch (IOException e) {
+            GriefPreventionPlugin.instance.getLogger().warn("Could not read claim snapshot " + snapshotPath + ", claim files will be parsed instead.", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Captures the state of the given claim storages as last written to
+     * their files and clears the dirty mark of the world. The returned map
+     * is not modified again and can be written on any thread.
+     */
+    public static Map<Path, ClaimStorageData.FileState> capture(UUID worldUniqueId, Collection<ClaimStorageData> claimStorages) {
+        // clear first so saves made after capturing mark the world dirty again
+        DIRTY_WORLDS.remove(worldUniqueId);
+        final Map<Path, ClaimStorageData.FileState> fileStates = new LinkedHashMap<>(claimStorages.size() * 4 / 3 + 1);
+        for (ClaimStorageData claimStorage : claimStorages) {
+            // use the data last written to the file, which may lag behind queued saves
+            final ClaimStorageData.FileState fileState = claimStorage.fileState;
+            if (fileState != null) {
+                fileStates.put(claimStorage.filePath, fileState);
+            }
+        }
+        return fileStates;
+    }
+
+    /**
+     * Writes a snapshot of captured claim file states. The snapshot is
+     * written to a temporary file first and moved into place once complete.
+     */
+    public static synchronized void write(Path snapshotPath, UUID worldUniqueId, Path claimDataPath, Map<Path, ClaimStorageData.FileState> fileStates)
+            throws IOException {
+        final Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(worldUniqueId.getMostSignificantBits());
+            out.writeLong(worldUniqueId.getLeastSignificantBits());
+            out.writeInt(fileStates.size());
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+            final DataOutputStream bufferOut = new DataOutputStream(buffer);
+            for (Map.Entry<Path, ClaimStorageData.FileState> entry : fileStates.entrySet()) {
+                final ClaimStorageData.FileState fileState = entry.getValue();
+                buffer.reset();
+                writeNode(bufferOut, fileState.root.getNode(GriefPreventionPlugin.MOD_ID));
+                out.writeUTF(claimDataPath.relativize(entry.getKey()).toString());
+                out.writeLong(fileState.lastModified);
+                out.writeLong(fileState.size);
+                out.writeInt(buffer.size());
+                buffer.writeTo(out);
+            }
+        } catch (IOException e) {
+            DIRTY_WORLDS.add(worldUniqueId);
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static byte[] encode(ConfigurationNode node) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        writeNode(new DataOutputStream(buffer), node);
+        return buffer.toByteArray();
+    }
+
+    public static void decode(byte[] data, ConfigurationNode node) throws IOException {
+        readNode(new DataInputStream(new ByteArrayInputStream(data)), node);
+    }
+
+    private static void writeNode(DataOutput out, ConfigurationNode node) throws IOException {
+        if (node.hasMapChildren()) {
+            final Map<Object, ? extends ConfigurationNode> children = node.getChildrenMap();
+            out.writeByte(NODE_MAP);
+            out.writeInt(children.size());
+            for (Map.Entry<Object, ? extends ConfigurationNode> child : children.entrySet()) {
+                writeString(out, String.valueOf(child.getKey()));
+                writeNode(out, child.getValue());
+            }
+            return;
+        }
+        if (node.hasListChildren()) {
+            final List<? extends ConfigurationNode> children = node.getChildrenList();
+            out.writeByte(NODE_LIST);
+            out.writeInt(children.size());
+            for (ConfigurationNode child : children) {
+                writeNode(out, child);
+            }
+            return;
+        }
+
+        final Object value = node.getValue();
+        if (value == null) {
+            out.writeByte(NODE_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(NODE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(NODE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(NODE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(NODE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(NODE_FLOAT);
+            out.writeFloat((Float) value);
+        } else {
+            out.writeByte(NODE_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void readNode(DataInput in, ConfigurationNode node) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case NODE_NULL:
+                return;
+            case NODE_MAP: {
+                final int size = in.readInt();
+                if (size == 0) {
+                    node.setValue(Collections.emptyMap());
+                }
+                for (int i = 0; i < size; i++) {
+                    readNode(in, node.getNode(readString(in)));
+                }
+                return;
+            }
+            case NODE_LIST: {
+                final int size = in.readInt();
+                if (size == 0) {
+                    node.setValue(Collections.emptyList());
+                }
+                for (int i = 0; i < size; i++) {
+                    readNode(in, node.getAppendedNode());
+                }
+                return;
+            }
+            case NODE_STRING:
+                node.setValue(readString(in));
+                return;
+            case NODE_BOOLEAN:
+                node.setValue(in.readBoolean());
+                return;
+            case NODE_INTEGER:
+                node.setValue(in.readInt());
+                return;
+            case NODE_LONG:
+                node.setValue(in.readLong());
+                return;
+            case NODE_DOUBLE:
+                node.setValue(in.readDouble());
+                return;
+            case NODE_FLOAT:
+                node.setValue(in.readFloat());
+                return;
+            default:
+                throw new IOException("Unknown claim snapshot node type " + type);
+        }
+    }
+
+    // writeUTF is limited to 64k which claim messages may exceed
+    private static void writeString(DataOutput out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
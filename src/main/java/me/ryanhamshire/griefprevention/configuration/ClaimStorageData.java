@@ -45,12 +45,15 @@
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ForkJoinPool;
 
+import javax.annotation.Nullable;
+
 public class ClaimStorageData {
 
     protected HoconConfigurationLoader loader;
@@ -60,6 +63,11 @@ public class ClaimStorageData {
     protected ClaimDataConfig configBase;
     public Path filePath;
     public Path folderPath;
+    // the claim file as of the last load or save, used to write claim snapshots
+    public volatile FileState fileState;
+    // set when the claim is stored by a backend instead of a claim file
+    public IStorageBackend backend;
+    public UUID claimUniqueId;
 
     // MAIN
     public static final String MAIN_WORLD_UUID = "world-uuid";
@@ -147,6 +155,18 @@ public ClaimStorageData(Path path, UUID worldUniqueId, ClaimDataConfig claimData
         }
     }
 
+    // Used when a claim moves to a new claim file, keeps the claim data in memory
+    protected ClaimStorageData(Path path, ClaimStorageData from, CommentedConfigurationNode root) throws IOException {
+        this.filePath = path;
+        this.folderPath = path.getParent();
+        this.loader = HoconConfigurationLoader.builder().setPath(path).build();
+        this.configMapper = from.configMapper;
+        this.configBase = from.configBase;
+        this.configBase.setClaimStorageData(this);
+        this.root = root;
+        this.fileState = new FileState(root, Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+    }
+
     // Used during server load
     @SuppressWarnings({"unchecked", "rawtypes"})
     public ClaimStorageData(Path path, UUID worldUniqueId) {
@@ -172,26 +192,184 @@ public ClaimStorageData(Path path, UUID worldUniqueId) {
         }
     }
 
+    // Used during server load when the world's claim snapshot still matches the claim file
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ClaimStorageData(Path path, UUID worldUniqueId, ClaimSnapshot.Entry snapshotEntry) {
+        this.filePath = path;
+        this.folderPath = path.getParent();
+        try {
+            this.loader = HoconConfigurationLoader.builder().setPath(path).build();
+            if (path.getParent().endsWith("town")) {
+                this.configMapper = (ObjectMapper.BoundInstance) ObjectMapper.forClass(TownDataConfig.class).bindToNew();
+            } else {
+                this.configMapper = (ObjectMapper.BoundInstance) ObjectMapper.forClass(ClaimDataConfig.class).bindToNew();
+            }
+            this.configMapper.getInstance().setClaimStorageData(this);
+            ClaimSnapshot.decode(snapshotEntry.data, this.root.getNode(GriefPreventionPlugin.MOD_ID));
+            this.configBase = this.configMapper.populate(this.root.getNode(GriefPreventionPlugin.MOD_ID));
+            this.fileState = new FileState(this.root, snapshotEntry.lastModified, snapshotEntry.size);
+            ((EconomyDataConfig) this.configMapper.getInstance().getEconomyData()).activeConfig = GriefPreventionPlugin.getActiveConfig(worldUniqueId);
+        } catch (Exception e) {
+            SpongeImpl.getLogger().error("Failed to initialize configuration", e);
+        }
+    }
+
+    // Used when claims are stored by a backend, data is null for new claims
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ClaimStorageData(UUID claimUniqueId, UUID worldUniqueId, ClaimType type, @Nullable byte[] data, IStorageBackend backend) {
+        this.claimUniqueId = claimUniqueId;
+        this.backend = backend;
+        try {
+            if (type == ClaimType.TOWN) {
+                this.configMapper = (ObjectMapper.BoundInstance) ObjectMapper.forClass(TownDataConfig.class).bindToNew();
+            } else {
+                this.configMapper = (ObjectMapper.BoundInstance) ObjectMapper.forClass(ClaimDataConfig.class).bindToNew();
+            }
+            this.configMapper.getInstance().setClaimStorageData(this);
+            if (data != null) {
+                ClaimSnapshot.decode(data, this.root.getNode(GriefPreventionPlugin.MOD_ID));
+            }
+            this.configBase = this.configMapper.populate(this.root.getNode(GriefPreventionPlugin.MOD_ID));
+            if (data == null) {
+                this.configBase.setWorldUniqueId(worldUniqueId);
+                this.configBase.setType(type);
+            }
+            ((EconomyDataConfig) this.configMapper.getInstance().getEconomyData()).activeConfig = GriefPreventionPlugin.getActiveConfig(worldUniqueId);
+        } catch (Exception e) {
+            SpongeImpl.getLogger().error("Failed to initialize configuration", e);
+        }
+    }
+
     public ClaimDataConfig getConfig() {
         return this.configBase;
     }
 
+    /**
+     * Captures the claim data on the calling thread and queues it. The
+     * {@link ClaimStorageWriter} appends it to the world's claim journal
+     * and the claim file itself is rewritten when the journal is compacted.
+     */
     public void save() {
         try {
-            // subdivisions are stored in their own claim files
-            this.root.getNode(GriefPreventionPlugin.MOD_ID).removeChild("subdivisions");
-            this.configMapper.serialize(this.root.getNode(GriefPreventionPlugin.MOD_ID));
-            this.loader.save(this.root);
-            this.configBase.setRequiresSave(false);
-        } catch (IOException | ObjectMappingException e) {
+            ClaimStorageWriter.queue(this, this.captureRoot());
+        } catch (ObjectMappingException e) {
             SpongeImpl.getLogger().error("Failed to save configuration", e);
         }
     }
 
+    /**
+     * Drops any queued save. A claim stored by a backend is also queued for
+     * removal from it. Use {@link #delete} to remove a claim file.
+     */
+    public void cancelQueuedSave() {
+        synchronized (this) {
+            ClaimStorageWriter.cancel(this);
+        }
+    }
+
+    /**
+     * Drops any queued save and deletes the claim file on the calling
+     * thread. The removal is journaled first, so neither a pending write
+     * nor a journal replay can recreate it. Use {@link #moveTo} to move a
+     * claim file.
+     */
+    public void delete() throws IOException {
+        // the journal lock is never taken while holding the claim lock
+        this.cancelQueuedSave();
+        ClaimStorageWriter.delete(this.filePath);
+    }
+
+    /**
+     * Moves the claim to a new claim file, writing the claim data held in
+     * memory to it. The claim file on disk may be older than the journal,
+     * so it is never read back.
+     *
+     * @param newPath The new claim file
+     * @return The storage of the new claim file, sharing this claim data
+     */
+    public ClaimStorageData moveTo(Path newPath) throws IOException {
+        final CommentedConfigurationNode root;
+        synchronized (this) {
+            try {
+                root = this.captureRoot();
+            } catch (ObjectMappingException e) {
+                throw new IOException(e);
+            }
+            ClaimStorageWriter.drop(this);
+        }
+        Files.createDirectories(newPath.getParent());
+        ClaimStorageWriter.move(this.filePath, newPath, root);
+        ClaimSnapshot.markDirty(this.configBase.getWorldUniqueId());
+        if (this instanceof TownStorageData) {
+            return new TownStorageData(newPath, this, root);
+        }
+        return new ClaimStorageData(newPath, this, root);
+    }
+
+    // Called by the writer thread
+    void writeQueued() {
+        synchronized (this) {
+            final CommentedConfigurationNode root = ClaimStorageWriter.take(this);
+            if (root != null) {
+                try {
+                    this.write(root);
+                } catch (IOException e) {
+                    SpongeImpl.getLogger().error("Failed to save configuration", e);
+                }
+            }
+        }
+    }
+
+    // Serializes the claim data into a new root node that is not modified again once captured
+    private CommentedConfigurationNode captureRoot() throws ObjectMappingException {
+        final CommentedConfigurationNode root = SimpleCommentedConfigurationNode.root(ConfigurationOptions.defaults()
+                .setHeader(GriefPreventionPlugin.CONFIG_HEADER));
+        copyNode(this.root, root);
+        // subdivisions are stored in their own claim files
+        root.getNode(GriefPreventionPlugin.MOD_ID).removeChild("subdivisions");
+        this.configMapper.serialize(root.getNode(GriefPreventionPlugin.MOD_ID));
+        this.configBase.setRequiresSave(false);
+        this.root = root;
+        return root;
+    }
+
+    private void write(CommentedConfigurationNode root) throws IOException {
+        writeAtomically(this.filePath, root);
+        this.fileState = new FileState(root, Files.getLastModifiedTime(this.filePath).toMillis(), Files.size(this.filePath));
+        ClaimSnapshot.markDirty(this.configBase.getWorldUniqueId());
+    }
+
+    // Writes to a temporary file first so a crash cannot leave a truncated claim file behind
+    public static void writeAtomically(Path path, CommentedConfigurationNode root) throws IOException {
+        final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        HoconConfigurationLoader.builder().setPath(tempPath).build().save(root);
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void copyNode(CommentedConfigurationNode from, CommentedConfigurationNode to) {
+        from.getComment().ifPresent(to::setComment);
+        if (from.hasMapChildren()) {
+            for (Map.Entry<Object, ? extends CommentedConfigurationNode> child : from.getChildrenMap().entrySet()) {
+                copyNode(child.getValue(), to.getNode(child.getKey()));
+            }
+        } else if (from.hasListChildren()) {
+            for (CommentedConfigurationNode child : from.getChildrenList()) {
+                copyNode(child, to.getAppendedNode());
+            }
+        } else if (from.getValue() != null) {
+            to.setValue(from.getValue());
+        }
+    }
+
     public void reload() {
+        if (this.loader == null) {
+            // backend data is only read when the world loads
+            return;
+        }
         try {
             this.root = this.loader.load(ConfigurationOptions.defaults().setHeader(GriefPreventionPlugin.CONFIG_HEADER));
             this.configBase = this.configMapper.populate(this.root.getNode(GriefPreventionPlugin.MOD_ID));
+            this.fileState = new FileState(this.root, Files.getLastModifiedTime(this.filePath).toMillis(), Files.size(this.filePath));
         } catch (Exception e) {
             SpongeImpl.getLogger().error("Failed to load configuration", e);
         }
@@ -267,7 +445,7 @@ public CompletableFuture<CommentedConfigurationNode> updateSetting(String key, O
             CommentedConfigurationNode upd = getSetting(key);
             upd.setValue(value);
             this.configBase = this.configMapper.populate(this.root.getNode(GriefPreventionPlugin.MOD_ID));
-            this.loader.save(this.root);
+            this.save();
             return upd;
         }, ForkJoinPool.commonPool());
     }
@@ -285,4 +463,17 @@ public CommentedConfigurationNode getSetting(String key) {
             return getRootNode().getNode(category).getNode(prop);
         }
     }
+
+    public static final class FileState {
+
+        public final CommentedConfigurationNode root;
+        public final long lastModified;
+        public final long size;
+
+        FileState(CommentedConfigurationNode root, long lastModified, long size) {
+            this.root = root;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
 }
@@ -0,0 +1,384 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.configuration;
+
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.migrator.StorageMigrator;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists queued claim saves off the main thread.
+ *
+ * <p>Saves are first appended to the claim journal of their world, so
+ * changing many claims at once costs one sequential append. The latest
+ * data of each claim is kept until the journal is compacted, at which
+ * point each changed claim file is rewritten once. Writes and
+ * cancellations of the same claim are serialized on its
+ * {@link ClaimStorageData}.</p>
+ *
+ * <p>Claims stored by an {@link IStorageBackend} skip the journal and are
+ * handed to their backend in one batch per pass instead.</p>
+ */
+public class ClaimStorageWriter {
+
+    // compact a journal once it grows past this size
+    private static final long COMPACTION_SIZE = 16 * 1024 * 1024;
+
+    private static final Map<ClaimStorageData, PendingWrite> UNJOURNALED = new ConcurrentHashMap<>();
+    private static final Map<ClaimStorageData, CommentedConfigurationNode> UNCOMPACTED = new ConcurrentHashMap<>();
+    private static final Queue<ClaimStorageData> DELETED_FROM_BACKEND = new ConcurrentLinkedQueue<>();
+    // deletes that failed, retried on the next pass rather than in a loop against an unavailable backend
+    private static final Queue<ClaimStorageData> FAILED_BACKEND_DELETES = new ConcurrentLinkedQueue<>();
+    private static final Set<ClaimJournal> COMPACTING = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean SCHEDULED = new AtomicBoolean();
+    private static final AtomicLong WRITES = new AtomicLong();
+    private static final AtomicLong MAX_LAG = new AtomicLong();
+
+    private static final class PendingWrite {
+
+        final CommentedConfigurationNode root;
+        // when the oldest change not yet journaled was queued
+        final long queuedTime;
+
+        PendingWrite(CommentedConfigurationNode root, long queuedTime) {
+            this.root = root;
+            this.queuedTime = queuedTime;
+        }
+    }
+
+    static void queue(ClaimStorageData claimStorage, CommentedConfigurationNode root) {
+        recordChange(claimStorage);
+        if (claimStorage.backend == null) {
+            UNCOMPACTED.put(claimStorage, root);
+        }
+        UNJOURNALED.merge(claimStorage, new PendingWrite(root, System.currentTimeMillis()),
+                (previous, next) -> new PendingWrite(next.root, previous.queuedTime));
+        schedule();
+    }
+
+    // Called while holding the lock of the claim storage
+    static CommentedConfigurationNode take(ClaimStorageData claimStorage) {
+        return UNCOMPACTED.remove(claimStorage);
+    }
+
+    // Called while holding the lock of the claim storage
+    static void cancel(ClaimStorageData claimStorage) {
+        recordChange(claimStorage);
+        UNJOURNALED.remove(claimStorage);
+        UNCOMPACTED.remove(claimStorage);
+        if (claimStorage.backend != null) {
+            DELETED_FROM_BACKEND.add(claimStorage);
+            schedule();
+        }
+    }
+
+    // Called while holding the lock of the claim storage, the claim file is moved right after
+    static void drop(ClaimStorageData claimStorage) {
+        UNJOURNALED.remove(claimStorage);
+        UNCOMPACTED.remove(claimStorage);
+    }
+
+    // Lets a storage migration running on this server copy the claim again
+    private static void recordChange(ClaimStorageData claimStorage) {
+        if (claimStorage.claimUniqueId != null) {
+            StorageMigrator.recordClaimChange(claimStorage.claimUniqueId);
+            return;
+        }
+        try {
+            StorageMigrator.recordClaimChange(UUID.fromString(claimStorage.filePath.getFileName().toString()));
+        } catch (IllegalArgumentException e) {
+            // not a claim file
+        }
+    }
+
+    /**
+     * Deletes a claim file on the calling thread. The removal is journaled
+     * and forced before the file is deleted, so a replay after a crash can
+     * not recreate the file from earlier records.
+     */
+    static void delete(Path claimFile) throws IOException {
+        final ClaimJournal journal = ClaimJournal.getForClaimFile(claimFile);
+        if (journal == null) {
+            Files.deleteIfExists(claimFile);
+            return;
+        }
+
+        synchronized (journal) {
+            journal.appendDelete(claimFile);
+            journal.force();
+            Files.deleteIfExists(claimFile);
+        }
+    }
+
+    /**
+     * Moves a claim file on the calling thread. The removal of the old file
+     * and the data of the new one are journaled and forced before either
+     * file is touched, so a replay after a crash ends with only the new
+     * file.
+     */
+    static void move(Path oldPath, Path newPath, CommentedConfigurationNode root) throws IOException {
+        final ClaimJournal journal = ClaimJournal.getForClaimFile(oldPath);
+        if (journal == null) {
+            ClaimStorageData.writeAtomically(newPath, root);
+            Files.deleteIfExists(oldPath);
+            return;
+        }
+
+        // records of the old file appended before this point are superseded by the removal
+        synchronized (journal) {
+            journal.appendDelete(oldPath);
+            journal.appendPut(newPath, root);
+            journal.force();
+            ClaimStorageData.writeAtomically(newPath, root);
+            Files.deleteIfExists(oldPath);
+        }
+    }
+
+    /**
+     * Journals all queued saves and compacts every journal on the calling
+     * thread, leaving all claim files up to date.
+     */
+    public static void flush() {
+        journalQueued();
+        final Set<ClaimJournal> journals = new HashSet<>();
+        for (ClaimStorageData claimStorage : UNCOMPACTED.keySet()) {
+            final ClaimJournal journal = ClaimJournal.getForClaimFile(claimStorage.filePath);
+            if (journal == null) {
+                claimStorage.writeQueued();
+            } else {
+                journals.add(journal);
+            }
+        }
+        for (ClaimJournal journal : journals) {
+            compact(journal);
+        }
+    }
+
+    /**
+     * Compacts the journal of a world in the background if it has grown
+     * past the compaction size.
+     */
+    public static void compactIfNeeded(Path claimDataPath) {
+        final ClaimJournal journal = ClaimJournal.get(claimDataPath);
+        try {
+            if (journal.size() < COMPACTION_SIZE || !COMPACTING.add(journal)) {
+                return;
+            }
+        } catch (IOException e) {
+            GriefPreventionPlugin.instance.getLogger().error("Failed to read claim journal size", e);
+            return;
+        }
+
+        GriefPreventionPlugin.instance.executor.execute(() -> {
+            try {
+                compact(journal);
+            } finally {
+                COMPACTING.remove(journal);
+            }
+        });
+    }
+
+    // Rewrites every claim file with journaled changes, then discards the journal
+    private static void compact(ClaimJournal journal) {
+        synchronized (journal) {
+            for (ClaimStorageData claimStorage : UNCOMPACTED.keySet()) {
+                if (ClaimJournal.getForClaimFile(claimStorage.filePath) == journal) {
+                    claimStorage.writeQueued();
+                }
+            }
+            try {
+                journal.truncate();
+            } catch (IOException e) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to compact claim journal", e);
+            }
+        }
+    }
+
+    private static void schedule() {
+        if (SCHEDULED.compareAndSet(false, true)) {
+            GriefPreventionPlugin.instance.executor.execute(ClaimStorageWriter::drain);
+        }
+    }
+
+    private static void drain() {
+        do {
+            try {
+                journalQueued();
+            } catch (Throwable t) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to journal queued claim saves", t);
+            } finally {
+                SCHEDULED.set(false);
+            }
+        } while (!(UNJOURNALED.isEmpty() && DELETED_FROM_BACKEND.isEmpty()) && SCHEDULED.compareAndSet(false, true));
+    }
+
+    private static synchronized void journalQueued() {
+        final Set<ClaimJournal> appended = new HashSet<>();
+        final Map<IStorageBackend, Map<ClaimStorageData, PendingWrite>> backendWrites = new HashMap<>();
+        for (ClaimStorageData claimStorage : UNJOURNALED.keySet()) {
+            if (claimStorage.backend != null) {
+                final PendingWrite write = UNJOURNALED.remove(claimStorage);
+                if (write != null) {
+                    backendWrites.computeIfAbsent(claimStorage.backend, k -> new HashMap<>()).put(claimStorage, write);
+                }
+                continue;
+            }
+
+            final ClaimJournal journal = ClaimJournal.getForClaimFile(claimStorage.filePath);
+            if (journal == null) {
+                // not stored in a world's claim data folder, write the file directly
+                UNJOURNALED.remove(claimStorage);
+                claimStorage.writeQueued();
+                continue;
+            }
+
+            synchronized (journal) {
+                final PendingWrite write = UNJOURNALED.remove(claimStorage);
+                if (write == null) {
+                    continue;
+                }
+                try {
+                    journal.appendPut(claimStorage.filePath, write.root);
+                } catch (IOException e) {
+                    // the claim file is still written on compaction
+                    GriefPreventionPlugin.instance.getLogger().error("Failed to append to claim journal", e);
+                    continue;
+                }
+                MAX_LAG.accumulateAndGet(System.currentTimeMillis() - write.queuedTime, Math::max);
+                WRITES.incrementAndGet();
+            }
+            appended.add(journal);
+        }
+
+        for (Map.Entry<IStorageBackend, Map<ClaimStorageData, PendingWrite>> entry : backendWrites.entrySet()) {
+            writeToBackend(entry.getKey(), entry.getValue());
+        }
+
+        for (ClaimJournal journal : appended) {
+            try {
+                journal.force();
+            } catch (IOException e) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to force claim journal to disk", e);
+            }
+        }
+
+        // deletes are applied after writes so a claim removed while its save was in flight stays removed
+        final Map<IStorageBackend, List<ClaimStorageData>> backendDeletes = new HashMap<>();
+        ClaimStorageData claimStorage;
+        while ((claimStorage = FAILED_BACKEND_DELETES.poll()) != null || (claimStorage = DELETED_FROM_BACKEND.poll()) != null) {
+            backendDeletes.computeIfAbsent(claimStorage.backend, k -> new ArrayList<>()).add(claimStorage);
+        }
+        for (Map.Entry<IStorageBackend, List<ClaimStorageData>> entry : backendDeletes.entrySet()) {
+            final List<UUID> claimUniqueIds = new ArrayList<>();
+            for (ClaimStorageData deleted : entry.getValue()) {
+                claimUniqueIds.add(deleted.claimUniqueId);
+            }
+            try {
+                entry.getKey().deleteClaims(claimUniqueIds);
+            } catch (Exception e) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to delete " + claimUniqueIds.size() + " claim(s) from storage, retrying "
+                        + "on the next save", e);
+                FAILED_BACKEND_DELETES.addAll(entry.getValue());
+            }
+        }
+    }
+
+    private static void writeToBackend(IStorageBackend backend, Map<ClaimStorageData, PendingWrite> writes) {
+        final Map<ClaimStorageData, CommentedConfigurationNode> claims = new HashMap<>();
+        long oldest = Long.MAX_VALUE;
+        for (Map.Entry<ClaimStorageData, PendingWrite> entry : writes.entrySet()) {
+            claims.put(entry.getKey(), entry.getValue().root);
+            oldest = Math.min(oldest, entry.getValue().queuedTime);
+        }
+        try {
+            backend.writeClaims(claims);
+        } catch (Exception e) {
+            GriefPreventionPlugin.instance.getLogger().error("Failed to write " + claims.size() + " claim(s) to storage", e);
+            // picked up again by the next autosave
+            for (ClaimStorageData claimStorage : claims.keySet()) {
+                claimStorage.getConfig().setRequiresSave(true);
+            }
+            return;
+        }
+        MAX_LAG.accumulateAndGet(System.currentTimeMillis() - oldest, Math::max);
+        WRITES.addAndGet(claims.size());
+    }
+
+    /**
+     * Gets the number of claim saves not yet appended to a journal.
+     */
+    public static int getPendingCount() {
+        return UNJOURNALED.size();
+    }
+
+    /**
+     * Gets the number of claims whose files are waiting for compaction.
+     */
+    public static int getUncompactedCount() {
+        return UNCOMPACTED.size();
+    }
+
+    /**
+     * Gets how long the oldest save not yet journaled has been waiting, in
+     * milliseconds.
+     */
+    public static long getLag() {
+        final long now = System.currentTimeMillis();
+        long lag = 0;
+        for (PendingWrite write : UNJOURNALED.values()) {
+            lag = Math.max(lag, now - write.queuedTime);
+        }
+        return lag;
+    }
+
+    public static long getMaxLag() {
+        return MAX_LAG.get();
+    }
+
+    public static long getWrites() {
+        return WRITES.get();
+    }
+
+    public static void resetStats() {
+        MAX_LAG.set(0);
+        WRITES.set(0);
+    }
+}
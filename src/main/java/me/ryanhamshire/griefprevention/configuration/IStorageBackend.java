@@ -0,0 +1,57 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.configuration;
+
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+/**
+ * Persists claim and player data that is not stored in files.
+ */
+public interface IStorageBackend {
+
+    /**
+     * Writes a batch of claims. Called off the main thread with data that
+     * is no longer modified.
+     */
+    void writeClaims(Map<ClaimStorageData, CommentedConfigurationNode> claims) throws Exception;
+
+    /**
+     * Removes a batch of claims. Called off the main thread.
+     */
+    void deleteClaims(Collection<UUID> claimUniqueIds) throws Exception;
+
+    /**
+     * Queues player data to be written off the main thread.
+     *
+     * @param worldUniqueId The world of the data, or null if player data is stored globally
+     */
+    void queuePlayerData(UUID playerUniqueId, @Nullable UUID worldUniqueId, CommentedConfigurationNode root);
+}
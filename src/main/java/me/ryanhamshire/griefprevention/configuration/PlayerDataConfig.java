@@ -31,6 +31,7 @@
 @ConfigSerializable
 public class PlayerDataConfig extends ConfigCategory {
 
+    // set when a setting changed since the data was last loaded or saved
     private boolean requiresSave = true;
 
     @Setting(value = "accrued-claim-blocks", comment = "How many claim blocks the player has earned in world via play time.")
@@ -50,13 +51,17 @@ public int getBonusClaimBlocks() {
     }
 
     public void setAccruedClaimBlocks(int blocks) {
-        this.requiresSave = true;
-        this.accruedClaimBlocks = blocks;
+        if (this.accruedClaimBlocks != blocks) {
+            this.requiresSave = true;
+            this.accruedClaimBlocks = blocks;
+        }
     }
 
     public void setBonusClaimBlocks(int blocks) {
-        this.requiresSave = true;
-        this.bonusClaimBlocks = blocks;
+        if (this.bonusClaimBlocks != blocks) {
+            this.requiresSave = true;
+            this.bonusClaimBlocks = blocks;
+        }
     }
 
     public boolean requiresSave() {
@@ -73,6 +78,9 @@ public boolean hasMigratedBlocks() {
     }
 
     public void setMigratedBlocks(boolean flag) {
-        this.migrated = flag;
+        if (this.migrated != flag) {
+            this.requiresSave = true;
+            this.migrated = flag;
+        }
     }
 }
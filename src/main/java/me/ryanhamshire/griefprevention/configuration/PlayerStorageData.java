@@ -25,6 +25,7 @@
 package me.ryanhamshire.griefprevention.configuration;
 
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.migrator.StorageMigrator;
 import ninja.leaping.configurate.ConfigurationOptions;
 import ninja.leaping.configurate.commented.CommentedConfigurationNode;
 import ninja.leaping.configurate.commented.SimpleCommentedConfigurationNode;
@@ -33,32 +34,66 @@
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import org.spongepowered.common.SpongeImpl;
 
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
 
 public class PlayerStorageData {
 
     private HoconConfigurationLoader loader;
+    private Path path;
     private CommentedConfigurationNode root = SimpleCommentedConfigurationNode.root(ConfigurationOptions.defaults()
             .setHeader(GriefPreventionPlugin.CONFIG_HEADER));
     private ObjectMapper<PlayerDataConfig>.BoundInstance configMapper;
     private PlayerDataConfig configBase;
+    // set when player data is stored by a backend instead of a file
+    private IStorageBackend backend;
+    private UUID playerUniqueId;
+    private UUID worldUniqueId;
 
     @SuppressWarnings({"unchecked", "rawtypes"})
     public PlayerStorageData(Path path) {
 
         try {
             Files.createDirectories(path.getParent());
-            if (Files.notExists(path)) {
-                Files.createFile(path);
-            }
-
+            this.path = path;
             this.loader = HoconConfigurationLoader.builder().setPath(path).build();
             this.configMapper = (ObjectMapper.BoundInstance) ObjectMapper.forClass(PlayerDataConfig.class).bindToNew();
 
-            reload();
-            save();
+            final CommentedConfigurationNode queued = PlayerStorageWriter.getQueued(path);
+            if (queued != null) {
+                // the last save has not been written yet
+                this.root = queued;
+                this.configBase = this.configMapper.populate(this.root.getNode(GriefPreventionPlugin.MOD_ID));
+                this.configBase.setRequiresSave(false);
+            } else if (Files.exists(path)) {
+                reload();
+            } else {
+                // new players are written with the next save
+                this.configBase = this.configMapper.populate(this.root.getNode(GriefPreventionPlugin.MOD_ID));
+            }
+        } catch (Exception e) {
+            SpongeImpl.getLogger().error("Failed to initialize configuration", e);
+        }
+    }
+
+    // Used when player data is stored by a backend, data is null for new players
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PlayerStorageData(UUID playerUniqueId, @Nullable UUID worldUniqueId, @Nullable byte[] data, IStorageBackend backend) {
+        this.playerUniqueId = playerUniqueId;
+        this.worldUniqueId = worldUniqueId;
+        this.backend = backend;
+        try {
+            this.configMapper = (ObjectMapper.BoundInstance) ObjectMapper.forClass(PlayerDataConfig.class).bindToNew();
+            if (data != null) {
+                ClaimSnapshot.decode(data, this.root.getNode(GriefPreventionPlugin.MOD_ID));
+            }
+            this.configBase = this.configMapper.populate(this.root.getNode(GriefPreventionPlugin.MOD_ID));
+            if (data != null) {
+                this.configBase.setRequiresSave(false);
+            }
         } catch (Exception e) {
             SpongeImpl.getLogger().error("Failed to initialize configuration", e);
         }
@@ -72,21 +107,35 @@ public void save() {
         try {
             if (this.configBase != null) {
                 if (this.configBase.requiresSave()) {
+                    // serialize into a new root so the queued write never sees later changes
+                    this.root = SimpleCommentedConfigurationNode.root(ConfigurationOptions.defaults()
+                            .setHeader(GriefPreventionPlugin.CONFIG_HEADER));
                     this.configMapper.serialize(this.root.getNode(GriefPreventionPlugin.MOD_ID));
-                    this.loader.save(this.root);
                     this.configBase.setRequiresSave(false);
+                    if (this.backend != null) {
+                        this.backend.queuePlayerData(this.playerUniqueId, this.worldUniqueId, this.root);
+                        StorageMigrator.recordPlayerChange(this.playerUniqueId);
+                    } else {
+                        PlayerStorageWriter.queue(this.path, this, this.root);
+                        StorageMigrator.recordPlayerChange(UUID.fromString(this.path.getFileName().toString()));
+                    }
                 }
             }
-        } catch (IOException | ObjectMappingException e) {
+        } catch (ObjectMappingException e) {
             SpongeImpl.getLogger().error("Failed to save configuration", e);
         }
     }
 
     public void reload() {
+        if (this.loader == null) {
+            return;
+        }
         try {
             this.root = this.loader.load(ConfigurationOptions.defaults()
                     .setHeader(GriefPreventionPlugin.CONFIG_HEADER));
             this.configBase = this.configMapper.populate(this.root.getNode(GriefPreventionPlugin.MOD_ID));
+            // only changes made after loading need to be saved
+            this.configBase.setRequiresSave(false);
         } catch (Exception e) {
             SpongeImpl.getLogger().error("Failed to load configuration", e);
         }
@@ -0,0 +1,151 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.configuration;
+
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+/**
+ * Persists queued player data and ignore list saves off the main thread.
+ *
+ * <p>Saves are keyed by file, so only the latest save of each file is
+ * written. A player whose data is shared by all worlds is written once no
+ * matter how many worlds saved it. Everything queued since the last pass
+ * is written in one pass.</p>
+ */
+public class PlayerStorageWriter {
+
+    private static final Map<Path, PendingWrite> QUEUED = new ConcurrentHashMap<>();
+    private static final Map<Path, String> QUEUED_IGNORE_LISTS = new ConcurrentHashMap<>();
+    private static final AtomicBoolean SCHEDULED = new AtomicBoolean();
+
+    private static final class PendingWrite {
+
+        final PlayerStorageData playerStorage;
+        final CommentedConfigurationNode root;
+
+        PendingWrite(PlayerStorageData playerStorage, CommentedConfigurationNode root) {
+            this.playerStorage = playerStorage;
+            this.root = root;
+        }
+    }
+
+    static void queue(Path path, PlayerStorageData playerStorage, CommentedConfigurationNode root) {
+        QUEUED.put(path, new PendingWrite(playerStorage, root));
+        schedule();
+    }
+
+    /**
+     * Queues the content of an ignore list file.
+     */
+    public static void queueIgnoreList(Path path, String content) {
+        QUEUED_IGNORE_LISTS.put(path, content);
+        schedule();
+    }
+
+    /**
+     * Gets the data of a player file that is queued but not yet written.
+     */
+    @Nullable
+    static CommentedConfigurationNode getQueued(Path path) {
+        final PendingWrite write = QUEUED.get(path);
+        return write == null ? null : write.root;
+    }
+
+    /**
+     * Gets the content of an ignore list file that is queued but not yet
+     * written.
+     */
+    @Nullable
+    public static String getQueuedIgnoreList(Path path) {
+        return QUEUED_IGNORE_LISTS.get(path);
+    }
+
+    /**
+     * Writes all queued saves on the calling thread.
+     */
+    public static void flush() {
+        writeQueued();
+    }
+
+    public static int getPendingCount() {
+        return QUEUED.size() + QUEUED_IGNORE_LISTS.size();
+    }
+
+    private static void schedule() {
+        if (SCHEDULED.compareAndSet(false, true)) {
+            GriefPreventionPlugin.instance.executor.execute(PlayerStorageWriter::drain);
+        }
+    }
+
+    private static void drain() {
+        do {
+            try {
+                writeQueued();
+            } catch (Throwable t) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to write queued player data", t);
+            } finally {
+                SCHEDULED.set(false);
+            }
+        } while (!(QUEUED.isEmpty() && QUEUED_IGNORE_LISTS.isEmpty()) && SCHEDULED.compareAndSet(false, true));
+    }
+
+    private static synchronized void writeQueued() {
+        // entries are removed only once written so loads never read an older file
+        for (Map.Entry<Path, PendingWrite> entry : new HashMap<>(QUEUED).entrySet()) {
+            try {
+                ClaimStorageData.writeAtomically(entry.getKey(), entry.getValue().root);
+            } catch (IOException e) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to save player data to " + entry.getKey(), e);
+                // picked up again by the next autosave
+                entry.getValue().playerStorage.getConfig().setRequiresSave(true);
+            }
+            QUEUED.remove(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<Path, String> entry : new HashMap<>(QUEUED_IGNORE_LISTS).entrySet()) {
+            final Path tempPath = entry.getKey().resolveSibling(entry.getKey().getFileName() + ".tmp");
+            try {
+                Files.write(tempPath, entry.getValue().getBytes(StandardCharsets.UTF_8));
+                Files.move(tempPath, entry.getKey(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to save ignore list to " + entry.getKey(), e);
+            }
+            QUEUED_IGNORE_LISTS.remove(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -25,10 +25,14 @@
 package me.ryanhamshire.griefprevention.configuration;
 
 import me.ryanhamshire.griefprevention.api.claim.ClaimType;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 public class TownStorageData extends ClaimStorageData {
 
     public TownStorageData(Path path, UUID worldUniqueId, UUID ownerUniqueId, boolean cuboid) {
@@ -39,6 +43,18 @@ public TownStorageData(Path path, UUID worldUniqueId) {
         super(path, worldUniqueId);
     }
 
+    public TownStorageData(Path path, UUID worldUniqueId, ClaimSnapshot.Entry snapshotEntry) {
+        super(path, worldUniqueId, snapshotEntry);
+    }
+
+    TownStorageData(Path path, ClaimStorageData from, CommentedConfigurationNode root) throws IOException {
+        super(path, from, root);
+    }
+
+    public TownStorageData(UUID claimUniqueId, UUID worldUniqueId, @Nullable byte[] data, IStorageBackend backend) {
+        super(claimUniqueId, worldUniqueId, ClaimType.TOWN, data, backend);
+    }
+
     public TownDataConfig getConfig() {
         return (TownDataConfig) this.configBase;
     }
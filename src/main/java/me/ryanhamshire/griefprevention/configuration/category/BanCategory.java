@@ -30,6 +30,7 @@
 import org.spongepowered.api.text.Text;
 
 import java.util.Map;
+import java.util.Set;
 
 @ConfigSerializable
 public class BanCategory extends ConfigCategory {
@@ -47,6 +48,10 @@ public void removeBan(String permission) {
         this.banReasons.remove(permission);
     }
 
+    public Set<String> getBannedPermissions() {
+        return this.banReasons.keySet();
+    }
+
     public Text getReason(String permission) {
         permission = permission.replace("griefprevention.flag.", "").toLowerCase();
         for (Map.Entry<String, Text> banEntry : this.banReasons.entrySet()) {
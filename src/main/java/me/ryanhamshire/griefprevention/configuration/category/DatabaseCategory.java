@@ -30,10 +30,11 @@
 @ConfigSerializable
 public class DatabaseCategory extends ConfigCategory {
 
-    @Setting(value = "password", comment = "password")
+    @Setting(value = "password", comment = "The password of the database user.")
     public String dbPassword = "";
-    @Setting(value = "username", comment = "username")
+    @Setting(value = "username", comment = "The name of the database user.")
     public String dbUsername = "";
-    @Setting(value = "url", comment = "url")
+    @Setting(value = "url", comment = "The JDBC url of the database to store claim and player data in, ex. 'jdbc:mysql://localhost/griefprevention'."
+            + "\nLeave empty to store data in files. (Default: \"\")")
     public String dbURL = "";
 }
\ No newline at end of file
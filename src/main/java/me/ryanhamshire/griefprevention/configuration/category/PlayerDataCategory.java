@@ -55,4 +55,9 @@ public class PlayerDataCategory extends ConfigCategory {
             + "\nExample: If a player has 5 basic claims with a total cost of 1000, this will set their accrued claim blocks to 1000."
             + "\nNote: This will also reset all bonus claim blocks to 0. It is highly recommended to backup before using.")
     public boolean resetAccruedClaimBlocks = false;
+    @Setting(value = "offline-cache-size", comment = "The max number of offline players to keep player data in memory for, per world or in total when using global storage."
+            + "\nWhen exceeded, the least recently used data is saved and unloaded. Set to -1 to never unload player data. (Default: 500)")
+    public int offlineCacheSize = 500;
+    @Setting(value = "offline-cache-expiration", comment = "The number of minutes to keep data of an offline player in memory after it was last used. (Default: 15)")
+    public int offlineCacheExpiration = 15;
 }
\ No newline at end of file
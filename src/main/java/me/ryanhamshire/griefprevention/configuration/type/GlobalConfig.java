@@ -25,6 +25,7 @@
 package me.ryanhamshire.griefprevention.configuration.type;
 
 import me.ryanhamshire.griefprevention.configuration.category.BanCategory;
+import me.ryanhamshire.griefprevention.configuration.category.DatabaseCategory;
 import me.ryanhamshire.griefprevention.configuration.category.LoggingCategory;
 import me.ryanhamshire.griefprevention.configuration.category.MessageCategory;
 import me.ryanhamshire.griefprevention.configuration.category.MigratorCategory;
@@ -38,8 +39,8 @@ public class GlobalConfig extends ConfigBase {
 
     @Setting
     public BanCategory bans = new BanCategory();
-    //@Setting
-    //public DatabaseCategory database = new DatabaseCategory();
+    @Setting
+    public DatabaseCategory database = new DatabaseCategory();
     @Setting
     public LoggingCategory logging = new LoggingCategory();
     @Setting
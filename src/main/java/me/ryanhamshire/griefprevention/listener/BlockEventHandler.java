@@ -134,7 +134,6 @@ public void onBlockPre(ChangeBlockEvent.Pre event) {
             }
     
             GPClaim sourceClaim = this.dataStore.getClaimAt(sourceLocation);
-            GPClaim targetClaim = null;
             List<Location<World>> sourceLocations = event.getLocations();
             if (pistonExtend) {
                 // check next block in extend direction
@@ -144,8 +143,10 @@ public void onBlockPre(ChangeBlockEvent.Pre event) {
                 final Location<World> dirLoc = location.getBlockRelative(direction);
                 sourceLocations.add(dirLoc);
             }
-            for (Location<World> location : sourceLocations) {
-                targetClaim = this.dataStore.getClaimAt(location, targetClaim);
+            final GPClaim[] targetClaims = this.dataStore.getClaimsAt(sourceLocation.getExtent(), sourceLocations);
+            for (int i = 0; i < targetClaims.length; i++) {
+                final Location<World> location = sourceLocations.get(i);
+                final GPClaim targetClaim = targetClaims[i];
 
                 if (user != null && targetClaim.isUserTrusted(user, TrustType.BUILDER)) {
                     GPTimings.BLOCK_PRE_EVENT.stopTimingIfSync();
@@ -177,10 +178,13 @@ public void onBlockPre(ChangeBlockEvent.Pre event) {
                 }
             }
         } else if (user != null) {
-            GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getPlayerData(event.getLocations().get(0).getExtent(), user.getUniqueId());
-            GPClaim targetClaim = null;
-            for (Location<World> location : event.getLocations()) {
-                targetClaim = this.dataStore.getClaimAt(location, targetClaim);
+            final List<Location<World>> locations = event.getLocations();
+            final World world = locations.get(0).getExtent();
+            GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getPlayerData(world, user.getUniqueId());
+            final GPClaim[] targetClaims = this.dataStore.getClaimsAt(world, locations);
+            for (int i = 0; i < targetClaims.length; i++) {
+                final Location<World> location = locations.get(i);
+                final GPClaim targetClaim = targetClaims[i];
 
                 if (targetClaim.isUserTrusted(user, TrustType.BUILDER)) {
                     GPTimings.BLOCK_PRE_EVENT.stopTimingIfSync();
@@ -252,13 +256,18 @@ public void onBlockNotify(NotifyNeighborBlockEvent event) {
             return;
         }
 
+        final List<Location<World>> locations = new ArrayList<>(event.getNeighbors().size());
+        for (Direction direction : event.getNeighbors().keySet()) {
+            locations.add(sourceLocation.getBlockRelative(direction));
+        }
+        final GPClaim[] targetClaims = this.dataStore.getClaimsAt(sourceLocation.getExtent(), locations);
         Iterator<Direction> iterator = event.getNeighbors().keySet().iterator();
-        GPClaim targetClaim = null;
+        int index = 0;
         while (iterator.hasNext()) {
-            Direction direction = iterator.next();
-            Location<World> location = sourceLocation.getBlockRelative(direction);
+            iterator.next();
+            final Location<World> location = locations.get(index);
+            final GPClaim targetClaim = targetClaims[index++];
             Vector3i pos = location.getBlockPosition();
-            targetClaim = this.dataStore.getClaimAt(location, targetClaim);
             if (sourceClaim.isWilderness() && targetClaim.isWilderness()) {
                 if (playerData != null) {
                     playerData.setLastInteractData(targetClaim);
@@ -464,15 +473,22 @@ public void onExplosion(ExplosionEvent.Post event) {
         GPTimings.EXPLOSION_EVENT.startTimingIfSync();
         Object source = event.getCause().root();
         final User user = CauseContextHelper.getEventUser(event);
-        GPClaim targetClaim = null;
+        final List<Transaction<BlockSnapshot>> transactions = new ArrayList<>(event.getTransactions().size());
+        final List<Location<World>> locations = new ArrayList<>(event.getTransactions().size());
         for (Transaction<BlockSnapshot> transaction : event.getTransactions()) {
-            BlockSnapshot blockSnapshot = transaction.getOriginal();
-            Location<World> location = blockSnapshot.getLocation().orElse(null);
-            if (location == null) {
-                continue;
+            Location<World> location = transaction.getOriginal().getLocation().orElse(null);
+            if (location != null) {
+                transactions.add(transaction);
+                locations.add(location);
             }
+        }
 
-            targetClaim =  GriefPreventionPlugin.instance.dataStore.getClaimAt(blockSnapshot.getLocation().get(), targetClaim);
+        final GPClaim[] targetClaims = GriefPreventionPlugin.instance.dataStore.getClaimsAt(world, locations);
+        for (int i = 0; i < targetClaims.length; i++) {
+            final Transaction<BlockSnapshot> transaction = transactions.get(i);
+            final BlockSnapshot blockSnapshot = transaction.getOriginal();
+            final Location<World> location = locations.get(i);
+            final GPClaim targetClaim = targetClaims[i];
             if (GPFlags.EXPLOSION_SURFACE && location.getPosition().getY() > ((net.minecraft.world.World) world).getSeaLevel() && GPPermissionHandler.getClaimPermission(event, location, targetClaim, GPPermissions.EXPLOSION_SURFACE, source, blockSnapshot, user, true) == Tristate.FALSE) {
                 event.setCancelled(true);
                 GPTimings.EXPLOSION_EVENT.stopTimingIfSync();
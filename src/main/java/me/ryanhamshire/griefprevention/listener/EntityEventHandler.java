@@ -96,8 +96,10 @@
 
 import java.lang.ref.WeakReference;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Predicate;
@@ -183,12 +185,24 @@ public void onEntitySpawn(SpawnEntityEvent event, @Root Object sourceCause) {
 
         GPTimings.ENTITY_SPAWN_EVENT.startTimingIfSync();
         final User user = CauseContextHelper.getEventUser(event);
+        final List<Entity> entities = new ArrayList<>(event.getEntities());
+        final List<Location<World>> locations = new ArrayList<>(entities.size());
+        for (Entity entity : entities) {
+            locations.add(entity.getLocation());
+        }
+        final GPClaim[] targetClaims = GriefPreventionPlugin.instance.dataStore.getClaimsAt(world, locations);
         event.filterEntities(new Predicate<Entity>() {
-            GPClaim targetClaim = null;
+            int index = 0;
 
             @Override
             public boolean test(Entity entity) {
-                targetClaim = GriefPreventionPlugin.instance.dataStore.getClaimAt(entity.getLocation(), targetClaim);
+                // entities are filtered in list order, fall back to a lookup if that ever changes
+                final GPClaim targetClaim;
+                if (this.index < targetClaims.length && entities.get(this.index) == entity) {
+                    targetClaim = targetClaims[this.index++];
+                } else {
+                    targetClaim = GriefPreventionPlugin.instance.dataStore.getClaimAt(entity.getLocation());
+                }
                 if (targetClaim == null) {
                     return true;
                 }
@@ -829,8 +829,8 @@ public void onPlayerLogin(ClientConnectionEvent.Login event) {
         playerData.ipAddress = event.getConnection().getAddress().getAddress();
         final GPClaimManager claimWorldManager = this.dataStore.getClaimWorldManager(worldProperties);
         final Instant dateNow = Instant.now();
-        for (Claim claim : claimWorldManager.getWorldClaims()) {
-            if (claim.getType() != ClaimType.ADMIN && claim.getOwnerUniqueId().equals(playerUniqueId)) {
+        for (Claim claim : claimWorldManager.getOwnerClaims(playerUniqueId)) {
+            if (claim.getType() != ClaimType.ADMIN) {
                 // update lastActive timestamp for claim
                 claim.getData().setDateLastActive(dateNow);
                 // update timestamps for subdivisions
@@ -1836,7 +1836,7 @@ private void onPlayerHandleShovelAction(InteractEvent event, BlockSnapshot targe
             boolean ignoreAir = false;
             if (this.worldEditProvider != null) {
                 // Ignore air so players can use client-side WECUI block target which uses max reach distance
-                if (this.worldEditProvider.hasCUISupport(player) && playerData.optionClaimCreateMode == 1 && playerData.lastShovelLocation != null) {
+                if (this.worldEditProvider.hasCUISupport(player) && playerData.getClaimCreateMode() == 1 && playerData.lastShovelLocation != null) {
                     ignoreAir = true;
                 }
             }
@@ -2195,7 +2195,7 @@ else if (location.getBlock().getType() == BlockTypes.FLOWING_WATER || location.g
 
                         // Check trust
                         if (claim.isAdminClaim()) {
-                            if (!playerData.canManageAdminClaims) {
+                            if (!playerData.getOptions().canManageAdminClaims) {
                                 playerCanResize = false;
                             }
                         } else if (!player.getUniqueId().equals(claim.getOwnerUniqueId())) {
@@ -2314,10 +2314,10 @@ else if (playerData.claimSubdividing != null) {
                         }
 
                         Vector3i lesserBoundaryCorner = new Vector3i(playerData.lastShovelLocation.getBlockX(), 
-                                playerData.optionClaimCreateMode == 1 ? playerData.lastShovelLocation.getBlockY() : playerData.getMinClaimLevel(),
+                                playerData.getClaimCreateMode() == 1 ? playerData.lastShovelLocation.getBlockY() : playerData.getMinClaimLevel(),
                                 playerData.lastShovelLocation.getBlockZ());
                         Vector3i greaterBoundaryCorner = new Vector3i(location.getBlockX(), 
-                                playerData.optionClaimCreateMode == 1 ? location.getBlockY() : playerData.getMaxClaimLevel(),
+                                playerData.getClaimCreateMode() == 1 ? location.getBlockY() : playerData.getMaxClaimLevel(),
                                         location.getBlockZ());
 
                         try (final CauseStackManager.StackFrame frame = Sponge.getCauseStackManager().pushCauseFrame()) {
@@ -2325,7 +2325,7 @@ else if (playerData.claimSubdividing != null) {
                             Sponge.getCauseStackManager().addContext(EventContextKeys.PLUGIN, GriefPreventionPlugin.instance.pluginContainer);
                             ClaimResult result = this.dataStore.createClaim(player.getWorld(),
                                     lesserBoundaryCorner, greaterBoundaryCorner, PlayerUtils.getClaimTypeFromShovel(playerData.shovelMode),
-                                    player.getUniqueId(), playerData.optionClaimCreateMode == 1, playerData.claimSubdividing);
+                                    player.getUniqueId(), playerData.getClaimCreateMode() == 1, playerData.claimSubdividing);
 
                             GPClaim gpClaim = (GPClaim) result.getClaim().orElse(null);
                             // if it didn't succeed, tell the player why
@@ -2405,11 +2405,11 @@ else if (playerData.claimSubdividing != null) {
             if (!player.hasPermission(GPPermissions.OVERRIDE_CLAIM_LIMIT)) {
                 int createClaimLimit = -1;
                 if (playerData.shovelMode == ShovelMode.Basic) {
-                    createClaimLimit = playerData.optionCreateClaimLimitBasic;
+                    createClaimLimit = playerData.getOptions().createClaimLimitBasic;
                 } else if (playerData.shovelMode == ShovelMode.Town) {
-                    createClaimLimit = playerData.optionCreateClaimLimitTown;
+                    createClaimLimit = playerData.getOptions().createClaimLimitTown;
                 } else if (playerData.shovelMode == ShovelMode.Subdivide) {
-                    createClaimLimit = playerData.optionCreateClaimLimitSubdivision;
+                    createClaimLimit = playerData.getOptions().createClaimLimitSubdivision;
                 }
     
                 GPClaim parentClaim = GriefPreventionPlugin.instance.dataStore.getClaimAt(location);
@@ -2418,7 +2418,7 @@ else if (playerData.claimSubdividing != null) {
                 }
 
                 if (createClaimLimit > 0 &&
-                        (playerData.getInternalClaims().size() + 1) > playerData.optionCreateClaimLimitBasic) {
+                        (playerData.getInternalClaims().size() + 1) > playerData.getOptions().createClaimLimitBasic) {
                     GriefPreventionPlugin.sendMessage(player, GriefPreventionPlugin.instance.messageData.claimCreateFailedLimit.toText());
                     GPTimings.PLAYER_HANDLE_SHOVEL_ACTION.stopTimingIfSync();
                     return;
@@ -2476,7 +2476,7 @@ else if (playerData.claimSubdividing != null) {
                 return;
             }
 
-            final boolean cuboid = playerData.optionClaimCreateMode == 1;
+            final boolean cuboid = playerData.getClaimCreateMode() == 1;
             Vector3i lesserBoundary = new Vector3i(
                     lastShovelLocation.getBlockX(),
                     cuboid ? lastShovelLocation.getBlockY() : playerData.getMinClaimLevel(),
@@ -2558,7 +2558,7 @@ private boolean investigateClaim(Player player, BlockSnapshot clickedBlock, Item
                 Location<World> nearbyLocation = playerData.lastValidInspectLocation != null ? playerData.lastValidInspectLocation : player.getLocation();
                 List<Claim> claims = this.dataStore.getNearbyClaims(nearbyLocation);
                 int height = playerData.lastValidInspectLocation != null ? playerData.lastValidInspectLocation.getBlockY() : player.getProperty(EyeLocationProperty.class).get().getValue().getFloorY();
-                Visualization visualization = Visualization.fromClaims(claims, playerData.optionClaimCreateMode == 1 ? height : player.getProperty(EyeLocationProperty.class).get().getValue().getFloorY(), player.getLocation(), playerData, null);
+                Visualization visualization = Visualization.fromClaims(claims, playerData.getClaimCreateMode() == 1 ? height : player.getProperty(EyeLocationProperty.class).get().getValue().getFloorY(), player.getLocation(), playerData, null);
                 visualization.apply(player);
                 final Text message = GriefPreventionPlugin.instance.messageData.claimShowNearby
                         .apply(ImmutableMap.of(
@@ -2593,7 +2593,7 @@ private boolean investigateClaim(Player player, BlockSnapshot clickedBlock, Item
         if (claim.id != playerData.visualClaimId) {
             int height = playerData.lastValidInspectLocation != null ? playerData.lastValidInspectLocation.getBlockY() : clickedBlock.getLocation().get().getBlockY();
             playerData.revertActiveVisual(player);
-            claim.getVisualizer().createClaimBlockVisuals(playerData.optionClaimCreateMode == 1 ? height : player.getProperty(EyeLocationProperty.class).get().getValue().getFloorY(), player.getLocation(), playerData);
+            claim.getVisualizer().createClaimBlockVisuals(playerData.getClaimCreateMode() == 1 ? height : player.getProperty(EyeLocationProperty.class).get().getValue().getFloorY(), player.getLocation(), playerData);
             claim.getVisualizer().apply(player);
             if (this.worldEditProvider != null) {
                 worldEditProvider.visualizeClaim(claim, player, playerData, true);
@@ -38,6 +38,7 @@
 import org.spongepowered.api.event.world.UnloadWorldEvent;
 import org.spongepowered.api.event.world.chunk.LoadChunkEvent;
 import org.spongepowered.api.event.world.chunk.UnloadChunkEvent;
+import org.spongepowered.api.world.Chunk;
 import org.spongepowered.common.SpongeImpl;
 
 import java.util.concurrent.TimeUnit;
@@ -97,7 +98,7 @@ public void onWorldSave(SaveWorldEvent.Post event) {
             return;
         }
 
-        claimWorldManager.save();
+        GriefPreventionPlugin.instance.dataStore.saveWorldData(event.getTargetWorld().getProperties());
         GPTimings.WORLD_SAVE_EVENT.stopTimingIfSync();
     }
 
@@ -108,6 +109,12 @@ public void onChunkLoad(LoadChunkEvent event) {
 
     @Listener
     public void onChunkUnload(UnloadChunkEvent event) {
-        
+        final Chunk chunk = event.getTargetChunk();
+        if (!GriefPreventionPlugin.instance.claimsEnabledForWorld(chunk.getWorld().getProperties())) {
+            return;
+        }
+
+        final GPClaimManager claimWorldManager = GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(chunk.getWorld().getProperties());
+        claimWorldManager.removeColumnTable(chunk.getPosition().getX(), chunk.getPosition().getZ());
     }
 }
@@ -0,0 +1,651 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.migrator;
+
+import me.ryanhamshire.griefprevention.DatabaseSchema;
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.configuration.ClaimJournal;
+import me.ryanhamshire.griefprevention.configuration.ClaimSnapshot;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageData;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.ConfigurationOptions;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+import ninja.leaping.configurate.commented.SimpleCommentedConfigurationNode;
+import ninja.leaping.configurate.hocon.HoconConfigurationLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+/**
+ * Copies claim and player data between claim files and a database.
+ *
+ * <p>Data is copied in batches so memory use does not grow with the
+ * number of claims, only the sorted file names of one world are kept.
+ * Files of a batch are read or written in parallel and each batch is
+ * written to the database in one transaction. After each batch the last
+ * copied id is saved to a checkpoint file, so a migration that was
+ * interrupted continues from there when run again.</p>
+ *
+ * <p>Can be run while the server is offline, see {@link #main(String[])}.
+ * While the server is running, claims and players saved during the copy
+ * are recorded and copied again by {@link #copyChanges(Target)} once the
+ * server has flushed its saves.</p>
+ */
+public class StorageMigrator {
+
+    public static final int BATCH_SIZE = 1000;
+    private static final String CHECKPOINT_FILE = "storage-migration.checkpoint";
+    private static final String CHECKPOINT_TARGET = "target";
+    private static final String CHECKPOINT_DONE = "done";
+    private static final String REMOVED_CLAIM_DATA_FOLDER = "ClaimData.removed";
+    private static final int UUID_LENGTH = 36;
+    // Ids of claims and players saved or removed while recording, null when not recording
+    private static volatile Set<UUID> changedClaims;
+    private static volatile Set<UUID> changedPlayers;
+
+    public enum Target {
+        DATABASE,
+        FILES
+    }
+
+    public interface ConnectionSource {
+
+        Connection getConnection() throws SQLException;
+    }
+
+    private final Path configPath;
+    private final ConnectionSource connectionSource;
+    private final boolean globalPlayerStorage;
+    private final Function<Path, UUID> worldResolver;
+    private final Consumer<String> progress;
+    private final int threads;
+    private final boolean replayJournal;
+    private final Path checkpointPath;
+    private final Properties checkpoint = new Properties();
+    private long claimCount = 0;
+    private long playerCount = 0;
+    private long startTime;
+
+    /**
+     * @param configPath The GriefPrevention config folder holding the world folders
+     * @param connectionSource The database to copy from or to
+     * @param globalPlayerStorage Whether player data is shared between worlds
+     * @param worldResolver Gets the world UUID of a world data folder, or null if unknown
+     * @param progress Receives progress messages, from the migrating thread
+     * @param threads The number of threads reading or writing files
+     * @param replayJournal Whether to apply claim journals before copying
+     *     claim files, only safe while no server is writing them
+     */
+    public StorageMigrator(Path configPath, ConnectionSource connectionSource, boolean globalPlayerStorage, Function<Path, UUID> worldResolver,
+            Consumer<String> progress, int threads, boolean replayJournal) {
+        this.configPath = configPath;
+        this.connectionSource = connectionSource;
+        this.globalPlayerStorage = globalPlayerStorage;
+        this.worldResolver = worldResolver;
+        this.progress = progress;
+        this.threads = Math.max(1, threads);
+        this.replayJournal = replayJournal;
+        this.checkpointPath = configPath.resolve(CHECKPOINT_FILE);
+    }
+
+    public void migrate(Target target) throws Exception {
+        this.loadCheckpoint(target);
+        this.startTime = System.currentTimeMillis();
+        final ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try (Connection connection = this.connectionSource.getConnection()) {
+            DatabaseSchema.createTables(connection);
+            for (Map.Entry<Path, UUID> world : this.findWorlds().entrySet()) {
+                final Path claimDataPath = world.getKey().resolve("ClaimData");
+                if (target == Target.DATABASE) {
+                    this.copyClaimFiles(connection, pool, world.getValue(), claimDataPath);
+                } else {
+                    this.copyClaimRows(connection, pool, world.getValue(), claimDataPath);
+                }
+                if (!this.globalPlayerStorage) {
+                    this.copyPlayerData(target, connection, pool, world.getValue(), world.getKey().resolve("PlayerData"));
+                }
+            }
+            if (this.globalPlayerStorage) {
+                this.copyPlayerData(target, connection, pool, DatabaseSchema.GLOBAL_WORLD_UUID, this.configPath.resolve("GlobalPlayerData"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Files.deleteIfExists(this.checkpointPath);
+        this.progress.accept("Storage migration finished. Copied " + this.claimCount + " claims and " + this.playerCount + " player data files in "
+                + (System.currentTimeMillis() - this.startTime) / 1000 + "s.");
+    }
+
+    // world data folders are found at worlds/<mod id>/<dimension>/<world name>
+    private Map<Path, UUID> findWorlds() throws IOException {
+        final Map<Path, UUID> worlds = new LinkedHashMap<>();
+        final Path worldsPath = this.configPath.resolve("worlds");
+        if (!Files.isDirectory(worldsPath)) {
+            return worlds;
+        }
+
+        final List<Path> worldPaths;
+        try (Stream<Path> paths = Files.walk(worldsPath, 3)) {
+            worldPaths = paths.filter(path -> worldsPath.relativize(path).getNameCount() == 3 && Files.isDirectory(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path worldPath : worldPaths) {
+            final UUID worldUniqueId = this.worldResolver.apply(worldPath);
+            if (worldUniqueId == null) {
+                this.progress.accept("Skipping world folder " + worldPath + ", its world UUID is unknown.");
+                continue;
+            }
+            worlds.put(worldPath, worldUniqueId);
+        }
+        return worlds;
+    }
+
+    private void copyClaimFiles(Connection connection, ForkJoinPool pool, UUID worldUniqueId, Path claimDataPath) throws Exception {
+        final String key = "claims." + worldUniqueId;
+        final String last = this.checkpoint.getProperty(key);
+        if (CHECKPOINT_DONE.equals(last) || !Files.isDirectory(claimDataPath)) {
+            return;
+        }
+
+        if (this.replayJournal) {
+            // apply changes journaled since the claim files were last compacted
+            ClaimJournal.get(claimDataPath).replay();
+        }
+        final List<Path> files = listDataFiles(claimDataPath, Integer.MAX_VALUE, last);
+        for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+            final List<Path> batch = files.subList(start, Math.min(start + BATCH_SIZE, files.size()));
+            final ConfigurationNode[] nodes = readFiles(pool, batch);
+            final Map<UUID, ConfigurationNode> claims = new HashMap<>();
+            for (int i = 0; i < nodes.length; i++) {
+                if (nodes[i] == null) {
+                    continue;
+                }
+                if (!nodes[i].getNode("subdivisions").getChildrenMap().isEmpty()) {
+                    this.progress.accept("Claim file " + batch.get(i) + " still contains legacy subdivisions. Load the world once in file mode and "
+                            + "migrate again to keep them.");
+                }
+                // the world folder is authoritative, as when claims are loaded from files
+                nodes[i].getNode(ClaimStorageData.MAIN_WORLD_UUID).setValue(worldUniqueId.toString());
+                claims.put(UUID.fromString(batch.get(i).getFileName().toString()), nodes[i]);
+            }
+            DatabaseSchema.writeClaims(connection, claims);
+            this.claimCount += claims.size();
+            this.saveCheckpoint(key, batch.get(batch.size() - 1).getFileName().toString());
+            this.reportProgress("claims", worldUniqueId, start + batch.size(), files.size());
+        }
+        this.saveCheckpoint(key, CHECKPOINT_DONE);
+    }
+
+    private void copyClaimRows(Connection connection, ForkJoinPool pool, UUID worldUniqueId, Path claimDataPath) throws Exception {
+        final String key = "claims." + worldUniqueId;
+        final String last = this.checkpoint.getProperty(key);
+        if (CHECKPOINT_DONE.equals(last)) {
+            return;
+        }
+
+        if (last == null) {
+            // claim files left from an earlier file mode would bring back claims deleted since
+            this.moveStaleClaimFiles(connection, worldUniqueId, claimDataPath);
+            final ClaimJournal journal = ClaimJournal.get(claimDataPath);
+            if (journal.size() > 0) {
+                // journaled changes of older claim files must not be replayed over the copied claims,
+                // a server reading from the database never appends to them
+                journal.truncate();
+            }
+        }
+        UUID after = last == null ? null : UUID.fromString(last);
+        int copied = 0;
+        List<DatabaseSchema.Row> rows;
+        while (!(rows = DatabaseSchema.selectClaims(connection, worldUniqueId, after, BATCH_SIZE)).isEmpty()) {
+            final List<DatabaseSchema.Row> batch = rows;
+            pool.submit(() -> batch.parallelStream().forEach(row -> writeFile(claimDataPath.resolve(row.type.toLowerCase())
+                    .resolve(row.uniqueId.toString()), row.data))).get();
+            after = batch.get(batch.size() - 1).uniqueId;
+            copied += batch.size();
+            this.claimCount += batch.size();
+            this.saveCheckpoint(key, after.toString());
+            this.reportProgress("claims", worldUniqueId, copied, -1);
+        }
+        this.saveCheckpoint(key, CHECKPOINT_DONE);
+    }
+
+    // Moves claim files that are not stored in the database, or stored with another type, out of the claim data folder
+    private void moveStaleClaimFiles(Connection connection, UUID worldUniqueId, Path claimDataPath) throws Exception {
+        if (!Files.isDirectory(claimDataPath)) {
+            return;
+        }
+
+        final Path removedPath = claimDataPath.resolveSibling(REMOVED_CLAIM_DATA_FOLDER);
+        final List<Path> files = listDataFiles(claimDataPath, Integer.MAX_VALUE, null);
+        int moved = 0;
+        for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+            final List<Path> batch = files.subList(start, Math.min(start + BATCH_SIZE, files.size()));
+            final List<UUID> claimUniqueIds = new ArrayList<>(batch.size());
+            for (Path file : batch) {
+                claimUniqueIds.add(UUID.fromString(file.getFileName().toString()));
+            }
+            final Map<UUID, String> types = DatabaseSchema.selectClaimTypes(connection, worldUniqueId, claimUniqueIds);
+            for (int i = 0; i < batch.size(); i++) {
+                final Path file = batch.get(i);
+                final String type = types.get(claimUniqueIds.get(i));
+                if (type != null && type.toLowerCase().equals(file.getParent().getFileName().toString())) {
+                    continue;
+                }
+                final Path removedFile = removedPath.resolve(claimDataPath.relativize(file));
+                Files.createDirectories(removedFile.getParent());
+                Files.move(file, removedFile, StandardCopyOption.REPLACE_EXISTING);
+                moved++;
+            }
+        }
+        if (moved > 0) {
+            this.progress.accept("Moved " + moved + " claim files of world " + worldUniqueId + " that are not in the database to " + removedPath + ".");
+        }
+    }
+
+    private void copyPlayerData(Target target, Connection connection, ForkJoinPool pool, UUID worldUniqueId, Path playerDataPath) throws Exception {
+        final String key = "players." + worldUniqueId;
+        final String last = this.checkpoint.getProperty(key);
+        if (CHECKPOINT_DONE.equals(last)) {
+            return;
+        }
+
+        if (target == Target.DATABASE) {
+            if (!Files.isDirectory(playerDataPath)) {
+                return;
+            }
+            // ignore lists are kept in files next to the player data and are not copied
+            final List<Path> files = listDataFiles(playerDataPath, 1, last);
+            for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+                final List<Path> batch = files.subList(start, Math.min(start + BATCH_SIZE, files.size()));
+                final ConfigurationNode[] nodes = readFiles(pool, batch);
+                final Map<DatabaseSchema.PlayerDataKey, ConfigurationNode> playerData = new HashMap<>();
+                for (int i = 0; i < nodes.length; i++) {
+                    if (nodes[i] != null) {
+                        playerData.put(new DatabaseSchema.PlayerDataKey(UUID.fromString(batch.get(i).getFileName().toString()), worldUniqueId), nodes[i]);
+                    }
+                }
+                DatabaseSchema.writePlayerData(connection, playerData);
+                this.playerCount += playerData.size();
+                this.saveCheckpoint(key, batch.get(batch.size() - 1).getFileName().toString());
+                this.reportProgress("player data", worldUniqueId, start + batch.size(), files.size());
+            }
+        } else {
+            UUID after = last == null ? null : UUID.fromString(last);
+            int copied = 0;
+            List<DatabaseSchema.Row> rows;
+            while (!(rows = DatabaseSchema.selectPlayerData(connection, worldUniqueId, after, BATCH_SIZE)).isEmpty()) {
+                final List<DatabaseSchema.Row> batch = rows;
+                pool.submit(() -> batch.parallelStream().forEach(row -> writeFile(playerDataPath.resolve(row.uniqueId.toString()), row.data))).get();
+                after = batch.get(batch.size() - 1).uniqueId;
+                copied += batch.size();
+                this.playerCount += batch.size();
+                this.saveCheckpoint(key, after.toString());
+                this.reportProgress("player data", worldUniqueId, copied, -1);
+            }
+        }
+        this.saveCheckpoint(key, CHECKPOINT_DONE);
+    }
+
+    /**
+     * Starts recording the claims and players saved by the server, so
+     * changes made while copying are not lost. A recording left running
+     * by a failed migration is kept, so changes made since are copied by
+     * the run that resumes it.
+     */
+    public static synchronized void startRecording() {
+        if (changedClaims == null) {
+            changedPlayers = ConcurrentHashMap.newKeySet();
+            changedClaims = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /**
+     * Gets whether changes are recorded since a migration started on this
+     * server. A migration can only be resumed from its checkpoint if so,
+     * changes made without a recording would be missed.
+     */
+    public static boolean isRecording() {
+        return changedClaims != null;
+    }
+
+    public static synchronized void stopRecording() {
+        changedClaims = null;
+        changedPlayers = null;
+    }
+
+    public static void recordClaimChange(UUID claimUniqueId) {
+        final Set<UUID> claims = changedClaims;
+        if (claims != null) {
+            claims.add(claimUniqueId);
+        }
+    }
+
+    public static void recordPlayerChange(UUID playerUniqueId) {
+        final Set<UUID> players = changedPlayers;
+        if (players != null) {
+            players.add(playerUniqueId);
+        }
+    }
+
+    /**
+     * Copies the claims and players recorded since {@link #startRecording()}
+     * again and stops recording once they are copied. Must be called on the
+     * main thread after all saves were flushed, so nothing changes while it
+     * runs.
+     */
+    public void copyChanges(Target target) throws Exception {
+        final Set<UUID> claims = changedClaims;
+        final Set<UUID> players = changedPlayers;
+        if (claims == null || players == null) {
+            return;
+        }
+        if (claims.isEmpty() && players.isEmpty()) {
+            stopRecording();
+            return;
+        }
+
+        try (Connection connection = this.connectionSource.getConnection()) {
+            final Map<Path, UUID> worlds = this.findWorlds();
+            if (target == Target.DATABASE) {
+                this.copyChangedClaimFiles(connection, worlds, claims);
+            } else {
+                this.copyChangedClaimRows(connection, worlds, claims);
+            }
+
+            final Map<Path, UUID> playerDataPaths = new LinkedHashMap<>();
+            if (this.globalPlayerStorage) {
+                playerDataPaths.put(this.configPath.resolve("GlobalPlayerData"), DatabaseSchema.GLOBAL_WORLD_UUID);
+            } else {
+                for (Map.Entry<Path, UUID> world : worlds.entrySet()) {
+                    playerDataPaths.put(world.getKey().resolve("PlayerData"), world.getValue());
+                }
+            }
+            this.copyChangedPlayerData(target, connection, playerDataPaths, players);
+        }
+        stopRecording();
+        this.progress.accept("Copied " + claims.size() + " claims and " + players.size() + " players changed during the storage migration.");
+    }
+
+    private void copyChangedClaimFiles(Connection connection, Map<Path, UUID> worlds, Set<UUID> claimUniqueIds) throws Exception {
+        final Map<UUID, ConfigurationNode> claims = new HashMap<>();
+        final List<UUID> deleted = new ArrayList<>();
+        for (UUID claimUniqueId : claimUniqueIds) {
+            ConfigurationNode node = null;
+            for (Map.Entry<Path, UUID> world : worlds.entrySet()) {
+                final Path claimFile = findClaimFile(world.getKey().resolve("ClaimData"), claimUniqueId, null);
+                if (claimFile != null) {
+                    node = HoconConfigurationLoader.builder().setPath(claimFile).build().load().getNode(GriefPreventionPlugin.MOD_ID);
+                    node.getNode(ClaimStorageData.MAIN_WORLD_UUID).setValue(world.getValue().toString());
+                    break;
+                }
+            }
+            if (node == null) {
+                deleted.add(claimUniqueId);
+            } else {
+                claims.put(claimUniqueId, node);
+            }
+        }
+        if (!claims.isEmpty()) {
+            DatabaseSchema.writeClaims(connection, claims);
+        }
+        if (!deleted.isEmpty()) {
+            DatabaseSchema.deleteClaims(connection, deleted);
+        }
+    }
+
+    private void copyChangedClaimRows(Connection connection, Map<Path, UUID> worlds, Set<UUID> claimUniqueIds) throws Exception {
+        for (UUID claimUniqueId : claimUniqueIds) {
+            for (Map.Entry<Path, UUID> world : worlds.entrySet()) {
+                final Path claimDataPath = world.getKey().resolve("ClaimData");
+                final DatabaseSchema.Row row = DatabaseSchema.selectClaim(connection, world.getValue(), claimUniqueId);
+                Path claimFile = null;
+                if (row != null) {
+                    claimFile = claimDataPath.resolve(row.type.toLowerCase()).resolve(claimUniqueId.toString());
+                    writeFile(claimFile, row.data);
+                }
+                // removes the claim if it was deleted, or its old file if its type changed
+                Path staleFile;
+                while ((staleFile = findClaimFile(claimDataPath, claimUniqueId, claimFile)) != null) {
+                    Files.delete(staleFile);
+                }
+            }
+        }
+    }
+
+    private void copyChangedPlayerData(Target target, Connection connection, Map<Path, UUID> playerDataPaths, Set<UUID> playerUniqueIds)
+            throws Exception {
+        final Map<DatabaseSchema.PlayerDataKey, ConfigurationNode> playerData = new HashMap<>();
+        for (UUID playerUniqueId : playerUniqueIds) {
+            for (Map.Entry<Path, UUID> playerDataPath : playerDataPaths.entrySet()) {
+                final Path playerFile = playerDataPath.getKey().resolve(playerUniqueId.toString());
+                if (target == Target.DATABASE) {
+                    if (Files.isRegularFile(playerFile)) {
+                        playerData.put(new DatabaseSchema.PlayerDataKey(playerUniqueId, playerDataPath.getValue()),
+                                HoconConfigurationLoader.builder().setPath(playerFile).build().load().getNode(GriefPreventionPlugin.MOD_ID));
+                    }
+                } else {
+                    final byte[] data = DatabaseSchema.selectPlayerData(connection, playerUniqueId, playerDataPath.getValue());
+                    if (data != null) {
+                        writeFile(playerFile, data);
+                    }
+                }
+            }
+        }
+        if (!playerData.isEmpty()) {
+            DatabaseSchema.writePlayerData(connection, playerData);
+        }
+    }
+
+    // Finds the file of a claim in any claim type folder, other than the given file
+    @Nullable
+    private static Path findClaimFile(Path claimDataPath, UUID claimUniqueId, @Nullable Path except) throws IOException {
+        if (!Files.isDirectory(claimDataPath)) {
+            return null;
+        }
+        try (DirectoryStream<Path> typePaths = Files.newDirectoryStream(claimDataPath, Files::isDirectory)) {
+            for (Path typePath : typePaths) {
+                final Path claimFile = typePath.resolve(claimUniqueId.toString());
+                if (!claimFile.equals(except) && Files.isRegularFile(claimFile)) {
+                    return claimFile;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Lists the data files below a folder sorted by name, skipping names up to the given one
+    private static List<Path> listDataFiles(Path folder, int maxDepth, @Nullable String after) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder, maxDepth)) {
+            return paths.filter(path -> path.getFileName().toString().length() == UUID_LENGTH && isUniqueId(path.getFileName().toString()))
+                    .filter(path -> after == null || path.getFileName().toString().compareTo(after) > 0)
+                    .filter(Files::isRegularFile)
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isUniqueId(String name) {
+        try {
+            UUID.fromString(name);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Reads the data nodes of a batch of files in parallel, leaving null for files that could not be read
+    private ConfigurationNode[] readFiles(ForkJoinPool pool, List<Path> files) throws Exception {
+        final ConfigurationNode[] nodes = new ConfigurationNode[files.size()];
+        final String[] errors = new String[files.size()];
+        pool.submit(() -> IntStream.range(0, files.size()).parallel().forEach(i -> {
+            try {
+                nodes[i] = HoconConfigurationLoader.builder().setPath(files.get(i)).build().load().getNode(GriefPreventionPlugin.MOD_ID);
+            } catch (Exception e) {
+                errors[i] = "Could not read " + files.get(i) + ", skipping it: " + e.getMessage();
+            }
+        })).get();
+        for (String error : errors) {
+            if (error != null) {
+                this.progress.accept(error);
+            }
+        }
+        return nodes;
+    }
+
+    private static void writeFile(Path path, byte[] data) {
+        try {
+            final CommentedConfigurationNode root = SimpleCommentedConfigurationNode.root(ConfigurationOptions.defaults()
+                    .setHeader(GriefPreventionPlugin.CONFIG_HEADER));
+            ClaimSnapshot.decode(data, root.getNode(GriefPreventionPlugin.MOD_ID));
+            Files.createDirectories(path.getParent());
+            ClaimStorageData.writeAtomically(path, root);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void reportProgress(String type, UUID worldUniqueId, int copied, int total) {
+        final long seconds = Math.max(1, (System.currentTimeMillis() - this.startTime) / 1000);
+        this.progress.accept("Copied " + copied + (total >= 0 ? "/" + total : "") + " " + type + " of world " + worldUniqueId + " ("
+                + (this.claimCount + this.playerCount) / seconds + "/s).");
+    }
+
+    /**
+     * Deletes the checkpoint of an interrupted migration, so the next one
+     * starts over.
+     */
+    public void discardCheckpoint() throws IOException {
+        Files.deleteIfExists(this.checkpointPath);
+    }
+
+    private void loadCheckpoint(Target target) throws IOException {
+        if (Files.exists(this.checkpointPath)) {
+            try (InputStream in = Files.newInputStream(this.checkpointPath)) {
+                this.checkpoint.load(in);
+            }
+            if (target.name().equals(this.checkpoint.getProperty(CHECKPOINT_TARGET))) {
+                this.progress.accept("Resuming storage migration from " + this.checkpointPath + ".");
+                return;
+            }
+            // a checkpoint of a migration in the other direction does not apply
+            this.checkpoint.clear();
+        }
+        this.checkpoint.setProperty(CHECKPOINT_TARGET, target.name());
+    }
+
+    private void saveCheckpoint(String key, String value) throws IOException {
+        this.checkpoint.setProperty(key, value);
+        final Path tempPath = this.checkpointPath.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempPath)) {
+            this.checkpoint.store(out, "GriefPrevention storage migration, delete to start over");
+        }
+        Files.move(tempPath, this.checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Gets the world UUID of a world data folder from any of its claim
+     * files. Every loaded world has at least its wilderness claim file.
+     */
+    @Nullable
+    public static UUID readWorldUniqueId(Path worldPath) {
+        final Path claimDataPath = worldPath.resolve("ClaimData");
+        if (!Files.isDirectory(claimDataPath)) {
+            return null;
+        }
+        try {
+            for (Path claimFile : listDataFiles(claimDataPath, Integer.MAX_VALUE, null)) {
+                final String worldUniqueId = HoconConfigurationLoader.builder().setPath(claimFile).build().load()
+                        .getNode(GriefPreventionPlugin.MOD_ID, ClaimStorageData.MAIN_WORLD_UUID).getString();
+                if (worldUniqueId != null) {
+                    return UUID.fromString(worldUniqueId);
+                }
+            }
+        } catch (Exception e) {
+            // unknown
+        }
+        return null;
+    }
+
+    /**
+     * Migrates storage while the server is offline. The database settings
+     * and player data mode are read from the global config.
+     *
+     * <pre>java -cp &lt;server classpath&gt; me.ryanhamshire.griefprevention.migrator.StorageMigrator
+     *     &lt;config folder&gt; &lt;database|files&gt; [threads]</pre>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: StorageMigrator <config folder> <database|files> [threads]");
+            System.exit(1);
+        }
+
+        final Path configPath = Paths.get(args[0]);
+        final Target target = Target.valueOf(args[1].toUpperCase());
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        final ConfigurationNode globalConfig = HoconConfigurationLoader.builder().setPath(configPath.resolve("global.conf")).build().load()
+                .getNode(GriefPreventionPlugin.MOD_ID);
+        final String url = globalConfig.getNode("database", "url").getString("");
+        if (url.isEmpty()) {
+            System.out.println("No database url is set in " + configPath.resolve("global.conf") + ".");
+            System.exit(1);
+        }
+
+        final String userName = globalConfig.getNode("database", "username").getString("");
+        final String password = globalConfig.getNode("database", "password").getString("");
+        final boolean globalPlayerStorage = globalConfig.getNode("playerdata", "use-global-storage").getBoolean(true);
+        new StorageMigrator(configPath, () -> DriverManager.getConnection(url, userName, password), globalPlayerStorage,
+                StorageMigrator::readWorldUniqueId, System.out::println, threads, true).migrate(target);
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.permission;
+
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.api.claim.ClaimContexts;
+import me.ryanhamshire.griefprevention.api.claim.ClaimFlag;
+import me.ryanhamshire.griefprevention.api.claim.ClaimType;
+import me.ryanhamshire.griefprevention.claim.ClaimContextCalculator;
+import me.ryanhamshire.griefprevention.claim.GPClaim;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.service.context.Context;
+import org.spongepowered.api.service.permission.SubjectData;
+import org.spongepowered.api.util.Tristate;
+import org.spongepowered.api.world.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+/**
+ * A compiled table of default flag values per world and claim type.
+ * 
+ * <p>Checks without a user on claims that have no permissions of their own
+ * resolve from the table instead of the permission service. A flag only
+ * resolves from the table when no stored node could make a more specific
+ * permission differ from the flag's default, any other flag falls back to
+ * the full lookup.</p>
+ * 
+ * <p>The table is rebuilt on the executor after any permission change made
+ * through GP, see {@link GPPermissionCache#invalidate()}, and every check
+ * uses the full lookup until the new table is ready. Changes made directly
+ * in the permission plugin are picked up once the table expires, after the
+ * same few seconds as cached permission decisions. An expired table is
+ * still used while its replacement is built.</p>
+ * 
+ * <p>A change limited to a single claim only marks that claim as having
+ * permissions of its own, see {@link GPPermissionCache#invalidateClaim(UUID)},
+ * the next rebuild finds out if it still has any.</p>
+ */
+public final class GPFlagTable {
+
+    private static final String DEFAULTS_KEY = ClaimContexts.BASIC_DEFAULT_CONTEXT.getKey();
+    private static final String OVERRIDES_KEY = ClaimContexts.BASIC_OVERRIDE_CONTEXT.getKey();
+    private static final Map<String, ClaimFlag> FLAG_PERMISSIONS = new HashMap<>();
+    private static final ClaimFlag[] FLAGS = ClaimFlag.values();
+    private static final ClaimType[] TYPES = ClaimType.values();
+
+    static {
+        for (ClaimFlag flag : FLAGS) {
+            FLAG_PERMISSIONS.put(GPPermissions.FLAG_BASE + "." + flag.toString(), flag);
+        }
+    }
+
+    private static final AtomicBoolean REBUILDING = new AtomicBoolean();
+    // claims marked since the last rebuild started, guarded by itself
+    private static final Set<UUID> markedClaims = new HashSet<>();
+    private static volatile Snapshot snapshot;
+
+    /**
+     * Gets the compiled value of a flag for a check without a user.
+     * 
+     * @param claim The claim
+     * @param flagPermission The base flag permission
+     * @param checkOverride Whether overrides are part of the check
+     * @return The value, or null if the permission service must be consulted
+     */
+    @Nullable
+    public static Tristate getValue(GPClaim claim, String flagPermission, boolean checkOverride) {
+        final ClaimFlag flag = FLAG_PERMISSIONS.get(flagPermission);
+        if (flag == null || !Sponge.getServer().isMainThread()) {
+            return null;
+        }
+
+        final Snapshot snapshot = getSnapshot();
+        if (snapshot == null || snapshot.disabled || snapshot.customClaims.contains(claim.id)) {
+            return null;
+        }
+        final long bit = 1L << flag.ordinal();
+        if ((snapshot.complexFlags & bit) != 0) {
+            return null;
+        }
+        if (checkOverride) {
+            final ClaimType overrideType = claim.isSubdivision() ? null : claim.getType();
+            if (overrideType != null && (snapshot.overrideFlags[overrideType.ordinal()] & bit) != 0) {
+                return null;
+            }
+        }
+
+        // defaults follow inheritance the same way as GPPermissionHandler
+        GPClaim defaultClaim = claim;
+        if (claim.parent != null && claim.getData().doesInheritParent()) {
+            if (claim.parent.parent != null && claim.parent.getData().doesInheritParent()) {
+                defaultClaim = claim.parent.parent;
+            } else {
+                defaultClaim = claim.parent;
+            }
+        }
+        final int type = (defaultClaim.isSubdivision() ? ClaimType.BASIC : defaultClaim.getType()).ordinal();
+        final WorldTable table = snapshot.worldTables.get(defaultClaim.world.getUniqueId());
+        if (table == null || (table.complexFlags[type] & bit) != 0) {
+            return null;
+        }
+        if ((table.allowFlags[type] & bit) != 0) {
+            return Tristate.TRUE;
+        }
+        if ((table.denyFlags[type] & bit) != 0) {
+            return Tristate.FALSE;
+        }
+        return Tristate.UNDEFINED;
+    }
+
+    /**
+     * Marks a claim as having permissions in its own context.
+     * 
+     * @param claimUniqueId The unique id of the claim
+     */
+    static void addCustomClaim(UUID claimUniqueId) {
+        synchronized (markedClaims) {
+            markedClaims.add(claimUniqueId);
+            final Snapshot snapshot = GPFlagTable.snapshot;
+            if (snapshot != null) {
+                snapshot.customClaims.add(claimUniqueId);
+            }
+        }
+    }
+
+    @Nullable
+    private static Snapshot getSnapshot() {
+        final Snapshot snapshot = GPFlagTable.snapshot;
+        if (snapshot == null || snapshot.version != GPPermissionCache.getGlobalVersion()) {
+            rebuild();
+            return null;
+        }
+        if (snapshot.expireTime < System.currentTimeMillis()) {
+            rebuild();
+        }
+        return snapshot;
+    }
+
+    private static void rebuild() {
+        if (!REBUILDING.compareAndSet(false, true)) {
+            return;
+        }
+
+        final List<World> worlds = new ArrayList<>(Sponge.getServer().getWorlds());
+        GriefPreventionPlugin.instance.executor.execute(() -> {
+            try {
+                synchronized (markedClaims) {
+                    markedClaims.clear();
+                }
+                // read the version first so a change made during the scan triggers another rebuild
+                final Snapshot snapshot = new Snapshot(GPPermissionCache.getGlobalVersion(), System.currentTimeMillis() + GPPermissionCache.EXPIRE_MILLIS);
+                snapshot.scan(GriefPreventionPlugin.GLOBAL_SUBJECT.getSubjectData());
+                snapshot.scan(GriefPreventionPlugin.GLOBAL_SUBJECT.getTransientSubjectData());
+                if (!snapshot.disabled) {
+                    for (World world : worlds) {
+                        snapshot.worldTables.put(world.getUniqueId(), new WorldTable(world, snapshot.defaultComplexFlags.get(""),
+                                snapshot.defaultComplexFlags.get(world.getName())));
+                    }
+                }
+                synchronized (markedClaims) {
+                    // the scan may have missed claims changed while it ran
+                    snapshot.customClaims.addAll(markedClaims);
+                    GPFlagTable.snapshot = snapshot;
+                }
+            } catch (Throwable t) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to rebuild the flag table", t);
+            } finally {
+                REBUILDING.set(false);
+            }
+        });
+    }
+
+    private static final class Snapshot {
+
+        private final int version;
+        private final long expireTime;
+        private boolean disabled = false;
+        // claims with permissions in their own context
+        private final Set<UUID> customClaims = ConcurrentHashMap.newKeySet();
+        // flags with nodes that apply outside of any default or override context
+        private long complexFlags = 0;
+        private final long[] overrideFlags = new long[TYPES.length];
+        // world name, or empty for all worlds -> flags with specific default nodes per claim type
+        private final Map<String, long[]> defaultComplexFlags = new HashMap<>();
+        private final Map<UUID, WorldTable> worldTables = new HashMap<>();
+
+        private Snapshot(int version, long expireTime) {
+            this.version = version;
+            this.expireTime = expireTime;
+        }
+
+        private void scan(SubjectData subjectData) {
+            // parents could contribute any node, don't try to resolve them
+            for (Set<Context> contexts : subjectData.getAllParents().keySet()) {
+                if (!subjectData.getParents(contexts).isEmpty()) {
+                    this.disabled = true;
+                    return;
+                }
+            }
+
+            for (Map.Entry<Set<Context>, Map<String, Boolean>> mapEntry : subjectData.getAllPermissions().entrySet()) {
+                final Set<Context> contexts = mapEntry.getKey();
+                if (this.markClaim(contexts)) {
+                    continue;
+                }
+
+                ClaimType defaultType = null;
+                ClaimType overrideType = null;
+                String worldName = "";
+                for (Context context : contexts) {
+                    final String key = context.getKey();
+                    if (key.equals(DEFAULTS_KEY)) {
+                        defaultType = getType(context.getValue());
+                    } else if (key.equals(OVERRIDES_KEY)) {
+                        overrideType = getType(context.getValue());
+                    } else if (key.equals(Context.WORLD_KEY)) {
+                        worldName = context.getValue();
+                    }
+                }
+
+                for (String permission : mapEntry.getValue().keySet()) {
+                    final long flags = getAffectedFlags(permission, defaultType != null);
+                    if (flags == 0) {
+                        continue;
+                    }
+                    if (overrideType != null) {
+                        this.overrideFlags[overrideType.ordinal()] |= flags;
+                    } else if (defaultType != null) {
+                        this.defaultComplexFlags.computeIfAbsent(worldName, k -> new long[TYPES.length])[defaultType.ordinal()] |= flags;
+                    } else {
+                        this.complexFlags |= flags;
+                    }
+                }
+            }
+        }
+
+        // per claim entries only mark the claim, their nodes are never resolved from the table
+        private boolean markClaim(Set<Context> contexts) {
+            for (Context context : contexts) {
+                if (context.getKey().equals(ClaimContextCalculator.CLAIM_CONTEXT_KEY)) {
+                    try {
+                        this.customClaims.add(UUID.fromString(context.getValue()));
+                    } catch (IllegalArgumentException e) {
+                        // not ours
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class WorldTable {
+
+        private final long[] allowFlags = new long[TYPES.length];
+        private final long[] denyFlags = new long[TYPES.length];
+        private final long[] complexFlags = new long[TYPES.length];
+
+        private WorldTable(World world, @Nullable long[] globalComplexFlags, @Nullable long[] worldComplexFlags) {
+            final Set<Context> activeContexts = GriefPreventionPlugin.GLOBAL_SUBJECT.getActiveContexts();
+            for (ClaimType type : TYPES) {
+                final Context defaultContext = getDefaultContext(type);
+                if (defaultContext == null) {
+                    continue;
+                }
+                final int index = type.ordinal();
+                if (globalComplexFlags != null) {
+                    this.complexFlags[index] |= globalComplexFlags[index];
+                }
+                if (worldComplexFlags != null) {
+                    this.complexFlags[index] |= worldComplexFlags[index];
+                }
+
+                final Set<Context> contexts = new HashSet<>(activeContexts);
+                contexts.add(defaultContext);
+                contexts.add(world.getContext());
+                for (ClaimFlag flag : FLAGS) {
+                    final long bit = 1L << flag.ordinal();
+                    final Tristate value = GriefPreventionPlugin.GLOBAL_SUBJECT.getPermissionValue(contexts, GPPermissions.FLAG_BASE + "." + flag.toString());
+                    if (value == Tristate.TRUE) {
+                        this.allowFlags[index] |= bit;
+                    } else if (value == Tristate.FALSE) {
+                        this.denyFlags[index] |= bit;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the flags a stored node can change the result of.
+     * 
+     * <p>In a default context the flag node itself and its parents only set
+     * the compiled value. Anywhere else, and for any more specific node, the
+     * flag must be resolved by the permission service.</p>
+     */
+    private static long getAffectedFlags(String permission, boolean isDefault) {
+        long flags = 0;
+        for (ClaimFlag flag : FLAGS) {
+            final String flagPermission = GPPermissions.FLAG_BASE + "." + flag.toString();
+            final boolean specific = permission.length() > flagPermission.length() && permission.startsWith(flagPermission)
+                    && permission.charAt(flagPermission.length()) == '.';
+            final boolean general = permission.equals(flagPermission) || permission.equals("*")
+                    || (flagPermission.startsWith(permission) && flagPermission.charAt(permission.length()) == '.');
+            if (specific || (general && !isDefault)) {
+                flags |= 1L << flag.ordinal();
+            }
+        }
+        return flags;
+    }
+
+    @Nullable
+    private static ClaimType getType(String value) {
+        for (ClaimType type : TYPES) {
+            if (type.name().equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Context getDefaultContext(ClaimType type) {
+        switch (type) {
+            case ADMIN:
+                return ClaimContexts.ADMIN_DEFAULT_CONTEXT;
+            case BASIC:
+                return ClaimContexts.BASIC_DEFAULT_CONTEXT;
+            case TOWN:
+                return ClaimContexts.TOWN_DEFAULT_CONTEXT;
+            case WILDERNESS:
+                return ClaimContexts.WILDERNESS_DEFAULT_CONTEXT;
+            default:
+                return null;
+        }
+    }
+}
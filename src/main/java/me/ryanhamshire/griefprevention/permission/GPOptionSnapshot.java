@@ -0,0 +1,255 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.permission;
+
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import org.spongepowered.api.service.context.Context;
+import org.spongepowered.api.service.permission.Subject;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable view of the options and cached permissions of a player.
+ * 
+ * <p>A snapshot is built off the main thread and published as a whole, so
+ * readers always see values from a single refresh.</p>
+ */
+public final class GPOptionSnapshot {
+
+    public static final GPOptionSnapshot DEFAULT = new GPOptionSnapshot();
+
+    // option keys already registered as defaults on the global subject
+    private static final Set<String> REGISTERED_DEFAULTS = ConcurrentHashMap.newKeySet();
+
+    // options
+    public final double abandonReturnRatioBasic;
+    public final double abandonReturnRatioTown;
+    public final int blocksAccruedPerHour;
+    public final int createClaimLimitBasic;
+    public final int createClaimLimitSubdivision;
+    public final int createClaimLimitTown;
+    public final int initialClaimBlocks;
+    public final int maxAccruedBlocks;
+    public final int maxClaimLevel;
+    public final int maxClaimSizeBasicX;
+    public final int maxClaimSizeBasicY;
+    public final int maxClaimSizeBasicZ;
+    public final int maxClaimSizeTownX;
+    public final int maxClaimSizeTownY;
+    public final int maxClaimSizeTownZ;
+    public final int maxClaimSizeSubX;
+    public final int maxClaimSizeSubY;
+    public final int maxClaimSizeSubZ;
+    public final int minClaimLevel;
+    public final int minClaimSizeBasicX;
+    public final int minClaimSizeBasicY;
+    public final int minClaimSizeBasicZ;
+    public final int minClaimSizeTownX;
+    public final int minClaimSizeTownY;
+    public final int minClaimSizeTownZ;
+    public final int claimCreateMode;
+    public final int claimExpirationChest;
+    public final int claimExpirationBasic;
+    public final int claimExpirationSubdivision;
+    public final int claimExpirationTown;
+    public final int taxExpirationBasic;
+    public final int taxExpirationSubdivision;
+    public final int taxExpirationTown;
+    public final double taxRateBasic;
+    public final double taxRateSubdivision;
+    public final double taxRateTown;
+    public final double taxRateTownBasic;
+    public final double taxRateTownSubdivision;
+
+    // permissions
+    public final boolean canManageAdminClaims;
+    public final boolean canManageWilderness;
+    public final boolean ignoreAdminClaims;
+    public final boolean ignoreBasicClaims;
+    public final boolean ignoreTowns;
+    public final boolean ignoreWilderness;
+
+    private GPOptionSnapshot() {
+        this.abandonReturnRatioBasic = GPOptions.DEFAULT_ABANDON_RETURN_RATIO_BASIC;
+        this.abandonReturnRatioTown = GPOptions.DEFAULT_ABANDON_RETURN_RATIO_TOWN;
+        this.blocksAccruedPerHour = GPOptions.DEFAULT_BLOCKS_ACCRUED_PER_HOUR;
+        this.createClaimLimitBasic = GPOptions.DEFAULT_CREATE_CLAIM_LIMIT_BASIC;
+        this.createClaimLimitSubdivision = GPOptions.DEFAULT_CREATE_CLAIM_LIMIT_SUBDIVISION;
+        this.createClaimLimitTown = GPOptions.DEFAULT_CREATE_CLAIM_LIMIT_TOWN;
+        this.initialClaimBlocks = GPOptions.DEFAULT_INITIAL_CLAIM_BLOCKS;
+        this.maxAccruedBlocks = GPOptions.DEFAULT_MAX_ACCRUED_BLOCKS;
+        this.maxClaimLevel = GPOptions.DEFAULT_MAX_CLAIM_LEVEL;
+        this.maxClaimSizeBasicX = GPOptions.DEFAULT_MAX_CLAIM_SIZE_BASIC_X;
+        this.maxClaimSizeBasicY = GPOptions.DEFAULT_MAX_CLAIM_SIZE_BASIC_Y;
+        this.maxClaimSizeBasicZ = GPOptions.DEFAULT_MAX_CLAIM_SIZE_BASIC_Z;
+        this.maxClaimSizeTownX = GPOptions.DEFAULT_MAX_CLAIM_SIZE_TOWN_X;
+        this.maxClaimSizeTownY = GPOptions.DEFAULT_MAX_CLAIM_SIZE_TOWN_Y;
+        this.maxClaimSizeTownZ = GPOptions.DEFAULT_MAX_CLAIM_SIZE_TOWN_Z;
+        this.maxClaimSizeSubX = GPOptions.DEFAULT_MAX_CLAIM_SIZE_SUBDIVISION_X;
+        this.maxClaimSizeSubY = GPOptions.DEFAULT_MAX_CLAIM_SIZE_SUBDIVISION_Y;
+        this.maxClaimSizeSubZ = GPOptions.DEFAULT_MAX_CLAIM_SIZE_SUBDIVISION_Z;
+        this.minClaimLevel = GPOptions.DEFAULT_MIN_CLAIM_LEVEL;
+        this.minClaimSizeBasicX = GPOptions.DEFAULT_MIN_CLAIM_SIZE_BASIC_X;
+        this.minClaimSizeBasicY = GPOptions.DEFAULT_MIN_CLAIM_SIZE_BASIC_Y;
+        this.minClaimSizeBasicZ = GPOptions.DEFAULT_MIN_CLAIM_SIZE_BASIC_Z;
+        this.minClaimSizeTownX = GPOptions.DEFAULT_MIN_CLAIM_SIZE_TOWN_X;
+        this.minClaimSizeTownY = GPOptions.DEFAULT_MIN_CLAIM_SIZE_TOWN_Y;
+        this.minClaimSizeTownZ = GPOptions.DEFAULT_MIN_CLAIM_SIZE_TOWN_Z;
+        this.claimCreateMode = GPOptions.DEFAULT_CLAIM_CREATE_MODE;
+        this.claimExpirationChest = GPOptions.DEFAULT_CLAIM_EXPIRATION_CHEST;
+        this.claimExpirationBasic = GPOptions.DEFAULT_CLAIM_EXPIRATION_BASIC;
+        this.claimExpirationSubdivision = GPOptions.DEFAULT_CLAIM_EXPIRATION_SUBDIVISION;
+        this.claimExpirationTown = GPOptions.DEFAULT_CLAIM_EXPIRATION_TOWN;
+        this.taxExpirationBasic = GPOptions.DEFAULT_TAX_EXPIRATION_BASIC;
+        this.taxExpirationSubdivision = GPOptions.DEFAULT_TAX_EXPIRATION_SUBDIVISION;
+        this.taxExpirationTown = GPOptions.DEFAULT_TAX_EXPIRATION_TOWN;
+        this.taxRateBasic = GPOptions.DEFAULT_TAX_RATE_BASIC;
+        this.taxRateSubdivision = GPOptions.DEFAULT_TAX_RATE_SUBDIVISION;
+        this.taxRateTown = GPOptions.DEFAULT_TAX_RATE_TOWN;
+        this.taxRateTownBasic = GPOptions.DEFAULT_TAX_RATE_TOWN_BASIC;
+        this.taxRateTownSubdivision = GPOptions.DEFAULT_TAX_RATE_TOWN_SUBDIVISION;
+        this.canManageAdminClaims = false;
+        this.canManageWilderness = false;
+        this.ignoreAdminClaims = false;
+        this.ignoreBasicClaims = false;
+        this.ignoreTowns = false;
+        this.ignoreWilderness = false;
+    }
+
+    private GPOptionSnapshot(Subject subject) {
+        // resolve the active contexts once for the whole batch instead of once per option
+        final Set<Context> contexts = subject.getActiveContexts();
+        this.abandonReturnRatioBasic = getDouble(subject, contexts, GPOptions.ABANDON_RETURN_RATIO_BASIC, GPOptions.DEFAULT_ABANDON_RETURN_RATIO_BASIC);
+        this.abandonReturnRatioTown = getDouble(subject, contexts, GPOptions.ABANDON_RETURN_RATIO_TOWN, GPOptions.DEFAULT_ABANDON_RETURN_RATIO_TOWN);
+        this.blocksAccruedPerHour = getInt(subject, contexts, GPOptions.BLOCKS_ACCRUED_PER_HOUR, GPOptions.DEFAULT_BLOCKS_ACCRUED_PER_HOUR);
+        this.createClaimLimitBasic = getInt(subject, contexts, GPOptions.CREATE_CLAIM_LIMIT_BASIC, GPOptions.DEFAULT_CREATE_CLAIM_LIMIT_BASIC);
+        this.createClaimLimitSubdivision = getInt(subject, contexts, GPOptions.CREATE_CLAIM_LIMIT_SUBDIVISION, GPOptions.DEFAULT_CREATE_CLAIM_LIMIT_SUBDIVISION);
+        this.createClaimLimitTown = getInt(subject, contexts, GPOptions.CREATE_CLAIM_LIMIT_TOWN, GPOptions.DEFAULT_CREATE_CLAIM_LIMIT_TOWN);
+        this.initialClaimBlocks = getInt(subject, contexts, GPOptions.INITIAL_CLAIM_BLOCKS, GPOptions.DEFAULT_INITIAL_CLAIM_BLOCKS);
+        this.maxAccruedBlocks = getInt(subject, contexts, GPOptions.MAX_ACCRUED_BLOCKS, GPOptions.DEFAULT_MAX_ACCRUED_BLOCKS);
+        this.maxClaimSizeBasicX = getInt(subject, contexts, GPOptions.MAX_CLAIM_SIZE_BASIC_X, GPOptions.DEFAULT_MAX_CLAIM_SIZE_BASIC_X);
+        this.maxClaimSizeBasicY = getInt(subject, contexts, GPOptions.MAX_CLAIM_SIZE_BASIC_Y, GPOptions.DEFAULT_MAX_CLAIM_SIZE_BASIC_Y);
+        this.maxClaimSizeBasicZ = getInt(subject, contexts, GPOptions.MAX_CLAIM_SIZE_BASIC_Z, GPOptions.DEFAULT_MAX_CLAIM_SIZE_BASIC_Z);
+        this.maxClaimSizeTownX = getInt(subject, contexts, GPOptions.MAX_CLAIM_SIZE_TOWN_X, GPOptions.DEFAULT_MAX_CLAIM_SIZE_TOWN_X);
+        this.maxClaimSizeTownY = getInt(subject, contexts, GPOptions.MAX_CLAIM_SIZE_TOWN_Y, GPOptions.DEFAULT_MAX_CLAIM_SIZE_TOWN_Y);
+        this.maxClaimSizeTownZ = getInt(subject, contexts, GPOptions.MAX_CLAIM_SIZE_TOWN_Z, GPOptions.DEFAULT_MAX_CLAIM_SIZE_TOWN_Z);
+        this.maxClaimSizeSubX = getInt(subject, contexts, GPOptions.MAX_CLAIM_SIZE_SUBDIVISION_X, GPOptions.DEFAULT_MAX_CLAIM_SIZE_SUBDIVISION_X);
+        this.maxClaimSizeSubY = getInt(subject, contexts, GPOptions.MAX_CLAIM_SIZE_SUBDIVISION_Y, GPOptions.DEFAULT_MAX_CLAIM_SIZE_SUBDIVISION_Y);
+        this.maxClaimSizeSubZ = getInt(subject, contexts, GPOptions.MAX_CLAIM_SIZE_SUBDIVISION_Z, GPOptions.DEFAULT_MAX_CLAIM_SIZE_SUBDIVISION_Z);
+        this.minClaimSizeBasicX = getInt(subject, contexts, GPOptions.MIN_CLAIM_SIZE_BASIC_X, GPOptions.DEFAULT_MIN_CLAIM_SIZE_BASIC_X);
+        this.minClaimSizeBasicY = getInt(subject, contexts, GPOptions.MIN_CLAIM_SIZE_BASIC_Y, GPOptions.DEFAULT_MIN_CLAIM_SIZE_BASIC_Y);
+        this.minClaimSizeBasicZ = getInt(subject, contexts, GPOptions.MIN_CLAIM_SIZE_BASIC_Z, GPOptions.DEFAULT_MIN_CLAIM_SIZE_BASIC_Z);
+        this.minClaimSizeTownX = getInt(subject, contexts, GPOptions.MIN_CLAIM_SIZE_TOWN_X, GPOptions.DEFAULT_MIN_CLAIM_SIZE_TOWN_X);
+        this.minClaimSizeTownY = getInt(subject, contexts, GPOptions.MIN_CLAIM_SIZE_TOWN_Y, GPOptions.DEFAULT_MIN_CLAIM_SIZE_TOWN_Y);
+        this.minClaimSizeTownZ = getInt(subject, contexts, GPOptions.MIN_CLAIM_SIZE_TOWN_Z, GPOptions.DEFAULT_MIN_CLAIM_SIZE_TOWN_Z);
+        this.claimCreateMode = getInt(subject, contexts, GPOptions.CLAIM_CREATE_MODE, GPOptions.DEFAULT_CLAIM_CREATE_MODE);
+        this.claimExpirationChest = getInt(subject, contexts, GPOptions.CLAIM_EXPIRATION_CHEST, GPOptions.DEFAULT_CLAIM_EXPIRATION_CHEST);
+        this.claimExpirationBasic = getInt(subject, contexts, GPOptions.CLAIM_EXPIRATION_BASIC, GPOptions.DEFAULT_CLAIM_EXPIRATION_BASIC);
+        this.claimExpirationSubdivision = getInt(subject, contexts, GPOptions.CLAIM_EXPIRATION_SUBDIVISION, GPOptions.DEFAULT_CLAIM_EXPIRATION_SUBDIVISION);
+        this.claimExpirationTown = getInt(subject, contexts, GPOptions.CLAIM_EXPIRATION_TOWN, GPOptions.DEFAULT_CLAIM_EXPIRATION_TOWN);
+        this.taxExpirationBasic = getInt(subject, contexts, GPOptions.TAX_EXPIRATION_BASIC, GPOptions.DEFAULT_TAX_EXPIRATION_BASIC);
+        this.taxExpirationSubdivision = getInt(subject, contexts, GPOptions.TAX_EXPIRATION_SUBDIVISION, GPOptions.DEFAULT_TAX_EXPIRATION_SUBDIVISION);
+        this.taxExpirationTown = getInt(subject, contexts, GPOptions.TAX_EXPIRATION_TOWN, GPOptions.DEFAULT_TAX_EXPIRATION_TOWN);
+        this.taxRateBasic = getDouble(subject, contexts, GPOptions.TAX_RATE_BASIC, GPOptions.DEFAULT_TAX_RATE_BASIC);
+        this.taxRateSubdivision = getDouble(subject, contexts, GPOptions.TAX_RATE_SUBDIVISION, GPOptions.DEFAULT_TAX_RATE_SUBDIVISION);
+        this.taxRateTown = getDouble(subject, contexts, GPOptions.TAX_RATE_TOWN, GPOptions.DEFAULT_TAX_RATE_TOWN);
+        this.taxRateTownBasic = getDouble(subject, contexts, GPOptions.TAX_RATE_TOWN_BASIC, GPOptions.DEFAULT_TAX_RATE_TOWN_BASIC);
+        this.taxRateTownSubdivision = getDouble(subject, contexts, GPOptions.TAX_RATE_TOWN_SUBDIVISION, GPOptions.DEFAULT_TAX_RATE_TOWN_SUBDIVISION);
+
+        int maxClaimLevel = getInt(subject, contexts, GPOptions.MAX_CLAIM_LEVEL, GPOptions.DEFAULT_MAX_CLAIM_LEVEL);
+        int minClaimLevel = getInt(subject, contexts, GPOptions.MIN_CLAIM_LEVEL, GPOptions.DEFAULT_MIN_CLAIM_LEVEL);
+        if (maxClaimLevel > 255 || maxClaimLevel <= 0 || maxClaimLevel < minClaimLevel) {
+            maxClaimLevel = 255;
+        }
+        if (minClaimLevel < 0 || minClaimLevel >= 255 || minClaimLevel > maxClaimLevel) {
+            minClaimLevel = 0;
+        }
+        this.maxClaimLevel = maxClaimLevel;
+        this.minClaimLevel = minClaimLevel;
+
+        this.canManageAdminClaims = subject.hasPermission(contexts, GPPermissions.COMMAND_ADMIN_CLAIMS);
+        this.canManageWilderness = subject.hasPermission(contexts, GPPermissions.MANAGE_WILDERNESS);
+        this.ignoreAdminClaims = subject.hasPermission(contexts, GPPermissions.IGNORE_CLAIMS_ADMIN);
+        this.ignoreBasicClaims = subject.hasPermission(contexts, GPPermissions.IGNORE_CLAIMS_BASIC);
+        this.ignoreTowns = subject.hasPermission(contexts, GPPermissions.IGNORE_CLAIMS_TOWN);
+        this.ignoreWilderness = subject.hasPermission(contexts, GPPermissions.IGNORE_CLAIMS_WILDERNESS);
+    }
+
+    /**
+     * Builds a snapshot from the current options of a subject.
+     * 
+     * <p>This queries the permission service and should not be called on the
+     * main thread.</p>
+     * 
+     * @param subject The player subject
+     * @return The snapshot
+     */
+    public static GPOptionSnapshot create(Subject subject) {
+        return new GPOptionSnapshot(subject);
+    }
+
+    private static int getInt(Subject subject, Set<Context> contexts, String key, int defaultValue) {
+        final String optionValue = subject.getOption(contexts, key).orElse(null);
+        if (optionValue != null) {
+            try {
+                return Integer.parseInt(optionValue);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        registerDefault(key, defaultValue);
+        return defaultValue;
+    }
+
+    private static double getDouble(Subject subject, Set<Context> contexts, String key, double defaultValue) {
+        final String optionValue = subject.getOption(contexts, key).orElse(null);
+        if (optionValue != null) {
+            try {
+                return Double.parseDouble(optionValue);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        registerDefault(key, defaultValue);
+        return defaultValue;
+    }
+
+    private static void registerDefault(String key, Object defaultValue) {
+        // only needs to happen once per key, not once per player
+        if (REGISTERED_DEFAULTS.add(key)) {
+            GriefPreventionPlugin.GLOBAL_SUBJECT.getTransientSubjectData().setOption(new HashSet<>(), key, String.valueOf(defaultValue));
+        }
+    }
+
+    /**
+     * Forgets which defaults were registered so they are set again on the
+     * next refresh, such as after a reload.
+     */
+    public static void resetRegisteredDefaults() {
+        REGISTERED_DEFAULTS.clear();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.permission;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import me.ryanhamshire.griefprevention.GPPlayerData;
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.api.claim.ClaimContexts;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.entity.living.player.User;
+import org.spongepowered.api.service.context.Context;
+import org.spongepowered.api.service.permission.Subject;
+import org.spongepowered.api.service.permission.SubjectData;
+import org.spongepowered.api.world.World;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+/**
+ * A per-world filter of the permission nodes that have an override or ban.
+ * 
+ * <p>The filter stores the hash of every node set in an override context
+ * by the default subject or any loaded group, along with every banned
+ * node. A checked node can only be overridden if the hash of one of its
+ * dot separated prefixes is stored. A hash collision only costs the full
+ * override lookup.</p>
+ * 
+ * <p>The filter is rebuilt on the executor after any permission change made
+ * through GP that is not limited to a single claim, see
+ * {@link GPPermissionCache#invalidate()}, and once it expires so changes
+ * made directly in the permission plugin are seen as well. Every check
+ * does the full override lookup until the new filter is ready, an expired
+ * filter is still used while its replacement is built.</p>
+ */
+public final class GPOverrideFilter {
+
+    private static final String OVERRIDES_KEY = ClaimContexts.BASIC_OVERRIDE_CONTEXT.getKey();
+
+    private static final AtomicBoolean REBUILDING = new AtomicBoolean();
+    private static volatile Filter filter;
+
+    /**
+     * Checks if any override could apply to a permission check.
+     * 
+     * @param world The world of the claim being checked
+     * @param node The permission nodes being checked
+     * @param user The user, if any
+     * @param playerData The data of the user, if online
+     * @return False if no override can match any of the nodes
+     */
+    public static boolean mayOverride(World world, GPPermissionNode node, @Nullable User user, @Nullable GPPlayerData playerData) {
+        if (user != null) {
+            // the user's own nodes are only known for online players
+            if (playerData == null || !(user instanceof Player) || playerData.hasOverridePermissions(user)) {
+                return true;
+            }
+        }
+
+        final Filter filter = getFilter();
+        if (filter == null || filter.matchAll) {
+            return true;
+        }
+        final IntOpenHashSet hashes = filter.getHashes(world);
+        return mayMatch(hashes, node.permission) || mayMatch(hashes, node.modPermission) || mayMatch(hashes, node.metaPermission);
+    }
+
+    public static boolean hasOverrides(SubjectData subjectData) {
+        for (Set<Context> contexts : subjectData.getAllPermissions().keySet()) {
+            for (Context context : contexts) {
+                if (context.getKey().equals(OVERRIDES_KEY)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Hashes every dot separated prefix the same way as String#hashCode so no substrings are needed
+    private static boolean mayMatch(IntOpenHashSet hashes, @Nullable String permission) {
+        if (permission == null || hashes.isEmpty()) {
+            return false;
+        }
+
+        int hash = 0;
+        for (int i = 0; i < permission.length(); i++) {
+            final char c = permission.charAt(i);
+            if (c == '.' && hashes.contains(hash)) {
+                return true;
+            }
+            hash = 31 * hash + c;
+        }
+        return hashes.contains(hash);
+    }
+
+    @Nullable
+    private static Filter getFilter() {
+        final Filter filter = GPOverrideFilter.filter;
+        if (filter == null || filter.version != GPPermissionCache.getGlobalVersion()) {
+            rebuild();
+            return null;
+        }
+        if (filter.expireTime < System.currentTimeMillis()) {
+            rebuild();
+        }
+        return filter;
+    }
+
+    private static void rebuild() {
+        if (!REBUILDING.compareAndSet(false, true)) {
+            return;
+        }
+
+        GriefPreventionPlugin.instance.executor.execute(() -> {
+            try {
+                // read the version first so a change made during the scan triggers another rebuild
+                final Filter filter = new Filter(GPPermissionCache.getGlobalVersion(), System.currentTimeMillis() + GPPermissionCache.EXPIRE_MILLIS);
+                filter.scan(GriefPreventionPlugin.GLOBAL_SUBJECT);
+                for (Subject group : GriefPreventionPlugin.instance.permissionService.getGroupSubjects().getLoadedSubjects()) {
+                    filter.scan(group);
+                }
+                for (String bannedPermission : GriefPreventionPlugin.getGlobalConfig().getConfig().bans.getBannedPermissions()) {
+                    filter.globalHashes.add((GPPermissions.FLAG_BASE + "." + bannedPermission).hashCode());
+                }
+                GPOverrideFilter.filter = filter;
+            } catch (Throwable t) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to rebuild the override filter", t);
+            } finally {
+                REBUILDING.set(false);
+            }
+        });
+    }
+
+    private static final class Filter {
+
+        private final int version;
+        private final long expireTime;
+        private boolean matchAll = false;
+        // overrides without a world context apply to every world
+        private final IntOpenHashSet globalHashes = new IntOpenHashSet();
+        private final Map<String, IntOpenHashSet> worldNameHashes = new HashMap<>();
+        private final Map<UUID, IntOpenHashSet> worldHashes = new HashMap<>();
+
+        private Filter(int version, long expireTime) {
+            this.version = version;
+            this.expireTime = expireTime;
+        }
+
+        private void scan(Subject subject) {
+            this.scan(subject.getSubjectData());
+            this.scan(subject.getTransientSubjectData());
+        }
+
+        private void scan(SubjectData subjectData) {
+            for (Map.Entry<Set<Context>, Map<String, Boolean>> mapEntry : subjectData.getAllPermissions().entrySet()) {
+                boolean override = false;
+                String worldName = null;
+                for (Context context : mapEntry.getKey()) {
+                    if (context.getKey().equals(OVERRIDES_KEY)) {
+                        override = true;
+                    } else if (context.getKey().equals(Context.WORLD_KEY)) {
+                        worldName = context.getValue();
+                    }
+                }
+                if (!override) {
+                    continue;
+                }
+
+                final IntOpenHashSet hashes = worldName == null ? this.globalHashes : this.worldNameHashes.computeIfAbsent(worldName, k -> new IntOpenHashSet());
+                for (String permission : mapEntry.getValue().keySet()) {
+                    if (permission.equals("*")) {
+                        this.matchAll = true;
+                    }
+                    hashes.add(permission.hashCode());
+                }
+            }
+        }
+
+        private synchronized IntOpenHashSet getHashes(World world) {
+            IntOpenHashSet hashes = this.worldHashes.get(world.getUniqueId());
+            if (hashes == null) {
+                hashes = new IntOpenHashSet(this.globalHashes);
+                final IntOpenHashSet worldNameHashes = this.worldNameHashes.get(world.getName());
+                if (worldNameHashes != null) {
+                    hashes.addAll(worldNameHashes);
+                }
+                this.worldHashes.put(world.getUniqueId(), hashes);
+            }
+            return hashes;
+        }
+    }
+}
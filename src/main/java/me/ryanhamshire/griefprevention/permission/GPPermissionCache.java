@@ -0,0 +1,200 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.permission;
+
+import me.ryanhamshire.griefprevention.api.claim.TrustType;
+import org.spongepowered.api.util.Tristate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+/**
+ * A bounded LRU cache of claim permission decisions.
+ * 
+ * <p>Each entry is tagged with the version of the cache it was stored in.
+ * Anything that can change a decision calls {@link #invalidate()}, which
+ * bumps the version and turns every older entry into a miss. Permission
+ * plugins do not notify changes made outside of GP so entries also expire
+ * after a few seconds.</p>
+ * 
+ * <p>Changes limited to a single claim call {@link #invalidateClaim(UUID)}
+ * instead, which leaves the global version used by {@link GPFlagTable} and
+ * {@link GPOverrideFilter} alone so they are not rebuilt. Overrides are
+ * never set in the context of a single claim.</p>
+ * 
+ * <p>The cache itself must only be accessed from the main thread.</p>
+ */
+public class GPPermissionCache {
+
+    private static final int MAX_SIZE = 16384;
+    // also used by GPFlagTable and GPOverrideFilter so all permission state expires together
+    static final long EXPIRE_MILLIS = 5000L;
+
+    private static final AtomicInteger version = new AtomicInteger();
+    // only bumped by changes that are not limited to a single claim
+    private static final AtomicInteger globalVersion = new AtomicInteger();
+    private static final Map<Key, Entry> cache = new LinkedHashMap<Key, Entry>(1024, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return this.size() > MAX_SIZE;
+        }
+    };
+    private static long hits = 0;
+    private static long misses = 0;
+
+    @Nullable
+    public static Tristate get(Key key) {
+        final Entry entry = cache.get(key);
+        if (entry == null || entry.version != version.get() || entry.expireTime < System.currentTimeMillis()) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public static void put(Key key, Tristate value) {
+        cache.put(key, new Entry(value, version.get(), System.currentTimeMillis() + EXPIRE_MILLIS));
+    }
+
+    // Safe to call from any thread
+    public static void invalidate() {
+        globalVersion.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Invalidates decisions after a change made only in the context of a
+     * single claim, such as its trust lists or its own flag permissions.
+     * 
+     * <p>Safe to call from any thread.</p>
+     * 
+     * @param claimUniqueId The unique id of the changed claim
+     */
+    public static void invalidateClaim(UUID claimUniqueId) {
+        GPFlagTable.addCustomClaim(claimUniqueId);
+        version.incrementAndGet();
+    }
+
+    public static int getVersion() {
+        return version.get();
+    }
+
+    static int getGlobalVersion() {
+        return globalVersion.get();
+    }
+
+    public static long getHits() {
+        return hits;
+    }
+
+    public static long getMisses() {
+        return misses;
+    }
+
+    public static int getSize() {
+        return cache.size();
+    }
+
+    public static void resetStats() {
+        hits = 0;
+        misses = 0;
+    }
+
+    private static final class Entry {
+
+        private final Tristate value;
+        private final int version;
+        private final long expireTime;
+
+        private Entry(Tristate value, int version, long expireTime) {
+            this.value = value;
+            this.version = version;
+            this.expireTime = expireTime;
+        }
+    }
+
+    public static final class Key {
+
+        private final UUID claimId;
+        @Nullable private final UUID subjectId;
+        private final String flagPermission;
+        private final String sourceId;
+        private final String targetId;
+        @Nullable private final TrustType trustType;
+        private final boolean checkOverride;
+        private final int hashCode;
+
+        public Key(UUID claimId, @Nullable UUID subjectId, String flagPermission, String sourceId, String targetId, @Nullable TrustType trustType,
+                boolean checkOverride) {
+            this.claimId = claimId;
+            this.subjectId = subjectId;
+            this.flagPermission = flagPermission;
+            this.sourceId = sourceId;
+            this.targetId = targetId;
+            this.trustType = trustType;
+            this.checkOverride = checkOverride;
+            int hash = claimId.hashCode();
+            hash = 31 * hash + (subjectId == null ? 0 : subjectId.hashCode());
+            hash = 31 * hash + flagPermission.hashCode();
+            hash = 31 * hash + sourceId.hashCode();
+            hash = 31 * hash + targetId.hashCode();
+            hash = 31 * hash + (trustType == null ? 0 : trustType.ordinal() + 1);
+            this.hashCode = 31 * hash + (checkOverride ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return this.hashCode == that.hashCode
+                    && this.checkOverride == that.checkOverride
+                    && this.trustType == that.trustType
+                    && this.claimId.equals(that.claimId)
+                    && Objects.equals(this.subjectId, that.subjectId)
+                    && this.flagPermission.equals(that.flagPermission)
+                    && this.sourceId.equals(that.sourceId)
+                    && this.targetId.equals(that.targetId);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
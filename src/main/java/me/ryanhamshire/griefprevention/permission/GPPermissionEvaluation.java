@@ -0,0 +1,82 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.permission;
+
+import org.spongepowered.api.event.Event;
+import org.spongepowered.api.service.permission.Subject;
+import org.spongepowered.api.world.Location;
+import org.spongepowered.api.world.World;
+
+import java.util.ArrayDeque;
+
+import javax.annotation.Nullable;
+
+/**
+ * The state of a single permission check.
+ * 
+ * <p>Every check gets its own instance so checks may be nested or run off
+ * the main thread without touching each other's state. Instances are
+ * pooled per thread and must be released once the check completes.</p>
+ */
+final class GPPermissionEvaluation {
+
+    private static final int MAX_POOL_SIZE = 8;
+    private static final ThreadLocal<ArrayDeque<GPPermissionEvaluation>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+
+    @Nullable Event event;
+    @Nullable Location<World> location;
+    @Nullable Subject subject;
+    String source = "none";
+    String target = "none";
+    // Set when a result was also reported to the player, such results are never cached
+    boolean resultNotified = false;
+
+    private GPPermissionEvaluation() {
+    }
+
+    static GPPermissionEvaluation acquire(@Nullable Event event, @Nullable Location<World> location, @Nullable Subject subject) {
+        GPPermissionEvaluation evaluation = POOL.get().pollFirst();
+        if (evaluation == null) {
+            evaluation = new GPPermissionEvaluation();
+        }
+        evaluation.event = event;
+        evaluation.location = location;
+        evaluation.subject = subject;
+        return evaluation;
+    }
+
+    void release() {
+        this.event = null;
+        this.location = null;
+        this.subject = null;
+        this.source = "none";
+        this.target = "none";
+        this.resultNotified = false;
+        final ArrayDeque<GPPermissionEvaluation> pool = POOL.get();
+        if (pool.size() < MAX_POOL_SIZE) {
+            pool.offerFirst(this);
+        }
+    }
+}
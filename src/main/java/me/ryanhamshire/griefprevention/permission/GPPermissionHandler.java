@@ -25,6 +25,9 @@
  */
 package me.ryanhamshire.griefprevention.permission;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import me.ryanhamshire.griefprevention.GPFlags;
 import me.ryanhamshire.griefprevention.GPPlayerData;
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
@@ -35,11 +38,10 @@
 import me.ryanhamshire.griefprevention.claim.GPClaim;
 import me.ryanhamshire.griefprevention.util.BlockUtils;
 import net.minecraft.entity.EnumCreatureType;
-import net.minecraft.entity.item.EntityItem;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.ItemBlock;
-import org.apache.commons.lang3.StringUtils;
 import org.spongepowered.api.CatalogType;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.block.BlockSnapshot;
 import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.block.BlockType;
@@ -69,19 +71,19 @@
 import org.spongepowered.common.SpongeImplHooks;
 
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
 
 public class GPPermissionHandler {
 
-    private static Event currentEvent;
-    private static Location<World> eventLocation;
-    private static Subject eventSubject;
-    private static String eventSource = "none";
-    private static String eventTarget = "none";
+    // Identifiers only depend on the entity class, block state or item and meta so they are built once
+    private static final Map<Class<?>, String[]> ENTITY_IDENTIFIERS = new ConcurrentHashMap<>();
+    private static final Map<BlockState, String> BLOCKSTATE_IDENTIFIERS = new ConcurrentHashMap<>();
+    private static final Map<net.minecraft.item.Item, Int2ObjectMap<String>> ITEM_IDENTIFIERS = new ConcurrentHashMap<>();
 
     public static Tristate getClaimPermission(Event event, Location<World> location, GPClaim claim, String flagPermission, Object source, Object target, User user) {
         return getClaimPermission(event, location, claim, flagPermission, source, target, user, null, false);
@@ -97,67 +99,61 @@ public static Tristate getClaimPermission(Event event, Location<World> location,
         }
 
         GPPlayerData playerData = null;
-        eventSubject = null;
-        if (user != null) {
-            eventSubject = user;
-            if (user instanceof Player) {
-                playerData = GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(claim.world, user.getUniqueId());
-            }
+        if (user instanceof Player) {
+            playerData = GriefPreventionPlugin.instance.dataStore.getOrCreatePlayerData(claim.world, user.getUniqueId());
         }
-        currentEvent = event;
-        eventLocation = location;
-
-        String sourceId = getPermissionIdentifier(source, true);
-        String targetPermission = flagPermission;
-        String targetId = getPermissionIdentifier(target);
-        String targetModPermission = null;
-        String targetMetaPermission = null;
-        if (!targetId.isEmpty()) {
-            String[] parts = targetId.split(":");
-            String targetMod = parts[0];
-            // move target meta to end of permission
-            Pattern p = Pattern.compile("\\.[\\d+]*$");
-            Matcher m = p.matcher(targetId);
-            String targetMeta = "";
-            if (m.find()) {
-                targetMeta = m.group(0);
-                targetId = targetId.replace(targetMeta, "");
-            }
-            if (!targetMeta.isEmpty()) {
-                targetMetaPermission = flagPermission + "." + targetId.replace(":", ".") + targetMeta;
-            }
-            if (!sourceId.isEmpty()) {
-                targetModPermission = flagPermission + "." + targetMod + ".source." + sourceId + targetMeta;
-                targetModPermission = StringUtils.replace(targetModPermission, ":", ".");
-                targetPermission += "." + targetId + ".source." + sourceId + targetMeta;
-            } else {
-                targetModPermission = flagPermission + "." + targetMod + targetMeta;
-                targetModPermission = StringUtils.replace(targetModPermission, ":", ".");
-                targetPermission += "." + targetId + targetMeta;
-            }
-        } else if (!sourceId.isEmpty()) {
-            String targetMod = "";
-            if (sourceId.contains(":")) {
-                String[] parts = sourceId.split(":");
-                targetMod = parts[0];
-                targetModPermission = flagPermission + "." + targetMod + ".source." + sourceId;
-                targetModPermission = StringUtils.replace(targetModPermission, ":", ".");
+
+        final GPPermissionEvaluation evaluation = GPPermissionEvaluation.acquire(event, location, user);
+        try {
+            return getClaimPermission(evaluation, claim, flagPermission, source, target, user, type, playerData, checkOverride);
+        } finally {
+            evaluation.release();
+        }
+    }
+
+    private static Tristate getClaimPermission(GPPermissionEvaluation evaluation, GPClaim claim, String flagPermission, Object source, Object target, User user, TrustType type, GPPlayerData playerData, boolean checkOverride) {
+        final String sourceId = getPermissionIdentifier(evaluation, source, true);
+        final String targetId = getPermissionIdentifier(evaluation, target, false);
+        // every check must reach processResult while debugging
+        GPPermissionCache.Key cacheKey = null;
+        if (!GriefPreventionPlugin.debugActive && Sponge.getServer().isMainThread() && (playerData == null || !playerData.canIgnoreClaim(claim))) {
+            cacheKey = new GPPermissionCache.Key(claim.id, user == null ? null : user.getUniqueId(), flagPermission, sourceId, targetId, type, checkOverride);
+            final Tristate cached = GPPermissionCache.get(cacheKey);
+            if (cached != null) {
+                return cached;
             }
-            targetPermission += ".source." + sourceId;
         }
 
-        targetPermission = StringUtils.replace(targetPermission, ":", ".");
-        if (checkOverride) {
+        final Tristate result = evaluateClaimPermission(evaluation, claim, flagPermission, sourceId, targetId, user, type, playerData, checkOverride);
+        if (cacheKey != null && !evaluation.resultNotified) {
+            GPPermissionCache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    private static Tristate evaluateClaimPermission(GPPermissionEvaluation evaluation, GPClaim claim, String flagPermission, String sourceId, String targetId, User user, TrustType type, GPPlayerData playerData, boolean checkOverride) {
+        final GPPermissionNode node = GPPermissionNode.getNode(flagPermission, sourceId, targetId);
+        final String targetPermission = node.permission;
+        final String targetModPermission = node.modPermission;
+        final String targetMetaPermission = node.metaPermission;
+        if (user == null) {
+            // claims without permissions of their own resolve from the compiled defaults
+            final Tristate compiled = GPFlagTable.getValue(claim, flagPermission, checkOverride);
+            if (compiled != null) {
+                return processResult(evaluation, claim, targetPermission, compiled, GriefPreventionPlugin.GLOBAL_SUBJECT);
+            }
+        }
+        if (checkOverride && GPOverrideFilter.mayOverride(claim.world, node, user, playerData)) {
             Tristate override = Tristate.UNDEFINED;
             if (user != null) {
                 // check global bans in wilderness
-                override = getFlagOverride((GPClaim) claim.getWilderness(), user, user, playerData, targetPermission, targetModPermission, targetMetaPermission);
+                override = getFlagOverride(evaluation, (GPClaim) claim.getWilderness(), user, user, playerData, targetPermission, targetModPermission, targetMetaPermission);
                 if (override != Tristate.UNDEFINED) {
                     return override;
                 }
             }
             // First check for claim flag overrides
-            override = getFlagOverride(claim, user == null ? GriefPreventionPlugin.GLOBAL_SUBJECT : user, user, playerData, targetPermission, targetModPermission, targetMetaPermission);
+            override = getFlagOverride(evaluation, claim, user == null ? GriefPreventionPlugin.GLOBAL_SUBJECT : user, user, playerData, targetPermission, targetModPermission, targetMetaPermission);
             if (override != Tristate.UNDEFINED) {
                 return override;
             }
@@ -165,96 +161,85 @@ public static Tristate getClaimPermission(Event event, Location<World> location,
 
         // Check for ignoreclaims after override checks
         if (playerData != null && playerData.canIgnoreClaim(claim)) {
-            return processResult(claim, "trust.ignore", Tristate.TRUE, user);
+            return processResult(evaluation, claim, "trust.ignore", Tristate.TRUE, user);
         }
         if (user != null) {
             if (type != null) {
                 if (claim.isUserTrusted(user, type)) {
-                    return processResult(claim, "trust." + type.toString().toLowerCase(), Tristate.TRUE, user);
+                    return processResult(evaluation, claim, "trust." + type.toString().toLowerCase(), Tristate.TRUE, user);
                 }
             }
-            return getUserPermission(user, claim, targetPermission, targetModPermission, targetMetaPermission, playerData);
+            return getUserPermission(evaluation, user, claim, targetPermission, targetModPermission, targetMetaPermission, playerData);
         }
 
-        return getClaimFlagPermission(claim, targetPermission, targetModPermission, targetMetaPermission);
+        return getClaimFlagPermission(evaluation, claim, targetPermission, targetModPermission, targetMetaPermission);
     }
 
-    private static Tristate getUserPermission(User user, GPClaim claim, String permission, String targetModPermission, String targetMetaPermission, GPPlayerData playerData) {
+    private static Tristate getUserPermission(GPPermissionEvaluation evaluation, User user, GPClaim claim, String permission, String targetModPermission, String targetMetaPermission, GPPlayerData playerData) {
         final List<Claim> inheritParents = claim.getInheritedParents();
-        if (playerData != null) {
-            playerData.ignoreActiveContexts = true;
-        }
-        final Set<Context> contexts = new HashSet<>(user.getActiveContexts());
-        if (playerData != null) {
-            playerData.ignoreActiveContexts = false;
-        }
-
         for (Claim parentClaim : inheritParents) {
             GPClaim parent = (GPClaim) parentClaim;
             // check parent context
-            contexts.add(parent.getContext());  
-
+            final Set<Context> contexts = getActiveContexts(user, playerData, parent.getContext(), null);
             Tristate value = user.getPermissionValue(contexts, permission);
             if (value != Tristate.UNDEFINED) {
-                return processResult(claim, permission, value, user);
+                return processResult(evaluation, claim, permission, value, user);
             }
             if (targetModPermission != null) {
                 value = user.getPermissionValue(contexts, targetModPermission);
                 if (value != Tristate.UNDEFINED) {
-                    return processResult(claim, targetModPermission, value, user);
+                    return processResult(evaluation, claim, targetModPermission, value, user);
                 }
             }
-
-            contexts.remove(parent.getContext());
         }
 
-        contexts.add(claim.getContext());
+        final Set<Context> contexts = getActiveContexts(user, playerData, claim.getContext(), null);
         Tristate value = user.getPermissionValue(contexts, permission);
         if (value != Tristate.UNDEFINED) {
-            return processResult(claim, permission, value, user);
+            return processResult(evaluation, claim, permission, value, user);
         }
         if (targetMetaPermission != null) {
             value = user.getPermissionValue(contexts, targetMetaPermission);
             if (value != Tristate.UNDEFINED) {
-                return processResult(claim, targetMetaPermission, value, user);
+                return processResult(evaluation, claim, targetMetaPermission, value, user);
             }
         }
         if (targetModPermission != null) {
             value = user.getPermissionValue(contexts, targetModPermission);
             if (value != Tristate.UNDEFINED) {
-                return processResult(claim, targetModPermission, value, user);
+                return processResult(evaluation, claim, targetModPermission, value, user);
             }
         }
 
-        return getClaimFlagPermission(claim, permission, targetModPermission, targetMetaPermission);
+        return getClaimFlagPermission(evaluation, claim, permission, targetModPermission, targetMetaPermission);
     }
 
-    private static Tristate getClaimFlagPermission(GPClaim claim, String permission, String targetModPermission, String targetMetaPermission) {
+    private static Tristate getClaimFlagPermission(GPPermissionEvaluation evaluation, GPClaim claim, String permission, String targetModPermission, String targetMetaPermission) {
         Set<Context> contexts = new HashSet<>(GriefPreventionPlugin.GLOBAL_SUBJECT.getActiveContexts());
         contexts.add(claim.getContext());
 
         Tristate value = GriefPreventionPlugin.GLOBAL_SUBJECT.getPermissionValue(contexts, permission);
         if (value != Tristate.UNDEFINED) {
-            return processResult(claim, permission, value, GriefPreventionPlugin.GLOBAL_SUBJECT);
+            return processResult(evaluation, claim, permission, value, GriefPreventionPlugin.GLOBAL_SUBJECT);
         }
         if (targetMetaPermission != null) {
             value = GriefPreventionPlugin.GLOBAL_SUBJECT.getPermissionValue(contexts, targetMetaPermission);
             if (value != Tristate.UNDEFINED) {
-                return processResult(claim, targetMetaPermission, value, GriefPreventionPlugin.GLOBAL_SUBJECT);
+                return processResult(evaluation, claim, targetMetaPermission, value, GriefPreventionPlugin.GLOBAL_SUBJECT);
             }
         }
         if (targetModPermission != null) {
             value = GriefPreventionPlugin.GLOBAL_SUBJECT.getPermissionValue(contexts, targetModPermission);
             if (value != Tristate.UNDEFINED) {
-                return processResult(claim, targetModPermission, value, GriefPreventionPlugin.GLOBAL_SUBJECT);
+                return processResult(evaluation, claim, targetModPermission, value, GriefPreventionPlugin.GLOBAL_SUBJECT);
             }
         }
 
-        return getFlagDefaultPermission(claim, permission);
+        return getFlagDefaultPermission(evaluation, claim, permission);
     }
 
     // Only uses world and claim type contexts
-    private static Tristate getFlagDefaultPermission(GPClaim claim, String permission) {
+    private static Tristate getFlagDefaultPermission(GPPermissionEvaluation evaluation, GPClaim claim, String permission) {
         // Fallback to defaults
         Set<Context> contexts = new HashSet<>(GriefPreventionPlugin.GLOBAL_SUBJECT.getActiveContexts());
         if (claim.parent != null && claim.getData().doesInheritParent()) {
@@ -279,38 +264,34 @@ private static Tristate getFlagDefaultPermission(GPClaim claim, String permissio
         // check persisted/transient default data
         Tristate value = GriefPreventionPlugin.GLOBAL_SUBJECT.getPermissionValue(contexts, permission);
         if (value != Tristate.UNDEFINED) {
-            return processResult(claim, permission, value, GriefPreventionPlugin.GLOBAL_SUBJECT);
+            return processResult(evaluation, claim, permission, value, GriefPreventionPlugin.GLOBAL_SUBJECT);
         }
 
-        return processResult(claim, permission, Tristate.UNDEFINED, GriefPreventionPlugin.GLOBAL_SUBJECT);
+        return processResult(evaluation, claim, permission, Tristate.UNDEFINED, GriefPreventionPlugin.GLOBAL_SUBJECT);
     }
 
-    private static Tristate getFlagOverride(GPClaim claim, Subject subject, User user, GPPlayerData playerData, String flagPermission, String targetModPermission, String targetMetaPermission) {
+    private static Tristate getFlagOverride(GPPermissionEvaluation evaluation, GPClaim claim, Subject subject, User user, GPPlayerData playerData, String flagPermission, String targetModPermission, String targetMetaPermission) {
         if (!claim.getInternalClaimData().allowFlagOverrides()) {
             return Tristate.UNDEFINED;
         }
 
         Player player = null;
-        if (playerData != null) {
-            playerData.ignoreActiveContexts = true;
-        }
-        Set<Context> contexts = new LinkedHashSet<>(subject.getActiveContexts());
-        if (playerData != null) {
-            playerData.ignoreActiveContexts = false;
-        }
+        Context overrideContext = null;
+        Context worldContext = null;
         if (claim.isAdminClaim()) {
-            contexts.add(ClaimContexts.ADMIN_OVERRIDE_CONTEXT);
-            contexts.add(claim.world.getContext());
+            overrideContext = ClaimContexts.ADMIN_OVERRIDE_CONTEXT;
+            worldContext = claim.world.getContext();
         } else if (claim.isTown()) {
-            contexts.add(ClaimContexts.TOWN_OVERRIDE_CONTEXT);
-            contexts.add(claim.world.getContext());
+            overrideContext = ClaimContexts.TOWN_OVERRIDE_CONTEXT;
+            worldContext = claim.world.getContext();
         } else if (claim.isBasicClaim()) {
-            contexts.add(ClaimContexts.BASIC_OVERRIDE_CONTEXT);
-            contexts.add(claim.world.getContext());
+            overrideContext = ClaimContexts.BASIC_OVERRIDE_CONTEXT;
+            worldContext = claim.world.getContext();
         } else if (claim.isWilderness()) {
-            contexts.add(ClaimContexts.WILDERNESS_OVERRIDE_CONTEXT);
+            overrideContext = ClaimContexts.WILDERNESS_OVERRIDE_CONTEXT;
             player = user instanceof Player ? (Player) user : null;
         }
+        final Set<Context> contexts = getActiveContexts(subject, playerData, overrideContext, worldContext);
 
         Tristate value = subject.getPermissionValue(contexts, flagPermission);
         if (value != Tristate.UNDEFINED) {
@@ -318,9 +299,10 @@ private static Tristate getFlagOverride(GPClaim claim, Subject subject, User use
                 Text reason = GriefPreventionPlugin.getGlobalConfig().getConfig().bans.getReason(flagPermission);
                 if (reason != null && !reason.isEmpty()) {
                     player.sendMessage(reason);
+                    evaluation.resultNotified = true;
                 }
             }
-            return processResult(claim, flagPermission, value, user);
+            return processResult(evaluation, claim, flagPermission, value, user);
         }
         if (targetMetaPermission != null) {
             value = subject.getPermissionValue(contexts, targetMetaPermission);
@@ -329,9 +311,10 @@ private static Tristate getFlagOverride(GPClaim claim, Subject subject, User use
                     Text reason = GriefPreventionPlugin.getGlobalConfig().getConfig().bans.getReason(targetMetaPermission);
                     if (reason != null && !reason.isEmpty()) {
                         player.sendMessage(reason);
+                        evaluation.resultNotified = true;
                     }
                 }
-                return processResult(claim, targetMetaPermission, value, user);
+                return processResult(evaluation, claim, targetMetaPermission, value, user);
             }
         }
         if (targetModPermission != null) {
@@ -341,9 +324,10 @@ private static Tristate getFlagOverride(GPClaim claim, Subject subject, User use
                     Text reason = GriefPreventionPlugin.getGlobalConfig().getConfig().bans.getReason(targetModPermission);
                     if (reason != null && !reason.isEmpty()) {
                         player.sendMessage(reason);
+                        evaluation.resultNotified = true;
                     }
                 }
-                return processResult(claim, targetModPermission, value, user);
+                return processResult(evaluation, claim, targetModPermission, value, user);
             }
         }
 
@@ -362,64 +346,42 @@ public static Tristate getFlagOverride(Event event, Location<World> location, GP
             }
         }
 
-        currentEvent = event;
-        eventLocation = location;
-        eventSubject = user;
-        Player player = null;
-        final Subject subject = user != null ? user : GriefPreventionPlugin.GLOBAL_SUBJECT;
-        String targetModPermission = null;
-        String targetMetaPermission = null;
-        if (target != null && source == null) {
-            String targetId = getPermissionIdentifier(target);
-            flagPermission += "." + targetId;
-        } else if (target != null && source != null) {
-            String sourceId = getPermissionIdentifier(source, true);
-            String targetId = getPermissionIdentifier(target);
-            if (!targetId.isEmpty()) {
-                String[] parts = targetId.split(":");
-                String targetMod = parts[0];
-                if (!sourceId.isEmpty()) {
-                    // move target meta to end of permission
-                    Pattern p = Pattern.compile("\\.[\\d+]*$");
-                    Matcher m = p.matcher(targetId);
-                    String targetMeta = "";
-                    if (m.find()) {
-                        targetMeta = m.group(0);
-                        targetId = targetId.replace(targetMeta, "");
-                    }
-                    if (!targetMeta.isEmpty()) {
-                        targetMetaPermission = flagPermission + "." + targetId.replace(":", ".") + targetMeta;
-                    }
-                    targetModPermission = flagPermission + "." + targetMod + ".source." + sourceId + targetMeta;
-                    targetModPermission = StringUtils.replace(targetModPermission, ":", ".");
-                    flagPermission += "." + targetId + ".source." + sourceId + targetMeta;
-                } else {
-                    flagPermission += "." + targetId;
-                }
-            }
+        final GPPermissionEvaluation evaluation = GPPermissionEvaluation.acquire(event, location, user);
+        try {
+            return getFlagOverride(evaluation, claim, flagPermission, source, target, user, playerData);
+        } finally {
+            evaluation.release();
         }
+    }
 
-        flagPermission = StringUtils.replace(flagPermission, ":", ".");
-        if (playerData != null) {
-            playerData.ignoreActiveContexts = true;
-        }
-        Set<Context> contexts = new LinkedHashSet<>(subject.getActiveContexts());
-        if (playerData != null) {
-            playerData.ignoreActiveContexts = false;
+    private static Tristate getFlagOverride(GPPermissionEvaluation evaluation, GPClaim claim, String flagPermission, Object source, Object target, User user, GPPlayerData playerData) {
+        Player player = null;
+        final Subject subject = user != null ? user : GriefPreventionPlugin.GLOBAL_SUBJECT;
+        final String sourceId = target != null && source != null ? getPermissionIdentifier(evaluation, source, true) : "";
+        final String targetId = target != null ? getPermissionIdentifier(evaluation, target, false) : "";
+        final GPPermissionNode node = GPPermissionNode.getTargetNode(flagPermission, sourceId, targetId);
+        if (!GPOverrideFilter.mayOverride(claim.world, node, user, playerData)) {
+            return Tristate.UNDEFINED;
         }
+        flagPermission = node.permission;
+        final String targetModPermission = node.modPermission;
+        final String targetMetaPermission = node.metaPermission;
+        Context overrideContext = null;
+        Context worldContext = null;
         if (claim.isWilderness()) {
-            contexts.add(ClaimContexts.WILDERNESS_OVERRIDE_CONTEXT);
+            overrideContext = ClaimContexts.WILDERNESS_OVERRIDE_CONTEXT;
             player = user instanceof Player ? (Player) user : null;
         } else if (claim.isAdminClaim()) {
-            contexts.add(ClaimContexts.ADMIN_OVERRIDE_CONTEXT);
-            contexts.add(claim.world.getContext());
+            overrideContext = ClaimContexts.ADMIN_OVERRIDE_CONTEXT;
+            worldContext = claim.world.getContext();
         } else if (claim.isTown()) {
-            contexts.add(ClaimContexts.TOWN_OVERRIDE_CONTEXT);
-            contexts.add(claim.world.getContext());
+            overrideContext = ClaimContexts.TOWN_OVERRIDE_CONTEXT;
+            worldContext = claim.world.getContext();
         } else {
-            contexts.add(ClaimContexts.BASIC_OVERRIDE_CONTEXT);
-            contexts.add(claim.world.getContext());
+            overrideContext = ClaimContexts.BASIC_OVERRIDE_CONTEXT;
+            worldContext = claim.world.getContext();
         }
+        final Set<Context> contexts = getActiveContexts(subject, playerData, overrideContext, worldContext);
 
         Tristate value = subject.getPermissionValue(contexts, flagPermission);
         if (value != Tristate.UNDEFINED) {
@@ -427,9 +389,10 @@ public static Tristate getFlagOverride(Event event, Location<World> location, GP
                 Text reason = GriefPreventionPlugin.getGlobalConfig().getConfig().bans.getReason(flagPermission);
                 if (reason != null && !reason.isEmpty()) {
                     player.sendMessage(reason);
+                    evaluation.resultNotified = true;
                 }
             }
-            return processResult(claim, flagPermission, value, user);
+            return processResult(evaluation, claim, flagPermission, value, user);
         }
         if (targetMetaPermission != null) {
             value = subject.getPermissionValue(contexts, targetMetaPermission);
@@ -438,9 +401,10 @@ public static Tristate getFlagOverride(Event event, Location<World> location, GP
                     Text reason = GriefPreventionPlugin.getGlobalConfig().getConfig().bans.getReason(targetMetaPermission);
                     if (reason != null && !reason.isEmpty()) {
                         player.sendMessage(reason);
+                        evaluation.resultNotified = true;
                     }
                 }
-                return processResult(claim, targetMetaPermission, value, user);
+                return processResult(evaluation, claim, targetMetaPermission, value, user);
             }
         }
         // check target modid
@@ -451,64 +415,64 @@ public static Tristate getFlagOverride(Event event, Location<World> location, GP
                     Text reason = GriefPreventionPlugin.getGlobalConfig().getConfig().bans.getReason(targetModPermission);
                     if (reason != null && !reason.isEmpty()) {
                         player.sendMessage(reason);
+                        evaluation.resultNotified = true;
                     }
                 }
-                return processResult(claim, targetModPermission, value, user);
+                return processResult(evaluation, claim, targetModPermission, value, user);
             }
         }
 
         return Tristate.UNDEFINED;
     }
 
+    // Online players reuse their cached base contexts, claim contexts are never part of them
+    private static Set<Context> getActiveContexts(Subject subject, @Nullable GPPlayerData playerData, @Nullable Context context, @Nullable Context extra) {
+        if (playerData != null && subject instanceof Player) {
+            if (context == null) {
+                return playerData.getBaseContexts(subject);
+            }
+            return playerData.getBaseContexts(subject, context, extra);
+        }
+
+        final Set<Context> contexts = new HashSet<>(subject.getActiveContexts());
+        if (context != null) {
+            contexts.add(context);
+        }
+        if (extra != null) {
+            contexts.add(extra);
+        }
+        return contexts;
+    }
+
     // used by Flag API
     public static Tristate getClaimPermission(GPClaim claim, ClaimFlag flag, Subject subject, String source, String target, Context context) {
         final String flagBasePermission = GPPermissions.FLAG_BASE + "." + flag.toString();
-        String sourceId = getPermissionIdentifier(source, true);
-        String targetPermission = flagBasePermission;
-        String targetId = getPermissionIdentifier(target);
-        String targetModPermission = null;
-        if (!targetId.isEmpty()) {
-            if (!sourceId.isEmpty()) {
-                String[] parts = targetId.split(":");
-                String targetMod = parts[0];
-                // move target meta to end of permission
-                Pattern p = Pattern.compile("\\.[\\d+]*$");
-                Matcher m = p.matcher(targetId);
-                String targetMeta = "";
-                if (m.find()) {
-                    targetMeta = m.group(0);
-                    targetId = targetId.replace(targetMeta, "");
-                }
-                targetModPermission = flagBasePermission + "." + targetMod + ".source." + sourceId + targetMeta;
-                targetModPermission = StringUtils.replace(targetModPermission, ":", ".");
-                targetPermission += "." + targetId + ".source." + sourceId + targetMeta;
-            } else {
-                targetPermission += "." + targetId;
-            }
-        }
-        targetPermission = StringUtils.replace(targetPermission, ":", ".");
+        final String sourceId = getPermissionIdentifier(source, true);
+        final String targetId = getPermissionIdentifier(target);
+        final String targetPermission = GPPermissionNode.getTargetNode(flagBasePermission, sourceId, targetId).permission;
         Set<Context> contexts = new HashSet<>();
         contexts.add(context);
         return subject.getPermissionValue(contexts, targetPermission);
     }
 
-    public static Tristate processResult(GPClaim claim, String permission, Tristate permissionValue, Subject subject) {
+    private static Tristate processResult(GPPermissionEvaluation evaluation, GPClaim claim, String permission, Tristate permissionValue, Subject subject) {
         if (GriefPreventionPlugin.debugActive) {
+            final Event event = evaluation.event;
             if (subject == null) {
-                if (eventSubject != null) {
-                    subject = eventSubject;
-                } else if (currentEvent.getCause().root() instanceof User) {
-                    subject = (Subject) currentEvent.getCause().root();
+                if (evaluation.subject != null) {
+                    subject = evaluation.subject;
+                } else if (event.getCause().root() instanceof User) {
+                    subject = (Subject) event.getCause().root();
                 } else {
                     subject = GriefPreventionPlugin.GLOBAL_SUBJECT;
                 }
             }
-            if (currentEvent instanceof CollideEvent || currentEvent instanceof NotifyNeighborBlockEvent) {
+            if (event instanceof CollideEvent || event instanceof NotifyNeighborBlockEvent) {
                 if (claim.getWorld().getProperties().getTotalTime() % 100 == 0L) {
-                    GriefPreventionPlugin.addEventLogEntry(currentEvent, claim, eventLocation, eventSource, eventTarget, subject, permission, permissionValue);
+                    GriefPreventionPlugin.addEventLogEntry(event, claim, evaluation.location, evaluation.source, evaluation.target, subject, permission, permissionValue);
                 }
             } else {
-                GriefPreventionPlugin.addEventLogEntry(currentEvent, claim, eventLocation, eventSource, eventTarget, subject, permission, permissionValue);
+                GriefPreventionPlugin.addEventLogEntry(event, claim, evaluation.location, evaluation.source, evaluation.target, subject, permission, permissionValue);
             }
         }
 
@@ -519,104 +483,68 @@ public static String getPermissionIdentifier(Object obj) {
         return getPermissionIdentifier(obj, false);
     }
 
-    @SuppressWarnings("deprecation")
     public static String getPermissionIdentifier(Object obj, boolean isSource) {
+        return getPermissionIdentifier(null, obj, isSource);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String getPermissionIdentifier(@Nullable GPPermissionEvaluation evaluation, Object obj, boolean isSource) {
         if (obj != null) {
             if (obj instanceof Entity) {
-                Entity targetEntity = (Entity) obj;
-                net.minecraft.entity.Entity mcEntity = (net.minecraft.entity.Entity) targetEntity;
-                String id = "";
-                if (mcEntity instanceof EntityItem) {
-                    EntityItem mcItem = (EntityItem) mcEntity;
-                    net.minecraft.item.ItemStack itemStack = mcItem.getItem();
-                    if (itemStack != null && itemStack.getItem() != null) {
-                        ItemType itemType = (ItemType) itemStack.getItem();
-                        id = itemType.getId() + "." + itemStack.getItemDamage();
-                    }
-                } else {
-                    if (targetEntity.getType() != null) {
-                        id = targetEntity.getType().getId();
-                    }
-                }
-
-                if (id.contains("unknown") && SpongeImplHooks.isFakePlayer(mcEntity)) {
-                    id = "fakeplayer:" + ((EntityPlayer) obj).getName().toLowerCase();
-                }
-                populateEventSourceTarget(id, isSource);
-                if (!isSource && targetEntity instanceof Living) {
-                    for (EnumCreatureType type : EnumCreatureType.values()) {
-                        if (SpongeImplHooks.isCreatureOfType(mcEntity, type)) {
-                            String[] parts = id.split(":");
-                            if (parts.length > 1) {
-                                id =  parts[0] + ":" + GPFlags.SPAWN_TYPES.inverse().get(type) + ":" + parts[1];
-                                break;
-                            }
-                        }
-                    }
-                }
-
+                final Entity targetEntity = (Entity) obj;
                 if (targetEntity instanceof Item) {
-                    id = ((Item) targetEntity).getItemType().getId();
-                    populateEventSourceTarget(id, isSource);
+                    final String id = ((Item) targetEntity).getItemType().getId();
+                    populateEventSourceTarget(evaluation, id, isSource);
+                    return id.toLowerCase();
                 }
 
-                return id.toLowerCase();
+                String[] ids = ENTITY_IDENTIFIERS.get(targetEntity.getClass());
+                if (ids == null) {
+                    ids = getEntityIdentifiers(targetEntity);
+                }
+                populateEventSourceTarget(evaluation, ids[0], isSource);
+                return isSource ? ids[0] : ids[1];
             } else if (obj instanceof EntityType) {
                 final String id = ((EntityType) obj).getId();
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return ((EntityType) obj).getId();
             } else if (obj instanceof BlockType) {
                 final String id = ((BlockType) obj).getId();
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return id;
             } else if (obj instanceof BlockSnapshot) {
-                final BlockSnapshot blockSnapshot = (BlockSnapshot) obj;
-                final BlockState blockstate = blockSnapshot.getState();
-                final String id = blockstate.getType().getId() + "." + BlockUtils.getBlockStateMeta(blockstate);
-                populateEventSourceTarget(id, isSource);
-                return id.toLowerCase();
+                final String id = getBlockStateIdentifier(((BlockSnapshot) obj).getState());
+                populateEventSourceTarget(evaluation, id, isSource);
+                return id;
             } else if (obj instanceof BlockState) {
-                final BlockState blockstate = (BlockState) obj;
-                final String id = blockstate.getType().getId() + "." + BlockUtils.getBlockStateMeta(blockstate);
-                populateEventSourceTarget(id, isSource);
-                return id.toLowerCase();
+                final String id = getBlockStateIdentifier((BlockState) obj);
+                populateEventSourceTarget(evaluation, id, isSource);
+                return id;
             } else if (obj instanceof LocatableBlock) {
-                final LocatableBlock locatableBlock = (LocatableBlock) obj;
-                final BlockState blockstate = locatableBlock.getBlockState();
-                final String id = blockstate.getType().getId() + "." + BlockUtils.getBlockStateMeta(blockstate);
-                populateEventSourceTarget(id, isSource);
-                return id.toLowerCase();
+                final String id = getBlockStateIdentifier(((LocatableBlock) obj).getBlockState());
+                populateEventSourceTarget(evaluation, id, isSource);
+                return id;
             } else if (obj instanceof TileEntity) {
                 TileEntity tileEntity = (TileEntity) obj;
                 final String id = tileEntity.getType().getId().toLowerCase();
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return id;
             } else if (obj instanceof ItemStack) {
-                final ItemStack itemstack = (ItemStack) obj;
-                String id = "";
-                if (itemstack.getItem() instanceof ItemBlock) {
-                    ItemBlock itemBlock = (ItemBlock) itemstack.getItem();
-                    net.minecraft.item.ItemStack nmsStack = (net.minecraft.item.ItemStack)(Object) itemstack;
-                    BlockState blockState = ((BlockState) itemBlock.getBlock().getStateFromMeta(nmsStack.getItemDamage()));
-                    id = blockState.getType().getId() + "." + nmsStack.getItemDamage();
-                } else {
-                    id = itemstack.getItem().getId() + "." + ((net.minecraft.item.ItemStack)(Object) itemstack).getItemDamage();
-                }
-
-                populateEventSourceTarget(id, isSource);
-                return id.toLowerCase();
+                final String id = getItemStackIdentifier((ItemStack) obj);
+                populateEventSourceTarget(evaluation, id, isSource);
+                return id;
             } else if (obj instanceof ItemType) {
                 final String id = ((ItemType) obj).getId().toLowerCase();
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return id;
             } else if (obj instanceof EntityDamageSource) {
                 final EntityDamageSource damageSource = (EntityDamageSource) obj;
-                if (eventSubject == null && damageSource.getSource() instanceof User) {
-                    eventSubject = (User) damageSource.getSource();
+                if (evaluation != null && evaluation.subject == null && damageSource.getSource() instanceof User) {
+                    evaluation.subject = (User) damageSource.getSource();
                 }
 
                 final String id = damageSource.getSource().getType().getId();
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return damageSource.getSource().getType().getId();
             } else if (obj instanceof DamageSource) {
                 final DamageSource damageSource = (DamageSource) obj;
@@ -625,31 +553,112 @@ public static String getPermissionIdentifier(Object obj, boolean isSource) {
                     id = "minecraft:" + id;
                 }
 
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return id;
             } else if (obj instanceof ItemStackSnapshot) {
                 final String id = ((ItemStackSnapshot) obj).getType().getId();
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return id;
             } else if (obj instanceof CatalogType) {
                 final String id = ((CatalogType) obj).getId();
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return id;
             } else if (obj instanceof String) {
                 final String id = obj.toString().toLowerCase();
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return id;
             } else if (obj instanceof PluginContainer) {
                 final String id = ((PluginContainer) obj).getId();
-                populateEventSourceTarget(id, isSource);
+                populateEventSourceTarget(evaluation, id, isSource);
                 return id;
             }
         }
 
-        populateEventSourceTarget("none", isSource);
+        populateEventSourceTarget(evaluation, "none", isSource);
         return "";
     }
 
+    // Returns the source and target identifiers of an entity
+    private static String[] getEntityIdentifiers(Entity targetEntity) {
+        final net.minecraft.entity.Entity mcEntity = (net.minecraft.entity.Entity) targetEntity;
+        String id = targetEntity.getType() != null ? targetEntity.getType().getId() : "";
+        // fake players share their class so only real entity types are cached
+        boolean cache = true;
+        if (id.contains("unknown")) {
+            cache = false;
+            if (SpongeImplHooks.isFakePlayer(mcEntity)) {
+                id = "fakeplayer:" + ((EntityPlayer) mcEntity).getName().toLowerCase();
+            }
+        }
+
+        String targetId = id;
+        if (targetEntity instanceof Living) {
+            for (EnumCreatureType type : EnumCreatureType.values()) {
+                if (SpongeImplHooks.isCreatureOfType(mcEntity, type)) {
+                    final int index = id.indexOf(':');
+                    if (index != -1) {
+                        targetId = id.substring(0, index + 1) + GPFlags.SPAWN_TYPES.inverse().get(type) + id.substring(index);
+                        break;
+                    }
+                }
+            }
+        }
+
+        final String[] ids = new String[] {id.toLowerCase(), targetId.toLowerCase()};
+        if (cache) {
+            ENTITY_IDENTIFIERS.put(targetEntity.getClass(), ids);
+        }
+        return ids;
+    }
+
+    private static String getBlockStateIdentifier(BlockState blockstate) {
+        String id = BLOCKSTATE_IDENTIFIERS.get(blockstate);
+        if (id == null) {
+            id = (blockstate.getType().getId() + "." + BlockUtils.getBlockStateMeta(blockstate)).toLowerCase();
+            BLOCKSTATE_IDENTIFIERS.put(blockstate, id);
+        }
+        return id;
+    }
+
+    private static String getItemStackIdentifier(ItemStack itemstack) {
+        final net.minecraft.item.ItemStack nmsStack = (net.minecraft.item.ItemStack)(Object) itemstack;
+        final net.minecraft.item.Item item = nmsStack.getItem();
+        final int meta = nmsStack.getItemDamage();
+        // the damage of damageable items is durability rather than meta and is not worth caching
+        Int2ObjectMap<String> metaIds = null;
+        if (!item.isDamageable()) {
+            metaIds = ITEM_IDENTIFIERS.get(item);
+            if (metaIds != null) {
+                final String id = metaIds.get(meta);
+                if (id != null) {
+                    return id;
+                }
+            }
+        }
+
+        String id = "";
+        if (item instanceof ItemBlock) {
+            ItemBlock itemBlock = (ItemBlock) item;
+            BlockState blockState = ((BlockState) itemBlock.getBlock().getStateFromMeta(meta));
+            id = blockState.getType().getId() + "." + meta;
+        } else {
+            id = itemstack.getItem().getId() + "." + meta;
+        }
+        id = id.toLowerCase();
+
+        if (!item.isDamageable()) {
+            if (metaIds == null) {
+                metaIds = Int2ObjectMaps.synchronize(new Int2ObjectOpenHashMap<>());
+                final Int2ObjectMap<String> existing = ITEM_IDENTIFIERS.putIfAbsent(item, metaIds);
+                if (existing != null) {
+                    metaIds = existing;
+                }
+            }
+            metaIds.put(meta, id);
+        }
+        return id;
+    }
+
     public static ClaimFlag getFlagFromPermission(String flagPermission) {
         try {
             return ClaimFlag.getEnum(flagPermission);
@@ -689,44 +698,24 @@ public static String getTargetPermission(String flagPermission) {
 
     // Used for debugging
     public static String getPermission(Object source, Object target, String flagPermission) {
-        String sourceId = getPermissionIdentifier(source, true);
-        String targetPermission = flagPermission;
-        String targetId = getPermissionIdentifier(target);
-        if (!targetId.isEmpty()) {
-            if (!sourceId.isEmpty()) {
-                // move target meta to end of permission
-                Pattern p = Pattern.compile("\\.[\\d+]*$");
-                Matcher m = p.matcher(targetId);
-                String targetMeta = "";
-                if (m.find()) {
-                    targetMeta = m.group(0);
-                    targetId = targetId.replace(targetMeta, "");
-        }
-                targetPermission += "." + targetId + ".source." + sourceId + targetMeta;
-            } else {
-                targetPermission += "." + targetId;
-            }
-        }
-        targetPermission = StringUtils.replace(targetPermission, ":", ".");
-        return targetPermission;
+        final String sourceId = getPermissionIdentifier(source, true);
+        final String targetId = getPermissionIdentifier(target);
+        return GPPermissionNode.getTargetNode(flagPermission, sourceId, targetId).permission;
     }
 
     public static String getIdentifierWithoutMeta(String targetId) {
-        Pattern p = Pattern.compile("\\.[\\d+]*$");
-        Matcher m = p.matcher(targetId);
-        String targetMeta = "";
-        if (m.find()) {
-            targetMeta = m.group(0);
-            targetId = targetId.replace(targetMeta, "");
-        }
-        return targetId;
+        final int metaIndex = GPPermissionNode.getMetaIndex(targetId);
+        return metaIndex == -1 ? targetId : targetId.substring(0, metaIndex);
     }
 
-    private static void populateEventSourceTarget(String id, boolean isSource) {
+    private static void populateEventSourceTarget(@Nullable GPPermissionEvaluation evaluation, String id, boolean isSource) {
+        if (evaluation == null) {
+            return;
+        }
         if (isSource) {
-            eventSource = id.toLowerCase();
+            evaluation.source = id.toLowerCase();
         } else {
-            eventTarget = id.toLowerCase();
+            evaluation.target = id.toLowerCase();
         }
     }
 }
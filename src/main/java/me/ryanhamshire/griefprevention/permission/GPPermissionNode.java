@@ -0,0 +1,185 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.permission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+/**
+ * The flag permission nodes checked for a flag, source and target.
+ * 
+ * <p>Nodes are built once per (flag, source, target) and kept in an interned
+ * table so repeated checks of the same triple do not allocate.</p>
+ */
+public final class GPPermissionNode {
+
+    private static final int MAX_SIZE = 65536;
+
+    // flag -> source id -> target id -> node
+    private static final Map<String, Map<String, Map<String, GPPermissionNode>>> fullNodes = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, Map<String, GPPermissionNode>>> targetNodes = new ConcurrentHashMap<>();
+    private static final AtomicInteger size = new AtomicInteger();
+
+    public final String permission;
+    @Nullable public final String modPermission;
+    @Nullable public final String metaPermission;
+
+    private GPPermissionNode(String permission, @Nullable String modPermission, @Nullable String metaPermission) {
+        this.permission = permission;
+        this.modPermission = modPermission;
+        this.metaPermission = metaPermission;
+    }
+
+    /**
+     * Gets the nodes used by claim permission checks.
+     * 
+     * <p>Mod and meta nodes are built whenever a target is present and a
+     * source only node is used when there is no target.</p>
+     */
+    public static GPPermissionNode getNode(String flagPermission, String sourceId, String targetId) {
+        return getOrCompile(fullNodes, flagPermission, sourceId, targetId, true);
+    }
+
+    /**
+     * Gets the nodes used by override checks and the flag API.
+     * 
+     * <p>The source is only used together with a target and mod nodes are
+     * only built when both are present.</p>
+     */
+    public static GPPermissionNode getTargetNode(String flagPermission, String sourceId, String targetId) {
+        return getOrCompile(targetNodes, flagPermission, sourceId, targetId, false);
+    }
+
+    public static void clear() {
+        fullNodes.clear();
+        targetNodes.clear();
+        size.set(0);
+    }
+
+    /**
+     * Gets the index of the trailing meta of an identifier, such as the
+     * ".2" of "minecraft:wool.2".
+     * 
+     * @param id The identifier
+     * @return The index of the meta separator, or -1 if there is no meta
+     */
+    public static int getMetaIndex(String id) {
+        int index = id.length() - 1;
+        while (index >= 0) {
+            final char c = id.charAt(index);
+            if (c == '.') {
+                return index;
+            }
+            if ((c < '0' || c > '9') && c != '+') {
+                return -1;
+            }
+            index--;
+        }
+        return -1;
+    }
+
+    private static GPPermissionNode getOrCompile(Map<String, Map<String, Map<String, GPPermissionNode>>> table, String flagPermission, String sourceId, String targetId, boolean full) {
+        Map<String, Map<String, GPPermissionNode>> sourceMap = table.get(flagPermission);
+        if (sourceMap == null) {
+            sourceMap = new ConcurrentHashMap<>();
+            final Map<String, Map<String, GPPermissionNode>> existing = table.putIfAbsent(flagPermission, sourceMap);
+            if (existing != null) {
+                sourceMap = existing;
+            }
+        }
+        Map<String, GPPermissionNode> targetMap = sourceMap.get(sourceId);
+        if (targetMap == null) {
+            targetMap = new ConcurrentHashMap<>();
+            final Map<String, GPPermissionNode> existing = sourceMap.putIfAbsent(sourceId, targetMap);
+            if (existing != null) {
+                targetMap = existing;
+            }
+        }
+        GPPermissionNode node = targetMap.get(targetId);
+        if (node == null) {
+            // ids come from every mod on the server, keep the table from growing without bound
+            if (size.incrementAndGet() > MAX_SIZE) {
+                clear();
+            }
+            node = full ? compile(flagPermission, sourceId, targetId) : compileTarget(flagPermission, sourceId, targetId);
+            targetMap.put(targetId, node);
+        }
+        return node;
+    }
+
+    private static GPPermissionNode compile(String flagPermission, String sourceId, String targetId) {
+        if (targetId.isEmpty()) {
+            if (sourceId.isEmpty()) {
+                return new GPPermissionNode(toNode(flagPermission), null, null);
+            }
+            String modPermission = null;
+            final int modIndex = sourceId.indexOf(':');
+            if (modIndex != -1) {
+                modPermission = toNode(flagPermission + "." + sourceId.substring(0, modIndex) + ".source." + sourceId);
+            }
+            return new GPPermissionNode(toNode(flagPermission + ".source." + sourceId), modPermission, null);
+        }
+
+        final int modIndex = targetId.indexOf(':');
+        final String targetMod = modIndex == -1 ? targetId : targetId.substring(0, modIndex);
+        // move target meta to end of permission
+        final int metaIndex = getMetaIndex(targetId);
+        final String targetMeta = metaIndex == -1 ? "" : targetId.substring(metaIndex);
+        final String baseTargetId = metaIndex == -1 ? targetId : targetId.substring(0, metaIndex);
+        final String metaPermission = metaIndex == -1 ? null : toNode(flagPermission + "." + baseTargetId + targetMeta);
+        if (!sourceId.isEmpty()) {
+            return new GPPermissionNode(toNode(flagPermission + "." + baseTargetId + ".source." + sourceId + targetMeta),
+                    toNode(flagPermission + "." + targetMod + ".source." + sourceId + targetMeta), metaPermission);
+        }
+        return new GPPermissionNode(toNode(flagPermission + "." + baseTargetId + targetMeta),
+                toNode(flagPermission + "." + targetMod + targetMeta), metaPermission);
+    }
+
+    private static GPPermissionNode compileTarget(String flagPermission, String sourceId, String targetId) {
+        if (targetId.isEmpty()) {
+            return new GPPermissionNode(toNode(flagPermission), null, null);
+        }
+        if (sourceId.isEmpty()) {
+            return new GPPermissionNode(toNode(flagPermission + "." + targetId), null, null);
+        }
+
+        final int modIndex = targetId.indexOf(':');
+        final String targetMod = modIndex == -1 ? targetId : targetId.substring(0, modIndex);
+        // move target meta to end of permission
+        final int metaIndex = getMetaIndex(targetId);
+        final String targetMeta = metaIndex == -1 ? "" : targetId.substring(metaIndex);
+        final String baseTargetId = metaIndex == -1 ? targetId : targetId.substring(0, metaIndex);
+        final String metaPermission = metaIndex == -1 ? null : toNode(flagPermission + "." + baseTargetId + targetMeta);
+        return new GPPermissionNode(toNode(flagPermission + "." + baseTargetId + ".source." + sourceId + targetMeta),
+                toNode(flagPermission + "." + targetMod + ".source." + sourceId + targetMeta), metaPermission);
+    }
+
+    private static String toNode(String permission) {
+        return permission.replace(':', '.').intern();
+    }
+}
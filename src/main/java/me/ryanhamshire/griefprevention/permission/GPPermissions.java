@@ -125,6 +125,7 @@ public class GPPermissions {
     public static final String COMMAND_RESTORE_NATURE_AGGRESSIVE = "griefprevention.admin.command.restore-nature.aggressive";
     public static final String COMMAND_RESTORE_NATURE_FILL = "griefprevention.admin.command.restore-nature.fill";
     public static final String COMMAND_RELOAD = "griefprevention.admin.command.reload";
+    public static final String COMMAND_MIGRATE_STORAGE = "griefprevention.admin.command.migrate-storage";
     public static final String SET_ADMIN_FLAGS = "griefprevention.admin.claim.set-admin-flags";
     public static final String LIST_OTHER_CLAIMS = "griefprevention.admin.claim.list.other";
     public static final String LIST_ADMIN_CLAIMS = "griefprevention.admin.claim.list.admin";
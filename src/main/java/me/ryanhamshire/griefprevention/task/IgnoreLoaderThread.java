@@ -26,10 +26,12 @@
 
 
 import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.configuration.PlayerStorageWriter;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -65,8 +67,9 @@ public void run() {
             try {
                 needRetry = false;
 
-                // read the file content and immediately close it
-                List<String> lines = Files.readAllLines(ignorePath);
+                // read the file content and immediately close it, unless a newer list is still queued
+                final String queued = PlayerStorageWriter.getQueuedIgnoreList(ignorePath);
+                List<String> lines = queued != null ? Arrays.asList(queued.split("\n")) : Files.readAllLines(ignorePath);
 
                 // each line is one ignore. asterisks indicate administrative
                 // ignores
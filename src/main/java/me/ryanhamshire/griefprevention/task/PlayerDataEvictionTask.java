@@ -0,0 +1,87 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.task;
+
+import me.ryanhamshire.griefprevention.DataStore;
+import me.ryanhamshire.griefprevention.GPPlayerData;
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.configuration.category.PlayerDataCategory;
+import me.ryanhamshire.griefprevention.util.PlayerUtils;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.world.World;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Saves and unloads the data of offline players that has not been used recently,
+// keeping at most the configured number of offline players in memory.
+// runs every minute on the main thread
+public class PlayerDataEvictionTask implements Runnable {
+
+    @Override
+    public void run() {
+        final PlayerDataCategory config = GriefPreventionPlugin.getGlobalConfig().getConfig().playerdata;
+        if (config.offlineCacheSize < 0) {
+            return;
+        }
+
+        final long expireTime = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(config.offlineCacheExpiration);
+        if (DataStore.USE_GLOBAL_PLAYER_STORAGE) {
+            evict(DataStore.GLOBAL_PLAYER_DATA, expireTime, config.offlineCacheSize);
+            return;
+        }
+        for (World world : Sponge.getServer().getWorlds()) {
+            evict(GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(world.getProperties()).getPlayerDataMap(), expireTime, config.offlineCacheSize);
+        }
+    }
+
+    private static void evict(Map<UUID, GPPlayerData> playerDataMap, long expireTime, int maxOffline) {
+        final List<GPPlayerData> offlinePlayers = new ArrayList<>();
+        for (GPPlayerData playerData : playerDataMap.values()) {
+            if (PlayerUtils.isSystemUser(playerData.playerID) || Sponge.getServer().getPlayer(playerData.playerID).isPresent()) {
+                continue;
+            }
+            offlinePlayers.add(playerData);
+        }
+
+        // least recently used first
+        offlinePlayers.sort(Comparator.comparingLong(playerData -> playerData.lastAccessTime));
+        final int overLimit = offlinePlayers.size() - maxOffline;
+        for (int i = 0; i < offlinePlayers.size(); i++) {
+            final GPPlayerData playerData = offlinePlayers.get(i);
+            if (i >= overLimit && playerData.lastAccessTime > expireTime) {
+                break;
+            }
+            // write back before the data is dropped
+            playerData.saveAllData();
+            playerData.onDisconnect();
+            playerDataMap.remove(playerData.playerID);
+        }
+    }
+}
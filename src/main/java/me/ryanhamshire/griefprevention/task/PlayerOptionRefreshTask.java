@@ -0,0 +1,162 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.task;
+
+import me.ryanhamshire.griefprevention.GPPlayerData;
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.command.CommandHelper;
+import me.ryanhamshire.griefprevention.permission.GPOptionSnapshot;
+import me.ryanhamshire.griefprevention.util.PermissionUtils;
+import me.ryanhamshire.griefprevention.util.PlayerUtils;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.service.permission.Subject;
+import org.spongepowered.api.service.permission.SubjectReference;
+import org.spongepowered.api.world.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+// Rebuilds queued player option snapshots off the main thread.
+// Requests are coalesced so a player is only looked up once per drain,
+// no matter how many worlds or callers queued them.
+public class PlayerOptionRefreshTask implements Runnable {
+
+    private static final Set<GPPlayerData> PENDING = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean SCHEDULED = new AtomicBoolean(false);
+
+    public static void queue(GPPlayerData playerData) {
+        PENDING.add(playerData);
+        if (SCHEDULED.compareAndSet(false, true)) {
+            GriefPreventionPlugin.instance.executor.execute(new PlayerOptionRefreshTask());
+        }
+    }
+
+    // Queues the loaded data of a single player in every world
+    public static void queuePlayer(UUID playerUniqueId) {
+        if (!Sponge.getServer().isMainThread()) {
+            Sponge.getScheduler().createTaskBuilder().execute(() -> queuePlayer(playerUniqueId)).submit(GriefPreventionPlugin.instance);
+            return;
+        }
+
+        for (World world : Sponge.getServer().getWorlds()) {
+            final GPPlayerData playerData = GriefPreventionPlugin.instance.dataStore.getPlayerData(world, playerUniqueId);
+            if (playerData != null) {
+                queue(playerData);
+            }
+        }
+    }
+
+    // Queues the loaded data of every player that inherits from the passed subject.
+    // Passing null or the global subject queues everyone.
+    public static void queueChildren(@Nullable Subject parent) {
+        if (!Sponge.getServer().isMainThread()) {
+            Sponge.getScheduler().createTaskBuilder().execute(() -> queueChildren(parent)).submit(GriefPreventionPlugin.instance);
+            return;
+        }
+
+        final List<GPPlayerData> candidates = new ArrayList<>();
+        for (World world : Sponge.getServer().getWorlds()) {
+            for (GPPlayerData playerData : GriefPreventionPlugin.instance.dataStore.getClaimWorldManager(world.getProperties()).getPlayerDataMap().values()) {
+                if (!PlayerUtils.isSystemUser(playerData.playerID)) {
+                    candidates.add(playerData);
+                }
+            }
+        }
+        if (parent == null || parent == GriefPreventionPlugin.GLOBAL_SUBJECT) {
+            candidates.forEach(PlayerOptionRefreshTask::queue);
+            return;
+        }
+
+        // inheritance checks go through the permission service so keep them off the main thread
+        final SubjectReference parentReference = parent.asSubjectReference();
+        GriefPreventionPlugin.instance.executor.execute(() -> {
+            final Map<UUID, Boolean> children = new HashMap<>();
+            for (GPPlayerData playerData : candidates) {
+                Boolean isChild = children.get(playerData.playerID);
+                if (isChild == null) {
+                    final Subject subject = PermissionUtils.getUserSubject(playerData.playerID.toString());
+                    isChild = subject != null && subject.isChildOf(parentReference);
+                    children.put(playerData.playerID, isChild);
+                }
+                if (isChild) {
+                    queue(playerData);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        do {
+            try {
+                this.drain();
+            } catch (Throwable t) {
+                GriefPreventionPlugin.instance.getLogger().error("Failed to refresh player options", t);
+            } finally {
+                SCHEDULED.set(false);
+            }
+            // something may have been queued after the last drain but before we released the flag
+        } while (!PENDING.isEmpty() && SCHEDULED.compareAndSet(false, true));
+    }
+
+    private void drain() {
+        while (!PENDING.isEmpty()) {
+            final Map<UUID, List<GPPlayerData>> batch = new HashMap<>();
+            final Iterator<GPPlayerData> iterator = PENDING.iterator();
+            while (iterator.hasNext()) {
+                final GPPlayerData playerData = iterator.next();
+                iterator.remove();
+                batch.computeIfAbsent(playerData.playerID, k -> new ArrayList<>()).add(playerData);
+            }
+
+            for (Map.Entry<UUID, List<GPPlayerData>> mapEntry : batch.entrySet()) {
+                final UUID playerUniqueId = mapEntry.getKey();
+                try {
+                    final Subject subject = PermissionUtils.getUserSubject(playerUniqueId.toString());
+                    if (subject == null) {
+                        continue;
+                    }
+                    final GPOptionSnapshot snapshot = GPOptionSnapshot.create(subject);
+                    final String playerName = CommandHelper.lookupPlayerName(playerUniqueId);
+                    for (GPPlayerData playerData : mapEntry.getValue()) {
+                        playerData.updateOptions(snapshot, playerName);
+                    }
+                } catch (Throwable t) {
+                    // keep the previous snapshot, the other players of the batch are still refreshed
+                    GriefPreventionPlugin.instance.getLogger().error("Failed to refresh options of player " + playerUniqueId, t);
+                }
+            }
+        }
+    }
+}
@@ -50,6 +50,12 @@
 
 public class PlayerUtils {
 
+    // The world, admin and public users own claims and hold trust but are never online players
+    public static boolean isSystemUser(UUID playerUniqueId) {
+        return playerUniqueId.equals(GriefPreventionPlugin.WORLD_USER_UUID) || playerUniqueId.equals(GriefPreventionPlugin.ADMIN_USER_UUID)
+                || playerUniqueId.equals(GriefPreventionPlugin.PUBLIC_UUID);
+    }
+
     public static boolean hasItemInOneHand(Player player, ItemType itemType) {
         ItemStack mainHand = player.getItemInHand(HandTypes.MAIN_HAND).orElse(null);
         ItemStack offHand = player.getItemInHand(HandTypes.OFF_HAND).orElse(null);
@@ -548,7 +548,7 @@ private boolean useCuboidVisual() {
             return true;
         }
 
-        final GPPlayerData ownerData = this.claim.getOwnerPlayerData();
+        final GPPlayerData ownerData = this.claim.getLoadedOwnerPlayerData();
         if (ownerData != null && (ownerData.getMinClaimLevel() > 0 || ownerData.getMaxClaimLevel() < 255)) {
             return true;
         }
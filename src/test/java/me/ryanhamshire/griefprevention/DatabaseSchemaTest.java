@@ -0,0 +1,243 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.flowpowered.math.vector.Vector3i;
+import me.ryanhamshire.griefprevention.api.claim.ClaimType;
+import me.ryanhamshire.griefprevention.configuration.ClaimSnapshot;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageData;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.SimpleConfigurationNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class DatabaseSchemaTest {
+
+    private static final UUID WORLD_UUID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID OWNER_UUID = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        // MySQL mode accepts the MEDIUMBLOB column type used by the schema
+        this.connection = DriverManager.getConnection("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL");
+        DatabaseSchema.createTables(this.connection);
+        // creating the tables again must not fail on an existing database
+        DatabaseSchema.createTables(this.connection);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.connection.close();
+    }
+
+    @Test
+    public void testClaimRoundTrip() throws Exception {
+        final UUID parentUniqueId = UUID.fromString("10000000-0000-0000-0000-000000000000");
+        final UUID childUniqueId = UUID.fromString("20000000-0000-0000-0000-000000000000");
+        final ConfigurationNode parent = createClaim("BASIC", "0;0;0", "9;255;9");
+        parent.getNode(ClaimStorageData.MAIN_BUILDERS).getAppendedNode().setValue(UUID.randomUUID().toString());
+        parent.getNode(ClaimStorageData.MAIN_ACCESSOR_GROUPS).getAppendedNode().setValue("members");
+        final ConfigurationNode child = createClaim("SUBDIVISION", "2;10;2", "4;20;4");
+        child.getNode("parent").setValue(parentUniqueId.toString());
+
+        final Map<UUID, ConfigurationNode> claims = new HashMap<>();
+        claims.put(parentUniqueId, parent);
+        claims.put(childUniqueId, child);
+        DatabaseSchema.writeClaims(this.connection, claims);
+
+        final List<DatabaseSchema.Row> rows = DatabaseSchema.selectClaims(this.connection, WORLD_UUID, null, 10);
+        assertEquals(2, rows.size());
+        assertEquals(parentUniqueId, rows.get(0).uniqueId);
+        assertEquals("BASIC", rows.get(0).type);
+        assertEquals(childUniqueId, rows.get(1).uniqueId);
+        assertEquals("SUBDIVISION", rows.get(1).type);
+        assertEquals(parent.getValue(), decode(rows.get(0).data).getValue());
+        assertEquals(child.getValue(), decode(rows.get(1).data).getValue());
+
+        assertEquals(parentUniqueId.toString(), this.selectString("SELECT parent_id FROM gp_claim WHERE claim_id = ?", childUniqueId));
+        assertNull(this.selectString("SELECT parent_id FROM gp_claim WHERE claim_id = ?", parentUniqueId));
+        assertEquals(2, this.count("SELECT COUNT(*) FROM gp_claim_trust WHERE claim_id = ?", parentUniqueId));
+
+        // paging continues after the given claim
+        final List<DatabaseSchema.Row> nextPage = DatabaseSchema.selectClaims(this.connection, WORLD_UUID, parentUniqueId, 10);
+        assertEquals(1, nextPage.size());
+        assertEquals(childUniqueId, nextPage.get(0).uniqueId);
+        assertTrue(DatabaseSchema.selectClaims(this.connection, UUID.randomUUID(), null, 10).isEmpty());
+    }
+
+    @Test
+    public void testLoadWorldClaims() throws Exception {
+        final UUID parentUniqueId = UUID.randomUUID();
+        final UUID childUniqueId = UUID.randomUUID();
+        final ConfigurationNode parent = createClaim("TOWN", "-20;0;-40", "19;255;39");
+        final ConfigurationNode child = createClaim("BASIC", "-5;64;-5", "5;80;5");
+        child.getNode(ClaimStorageData.MAIN_CLAIM_CUBOID).setValue(true);
+        child.getNode(ClaimStorageData.MAIN_OWNER_UUID).setValue(null);
+        child.getNode("parent").setValue(parentUniqueId.toString());
+        final ConfigurationNode otherWorld = createClaim("BASIC", "0;0;0", "9;255;9");
+        otherWorld.getNode(ClaimStorageData.MAIN_WORLD_UUID).setValue(UUID.randomUUID().toString());
+        final Map<UUID, ConfigurationNode> claims = new HashMap<>();
+        claims.put(parentUniqueId, parent);
+        claims.put(childUniqueId, child);
+        claims.put(UUID.randomUUID(), otherWorld);
+        DatabaseSchema.writeClaims(this.connection, claims);
+
+        final Map<UUID, DatabaseSchema.ClaimRow> rows = new HashMap<>();
+        try (PreparedStatement statement = this.connection.prepareStatement(DatabaseSchema.SELECT_CLAIMS)) {
+            statement.setString(1, WORLD_UUID.toString());
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    final DatabaseSchema.ClaimRow row = DatabaseSchema.readClaimRow(results);
+                    rows.put(row.claimUniqueId, row);
+                }
+            }
+        }
+        assertEquals(2, rows.size());
+
+        final DatabaseSchema.ClaimRow parentRow = rows.get(parentUniqueId);
+        assertEquals(ClaimType.TOWN, parentRow.type);
+        assertEquals(OWNER_UUID, parentRow.ownerUniqueId);
+        assertNull(parentRow.parentUniqueId);
+        assertFalse(parentRow.cuboid);
+        assertEquals(new Vector3i(-20, 0, -40), parentRow.lesserCorner);
+        assertEquals(new Vector3i(19, 255, 39), parentRow.greaterCorner);
+        assertEquals(parent.getValue(), decode(parentRow.data).getValue());
+
+        final DatabaseSchema.ClaimRow childRow = rows.get(childUniqueId);
+        assertEquals(ClaimType.BASIC, childRow.type);
+        assertNull(childRow.ownerUniqueId);
+        assertEquals(parentUniqueId, childRow.parentUniqueId);
+        assertTrue(childRow.cuboid);
+        assertEquals(new Vector3i(-5, 64, -5), childRow.lesserCorner);
+        assertEquals(new Vector3i(5, 80, 5), childRow.greaterCorner);
+        assertEquals(child.getValue(), decode(childRow.data).getValue());
+    }
+
+    @Test
+    public void testClaimRewriteAndDelete() throws Exception {
+        final UUID claimUniqueId = UUID.randomUUID();
+        final ConfigurationNode claim = createClaim("BASIC", "0;0;0", "9;255;9");
+        claim.getNode(ClaimStorageData.MAIN_MANAGERS).getAppendedNode().setValue(UUID.randomUUID().toString());
+        DatabaseSchema.writeClaims(this.connection, Collections.singletonMap(claimUniqueId, claim));
+
+        // a rewrite replaces the claim and its trust rows
+        claim.getNode(ClaimStorageData.MAIN_CLAIM_TYPE).setValue("TOWN");
+        claim.getNode(ClaimStorageData.MAIN_MANAGERS).setValue(null);
+        DatabaseSchema.writeClaims(this.connection, Collections.singletonMap(claimUniqueId, claim));
+        final DatabaseSchema.Row row = DatabaseSchema.selectClaim(this.connection, WORLD_UUID, claimUniqueId);
+        assertEquals("TOWN", row.type);
+        assertEquals(claim.getValue(), decode(row.data).getValue());
+        assertEquals(0, this.count("SELECT COUNT(*) FROM gp_claim_trust WHERE claim_id = ?", claimUniqueId));
+
+        DatabaseSchema.deleteClaims(this.connection, Arrays.asList(claimUniqueId));
+        assertNull(DatabaseSchema.selectClaim(this.connection, WORLD_UUID, claimUniqueId));
+        assertEquals(0, this.count("SELECT COUNT(*) FROM gp_claim WHERE claim_id = ?", claimUniqueId));
+    }
+
+    @Test
+    public void testPlayerDataRoundTrip() throws Exception {
+        final ConfigurationNode playerData = SimpleConfigurationNode.root();
+        playerData.getNode("accrued-claim-blocks").setValue(250);
+        playerData.getNode("bonus-claim-blocks").setValue(10);
+        final DatabaseSchema.PlayerDataKey worldKey = new DatabaseSchema.PlayerDataKey(OWNER_UUID, WORLD_UUID);
+        final DatabaseSchema.PlayerDataKey globalKey = new DatabaseSchema.PlayerDataKey(OWNER_UUID, DatabaseSchema.GLOBAL_WORLD_UUID);
+        final Map<DatabaseSchema.PlayerDataKey, ConfigurationNode> rows = new HashMap<>();
+        rows.put(worldKey, playerData);
+        rows.put(globalKey, playerData);
+        DatabaseSchema.writePlayerData(this.connection, rows);
+
+        final byte[] data = DatabaseSchema.selectPlayerData(this.connection, OWNER_UUID, WORLD_UUID);
+        assertEquals(playerData.getValue(), decode(data).getValue());
+        assertArrayEquals(data, DatabaseSchema.selectPlayerData(this.connection, OWNER_UUID, DatabaseSchema.GLOBAL_WORLD_UUID));
+        assertNull(DatabaseSchema.selectPlayerData(this.connection, UUID.randomUUID(), WORLD_UUID));
+
+        // writing again replaces the stored data
+        playerData.getNode("accrued-claim-blocks").setValue(500);
+        DatabaseSchema.writePlayerData(this.connection, Collections.singletonMap(worldKey, playerData));
+        assertEquals(500, decode(DatabaseSchema.selectPlayerData(this.connection, OWNER_UUID, WORLD_UUID)).getNode("accrued-claim-blocks").getInt());
+
+        final List<DatabaseSchema.Row> page = DatabaseSchema.selectPlayerData(this.connection, WORLD_UUID, null, 10);
+        assertEquals(1, page.size());
+        assertEquals(OWNER_UUID, page.get(0).uniqueId);
+        assertNull(page.get(0).type);
+    }
+
+    private static ConfigurationNode createClaim(String type, String lesserCorner, String greaterCorner) {
+        final ConfigurationNode node = SimpleConfigurationNode.root();
+        node.getNode(ClaimStorageData.MAIN_WORLD_UUID).setValue(WORLD_UUID.toString());
+        node.getNode(ClaimStorageData.MAIN_OWNER_UUID).setValue(OWNER_UUID.toString());
+        node.getNode(ClaimStorageData.MAIN_CLAIM_TYPE).setValue(type);
+        node.getNode(ClaimStorageData.MAIN_CLAIM_CUBOID).setValue(false);
+        node.getNode(ClaimStorageData.MAIN_LESSER_BOUNDARY_CORNER).setValue(lesserCorner);
+        node.getNode(ClaimStorageData.MAIN_GREATER_BOUNDARY_CORNER).setValue(greaterCorner);
+        return node;
+    }
+
+    private static ConfigurationNode decode(byte[] data) throws Exception {
+        final ConfigurationNode node = SimpleConfigurationNode.root();
+        ClaimSnapshot.decode(data, node);
+        return node;
+    }
+
+    private String selectString(String query, UUID claimUniqueId) throws Exception {
+        try (PreparedStatement statement = this.connection.prepareStatement(query)) {
+            statement.setString(1, claimUniqueId.toString());
+            try (ResultSet results = statement.executeQuery()) {
+                assertTrue(results.next());
+                return results.getString(1);
+            }
+        }
+    }
+
+    private int count(String query, UUID claimUniqueId) throws Exception {
+        try (PreparedStatement statement = this.connection.prepareStatement(query)) {
+            statement.setString(1, claimUniqueId.toString());
+            try (ResultSet results = statement.executeQuery()) {
+                results.next();
+                return results.getInt(1);
+            }
+        }
+    }
+}
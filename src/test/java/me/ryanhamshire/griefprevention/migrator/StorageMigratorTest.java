@@ -0,0 +1,273 @@
+/*
+ * This file is part of GriefPrevention, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) bloodmc
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.ryanhamshire.griefprevention.migrator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import me.ryanhamshire.griefprevention.DatabaseSchema;
+import me.ryanhamshire.griefprevention.GriefPreventionPlugin;
+import me.ryanhamshire.griefprevention.configuration.ClaimJournal;
+import me.ryanhamshire.griefprevention.configuration.ClaimSnapshot;
+import me.ryanhamshire.griefprevention.configuration.ClaimStorageData;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.SimpleConfigurationNode;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+import ninja.leaping.configurate.hocon.HoconConfigurationLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the storage migration both ways on generated claim and player
+ * files. The number of claims defaults to a few batches and can be raised
+ * with -Dgp.migrator.claims, e.g. to 200000.
+ */
+public class StorageMigratorTest {
+
+    private static final int CLAIM_COUNT = Integer.getInteger("gp.migrator.claims", 5 * StorageMigrator.BATCH_SIZE / 2);
+    private static final UUID WORLD_UUID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final Pattern FINISHED = Pattern.compile("Copied (\\d+) claims and (\\d+) player data files");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private String databaseUrl;
+    private Connection connection;
+    private Path sourceConfigPath;
+    private Path sourceWorldPath;
+    private final List<String> messages = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        // a file database, an in-memory one keeps every claim on the heap
+        this.databaseUrl = "jdbc:h2:" + this.temporaryFolder.newFolder("database").toPath().resolve("gp") + ";MODE=MySQL";
+        this.connection = DriverManager.getConnection(this.databaseUrl);
+        this.sourceConfigPath = this.temporaryFolder.newFolder("source").toPath();
+        this.sourceWorldPath = createWorldFolder(this.sourceConfigPath);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.connection.close();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final List<UUID> claimUniqueIds = generateClaims(this.sourceWorldPath.resolve("ClaimData"), CLAIM_COUNT);
+        final int playerCount = CLAIM_COUNT / 10;
+        generatePlayers(this.sourceConfigPath.resolve("GlobalPlayerData"), playerCount);
+
+        long start = System.currentTimeMillis();
+        this.createMigrator(this.sourceConfigPath, message -> { }).migrate(StorageMigrator.Target.DATABASE);
+        System.out.println("Copied " + CLAIM_COUNT + " claim files to the database in " + (System.currentTimeMillis() - start) + "ms.");
+        assertEquals(CLAIM_COUNT, this.count("SELECT COUNT(*) FROM gp_claim WHERE world_id = '" + WORLD_UUID + "'"));
+        assertEquals(CLAIM_COUNT / 2, this.count("SELECT COUNT(*) FROM gp_claim WHERE parent_id IS NOT NULL"));
+        assertEquals(playerCount, this.count("SELECT COUNT(*) FROM gp_player_data WHERE world_id = '" + DatabaseSchema.GLOBAL_WORLD_UUID + "'"));
+        assertFalse(Files.exists(this.sourceConfigPath.resolve("storage-migration.checkpoint")));
+
+        // a claim file of an earlier file mode that was deleted while running on the database
+        final Path targetConfigPath = this.temporaryFolder.newFolder("target").toPath();
+        final Path targetWorldPath = createWorldFolder(targetConfigPath);
+        final UUID staleUniqueId = UUID.randomUUID();
+        writeClaimFile(targetWorldPath.resolve("ClaimData"), staleUniqueId, "BASIC", null, 0);
+        // a claim file left in the folder of its old type
+        final Path oldTypeFile = targetWorldPath.resolve("ClaimData").resolve("town").resolve(claimUniqueIds.get(0).toString());
+        Files.createDirectories(oldTypeFile.getParent());
+        Files.write(oldTypeFile, claimFileContent("TOWN", null, 0).getBytes(StandardCharsets.UTF_8));
+
+        start = System.currentTimeMillis();
+        this.createMigrator(targetConfigPath, message -> { }).migrate(StorageMigrator.Target.FILES);
+        System.out.println("Copied " + CLAIM_COUNT + " claims from the database to files in " + (System.currentTimeMillis() - start) + "ms.");
+
+        for (Path sourceFile : listFiles(this.sourceWorldPath.resolve("ClaimData"))) {
+            final Path targetFile = targetWorldPath.resolve(this.sourceWorldPath.relativize(sourceFile));
+            assertEquals(sourceFile.toString(), load(sourceFile).getValue(), load(targetFile).getValue());
+        }
+        assertEquals(CLAIM_COUNT, listFiles(targetWorldPath.resolve("ClaimData")).size());
+        final Path removedPath = targetWorldPath.resolve("ClaimData.removed");
+        assertTrue(Files.exists(removedPath.resolve("basic").resolve(staleUniqueId.toString())));
+        assertTrue(Files.exists(removedPath.resolve("town").resolve(claimUniqueIds.get(0).toString())));
+
+        final List<Path> sourcePlayerFiles = listFiles(this.sourceConfigPath.resolve("GlobalPlayerData"));
+        assertEquals(playerCount, sourcePlayerFiles.size());
+        for (Path sourceFile : sourcePlayerFiles) {
+            final Path targetFile = targetConfigPath.resolve("GlobalPlayerData").resolve(sourceFile.getFileName());
+            assertEquals(load(sourceFile).getValue(), load(targetFile).getValue());
+        }
+    }
+
+    @Test
+    public void testResumeAfterInterruptedBatch() throws Exception {
+        final int claimCount = 5 * StorageMigrator.BATCH_SIZE / 2;
+        generateClaims(this.sourceWorldPath.resolve("ClaimData"), claimCount);
+
+        // fails once the first batch is written and checkpointed
+        try {
+            this.createMigrator(this.sourceConfigPath, message -> {
+                if (message.startsWith("Copied ")) {
+                    throw new IllegalStateException("interrupted");
+                }
+            }).migrate(StorageMigrator.Target.DATABASE);
+            fail("Migration was not interrupted");
+        } catch (IllegalStateException e) {
+            assertEquals("interrupted", e.getMessage());
+        }
+        assertTrue(Files.exists(this.sourceConfigPath.resolve("storage-migration.checkpoint")));
+        assertEquals(StorageMigrator.BATCH_SIZE, this.count("SELECT COUNT(*) FROM gp_claim"));
+
+        this.createMigrator(this.sourceConfigPath, this.messages::add).migrate(StorageMigrator.Target.DATABASE);
+        assertTrue(this.messages.stream().anyMatch(message -> message.startsWith("Resuming storage migration")));
+        assertEquals(claimCount - StorageMigrator.BATCH_SIZE, this.getCopiedClaimCount());
+        assertEquals(claimCount, this.count("SELECT COUNT(*) FROM gp_claim"));
+        assertFalse(Files.exists(this.sourceConfigPath.resolve("storage-migration.checkpoint")));
+    }
+
+    @Test
+    public void testReplaysJournalOffline() throws Exception {
+        final Path claimDataPath = this.sourceWorldPath.resolve("ClaimData");
+        final List<UUID> claimUniqueIds = generateClaims(claimDataPath, 10);
+        final Path changedFile = claimDataPath.resolve("basic").resolve(claimUniqueIds.get(0).toString());
+        final Path deletedFile = claimDataPath.resolve("basic").resolve(claimUniqueIds.get(2).toString());
+        final CommentedConfigurationNode changed = HoconConfigurationLoader.builder().setPath(changedFile).build().load();
+        changed.getNode(GriefPreventionPlugin.MOD_ID, ClaimStorageData.MAIN_CLAIM_NAME).setValue("changed");
+        final ClaimJournal journal = ClaimJournal.get(claimDataPath);
+        journal.appendPut(changedFile, changed);
+        journal.appendDelete(deletedFile);
+        journal.force();
+
+        this.createMigrator(this.sourceConfigPath, message -> { }).migrate(StorageMigrator.Target.DATABASE);
+        assertEquals(9, this.count("SELECT COUNT(*) FROM gp_claim"));
+        assertEquals(0, this.count("SELECT COUNT(*) FROM gp_claim WHERE claim_id = '" + claimUniqueIds.get(2) + "'"));
+        final ConfigurationNode node = SimpleConfigurationNode.root();
+        ClaimSnapshot.decode(DatabaseSchema.selectClaim(this.connection, WORLD_UUID, claimUniqueIds.get(0)).data, node);
+        assertEquals("changed", node.getNode(ClaimStorageData.MAIN_CLAIM_NAME).getString());
+    }
+
+    private StorageMigrator createMigrator(Path configPath, Consumer<String> progress) {
+        return new StorageMigrator(configPath, () -> DriverManager.getConnection(this.databaseUrl), true, worldPath -> WORLD_UUID, progress,
+                Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    private int getCopiedClaimCount() {
+        for (String message : this.messages) {
+            final Matcher matcher = FINISHED.matcher(message);
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        throw new AssertionError("Migration did not finish: " + this.messages);
+    }
+
+    private int count(String query) throws Exception {
+        try (Statement statement = this.connection.createStatement();
+                ResultSet results = statement.executeQuery(query)) {
+            results.next();
+            return results.getInt(1);
+        }
+    }
+
+    private static Path createWorldFolder(Path configPath) throws IOException {
+        final Path worldPath = configPath.resolve("worlds").resolve("minecraft").resolve("overworld").resolve("world");
+        Files.createDirectories(worldPath);
+        return worldPath;
+    }
+
+    // Every second claim is a subdivision of the claim before it
+    private static List<UUID> generateClaims(Path claimDataPath, int count) throws IOException {
+        final List<UUID> claimUniqueIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final UUID claimUniqueId = UUID.randomUUID();
+            if (i % 2 == 0) {
+                writeClaimFile(claimDataPath, claimUniqueId, "BASIC", null, i);
+            } else {
+                writeClaimFile(claimDataPath, claimUniqueId, "SUBDIVISION", claimUniqueIds.get(i - 1), i);
+            }
+            claimUniqueIds.add(claimUniqueId);
+        }
+        return claimUniqueIds;
+    }
+
+    private static void writeClaimFile(Path claimDataPath, UUID claimUniqueId, String type, UUID parentUniqueId, int index) throws IOException {
+        final Path claimFile = claimDataPath.resolve(type.toLowerCase()).resolve(claimUniqueId.toString());
+        Files.createDirectories(claimFile.getParent());
+        Files.write(claimFile, claimFileContent(type, parentUniqueId, index).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String claimFileContent(String type, UUID parentUniqueId, int index) {
+        final int x = index * 16;
+        return GriefPreventionPlugin.MOD_ID + " {\n"
+                + "    " + ClaimStorageData.MAIN_WORLD_UUID + "=\"" + WORLD_UUID + "\"\n"
+                + "    " + ClaimStorageData.MAIN_OWNER_UUID + "=\"" + new UUID(0, index) + "\"\n"
+                + "    " + ClaimStorageData.MAIN_CLAIM_TYPE + "=" + type + "\n"
+                + "    " + ClaimStorageData.MAIN_CLAIM_CUBOID + "=false\n"
+                + "    " + ClaimStorageData.MAIN_LESSER_BOUNDARY_CORNER + "=\"" + x + ";0;0\"\n"
+                + "    " + ClaimStorageData.MAIN_GREATER_BOUNDARY_CORNER + "=\"" + (x + 9) + ";255;9\"\n"
+                + "    " + ClaimStorageData.MAIN_BUILDERS + "=[\"" + new UUID(1, index) + "\"]\n"
+                + (parentUniqueId == null ? "" : "    parent=\"" + parentUniqueId + "\"\n")
+                + "}\n";
+    }
+
+    private static void generatePlayers(Path playerDataPath, int count) throws IOException {
+        Files.createDirectories(playerDataPath);
+        for (int i = 0; i < count; i++) {
+            Files.write(playerDataPath.resolve(UUID.randomUUID().toString()), (GriefPreventionPlugin.MOD_ID + " {\n"
+                    + "    accrued-claim-blocks=" + i + "\n"
+                    + "    bonus-claim-blocks=" + (i % 7) + "\n"
+                    + "}\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<Path> listFiles(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    private static CommentedConfigurationNode load(Path path) throws IOException {
+        return HoconConfigurationLoader.builder().setPath(path).build().load().getNode(GriefPreventionPlugin.MOD_ID);
+    }
+}